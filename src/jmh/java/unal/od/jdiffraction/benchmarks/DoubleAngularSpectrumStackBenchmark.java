@@ -0,0 +1,120 @@
+/*
+ * Copyright 2016 Universidad Nacional de Colombia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package unal.od.jdiffraction.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import unal.od.jdiffraction.cpu.DoubleAngularSpectrum;
+import unal.od.jdiffraction.cpu.DoubleAngularSpectrumStack;
+
+/**
+ * Time to compute a stack of planes with DoubleAngularSpectrumStack, for evenly
+ * spaced distances (phase recurrence) and for scattered distances (kernel
+ * evaluated per plane), against one DoubleAngularSpectrum per distance.
+ *
+ * @author Pablo Piedrahita-Quintero (jppiedrahitaq@unal.edu.co)
+ * @author Carlos Trujillo (catrujila@unal.edu.co)
+ * @author Jorge Garcia-Sucerquia (jigarcia@unal.edu.co)
+ *
+ * @since JDiffraction 1.3
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DoubleAngularSpectrumStackBenchmark {
+
+    private static final double LAMBDA = 632.8e-9;
+    private static final double Z = 0.05;
+    private static final double DZ = 1e-4;
+    private static final double DX = 5e-6;
+
+    @Param({"256", "512", "1024"})
+    public int size;
+
+    @Param({"32"})
+    public int planes;
+
+    private DoubleAngularSpectrumStack stack;
+    private double[][] input;
+    private double[][] field;
+    private double[] even;
+    private double[] scattered;
+
+    @Setup
+    public void setup() {
+        stack = new DoubleAngularSpectrumStack(size, size, LAMBDA, DX, DX);
+        input = DoublePropagatorBenchmark.randomField(size, size, 42);
+        field = new double[size][2 * size];
+
+        Random random = new Random(7);
+        even = new double[planes];
+        scattered = new double[planes];
+        for (int k = 0; k < planes; k++) {
+            even[k] = Z + k * DZ;
+            scattered[k] = Z + planes * DZ * random.nextDouble();
+        }
+    }
+
+    private DoubleAngularSpectrumStack.PlaneConsumer consumer(final Blackhole blackhole) {
+        return new DoubleAngularSpectrumStack.PlaneConsumer() {
+            @Override
+            public void accept(int index, double z, double[][] plane) {
+                blackhole.consume(plane);
+            }
+        };
+    }
+
+    @Benchmark
+    public void stackEven(Blackhole blackhole) {
+        stack.diffract(input, even, consumer(blackhole));
+    }
+
+    @Benchmark
+    public void stackScattered(Blackhole blackhole) {
+        stack.diffract(input, scattered, consumer(blackhole));
+    }
+
+    /**
+     * One propagator per distance, the way a stack is computed without
+     * DoubleAngularSpectrumStack.
+     */
+    @Benchmark
+    public void perDistance(Blackhole blackhole) {
+        for (int k = 0; k < planes; k++) {
+            for (int i = 0; i < size; i++) {
+                System.arraycopy(input[i], 0, field[i], 0, 2 * size);
+            }
+
+            new DoubleAngularSpectrum(size, size, LAMBDA, even[k], DX, DX).diffract(field);
+            blackhole.consume(field);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2016 Universidad Nacional de Colombia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package unal.od.jdiffraction.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import unal.od.jdiffraction.cpu.DoubleAngularSpectrum;
+import unal.od.jdiffraction.cpu.DoubleFresnelBluestein;
+import unal.od.jdiffraction.cpu.DoubleFresnelFourier;
+import unal.od.jdiffraction.cpu.DoublePropagator;
+
+/**
+ * Construction time and diffraction throughput/latency of the double precision
+ * propagators. Sizes cover powers of two, 2-3-5 smooth numbers and primes,
+ * which take different code paths inside JTransforms.
+ *
+ * @author Pablo Piedrahita-Quintero (jppiedrahitaq@unal.edu.co)
+ * @author Carlos Trujillo (catrujila@unal.edu.co)
+ * @author Jorge Garcia-Sucerquia (jigarcia@unal.edu.co)
+ *
+ * @since JDiffraction 1.3
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DoublePropagatorBenchmark {
+
+    private static final double LAMBDA = 632.8e-9;
+    private static final double Z = 0.05;
+    private static final double DX = 5e-6;
+    private static final double DX_OUT = 7e-6;
+
+    @Param({"AngularSpectrum", "FresnelFourier", "FresnelBluestein"})
+    public String method;
+
+    @Param({"256", "512", "1024", "360", "720", "257", "521"})
+    public int size;
+
+    private DoublePropagator propagator;
+    private double[][] input;
+    private double[][] field;
+
+    @Setup
+    public void setup() {
+        propagator = create();
+        input = randomField(size, size, 42);
+        field = new double[size][2 * size];
+    }
+
+    private DoublePropagator create() {
+        if (method.equals("AngularSpectrum")) {
+            return new DoubleAngularSpectrum(size, size, LAMBDA, Z, DX, DX);
+        } else if (method.equals("FresnelFourier")) {
+            return new DoubleFresnelFourier(size, size, LAMBDA, Z, DX, DX);
+        } else if (method.equals("FresnelBluestein")) {
+            return new DoubleFresnelBluestein(size, size, LAMBDA, Z, DX, DX, DX_OUT, DX_OUT);
+        }
+        throw new IllegalArgumentException("Unknown method: " + method);
+    }
+
+    /**
+     * Random unit amplitude field with uniformly distributed phase.
+     */
+    static double[][] randomField(int M, int N, long seed) {
+        Random random = new Random(seed);
+        double[][] field = new double[M][2 * N];
+
+        for (int i = 0; i < M; i++) {
+            for (int j = 0; j < N; j++) {
+                double phase = 2 * Math.PI * random.nextDouble();
+                field[i][2 * j] = Math.cos(phase);
+                field[i][2 * j + 1] = Math.sin(phase);
+            }
+        }
+
+        return field;
+    }
+
+    /**
+     * Kernel calculations and FFT plan creation.
+     */
+    @Benchmark
+    public DoublePropagator construction() {
+        return create();
+    }
+
+    /**
+     * Diffraction of one field. The propagators work in place, so the input
+     * is copied first to keep every invocation on the same data; the copy is
+     * negligible next to the FFTs.
+     */
+    @Benchmark
+    public double[][] diffract() {
+        for (int i = 0; i < size; i++) {
+            System.arraycopy(input[i], 0, field[i], 0, 2 * size);
+        }
+
+        propagator.diffract(field);
+        return field;
+    }
+}
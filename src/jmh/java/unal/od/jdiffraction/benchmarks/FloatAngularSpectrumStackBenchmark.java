@@ -0,0 +1,120 @@
+/*
+ * Copyright 2016 Universidad Nacional de Colombia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package unal.od.jdiffraction.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import unal.od.jdiffraction.cpu.FloatAngularSpectrum;
+import unal.od.jdiffraction.cpu.FloatAngularSpectrumStack;
+
+/**
+ * Time to compute a stack of planes with FloatAngularSpectrumStack, for evenly
+ * spaced distances (phase recurrence) and for scattered distances (kernel
+ * evaluated per plane), against one FloatAngularSpectrum per distance.
+ *
+ * @author Pablo Piedrahita-Quintero (jppiedrahitaq@unal.edu.co)
+ * @author Carlos Trujillo (catrujila@unal.edu.co)
+ * @author Jorge Garcia-Sucerquia (jigarcia@unal.edu.co)
+ *
+ * @since JDiffraction 1.3
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FloatAngularSpectrumStackBenchmark {
+
+    private static final float LAMBDA = 632.8e-9f;
+    private static final float Z = 0.05f;
+    private static final float DZ = 1e-4f;
+    private static final float DX = 5e-6f;
+
+    @Param({"256", "512", "1024"})
+    public int size;
+
+    @Param({"32"})
+    public int planes;
+
+    private FloatAngularSpectrumStack stack;
+    private float[][] input;
+    private float[][] field;
+    private float[] even;
+    private float[] scattered;
+
+    @Setup
+    public void setup() {
+        stack = new FloatAngularSpectrumStack(size, size, LAMBDA, DX, DX);
+        input = FloatPropagatorBenchmark.randomField(size, size, 42);
+        field = new float[size][2 * size];
+
+        Random random = new Random(7);
+        even = new float[planes];
+        scattered = new float[planes];
+        for (int k = 0; k < planes; k++) {
+            even[k] = Z + k * DZ;
+            scattered[k] = Z + planes * DZ * random.nextFloat();
+        }
+    }
+
+    private FloatAngularSpectrumStack.PlaneConsumer consumer(final Blackhole blackhole) {
+        return new FloatAngularSpectrumStack.PlaneConsumer() {
+            @Override
+            public void accept(int index, float z, float[][] plane) {
+                blackhole.consume(plane);
+            }
+        };
+    }
+
+    @Benchmark
+    public void stackEven(Blackhole blackhole) {
+        stack.diffract(input, even, consumer(blackhole));
+    }
+
+    @Benchmark
+    public void stackScattered(Blackhole blackhole) {
+        stack.diffract(input, scattered, consumer(blackhole));
+    }
+
+    /**
+     * One propagator per distance, the way a stack is computed without
+     * FloatAngularSpectrumStack.
+     */
+    @Benchmark
+    public void perDistance(Blackhole blackhole) {
+        for (int k = 0; k < planes; k++) {
+            for (int i = 0; i < size; i++) {
+                System.arraycopy(input[i], 0, field[i], 0, 2 * size);
+            }
+
+            new FloatAngularSpectrum(size, size, LAMBDA, even[k], DX, DX).diffract(field);
+            blackhole.consume(field);
+        }
+    }
+}
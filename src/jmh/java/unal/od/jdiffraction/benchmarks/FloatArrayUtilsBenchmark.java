@@ -0,0 +1,194 @@
+/*
+ * Copyright 2016 Universidad Nacional de Colombia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package unal.od.jdiffraction.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import unal.od.jdiffraction.cpu.utils.ArrayUtils;
+import unal.od.jdiffraction.cpu.utils.DisplayUtils;
+import unal.od.jdiffraction.cpu.utils.ParallelArrayUtils;
+
+/**
+ * Single precision {@link ArrayUtils} operations used by the propagators and
+ * by the display of the results. The in place operations either preserve the
+ * data (shifts, unit modulus multiplications) or converge to a fixed point
+ * (scaling), so the arrays aren't reset between invocations.
+ *
+ * @author Pablo Piedrahita-Quintero (jppiedrahitaq@unal.edu.co)
+ * @author Carlos Trujillo (catrujila@unal.edu.co)
+ * @author Jorge Garcia-Sucerquia (jigarcia@unal.edu.co)
+ *
+ * @since JDiffraction 1.3
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FloatArrayUtilsBenchmark {
+
+    @Param({"256", "1024", "257"})
+    public int size;
+
+    private float[][] field;
+    private float[][] kernel;
+    private float[][] real;
+    private float[][] scaled;
+    private float[][] output;
+    private float[][] complexOutput;
+    private byte[] pixels;
+    private float[] flatField;
+    private float[] flatKernel;
+
+    @Setup
+    public void setup() {
+        field = FloatPropagatorBenchmark.randomField(size, size, 42);
+        kernel = FloatPropagatorBenchmark.randomField(size, size, 7);
+        real = ArrayUtils.modulus(field);
+        scaled = ArrayUtils.phase(field);
+        output = new float[size][size];
+        complexOutput = new float[size][2 * size];
+        pixels = new byte[size * size];
+
+        flatField = new float[size * 2 * size];
+        flatKernel = new float[size * 2 * size];
+        ArrayUtils.matrixToVectorArray(size, 2 * size, field, flatField);
+        ArrayUtils.matrixToVectorArray(size, 2 * size, kernel, flatKernel);
+    }
+
+    @Benchmark
+    public float[][] complexMultiplication() {
+        return ArrayUtils.complexMultiplication(field, kernel);
+    }
+
+    @Benchmark
+    public float[][] complexMultiplication2() {
+        ArrayUtils.complexMultiplication2(field, kernel);
+        return field;
+    }
+
+    @Benchmark
+    public float[][] complexMultiplication2Parallel() {
+        ParallelArrayUtils.complexMultiplication2(field, kernel);
+        return field;
+    }
+
+    @Benchmark
+    public float[] complexMultiplication2Flat() {
+        ArrayUtils.complexMultiplication2(size, size, flatField, flatKernel);
+        return flatField;
+    }
+
+    @Benchmark
+    public float[][] complexShift() {
+        ArrayUtils.complexShift(field);
+        return field;
+    }
+
+    @Benchmark
+    public float[] complexShiftFlat() {
+        ArrayUtils.complexShift(size, size, flatField);
+        return flatField;
+    }
+
+    @Benchmark
+    public float[][] realShift() {
+        ArrayUtils.realShift(real);
+        return real;
+    }
+
+    @Benchmark
+    public float[][] checkerboard() {
+        ArrayUtils.checkerboard(field);
+        return field;
+    }
+
+    @Benchmark
+    public float[][] modulus() {
+        return ArrayUtils.modulus(field);
+    }
+
+    @Benchmark
+    public float[][] modulusInto() {
+        ArrayUtils.modulus(field, output);
+        return output;
+    }
+
+    @Benchmark
+    public byte[] displayModulus() {
+        DisplayUtils.toBytes(field, DisplayUtils.MODULUS, pixels);
+        return pixels;
+    }
+
+    @Benchmark
+    public float[][] modulusSq() {
+        return ArrayUtils.modulusSq(field);
+    }
+
+    @Benchmark
+    public float[][] phase() {
+        return ArrayUtils.phase(field);
+    }
+
+    @Benchmark
+    public float[][] complexAmplitude() {
+        return ArrayUtils.complexAmplitude(scaled, real);
+    }
+
+    @Benchmark
+    public float[][] complexAmplitudeInto() {
+        ArrayUtils.complexAmplitude(scaled, real, complexOutput);
+        return complexOutput;
+    }
+
+    @Benchmark
+    public float[][] log10() {
+        return ArrayUtils.log10(real);
+    }
+
+    @Benchmark
+    public float max() {
+        return ArrayUtils.max(real);
+    }
+
+    @Benchmark
+    public float[][] scale() {
+        return ArrayUtils.scale(real, 255);
+    }
+
+    @Benchmark
+    public float[][] scale2() {
+        ArrayUtils.scale2(scaled, 255);
+        return scaled;
+    }
+
+    @Benchmark
+    public float[] matrixToVectorArray() {
+        ArrayUtils.matrixToVectorArray(size, 2 * size, field, flatField);
+        return flatField;
+    }
+}
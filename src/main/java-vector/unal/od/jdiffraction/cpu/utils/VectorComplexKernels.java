@@ -0,0 +1,255 @@
+/*
+ * Copyright 2016 Universidad Nacional de Colombia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package unal.od.jdiffraction.cpu.utils;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShuffle;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * {@link ComplexKernels} implemented with the incubator Vector API. The
+ * interleaved complex layout is handled with lane shuffles: the complex
+ * multiplication copies the real and imaginary parts of {@code b} to both
+ * lanes of each pair and swaps the pairs of {@code a}, while the modulus and
+ * phase gather the real and imaginary parts of two vectors into one vector
+ * each. The tails are done by the scalar loops.
+ * <p>
+ * The multiplication and the modulus perform the same floating point
+ * operations as the scalar code, so results are the same. The phase may
+ * differ from {@link Math#atan2(double, double)} in the last bit.
+ * <p>
+ * Compiled only on JDK 17+ and loaded reflectively by {@link ComplexKernels}.
+ *
+ * @author Pablo Piedrahita-Quintero (jppiedrahitaq@unal.edu.co)
+ * @author Carlos Trujillo (catrujila@unal.edu.co)
+ * @author Jorge Garcia-Sucerquia (jigarcia@unal.edu.co)
+ *
+ * @since JDiffraction 1.3
+ */
+final class VectorComplexKernels extends ScalarComplexKernels {
+
+    private static final VectorSpecies<Float> FLOAT = FloatVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Double> DOUBLE = DoubleVector.SPECIES_PREFERRED;
+
+    //[re0, im0, re1, im1, ...] -> [re0, re0, re1, re1, ...]
+    private static final VectorShuffle<Float> FLOAT_REAL = VectorShuffle.fromOp(FLOAT, i -> i & ~1);
+    //[re0, im0, re1, im1, ...] -> [im0, im0, im1, im1, ...]
+    private static final VectorShuffle<Float> FLOAT_IMAGINARY = VectorShuffle.fromOp(FLOAT, i -> i | 1);
+    //[re0, im0, re1, im1, ...] -> [im0, re0, im1, re1, ...]
+    private static final VectorShuffle<Float> FLOAT_SWAP = VectorShuffle.fromOp(FLOAT, i -> i ^ 1);
+    //[re0, im0, re1, im1, ...] -> [re0, re1, ..., re0, re1, ...], the high
+    //half is then taken from the next vector
+    private static final VectorShuffle<Float> FLOAT_EVEN = VectorShuffle.fromOp(FLOAT, i -> (2 * i) % FLOAT.length());
+    private static final VectorShuffle<Float> FLOAT_ODD = VectorShuffle.fromOp(FLOAT, i -> (2 * i + 1) % FLOAT.length());
+    private static final VectorMask<Float> FLOAT_HIGH = VectorMask.fromArray(FLOAT, highHalf(FLOAT.length()), 0);
+    //[-1, 1, -1, 1, ...]
+    private static final FloatVector FLOAT_SIGN = FloatVector.fromArray(FLOAT, floatSign(FLOAT.length()), 0);
+
+    private static final VectorShuffle<Double> DOUBLE_REAL = VectorShuffle.fromOp(DOUBLE, i -> i & ~1);
+    private static final VectorShuffle<Double> DOUBLE_IMAGINARY = VectorShuffle.fromOp(DOUBLE, i -> i | 1);
+    private static final VectorShuffle<Double> DOUBLE_SWAP = VectorShuffle.fromOp(DOUBLE, i -> i ^ 1);
+    private static final VectorShuffle<Double> DOUBLE_EVEN = VectorShuffle.fromOp(DOUBLE, i -> (2 * i) % DOUBLE.length());
+    private static final VectorShuffle<Double> DOUBLE_ODD = VectorShuffle.fromOp(DOUBLE, i -> (2 * i + 1) % DOUBLE.length());
+    private static final VectorMask<Double> DOUBLE_HIGH = VectorMask.fromArray(DOUBLE, highHalf(DOUBLE.length()), 0);
+    private static final DoubleVector DOUBLE_SIGN = DoubleVector.fromArray(DOUBLE, doubleSign(DOUBLE.length()), 0);
+
+    VectorComplexKernels() {
+        //a complex pair must fit in a vector
+        if (FLOAT.length() < 2 || DOUBLE.length() < 2) {
+            throw new UnsupportedOperationException("Vectors are too short for complex data.");
+        }
+    }
+
+    private static boolean[] highHalf(int length) {
+        boolean[] high = new boolean[length];
+        for (int i = length / 2; i < length; i++) {
+            high[i] = true;
+        }
+        return high;
+    }
+
+    /**
+     * Takes the even or odd lanes of {@code v0} followed by the same lanes of
+     * {@code v1}. Done with single vector shuffles and a blend, which are
+     * cheaper than a two vector rearrange.
+     */
+    private static FloatVector deinterleave(FloatVector v0, FloatVector v1, VectorShuffle<Float> pack) {
+        return v0.rearrange(pack).blend(v1.rearrange(pack), FLOAT_HIGH);
+    }
+
+    private static DoubleVector deinterleave(DoubleVector v0, DoubleVector v1, VectorShuffle<Double> pack) {
+        return v0.rearrange(pack).blend(v1.rearrange(pack), DOUBLE_HIGH);
+    }
+
+    private static float[] floatSign(int length) {
+        float[] sign = new float[length];
+        for (int i = 0; i < length; i++) {
+            sign[i] = i % 2 == 0 ? -1 : 1;
+        }
+        return sign;
+    }
+
+    private static double[] doubleSign(int length) {
+        double[] sign = new double[length];
+        for (int i = 0; i < length; i++) {
+            sign[i] = i % 2 == 0 ? -1 : 1;
+        }
+        return sign;
+    }
+
+    @Override
+    void complexMultiplication2(float[] a, float[] b, int from, int to) {
+        int length = FLOAT.length();
+        int k = from;
+
+        for (; k <= to - length; k += length) {
+            FloatVector va = FloatVector.fromArray(FLOAT, a, k);
+            FloatVector vb = FloatVector.fromArray(FLOAT, b, k);
+
+            //re = re_a * re_b + (-(im_a * im_b)), im = im_a * re_b + re_a * im_b
+            FloatVector cross = va.rearrange(FLOAT_SWAP).mul(vb.rearrange(FLOAT_IMAGINARY)).mul(FLOAT_SIGN);
+            va.mul(vb.rearrange(FLOAT_REAL)).add(cross).intoArray(a, k);
+        }
+
+        super.complexMultiplication2(a, b, k, to);
+    }
+
+    @Override
+    void complexMultiplication2(double[] a, double[] b, int from, int to) {
+        int length = DOUBLE.length();
+        int k = from;
+
+        for (; k <= to - length; k += length) {
+            DoubleVector va = DoubleVector.fromArray(DOUBLE, a, k);
+            DoubleVector vb = DoubleVector.fromArray(DOUBLE, b, k);
+
+            DoubleVector cross = va.rearrange(DOUBLE_SWAP).mul(vb.rearrange(DOUBLE_IMAGINARY)).mul(DOUBLE_SIGN);
+            va.mul(vb.rearrange(DOUBLE_REAL)).add(cross).intoArray(a, k);
+        }
+
+        super.complexMultiplication2(a, b, k, to);
+    }
+
+    @Override
+    void modulus(float[] a, float[] modulus, int n) {
+        int length = FLOAT.length();
+        int j = 0;
+
+        for (; j <= n - length; j += length) {
+            FloatVector v0 = FloatVector.fromArray(FLOAT, a, 2 * j);
+            FloatVector v1 = FloatVector.fromArray(FLOAT, a, 2 * j + length);
+            FloatVector real = deinterleave(v0, v1, FLOAT_EVEN);
+            FloatVector imaginary = deinterleave(v0, v1, FLOAT_ODD);
+
+            real.mul(real).add(imaginary.mul(imaginary)).sqrt().intoArray(modulus, j);
+        }
+
+        modulus(a, modulus, j, n);
+    }
+
+    @Override
+    void modulus(double[] a, double[] modulus, int n) {
+        int length = DOUBLE.length();
+        int j = 0;
+
+        for (; j <= n - length; j += length) {
+            DoubleVector v0 = DoubleVector.fromArray(DOUBLE, a, 2 * j);
+            DoubleVector v1 = DoubleVector.fromArray(DOUBLE, a, 2 * j + length);
+            DoubleVector real = deinterleave(v0, v1, DOUBLE_EVEN);
+            DoubleVector imaginary = deinterleave(v0, v1, DOUBLE_ODD);
+
+            real.mul(real).add(imaginary.mul(imaginary)).sqrt().intoArray(modulus, j);
+        }
+
+        modulus(a, modulus, j, n);
+    }
+
+    @Override
+    void modulusSq(float[] a, float[] modulusSq, int n) {
+        int length = FLOAT.length();
+        int j = 0;
+
+        for (; j <= n - length; j += length) {
+            FloatVector v0 = FloatVector.fromArray(FLOAT, a, 2 * j);
+            FloatVector v1 = FloatVector.fromArray(FLOAT, a, 2 * j + length);
+            FloatVector real = deinterleave(v0, v1, FLOAT_EVEN);
+            FloatVector imaginary = deinterleave(v0, v1, FLOAT_ODD);
+
+            real.mul(real).add(imaginary.mul(imaginary)).intoArray(modulusSq, j);
+        }
+
+        modulusSq(a, modulusSq, j, n);
+    }
+
+    @Override
+    void modulusSq(double[] a, double[] modulusSq, int n) {
+        int length = DOUBLE.length();
+        int j = 0;
+
+        for (; j <= n - length; j += length) {
+            DoubleVector v0 = DoubleVector.fromArray(DOUBLE, a, 2 * j);
+            DoubleVector v1 = DoubleVector.fromArray(DOUBLE, a, 2 * j + length);
+            DoubleVector real = deinterleave(v0, v1, DOUBLE_EVEN);
+            DoubleVector imaginary = deinterleave(v0, v1, DOUBLE_ODD);
+
+            real.mul(real).add(imaginary.mul(imaginary)).intoArray(modulusSq, j);
+        }
+
+        modulusSq(a, modulusSq, j, n);
+    }
+
+    @Override
+    void phase(float[] a, float[] phase, int n) {
+        int length = FLOAT.length();
+        int j = 0;
+
+        for (; j <= n - length; j += length) {
+            FloatVector v0 = FloatVector.fromArray(FLOAT, a, 2 * j);
+            FloatVector v1 = FloatVector.fromArray(FLOAT, a, 2 * j + length);
+            FloatVector real = deinterleave(v0, v1, FLOAT_EVEN);
+            FloatVector imaginary = deinterleave(v0, v1, FLOAT_ODD);
+
+            imaginary.lanewise(VectorOperators.ATAN2, real).intoArray(phase, j);
+        }
+
+        phase(a, phase, j, n);
+    }
+
+    @Override
+    void phase(double[] a, double[] phase, int n) {
+        int length = DOUBLE.length();
+        int j = 0;
+
+        for (; j <= n - length; j += length) {
+            DoubleVector v0 = DoubleVector.fromArray(DOUBLE, a, 2 * j);
+            DoubleVector v1 = DoubleVector.fromArray(DOUBLE, a, 2 * j + length);
+            DoubleVector real = deinterleave(v0, v1, DOUBLE_EVEN);
+            DoubleVector imaginary = deinterleave(v0, v1, DOUBLE_ODD);
+
+            imaginary.lanewise(VectorOperators.ATAN2, real).intoArray(phase, j);
+        }
+
+        phase(a, phase, j, n);
+    }
+
+    @Override
+    boolean isVectorized() {
+        return true;
+    }
+}
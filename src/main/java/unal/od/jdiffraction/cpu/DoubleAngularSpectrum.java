@@ -17,6 +17,7 @@ package unal.od.jdiffraction.cpu;
 
 import org.jtransforms.fft.DoubleFFT_2D;
 import unal.od.jdiffraction.cpu.utils.ArrayUtils;
+import unal.od.jdiffraction.cpu.utils.ParallelArrayUtils;
 
 /**
  * Computes wave diffraction through angular spectrum method with double
@@ -34,6 +35,9 @@ public class DoubleAngularSpectrum extends DoublePropagator {
     private final double z, lambda, dx, dy;
     private final double[][] kernel;
     private final DoubleFFT_2D fft;
+    //JTransforms plans keep state during a transform, so each thread of a
+    //batch needs its own
+    private final ThreadLocal<DoubleSequentialFFT> sequentialFft = new ThreadLocal<DoubleSequentialFFT>();
 
     /**
      * Creates a new instance of DoubleAngularSpectrum. Also performs kernel
@@ -57,7 +61,34 @@ public class DoubleAngularSpectrum extends DoublePropagator {
         kernel = new double[M][2 * N];
         fft = new DoubleFFT_2D(M, N);
 
-        calculateKernels();
+        //on square grids the kernel depends only on i2^2 + j2^2, so it's
+        //symmetric about the diagonal
+        if (M == N && dx == dy && M % 2 == 0) {
+            calculateRadialKernel();
+        } else {
+            calculateKernels();
+        }
+
+        //the kernel is stored in FFT order, so the spectrum doesn't need to be
+        //centered before the multiplication and un-centered after it
+        ArrayUtils.complexShift(kernel);
+    }
+
+    /**
+     * Creates a new instance of DoubleAngularSpectrum that shares the kernels
+     * of {@code other} but has its own FFT plans.
+     *
+     * @param other Propagator whose kernels are shared.
+     */
+    DoubleAngularSpectrum(DoubleAngularSpectrum other) {
+        M = other.M;
+        N = other.N;
+        z = other.z;
+        lambda = other.lambda;
+        dx = other.dx;
+        dy = other.dy;
+        kernel = other.kernel;
+        fft = new DoubleFFT_2D(M, N);
     }
 
     private void calculateKernels() {
@@ -152,6 +183,54 @@ public class DoubleAngularSpectrum extends DoublePropagator {
         }
     }
 
+    /**
+     * Kernel calculation for M == N and dx == dy. Only the octant
+     * {@code j >= i} of the quadrant is computed, so each radius is evaluated
+     * once, up to the few radii shared by different pairs, and the rows are
+     * filled in parallel.
+     */
+    private void calculateRadialKernel() {
+        final int M2 = M / 2;
+        final int endM = 2 * M2 - 1;
+        final double lambdaSq = lambda * lambda;
+        final double df = 1 / (dx * M);
+        final double dfSq = df * df;
+        final double kernelFactor = (2 * Math.PI * z) / lambda;
+
+        ParallelArrayUtils.forRows(M2, M2, new ParallelArrayUtils.RowRange() {
+            @Override
+            public void apply(int from, int to) {
+                for (int i = from; i < to; i++) {
+                    int i2 = i - M2 + 1;
+
+                    for (int j = i; j < M2; j++) {
+                        int j2 = j - M2 + 1;
+                        double kernelPhase;
+
+                        kernelPhase = i2 * i2 * dfSq + j2 * j2 * dfSq;
+                        kernelPhase *= lambdaSq;
+                        kernelPhase = 1 - kernelPhase;
+                        kernelPhase = Math.sqrt(kernelPhase);
+                        kernelPhase *= kernelFactor;
+
+                        double real = Math.cos(kernelPhase);
+                        double imaginary = Math.sin(kernelPhase);
+
+                        setMirrored(i, j, endM, real, imaginary);
+                        setMirrored(j, i, endM, real, imaginary);
+                    }
+                }
+            }
+        });
+    }
+
+    private void setMirrored(int i, int j, int endM, double real, double imaginary) {
+        kernel[i][2 * j] = kernel[endM - i][2 * j] = kernel[i][2 * (endM - j)]
+                = kernel[endM - i][2 * (endM - j)] = real;
+        kernel[i][2 * j + 1] = kernel[endM - i][2 * j + 1] = kernel[i][2 * (endM - j) + 1]
+                = kernel[endM - i][2 * (endM - j) + 1] = imaginary;
+    }
+
     @Override
     public void diffract(double[][] field) {
 
@@ -160,12 +239,41 @@ public class DoubleAngularSpectrum extends DoublePropagator {
         }
 
         fft.complexForward(field);
-        ArrayUtils.complexShift(field);
-        ArrayUtils.complexMultiplication2(field, kernel);
-        ArrayUtils.complexShift(field);
+        ParallelArrayUtils.complexMultiplication2(field, kernel);
         fft.complexInverse(field, true);
     }
 
+    @Override
+    protected void diffractSequential(double[][] field) {
+
+        if (M != field.length || 2 * N != field[0].length) {
+            throw new IllegalArgumentException("Array dimension must be " + M + " x " + 2 * N + ".");
+        }
+
+        DoubleSequentialFFT plan = sequentialFFT();
+
+        plan.complexForward(field);
+        ArrayUtils.complexMultiplication2(field, kernel);
+        plan.complexInverse(field, true);
+    }
+
+    private DoubleSequentialFFT sequentialFFT() {
+        DoubleSequentialFFT plan = sequentialFft.get();
+        if (plan == null) {
+            plan = FFTUtils.singleThreadedDouble(M, N);
+            sequentialFft.set(plan);
+        }
+        return plan;
+    }
+
+    /**
+     * Returns the kernel, which {@link DoubleAngularSpectrumFlat} lays out in a
+     * 1D array.
+     */
+    double[][] getKernel() {
+        return kernel;
+    }
+
     public int getM() {
         return M;
     }
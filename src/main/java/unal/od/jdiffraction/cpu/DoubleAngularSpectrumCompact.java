@@ -0,0 +1,237 @@
+/*
+ * Copyright 2016 Universidad Nacional de Colombia
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package unal.od.jdiffraction.cpu;
+
+import org.jtransforms.fft.DoubleFFT_2D;
+
+/**
+ * Computes wave diffraction through angular spectrum method with double
+ * precision, storing only one quadrant of the kernel. The kernel takes a
+ * fourth of the memory used by {@link DoubleAngularSpectrum}; the mirrored
+ * values are looked up while multiplying, so results are the same.
+ *
+ * @author Pablo Piedrahita-Quintero (jppiedrahitaq@unal.edu.co)
+ * @author Carlos Trujillo (catrujila@unal.edu.co)
+ * @author Jorge Garcia-Sucerquia (jigarcia@unal.edu.co)
+ *
+ * @since JDiffraction 1.3
+ */
+public class DoubleAngularSpectrumCompact extends DoublePropagator {
+
+    private final int M, N;
+    private final double z, lambda, dx, dy;
+    private final double[][] kernel;
+    private final QuadrantIndex index;
+    private final DoubleFFT_2D fft;
+    //JTransforms plans keep state during a transform, so each thread of a
+    //batch needs its own
+    private final ThreadLocal<DoubleSequentialFFT> sequentialFft = new ThreadLocal<DoubleSequentialFFT>();
+
+    /**
+     * Creates a new instance of DoubleAngularSpectrumCompact. Also performs kernel
+     * calculations.
+     *
+     * @param M Number of data points on x direction.
+     * @param N Number of data points on y direction.
+     * @param lambda Wavelength.
+     * @param z Distance.
+     * @param dx Sampling pitch on x direction.
+     * @param dy Sampling pitch on y direction.
+     */
+    public DoubleAngularSpectrumCompact(int M, int N, double lambda, double z, double dx, double dy) {
+        this.M = M;
+        this.N = N;
+        this.lambda = lambda;
+        this.dx = dx;
+        this.dy = dy;
+        this.z = z;
+
+        kernel = new double[QuadrantIndex.size(M)][2 * QuadrantIndex.size(N)];
+        fft = new DoubleFFT_2D(M, N);
+
+        calculateKernels();
+
+        //the spectrum isn't centered, so the kernel is read in FFT order
+        index = QuadrantIndex.shifted(M, N);
+    }
+
+    /**
+     * Creates a new instance of DoubleAngularSpectrumCompact that shares the
+     * kernels of {@code other} but has its own FFT plans.
+     *
+     * @param other Propagator whose kernels are shared.
+     */
+    DoubleAngularSpectrumCompact(DoubleAngularSpectrumCompact other) {
+        M = other.M;
+        N = other.N;
+        z = other.z;
+        lambda = other.lambda;
+        dx = other.dx;
+        dy = other.dy;
+        kernel = other.kernel;
+        index = other.index;
+        fft = new DoubleFFT_2D(M, N);
+    }
+
+    private void calculateKernels() {
+
+        int M2, N2;
+        double kernelFactor, lambdaSq, dfx, dfy, dfxSq, dfySq;
+
+        M2 = M / 2;
+        N2 = N / 2;
+        lambdaSq = lambda * lambda;
+        dfx = 1 / (dx * M);
+        dfy = 1 / (dy * N);
+        dfxSq = dfx * dfx;
+        dfySq = dfy * dfy;
+        kernelFactor = (2 * Math.PI * z) / lambda;
+
+        for (int i = 0; i < M2; i++) {
+            int i2 = i - M2 + 1;
+            double c1 = i2 * i2 * dfxSq;
+
+            for (int j = 0; j < N2; j++) {
+                int j2 = j - N2 + 1;
+                double kernelPhase;
+
+                kernelPhase = c1 + j2 * j2 * dfySq;
+                kernelPhase *= lambdaSq;
+                kernelPhase = 1 - kernelPhase;
+                kernelPhase = Math.sqrt(kernelPhase);
+                kernelPhase *= kernelFactor;
+
+                kernel[i][2 * j] = Math.cos(kernelPhase);
+                kernel[i][2 * j + 1] = Math.sin(kernelPhase);
+            }
+        }
+
+        if (M % 2 != 0) {
+            int i2 = M - M2 + 1;
+            double c1 = i2 * i2 * dfxSq;
+
+            for (int j = 0; j < N2; j++) {
+                int j2 = j - N2 + 1;
+                double kernelPhase;
+
+                kernelPhase = c1 + j2 * j2 * dfySq;
+                kernelPhase *= lambdaSq;
+                kernelPhase = 1 - kernelPhase;
+                kernelPhase = Math.sqrt(kernelPhase);
+                kernelPhase *= kernelFactor;
+
+                kernel[M2][2 * j] = Math.cos(kernelPhase);
+                kernel[M2][2 * j + 1] = Math.sin(kernelPhase);
+            }
+        }
+
+        if (N % 2 != 0) {
+            int j2 = N - N2 + 1;
+            double c1 = j2 * j2 * dfySq;
+
+            //same rows as in the full kernel
+            for (int i = 0; i < Math.min(M2, N2); i++) {
+                int i2 = M - M2 + 1;
+                double kernelPhase;
+
+                kernelPhase = c1 + i2 * i2 * dfxSq;
+                kernelPhase *= lambdaSq;
+                kernelPhase = 1 - kernelPhase;
+                kernelPhase = Math.sqrt(kernelPhase);
+                kernelPhase *= kernelFactor;
+
+                kernel[i][2 * N2] = Math.cos(kernelPhase);
+                kernel[i][2 * N2 + 1] = Math.sin(kernelPhase);
+            }
+        }
+
+        if (M % 2 != 0 && N % 2 != 0) {
+            int i2 = M - M2 + 1;
+            int j2 = N - N2 + 1;
+
+            double kernelPhase;
+
+            kernelPhase = i2 * i2 * dfxSq + j2 * j2 * dfySq;
+            kernelPhase *= lambdaSq;
+            kernelPhase = 1 - kernelPhase;
+            kernelPhase = Math.sqrt(kernelPhase);
+            kernelPhase *= kernelFactor;
+
+            kernel[M2][2 * N2] = Math.cos(kernelPhase);
+            kernel[M2][2 * N2 + 1] = Math.sin(kernelPhase);
+        }
+    }
+
+    @Override
+    public void diffract(double[][] field) {
+
+        if (M != field.length || 2 * N != field[0].length) {
+            throw new IllegalArgumentException("Array dimension must be " + M + " x " + 2 * N + ".");
+        }
+
+        fft.complexForward(field);
+        index.multiply(field, kernel, 0, true);
+        fft.complexInverse(field, true);
+    }
+
+    @Override
+    protected void diffractSequential(double[][] field) {
+
+        if (M != field.length || 2 * N != field[0].length) {
+            throw new IllegalArgumentException("Array dimension must be " + M + " x " + 2 * N + ".");
+        }
+
+        DoubleSequentialFFT plan = sequentialFFT();
+
+        plan.complexForward(field);
+        index.multiply(field, kernel, 0, false);
+        plan.complexInverse(field, true);
+    }
+
+    private DoubleSequentialFFT sequentialFFT() {
+        DoubleSequentialFFT plan = sequentialFft.get();
+        if (plan == null) {
+            plan = FFTUtils.singleThreadedDouble(M, N);
+            sequentialFft.set(plan);
+        }
+        return plan;
+    }
+
+    public int getM() {
+        return M;
+    }
+
+    public int getN() {
+        return N;
+    }
+
+    public double getZ() {
+        return z;
+    }
+
+    public double getLambda() {
+        return lambda;
+    }
+
+    public double getDx() {
+        return dx;
+    }
+
+    public double getDy() {
+        return dy;
+    }
+
+}
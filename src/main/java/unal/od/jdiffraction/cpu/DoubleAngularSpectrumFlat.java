@@ -0,0 +1,149 @@
+/*
+ * Copyright 2016 Universidad Nacional de Colombia
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package unal.od.jdiffraction.cpu;
+
+import org.jtransforms.fft.DoubleFFT_2D;
+import unal.od.jdiffraction.cpu.utils.ArrayUtils;
+import unal.od.jdiffraction.cpu.utils.ParallelArrayUtils;
+
+/**
+ * Computes wave diffraction through angular spectrum method with double
+ * precision.
+ * <p>
+ * Works directly on complex data stored in a 1D array, see
+ * {@link DoublePropagatorFlat}.
+ *
+ * @author Pablo Piedrahita-Quintero (jppiedrahitaq@unal.edu.co)
+ * @author Carlos Trujillo (catrujila@unal.edu.co)
+ * @author Jorge Garcia-Sucerquia (jigarcia@unal.edu.co)
+ *
+ * @since JDiffraction 1.3
+ */
+public class DoubleAngularSpectrumFlat extends DoublePropagatorFlat {
+
+    private final int M, N;
+    private final double z, lambda, dx, dy;
+    private final double[] kernel;
+    private final DoubleFFT_2D fft;
+    //JTransforms plans keep state during a transform, so each thread of a
+    //batch needs its own
+    private final ThreadLocal<DoubleSequentialFFT> sequentialFft = new ThreadLocal<DoubleSequentialFFT>();
+
+    /**
+     * Creates a new instance of DoubleAngularSpectrumFlat. Also performs kernel
+     * calculations.
+     *
+     * @param M Number of data points on x direction.
+     * @param N Number of data points on y direction.
+     * @param lambda Wavelength.
+     * @param z Distance.
+     * @param dx Sampling pitch on x direction.
+     * @param dy Sampling pitch on y direction.
+     */
+    public DoubleAngularSpectrumFlat(int M, int N, double lambda, double z, double dx, double dy) {
+        this.M = M;
+        this.N = N;
+        this.lambda = lambda;
+        this.dx = dx;
+        this.dy = dy;
+        this.z = z;
+
+        kernel = new double[M * 2 * N];
+        fft = new DoubleFFT_2D(M, N);
+
+        //the kernel is the one of DoubleAngularSpectrum, in FFT order, laid out
+        //in a 1D array
+        DoubleAngularSpectrum kernels = new DoubleAngularSpectrum(M, N, lambda, z, dx, dy);
+        ArrayUtils.matrixToVectorArray(M, 2 * N, kernels.getKernel(), kernel);
+    }
+
+    /**
+     * Creates a new instance of DoubleAngularSpectrumFlat that shares the
+     * kernels of {@code other} but has its own FFT plans.
+     *
+     * @param other Propagator whose kernels are shared.
+     */
+    DoubleAngularSpectrumFlat(DoubleAngularSpectrumFlat other) {
+        M = other.M;
+        N = other.N;
+        z = other.z;
+        lambda = other.lambda;
+        dx = other.dx;
+        dy = other.dy;
+        kernel = other.kernel;
+        fft = new DoubleFFT_2D(M, N);
+    }
+
+    @Override
+    public void diffract(double[] field) {
+
+        if (field.length != M * 2 * N) {
+            throw new IllegalArgumentException("Array dimension must be " + M * 2 * N + ".");
+        }
+
+        fft.complexForward(field);
+        ParallelArrayUtils.complexMultiplication2(M, N, field, kernel);
+        fft.complexInverse(field, true);
+    }
+
+    @Override
+    protected void diffractSequential(double[] field) {
+
+        if (field.length != M * 2 * N) {
+            throw new IllegalArgumentException("Array dimension must be " + M * 2 * N + ".");
+        }
+
+        DoubleSequentialFFT plan = sequentialFFT();
+
+        plan.complexForward(field);
+        ArrayUtils.complexMultiplication2(M, N, field, kernel);
+        plan.complexInverse(field, true);
+    }
+
+    private DoubleSequentialFFT sequentialFFT() {
+        DoubleSequentialFFT plan = sequentialFft.get();
+        if (plan == null) {
+            plan = FFTUtils.singleThreadedDouble(M, N);
+            sequentialFft.set(plan);
+        }
+        return plan;
+    }
+
+    public int getM() {
+        return M;
+    }
+
+    public int getN() {
+        return N;
+    }
+
+    public double getZ() {
+        return z;
+    }
+
+    public double getLambda() {
+        return lambda;
+    }
+
+    public double getDx() {
+        return dx;
+    }
+
+    public double getDy() {
+        return dy;
+    }
+
+}
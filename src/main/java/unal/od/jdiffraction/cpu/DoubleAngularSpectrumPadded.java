@@ -0,0 +1,295 @@
+/*
+ * Copyright 2016 Universidad Nacional de Colombia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package unal.od.jdiffraction.cpu;
+
+import java.util.Arrays;
+import org.jtransforms.fft.DoubleFFT_1D;
+import unal.od.jdiffraction.cpu.utils.ArrayUtils;
+import unal.od.jdiffraction.cpu.utils.ParallelArrayUtils;
+
+/**
+ * Computes wave diffraction through angular spectrum method with double
+ * precision, zero padding the field to avoid the wrap around of the circular
+ * convolution. The field is placed on the top left corner of a
+ * {@code paddedM x paddedN} grid, 2M x 2N by default, and the result is
+ * cropped back to M x N. The kernel is placed as
+ * {@code ArrayUtils.complexShift} places the {@link DoubleAngularSpectrum}
+ * kernel, which for odd sizes leaves the last row and column in place, so the
+ * output is the same as padding by hand and using {@link DoubleAngularSpectrum}
+ * on the padded grid. The exception is an odd {@code paddedN}:
+ * {@link DoubleAngularSpectrum} fills the last column of its kernel only over
+ * the first {@code paddedN / 2} rows and their mirrors, with the frequency of
+ * the last row, while here every point gets its own frequency.
+ * <p>
+ * The 2D FFTs are done by rows and columns, pruning the work on the padding:
+ * the forward row pass only transforms the M rows holding the field, each
+ * column is transformed, multiplied by the kernel and transformed back in
+ * one go, and the inverse row pass only transforms the M rows that survive
+ * the crop. The padded rows are never stored.
+ *
+ * @author Pablo Piedrahita-Quintero (jppiedrahitaq@unal.edu.co)
+ * @author Carlos Trujillo (catrujila@unal.edu.co)
+ * @author Jorge Garcia-Sucerquia (jigarcia@unal.edu.co)
+ *
+ * @since JDiffraction 1.3
+ */
+public class DoubleAngularSpectrumPadded extends DoublePropagator {
+
+    private final int M, N, paddedM, paddedN;
+    private final double z, lambda, dx, dy;
+    //kernel in FFT order, stored by columns
+    private final double[][] kernel;
+    private final DoubleFFT_1D rowFft, columnFft;
+    //M x 2 * paddedN rows of the padded field, one per thread
+    private final ThreadLocal<double[][]> workspace = new ThreadLocal<double[][]>();
+
+    /**
+     * Creates a new instance of DoubleAngularSpectrumPadded, padding to
+     * 2M x 2N. Also performs kernel calculations.
+     *
+     * @param M Number of data points on x direction.
+     * @param N Number of data points on y direction.
+     * @param lambda Wavelength.
+     * @param z Distance.
+     * @param dx Sampling pitch on x direction.
+     * @param dy Sampling pitch on y direction.
+     */
+    public DoubleAngularSpectrumPadded(int M, int N, double lambda, double z, double dx, double dy) {
+        this(M, N, 2 * M, 2 * N, lambda, z, dx, dy);
+    }
+
+    /**
+     * Creates a new instance of DoubleAngularSpectrumPadded. Also performs
+     * kernel calculations.
+     *
+     * @param M Number of data points on x direction.
+     * @param N Number of data points on y direction.
+     * @param paddedM Number of data points on x direction after padding.
+     * @param paddedN Number of data points on y direction after padding.
+     * @param lambda Wavelength.
+     * @param z Distance.
+     * @param dx Sampling pitch on x direction.
+     * @param dy Sampling pitch on y direction.
+     */
+    public DoubleAngularSpectrumPadded(int M, int N, int paddedM, int paddedN, double lambda, double z,
+            double dx, double dy) {
+
+        if (paddedM < M || paddedN < N) {
+            throw new IllegalArgumentException("Padded dimensions must be at least " + M + " x " + N + ".");
+        }
+
+        this.M = M;
+        this.N = N;
+        this.paddedM = paddedM;
+        this.paddedN = paddedN;
+        this.lambda = lambda;
+        this.dx = dx;
+        this.dy = dy;
+        this.z = z;
+
+        kernel = new double[paddedN][2 * paddedM];
+        rowFft = new DoubleFFT_1D(paddedN);
+        columnFft = new DoubleFFT_1D(paddedM);
+
+        calculateKernels();
+    }
+
+    /**
+     * Creates a new instance of DoubleAngularSpectrumPadded that shares the
+     * kernels and the one-dimensional FFT plans of {@code other}.
+     *
+     * @param other Propagator whose kernels are shared.
+     */
+    DoubleAngularSpectrumPadded(DoubleAngularSpectrumPadded other) {
+        M = other.M;
+        N = other.N;
+        paddedM = other.paddedM;
+        paddedN = other.paddedN;
+        z = other.z;
+        lambda = other.lambda;
+        dx = other.dx;
+        dy = other.dy;
+        kernel = other.kernel;
+        rowFft = other.rowFft;
+        columnFft = other.columnFft;
+    }
+
+    /**
+     * Same sampling as {@link DoubleAngularSpectrum} on the padded grid. The
+     * values are calculated over one quadrant and copied to the FFT order
+     * positions.
+     */
+    private void calculateKernels() {
+
+        int M2, N2;
+        double kernelFactor, lambdaSq, dfx, dfy, dfxSq, dfySq;
+
+        M2 = paddedM / 2;
+        N2 = paddedN / 2;
+        lambdaSq = lambda * lambda;
+        dfx = 1 / (dx * paddedM);
+        dfy = 1 / (dy * paddedN);
+        dfxSq = dfx * dfx;
+        dfySq = dfy * dfy;
+        kernelFactor = (2 * Math.PI * z) / lambda;
+
+        double[][] quadrant = new double[QuadrantIndex.size(paddedM)][2 * QuadrantIndex.size(paddedN)];
+
+        for (int i = 0; i < quadrant.length; i++) {
+            int i2 = i < M2 ? i - M2 + 1 : paddedM - M2 + 1;
+            double c1 = i2 * i2 * dfxSq;
+
+            for (int j = 0; j < quadrant[0].length / 2; j++) {
+                int j2 = j < N2 ? j - N2 + 1 : paddedN - N2 + 1;
+                double kernelPhase;
+
+                kernelPhase = c1 + j2 * j2 * dfySq;
+                kernelPhase *= lambdaSq;
+                kernelPhase = 1 - kernelPhase;
+                kernelPhase = Math.sqrt(kernelPhase);
+                kernelPhase *= kernelFactor;
+
+                quadrant[i][2 * j] = Math.cos(kernelPhase);
+                quadrant[i][2 * j + 1] = Math.sin(kernelPhase);
+            }
+        }
+
+        //same positions as ArrayUtils.complexShift, which leaves the last row
+        //and column of odd sizes in place
+        QuadrantIndex.shifted(paddedM, paddedN).expandByColumns(quadrant, kernel);
+    }
+
+    @Override
+    public void diffract(double[][] field) {
+        if (M != field.length || 2 * N != field[0].length) {
+            throw new IllegalArgumentException("Array dimension must be " + M + " x " + 2 * N + ".");
+        }
+
+        propagate(field, true);
+    }
+
+    @Override
+    protected void diffractSequential(double[][] field) {
+        if (M != field.length || 2 * N != field[0].length) {
+            throw new IllegalArgumentException("Array dimension must be " + M + " x " + 2 * N + ".");
+        }
+
+        propagate(field, false);
+    }
+
+    private void propagate(final double[][] field, boolean parallel) {
+        final double[][] rows = workspace();
+
+        //forward FFT of the rows holding the field
+        run(M, paddedN, parallel, new ParallelArrayUtils.RowRange() {
+            @Override
+            public void apply(int from, int to) {
+                for (int i = from; i < to; i++) {
+                    System.arraycopy(field[i], 0, rows[i], 0, 2 * N);
+                    Arrays.fill(rows[i], 2 * N, 2 * paddedN, 0);
+                    rowFft.complexForward(rows[i]);
+                }
+            }
+        });
+
+        //forward FFT, kernel and inverse FFT of each column; only the first M
+        //values of a column are non zero before the FFT and needed after it
+        run(paddedN, paddedM, parallel, new ParallelArrayUtils.RowRange() {
+            @Override
+            public void apply(int from, int to) {
+                double[] column = new double[2 * paddedM];
+
+                for (int j = from; j < to; j++) {
+                    for (int i = 0; i < M; i++) {
+                        column[2 * i] = rows[i][2 * j];
+                        column[2 * i + 1] = rows[i][2 * j + 1];
+                    }
+                    Arrays.fill(column, 2 * M, 2 * paddedM, 0);
+
+                    columnFft.complexForward(column);
+                    ArrayUtils.complexMultiplication2(1, paddedM, column, kernel[j]);
+                    columnFft.complexInverse(column, true);
+
+                    for (int i = 0; i < M; i++) {
+                        rows[i][2 * j] = column[2 * i];
+                        rows[i][2 * j + 1] = column[2 * i + 1];
+                    }
+                }
+            }
+        });
+
+        //inverse FFT of the rows that survive the crop
+        run(M, paddedN, parallel, new ParallelArrayUtils.RowRange() {
+            @Override
+            public void apply(int from, int to) {
+                for (int i = from; i < to; i++) {
+                    rowFft.complexInverse(rows[i], true);
+                    System.arraycopy(rows[i], 0, field[i], 0, 2 * N);
+                }
+            }
+        });
+    }
+
+    private static void run(int rows, int rowLength, boolean parallel, ParallelArrayUtils.RowRange range) {
+        if (parallel) {
+            ParallelArrayUtils.forRows(rows, rowLength, range);
+        } else {
+            range.apply(0, rows);
+        }
+    }
+
+    private double[][] workspace() {
+        double[][] rows = workspace.get();
+        if (rows == null) {
+            rows = new double[M][2 * paddedN];
+            workspace.set(rows);
+        }
+        return rows;
+    }
+
+    public int getM() {
+        return M;
+    }
+
+    public int getN() {
+        return N;
+    }
+
+    public int getPaddedM() {
+        return paddedM;
+    }
+
+    public int getPaddedN() {
+        return paddedN;
+    }
+
+    public double getZ() {
+        return z;
+    }
+
+    public double getLambda() {
+        return lambda;
+    }
+
+    public double getDx() {
+        return dx;
+    }
+
+    public double getDy() {
+        return dy;
+    }
+
+}
@@ -0,0 +1,501 @@
+/*
+ * Copyright 2016 Universidad Nacional de Colombia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package unal.od.jdiffraction.cpu;
+
+import java.util.Arrays;
+import unal.od.jdiffraction.cpu.utils.ArrayUtils;
+import unal.od.jdiffraction.cpu.utils.ParallelArrayUtils;
+
+/**
+ * Computes wave diffraction through angular spectrum method with double
+ * precision on fields too big for a single FFT, splitting them in tiles and
+ * stitching the results by overlap-save.
+ * <p>
+ * Light leaving a point spreads over {@code z * tan(theta)}, where
+ * {@code theta} is the biggest angle allowed by the sampling,
+ * {@code sin(theta) = lambda / (2 * dx)}. Each tile takes that many points
+ * more on each side, plus a few for the ringing of the band edge: the halo.
+ * The wrap around of the tile FFTs only spoils the halo, which is dropped.
+ * The halo is limited to a fourth of the tile; when the spread is bigger, the
+ * kernel is band limited to the angles whose spread fits in the halo. Points
+ * outside the field are taken as zeros, so the result is a linear
+ * convolution, as with {@link DoubleAngularSpectrumPadded}, instead of the
+ * circular one of {@link DoubleAngularSpectrum}.
+ * <p>
+ * The field is processed in bands of tiles, top to bottom, and the tiles of
+ * a band are propagated in parallel. Fields that don't fit in memory go
+ * through {@link #diffract(FieldSource, FieldSink)}, which reads each tile
+ * with its halo from a {@link FieldSource} and hands its output to a
+ * {@link FieldSink}, so the memory taken is one kernel of the tile size and
+ * one tile per thread, whatever the size of the field.
+ * {@link #diffract(double[][])} works in place on a field held in memory: each
+ * band is written back over the field as soon as it's done, so besides the
+ * field it takes a band of rows, and the input rows above it, as wide as the
+ * field.
+ *
+ * @author Pablo Piedrahita-Quintero (jppiedrahitaq@unal.edu.co)
+ * @author Carlos Trujillo (catrujila@unal.edu.co)
+ * @author Jorge Garcia-Sucerquia (jigarcia@unal.edu.co)
+ *
+ * @since JDiffraction 1.3
+ */
+public class DoubleAngularSpectrumTiled extends DoublePropagator {
+
+    /**
+     * Gives the input field, a block at a time.
+     */
+    public interface FieldSource {
+
+        /**
+         * Copies the points {@code [row, row + rows) x [column, column +
+         * columns)} of the input field to {@code tile}, from the point
+         * {@code (tileRow, tileColumn)} on, with the same interleaved layout
+         * as the fields. The block always lies inside the field. Called from
+         * several threads at the same time, for different tiles.
+         *
+         * @param row first row of the block
+         * @param column first column of the block
+         * @param rows number of rows of the block
+         * @param columns number of columns of the block
+         * @param tile array receiving the block
+         * @param tileRow row of the tile where the block starts
+         * @param tileColumn column of the tile where the block starts
+         */
+        void read(int row, int column, int rows, int columns, double[][] tile, int tileRow, int tileColumn);
+    }
+
+    /**
+     * Receives the output field, a block at a time.
+     */
+    public interface FieldSink {
+
+        /**
+         * Takes the points {@code [row, row + rows) x [column, column +
+         * columns)} of the output field, found in {@code tile} from the point
+         * {@code (tileRow, tileColumn)} on. The tile is reused once this
+         * method returns. The blocks of a band of tiles arrive from several
+         * threads at the same time, and the bands arrive top to bottom; the
+         * blocks don't overlap and cover the field.
+         *
+         * @param row first row of the block
+         * @param column first column of the block
+         * @param rows number of rows of the block
+         * @param columns number of columns of the block
+         * @param tile array holding the block
+         * @param tileRow row of the tile where the block starts
+         * @param tileColumn column of the tile where the block starts
+         */
+        void write(int row, int column, int rows, int columns, double[][] tile, int tileRow, int tileColumn);
+    }
+
+    private static final int MIN_TILE = 1024;
+    private static final int MAX_TILE = 4096;
+    private static final int MARGIN = 16;
+
+    private final int M, N, tileM, tileN, haloM, haloN;
+    private final double z, lambda, dx, dy;
+    //kernel of the tile size, in FFT order
+    private final double[][] kernel;
+    //JTransforms plans keep state during a transform, so each thread needs
+    //its own, along with its tile
+    private final ThreadLocal<DoubleSequentialFFT> tileFft = new ThreadLocal<DoubleSequentialFFT>();
+    private final ThreadLocal<double[][]> workspace = new ThreadLocal<double[][]>();
+
+    /**
+     * Creates a new instance of DoubleAngularSpectrumTiled, sizing the tiles
+     * from the spread of the light. Also performs kernel calculations.
+     *
+     * @param M Number of data points on x direction.
+     * @param N Number of data points on y direction.
+     * @param lambda Wavelength.
+     * @param z Distance.
+     * @param dx Sampling pitch on x direction.
+     * @param dy Sampling pitch on y direction.
+     */
+    public DoubleAngularSpectrumTiled(int M, int N, double lambda, double z, double dx, double dy) {
+        this(M, N, tileSize(lambda, z, dx, dy), lambda, z, dx, dy);
+    }
+
+    /**
+     * Creates a new instance of DoubleAngularSpectrumTiled. Also performs
+     * kernel calculations. Tiles are {@code tileSize x tileSize}, or the
+     * smallest FFT friendly size holding the field and its halo if it's
+     * smaller.
+     *
+     * @param M Number of data points on x direction.
+     * @param N Number of data points on y direction.
+     * @param tileSize Number of data points on each side of a tile.
+     * @param lambda Wavelength.
+     * @param z Distance.
+     * @param dx Sampling pitch on x direction.
+     * @param dy Sampling pitch on y direction.
+     */
+    public DoubleAngularSpectrumTiled(int M, int N, int tileSize, double lambda, double z, double dx, double dy) {
+        if (tileSize < 4) {
+            throw new IllegalArgumentException("The tile size must be at least 4.");
+        }
+
+        this.M = M;
+        this.N = N;
+        this.lambda = lambda;
+        this.dx = dx;
+        this.dy = dy;
+        this.z = z;
+
+        haloM = Math.min(spread(lambda, z, dx), tileSize / 4);
+        haloN = Math.min(spread(lambda, z, dy), tileSize / 4);
+        tileM = Math.min(tileSize, FFTUtils.smoothSize(M + 2 * haloM));
+        tileN = Math.min(tileSize, FFTUtils.smoothSize(N + 2 * haloN));
+
+        kernel = new double[tileM][2 * tileN];
+
+        calculateKernels();
+    }
+
+    /**
+     * Creates a new instance of DoubleAngularSpectrumTiled that shares the
+     * kernel of {@code other}.
+     *
+     * @param other Propagator whose kernel is shared.
+     */
+    DoubleAngularSpectrumTiled(DoubleAngularSpectrumTiled other) {
+        M = other.M;
+        N = other.N;
+        tileM = other.tileM;
+        tileN = other.tileN;
+        haloM = other.haloM;
+        haloN = other.haloN;
+        z = other.z;
+        lambda = other.lambda;
+        dx = other.dx;
+        dy = other.dy;
+        kernel = other.kernel;
+    }
+
+    /**
+     * Spread of the light, in points, for the biggest angle allowed by the
+     * sampling, plus a margin for the ringing of the sharp band edge.
+     * Unbounded when that angle reaches 90 degrees.
+     */
+    private static int spread(double lambda, double z, double d) {
+        double sin = lambda / (2 * d);
+        if (sin >= 1) {
+            return Integer.MAX_VALUE;
+        }
+
+        double spread = Math.abs(z) * sin / Math.sqrt(1 - sin * sin) / d;
+        return (int) Math.min(Math.ceil(spread) + MARGIN, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Smallest FFT friendly tile, between 1024 and 4096, at least four times
+     * the halo.
+     */
+    private static int tileSize(double lambda, double z, double dx, double dy) {
+        long halo = Math.max(spread(lambda, z, dx), spread(lambda, z, dy));
+        return FFTUtils.smoothSize((int) Math.max(MIN_TILE, Math.min(4 * halo, MAX_TILE)));
+    }
+
+    /**
+     * Biggest frequency whose light spreads at most {@code halo} points.
+     */
+    private static double bandLimit(double lambda, double z, double d, int halo) {
+        if (z == 0) {
+            return Double.POSITIVE_INFINITY;
+        }
+
+        double tan = halo * d / Math.abs(z);
+        return tan / Math.sqrt(1 + tan * tan) / lambda;
+    }
+
+    /**
+     * Kernel on the tile grid, in FFT order. The frequencies outside the band
+     * limit are zeroed.
+     */
+    private void calculateKernels() {
+        final double dfx = 1 / (dx * tileM);
+        final double dfy = 1 / (dy * tileN);
+        final double limitX = bandLimit(lambda, z, dx, haloM);
+        final double limitY = bandLimit(lambda, z, dy, haloN);
+        final double lambdaSq = lambda * lambda;
+        final double kernelFactor = 2 * Math.PI * z / lambda;
+
+        ParallelArrayUtils.forRows(tileM, tileN, new ParallelArrayUtils.RowRange() {
+            @Override
+            public void apply(int from, int to) {
+                for (int i = from; i < to; i++) {
+                    double fx = (i <= tileM / 2 ? i : i - tileM) * dfx;
+
+                    for (int j = 0; j < tileN; j++) {
+                        double fy = (j <= tileN / 2 ? j : j - tileN) * dfy;
+
+                        if (Math.abs(fx) > limitX || Math.abs(fy) > limitY) {
+                            kernel[i][2 * j] = 0;
+                            kernel[i][2 * j + 1] = 0;
+                            continue;
+                        }
+
+                        double kernelPhase = 1 - lambdaSq * (fx * fx + fy * fy);
+                        if (kernelPhase < 0) {
+                            kernelPhase = 0;
+                        }
+                        kernelPhase = kernelFactor * Math.sqrt(kernelPhase);
+
+                        kernel[i][2 * j] = Math.cos(kernelPhase);
+                        kernel[i][2 * j + 1] = Math.sin(kernelPhase);
+                    }
+                }
+            }
+        });
+    }
+
+    @Override
+    public void diffract(double[][] field) {
+        if (M != field.length || 2 * N != field[0].length) {
+            throw new IllegalArgumentException("Array dimension must be " + M + " x " + 2 * N + ".");
+        }
+
+        propagate(field, true);
+    }
+
+    @Override
+    protected void diffractSequential(double[][] field) {
+        if (M != field.length || 2 * N != field[0].length) {
+            throw new IllegalArgumentException("Array dimension must be " + M + " x " + 2 * N + ".");
+        }
+
+        propagate(field, false);
+    }
+
+    /**
+     * Diffracts the field given by {@code source}, passing the result to
+     * {@code sink}. Only the tiles are held in memory, so the field can be
+     * bigger than the heap. The tiles of each band are propagated in
+     * parallel.
+     *
+     * @param source Gives the blocks of the input field.
+     * @param sink Receives the blocks of the output field.
+     */
+    public void diffract(final FieldSource source, final FieldSink sink) {
+        final int stepM = tileM - 2 * haloM;
+        final int stepN = tileN - 2 * haloN;
+        final int tiles = (N + stepN - 1) / stepN;
+
+        for (int start = 0; start < M; start += stepM) {
+            final int first = start;
+            final int rows = Math.min(stepM, M - start);
+
+            ParallelArrayUtils.forRows(tiles, tileM * tileN, new ParallelArrayUtils.RowRange() {
+                @Override
+                public void apply(int from, int to) {
+                    double[][] tile = workspace();
+                    DoubleSequentialFFT fft = tileFft();
+
+                    for (int t = from; t < to; t++) {
+                        int column = t * stepN;
+                        int columns = Math.min(stepN, N - column);
+
+                        read(source, tile, first, column);
+
+                        fft.complexForward(tile);
+                        ArrayUtils.complexMultiplication2(tile, kernel);
+                        fft.complexInverse(tile, true);
+
+                        sink.write(first, column, rows, columns, tile, haloM, haloN);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Reads the tile whose output starts at {@code (first, column)} from
+     * {@code source}, with zeros outside the field.
+     */
+    private void read(FieldSource source, double[][] tile, int first, int column) {
+        int row0 = first - haloM;
+        int column0 = column - haloN;
+        int fromM = Math.max(0, row0);
+        int toM = Math.min(M, row0 + tileM);
+        int fromN = Math.max(0, column0);
+        int toN = Math.min(N, column0 + tileN);
+
+        for (int i = 0; i < tileM; i++) {
+            double[] row = tile[i];
+            int sourceRow = row0 + i;
+
+            if (sourceRow < fromM || sourceRow >= toM || fromN >= toN) {
+                Arrays.fill(row, 0);
+            } else {
+                Arrays.fill(row, 0, 2 * (fromN - column0), 0);
+                Arrays.fill(row, 2 * (toN - column0), 2 * tileN, 0);
+            }
+        }
+
+        if (fromM < toM && fromN < toN) {
+            source.read(fromM, fromN, toM - fromM, toN - fromN, tile, fromM - row0, fromN - column0);
+        }
+    }
+
+    private void propagate(final double[][] field, boolean parallel) {
+        final int stepM = tileM - 2 * haloM;
+        final int stepN = tileN - 2 * haloN;
+        final int tiles = (N + stepN - 1) / stepN;
+
+        //input rows above the band, already overwritten on the field
+        double[][] above = new double[haloM][2 * N];
+        double[][] nextAbove = new double[haloM][2 * N];
+        final double[][] band = new double[Math.min(stepM, M)][2 * N];
+
+        for (int start = 0; start < M; start += stepM) {
+            final int first = start;
+            final int rows = Math.min(stepM, M - start);
+            final double[][] saved = above;
+
+            ParallelArrayUtils.RowRange range = new ParallelArrayUtils.RowRange() {
+                @Override
+                public void apply(int from, int to) {
+                    double[][] tile = workspace();
+                    DoubleSequentialFFT fft = tileFft();
+
+                    for (int t = from; t < to; t++) {
+                        int column = t * stepN;
+                        int columns = Math.min(stepN, N - column);
+
+                        load(field, saved, tile, first, column);
+
+                        fft.complexForward(tile);
+                        ArrayUtils.complexMultiplication2(tile, kernel);
+                        fft.complexInverse(tile, true);
+
+                        for (int i = 0; i < rows; i++) {
+                            System.arraycopy(tile[haloM + i], 2 * haloN, band[i], 2 * column, 2 * columns);
+                        }
+                    }
+                }
+            };
+
+            if (parallel) {
+                ParallelArrayUtils.forRows(tiles, tileM * tileN, range);
+            } else {
+                range.apply(0, tiles);
+            }
+
+            //keeps the input rows the next band needs before overwriting them
+            for (int k = 0; k < haloM; k++) {
+                int source = start + rows - haloM + k;
+                if (source < 0) {
+                    Arrays.fill(nextAbove[k], 0);
+                } else if (source >= start) {
+                    System.arraycopy(field[source], 0, nextAbove[k], 0, 2 * N);
+                } else {
+                    System.arraycopy(saved[source - start + haloM], 0, nextAbove[k], 0, 2 * N);
+                }
+            }
+            above = nextAbove;
+            nextAbove = saved;
+
+            for (int i = 0; i < rows; i++) {
+                System.arraycopy(band[i], 0, field[start + i], 0, 2 * N);
+            }
+        }
+    }
+
+    /**
+     * Copies the tile whose output starts at {@code (first, column)},
+     * taking the rows above {@code first} from {@code above}.
+     */
+    private void load(double[][] field, double[][] above, double[][] tile, int first, int column) {
+        int column0 = column - haloN;
+        int from = Math.max(0, column0);
+        int to = Math.min(N, column0 + tileN);
+
+        for (int i = 0; i < tileM; i++) {
+            int source = first - haloM + i;
+            double[] row = tile[i];
+
+            if (source < 0 || source >= M || from >= to) {
+                Arrays.fill(row, 0);
+                continue;
+            }
+
+            double[] sourceRow = source < first ? above[source - first + haloM] : field[source];
+
+            Arrays.fill(row, 0, 2 * (from - column0), 0);
+            System.arraycopy(sourceRow, 2 * from, row, 2 * (from - column0), 2 * (to - from));
+            Arrays.fill(row, 2 * (to - column0), 2 * tileN, 0);
+        }
+    }
+
+    private double[][] workspace() {
+        double[][] tile = workspace.get();
+        if (tile == null) {
+            tile = new double[tileM][2 * tileN];
+            workspace.set(tile);
+        }
+        return tile;
+    }
+
+    private DoubleSequentialFFT tileFft() {
+        DoubleSequentialFFT plan = tileFft.get();
+        if (plan == null) {
+            plan = FFTUtils.singleThreadedDouble(tileM, tileN);
+            tileFft.set(plan);
+        }
+        return plan;
+    }
+
+    public int getM() {
+        return M;
+    }
+
+    public int getN() {
+        return N;
+    }
+
+    public int getTileM() {
+        return tileM;
+    }
+
+    public int getTileN() {
+        return tileN;
+    }
+
+    public int getHaloM() {
+        return haloM;
+    }
+
+    public int getHaloN() {
+        return haloN;
+    }
+
+    public double getZ() {
+        return z;
+    }
+
+    public double getLambda() {
+        return lambda;
+    }
+
+    public double getDx() {
+        return dx;
+    }
+
+    public double getDy() {
+        return dy;
+    }
+
+}
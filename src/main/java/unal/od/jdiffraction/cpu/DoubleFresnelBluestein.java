@@ -17,6 +17,7 @@ package unal.od.jdiffraction.cpu;
 
 import org.jtransforms.fft.DoubleFFT_2D;
 import unal.od.jdiffraction.cpu.utils.ArrayUtils;
+import unal.od.jdiffraction.cpu.utils.ParallelArrayUtils;
 
 /**
  * Computes wave diffraction through
@@ -35,6 +36,10 @@ public class DoubleFresnelBluestein extends DoublePropagator {
     private final double z, lambda, dx, dy, dxOut, dyOut;
     private final double[][] kernel1, kernel2, outputPhase;
     private final DoubleFFT_2D fft;
+    //JTransforms plans keep state during a transform, so each thread of a
+    //batch needs its own
+    private final ThreadLocal<DoubleSequentialFFT> sequentialFft = new ThreadLocal<DoubleSequentialFFT>();
+    private final boolean fused;
 
     /**
      * Creates a new instance of DoubleFresnelBluestein. Also performs kernel
@@ -66,17 +71,45 @@ public class DoubleFresnelBluestein extends DoublePropagator {
         fft = new DoubleFFT_2D(M, N);
 
         calculateKernels();
+
+        //for even sizes, complexShift after the inverse FFT is the same as a
+        //(-1)^(i + j) modulation of the spectrum, which is folded into kernel2
+        fused = M % 2 == 0 && N % 2 == 0;
+        if (fused) {
+            ArrayUtils.checkerboard(kernel2);
+        }
+    }
+
+    /**
+     * Creates a new instance of DoubleFresnelBluestein that shares the kernels
+     * of {@code other} but has its own FFT plans.
+     *
+     * @param other Propagator whose kernels are shared.
+     */
+    DoubleFresnelBluestein(DoubleFresnelBluestein other) {
+        M = other.M;
+        N = other.N;
+        z = other.z;
+        lambda = other.lambda;
+        dx = other.dx;
+        dy = other.dy;
+        dxOut = other.dxOut;
+        dyOut = other.dyOut;
+        kernel1 = other.kernel1;
+        kernel2 = other.kernel2;
+        outputPhase = other.outputPhase;
+        fft = new DoubleFFT_2D(M, N);
+        fused = other.fused;
     }
 
     private void calculateKernels() {
-        int M2, N2, endM, endN;
+        int M2, N2, endM;
         double factor, factor2, factor3, kernelFactorX1, kernelFactorX2,
                 kernelFactorY1, kernelFactorY2, outputFactorX, outputFactorY;
 
         M2 = M / 2;
         N2 = N / 2;
         endM = 2 * M2 - 1;
-        endN = 2 * N2 - 1;
 
         factor = Math.PI / (lambda * z);
         factor2 = Math.PI * 2 * z / lambda;
@@ -90,71 +123,16 @@ public class DoubleFresnelBluestein extends DoublePropagator {
         outputFactorX = dxOut * (dx - dxOut);
         outputFactorY = dyOut * (dy - dyOut);
 
-        for (int i = 0; i < M2; i++) {
-            int i2 = i - M2 + 1;
-            double c1 = i2 * i2 * kernelFactorX1;
-            double c2 = i2 * i2 * kernelFactorX2;
-            double p1 = i2 * i2 * outputFactorX;
-
-            for (int j = 0; j < N2; j++) {
-                int j2 = j - N2 + 1;
-                double c3 = j2 * j2 * kernelFactorY1;
-                double c4 = j2 * j2 * kernelFactorY2;
-                double p2 = j2 * j2 * outputFactorY;
-
-                double kernelPhase1, kernelPhase2, phase;
-
-                kernelPhase1 = factor * (c1 + c3);
-                kernelPhase2 = factor * (c2 + c4);
-
-                kernel1[i][2 * j] = kernel1[endM - i][2 * j] = kernel1[i][2 * (endN - j)]
-                        = kernel1[endM - i][2 * (endN - j)] = Math.cos(kernelPhase1);
-                kernel1[i][2 * j + 1] = kernel1[endM - i][2 * j + 1] = kernel1[i][2 * (endN - j) + 1]
-                        = kernel1[endM - i][2 * (endN - j) + 1] = Math.sin(kernelPhase1);
-
-                kernel2[i][2 * j] = kernel2[endM - i][2 * j] = kernel2[i][2 * (endN - j)]
-                        = kernel2[endM - i][2 * (endN - j)] = Math.cos(kernelPhase2);
-                kernel2[i][2 * j + 1] = kernel2[endM - i][2 * j + 1] = kernel2[i][2 * (endN - j) + 1]
-                        = kernel2[endM - i][2 * (endN - j) + 1] = Math.sin(kernelPhase2);
-
-                phase = -factor * (p1 + p2);
-
-                outputPhase[i][2 * j] = outputPhase[endM - i][2 * j] = outputPhase[i][2 * (endN - j)]
-                        = outputPhase[endM - i][2 * (endN - j)] = Math.sin(factor2 + phase) / factor3;
-                outputPhase[i][2 * j + 1] = outputPhase[endM - i][2 * j + 1] = outputPhase[i][2 * (endN - j) + 1]
-                        = outputPhase[endM - i][2 * (endN - j) + 1] = -Math.cos(factor2 + phase) / factor3;
-            }
-        }
-
-        if (M % 2 != 0) {
-            int i2 = M - M2 + 1;
-            double c1 = i2 * i2 * kernelFactorX1;
-            double c2 = i2 * i2 * kernelFactorX2;
-            double p1 = i2 * i2 * outputFactorX;
-
-            for (int j = 0; j < N2; j++) {
-                int j2 = j - N2 + 1;
-                double c3 = j2 * j2 * kernelFactorY1;
-                double c4 = j2 * j2 * kernelFactorY2;
-                double p2 = j2 * j2 * outputFactorY;
-
-                double kernelPhase1, kernelPhase2, phase;
-
-                kernelPhase1 = factor * (c1 + c3);
-                kernelPhase2 = factor * (c2 + c4);
-
-                kernel1[M - 1][2 * j] = kernel1[M - 1][2 * (endN - j)] = Math.cos(kernelPhase1);
-                kernel1[M - 1][2 * j + 1] = kernel1[M - 1][2 * (endN - j) + 1] = Math.sin(kernelPhase1);
-
-                kernel2[M - 1][2 * j] = kernel2[M - 1][2 * (endN - j)] = Math.cos(kernelPhase2);
-                kernel2[M - 1][2 * j + 1] = kernel2[M - 1][2 * (endN - j) + 1] = Math.sin(kernelPhase2);
-
-                phase = -factor * (p1 + p2);
+        //the chirps split into row and column factors, which are generated
+        //with rotation recurrences; the last column of odd N is filled below
+        double[] outputRows = QuadraticPhase.factor(M, -factor * outputFactorX, factor2);
+        QuadraticPhase.multiply(outputRows, 0, -1 / factor3);
 
-                outputPhase[M - 1][2 * j] = outputPhase[M - 1][2 * (endN - j)] = Math.sin(factor2 + phase) / factor3;
-                outputPhase[M - 1][2 * j + 1] = outputPhase[M - 1][2 * (endN - j) + 1] = -Math.cos(factor2 + phase) / factor3;
-            }
-        }
+        QuadraticPhase.fill(kernel1, QuadraticPhase.factor(M, factor * kernelFactorX1, 0),
+                QuadraticPhase.factor(N, factor * kernelFactorY1, 0));
+        QuadraticPhase.fill(kernel2, QuadraticPhase.factor(M, factor * kernelFactorX2, 0),
+                QuadraticPhase.factor(N, factor * kernelFactorY2, 0));
+        QuadraticPhase.fill(outputPhase, outputRows, QuadraticPhase.factor(N, -factor * outputFactorY, 0));
 
         if (N % 2 != 0) {
             int j2 = N - N2 + 1;
@@ -224,14 +202,67 @@ public class DoubleFresnelBluestein extends DoublePropagator {
             throw new IllegalArgumentException("Array dimension must be " + M + " x " + 2 * N + ".");
         }
 
-        ArrayUtils.complexMultiplication2(field, kernel1);
+        ParallelArrayUtils.complexMultiplication2(field, kernel1);
         fft.complexForward(field);
-        ArrayUtils.complexMultiplication2(field, kernel2);
+        ParallelArrayUtils.complexMultiplication2(field, kernel2);
         fft.complexInverse(field, true);
-        ArrayUtils.complexShift(field);
+        if (!fused) {
+            ParallelArrayUtils.complexShift(field);
+        }
+        ParallelArrayUtils.complexMultiplication2(field, outputPhase);
+    }
+
+    @Override
+    protected void diffractSequential(double[][] field) {
+        if (M != field.length || 2 * N != field[0].length) {
+            throw new IllegalArgumentException("Array dimension must be " + M + " x " + 2 * N + ".");
+        }
+
+        DoubleSequentialFFT plan = sequentialFFT();
+
+        ArrayUtils.complexMultiplication2(field, kernel1);
+        plan.complexForward(field);
+        ArrayUtils.complexMultiplication2(field, kernel2);
+        plan.complexInverse(field, true);
+        if (!fused) {
+            ArrayUtils.complexShift(field);
+        }
         ArrayUtils.complexMultiplication2(field, outputPhase);
     }
 
+    private DoubleSequentialFFT sequentialFFT() {
+        DoubleSequentialFFT plan = sequentialFft.get();
+        if (plan == null) {
+            plan = FFTUtils.singleThreadedDouble(M, N);
+            sequentialFft.set(plan);
+        }
+        return plan;
+    }
+
+    /**
+     * Returns the first kernel, which {@link DoubleFresnelBluesteinFlat} lays
+     * out in a 1D array.
+     */
+    double[][] getKernel1() {
+        return kernel1;
+    }
+
+    /**
+     * Returns the second kernel, which {@link DoubleFresnelBluesteinFlat} lays
+     * out in a 1D array.
+     */
+    double[][] getKernel2() {
+        return kernel2;
+    }
+
+    /**
+     * Returns the output phase, which {@link DoubleFresnelBluesteinFlat} lays
+     * out in a 1D array.
+     */
+    double[][] getOutputPhase() {
+        return outputPhase;
+    }
+
     public int getM() {
         return M;
     }
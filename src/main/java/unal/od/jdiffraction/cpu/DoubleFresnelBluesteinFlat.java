@@ -0,0 +1,184 @@
+/*
+ * Copyright 2016 Universidad Nacional de Colombia
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package unal.od.jdiffraction.cpu;
+
+import org.jtransforms.fft.DoubleFFT_2D;
+import unal.od.jdiffraction.cpu.utils.ArrayUtils;
+import unal.od.jdiffraction.cpu.utils.ParallelArrayUtils;
+
+/**
+ * Computes wave diffraction through
+ * <a href="http://dx.doi.org/10.1364/AO.49.006430" target="_blank">Fresnel-Bluestein</a>
+ * method with double precision.
+ * <p>
+ * Works directly on complex data stored in a 1D array, see
+ * {@link DoublePropagatorFlat}.
+ *
+ * @author Pablo Piedrahita-Quintero (jppiedrahitaq@unal.edu.co)
+ * @author Carlos Trujillo (catrujila@unal.edu.co)
+ * @author Jorge Garcia-Sucerquia (jigarcia@unal.edu.co)
+ *
+ * @since JDiffraction 1.3
+ */
+public class DoubleFresnelBluesteinFlat extends DoublePropagatorFlat {
+
+    private final int M, N;
+    private final double z, lambda, dx, dy, dxOut, dyOut;
+    private final double[] kernel1, kernel2, outputPhase;
+    private final DoubleFFT_2D fft;
+    //JTransforms plans keep state during a transform, so each thread of a
+    //batch needs its own
+    private final ThreadLocal<DoubleSequentialFFT> sequentialFft = new ThreadLocal<DoubleSequentialFFT>();
+    private final boolean fused;
+
+    /**
+     * Creates a new instance of DoubleFresnelBluesteinFlat. Also performs kernel
+     * calculations.
+     *
+     * @param M Number of data points on x direction.
+     * @param N Number of data points on y direction.
+     * @param lambda Wavelength.
+     * @param z Distance.
+     * @param dx Sampling pitch on x direction.
+     * @param dy Sampling pitch on y direction.
+     * @param dxOut X pitch on the output field.
+     * @param dyOut Y pitch on the output field.
+     */
+    public DoubleFresnelBluesteinFlat(int M, int N, double lambda, double z, double dx, double dy, double dxOut, double dyOut) {
+
+        this.M = M;
+        this.N = N;
+        this.lambda = lambda;
+        this.dx = dx;
+        this.dy = dy;
+        this.dxOut = dxOut;
+        this.dyOut = dyOut;
+        this.z = z;
+
+        kernel1 = new double[M * 2 * N];
+        kernel2 = new double[M * 2 * N];
+        outputPhase = new double[M * 2 * N];
+        fft = new DoubleFFT_2D(M, N);
+
+        //the kernels are the ones of DoubleFresnelBluestein, laid out in 1D arrays
+        DoubleFresnelBluestein kernels = new DoubleFresnelBluestein(M, N, lambda, z, dx, dy, dxOut, dyOut);
+        ArrayUtils.matrixToVectorArray(M, 2 * N, kernels.getKernel1(), kernel1);
+        ArrayUtils.matrixToVectorArray(M, 2 * N, kernels.getKernel2(), kernel2);
+        ArrayUtils.matrixToVectorArray(M, 2 * N, kernels.getOutputPhase(), outputPhase);
+
+        //for even sizes, DoubleFresnelBluestein folds complexShift after the
+        //inverse FFT into kernel2
+        fused = M % 2 == 0 && N % 2 == 0;
+    }
+
+    /**
+     * Creates a new instance of DoubleFresnelBluesteinFlat that shares the
+     * kernels of {@code other} but has its own FFT plans.
+     *
+     * @param other Propagator whose kernels are shared.
+     */
+    DoubleFresnelBluesteinFlat(DoubleFresnelBluesteinFlat other) {
+        M = other.M;
+        N = other.N;
+        z = other.z;
+        lambda = other.lambda;
+        dx = other.dx;
+        dy = other.dy;
+        dxOut = other.dxOut;
+        dyOut = other.dyOut;
+        kernel1 = other.kernel1;
+        kernel2 = other.kernel2;
+        outputPhase = other.outputPhase;
+        fft = new DoubleFFT_2D(M, N);
+        fused = other.fused;
+    }
+
+    @Override
+    public void diffract(double[] field) {
+        if (field.length != M * 2 * N) {
+            throw new IllegalArgumentException("Array dimension must be " + M * 2 * N + ".");
+        }
+
+        ParallelArrayUtils.complexMultiplication2(M, N, field, kernel1);
+        fft.complexForward(field);
+        ParallelArrayUtils.complexMultiplication2(M, N, field, kernel2);
+        fft.complexInverse(field, true);
+        if (!fused) {
+            ParallelArrayUtils.complexShift(M, N, field);
+        }
+        ParallelArrayUtils.complexMultiplication2(M, N, field, outputPhase);
+    }
+
+    @Override
+    protected void diffractSequential(double[] field) {
+        if (field.length != M * 2 * N) {
+            throw new IllegalArgumentException("Array dimension must be " + M * 2 * N + ".");
+        }
+
+        DoubleSequentialFFT plan = sequentialFFT();
+
+        ArrayUtils.complexMultiplication2(M, N, field, kernel1);
+        plan.complexForward(field);
+        ArrayUtils.complexMultiplication2(M, N, field, kernel2);
+        plan.complexInverse(field, true);
+        if (!fused) {
+            ArrayUtils.complexShift(M, N, field);
+        }
+        ArrayUtils.complexMultiplication2(M, N, field, outputPhase);
+    }
+
+    private DoubleSequentialFFT sequentialFFT() {
+        DoubleSequentialFFT plan = sequentialFft.get();
+        if (plan == null) {
+            plan = FFTUtils.singleThreadedDouble(M, N);
+            sequentialFft.set(plan);
+        }
+        return plan;
+    }
+
+    public int getM() {
+        return M;
+    }
+
+    public int getN() {
+        return N;
+    }
+
+    public double getZ() {
+        return z;
+    }
+
+    public double getLambda() {
+        return lambda;
+    }
+
+    public double getDx() {
+        return dx;
+    }
+
+    public double getDy() {
+        return dy;
+    }
+
+    public double getDxOut() {
+        return dxOut;
+    }
+
+    public double getDyOut() {
+        return dyOut;
+    }
+
+}
@@ -0,0 +1,373 @@
+/*
+ * Copyright 2016 Universidad Nacional de Colombia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package unal.od.jdiffraction.cpu;
+
+import java.util.Arrays;
+import org.jtransforms.fft.DoubleFFT_1D;
+import unal.od.jdiffraction.cpu.utils.ArrayUtils;
+import unal.od.jdiffraction.cpu.utils.ParallelArrayUtils;
+
+/**
+ * Computes windows of the
+ * <a href="http://dx.doi.org/10.1364/AO.49.006430" target="_blank">Fresnel-Bluestein</a>
+ * diffraction of a field with double precision, without computing the whole
+ * output. Each window is {@code roiM x roiN}, with pitches {@code dxOut} and
+ * {@code dyOut}, centered on any point of the output plane; the results are
+ * the same as those of {@link DoubleFresnelBluesteinPadded} with the window
+ * offset. Windows of the output of {@link DoubleFresnelFourier} are taken with
+ * {@code dxOut = lambda * z / (M * dx)} and {@code dyOut = lambda * z / (N * dy)},
+ * up to the constant factor of that method.
+ * <p>
+ * The Fresnel integral is separable and, writing the cross term of each axis
+ * as a chirp-z transform, the output offset only enters the chirp that is
+ * convolved with the field. So the field is multiplied by the input chirp and
+ * its rows are transformed once, in {@link #setInput(double[][])}, and each
+ * window takes one inverse FFT per row, keeping {@code roiN} values, plus
+ * {@code roiN} chirp-z transforms along the columns. Windows sharing the
+ * y offset share the row pass too, so a grid of windows is best visited row
+ * by row.
+ * <p>
+ * The FFTs are 1D, shared between threads, and the passes are split between
+ * the threads of {@link ParallelArrayUtils#getPool()}. An instance keeps the
+ * transformed input and must not be used by several threads at the same
+ * time.
+ *
+ * @author Pablo Piedrahita-Quintero (jppiedrahitaq@unal.edu.co)
+ * @author Carlos Trujillo (catrujila@unal.edu.co)
+ * @author Jorge Garcia-Sucerquia (jigarcia@unal.edu.co)
+ *
+ * @since JDiffraction 1.3
+ */
+public class DoubleFresnelBluesteinRoi {
+
+    private final int M, N, roiM, roiN, paddedM, paddedN;
+    private final double z, lambda, dx, dy, dxOut, dyOut;
+    //input chirp, by rows and columns
+    private final double[] kernelRows, kernelColumns;
+    private final DoubleFFT_1D rowFft, columnFft;
+    //rows of the input times the chirp, transformed
+    private final double[][] spectrum;
+    //row pass of the last window, for its y offset
+    private final double[][] rows;
+    private boolean hasInput;
+    private boolean hasRows;
+    private double rowsOffset;
+
+    /**
+     * Creates a new instance of DoubleFresnelBluesteinRoi. Also performs kernel
+     * calculations.
+     *
+     * @param M Number of data points on x direction.
+     * @param N Number of data points on y direction.
+     * @param roiM Number of data points of the windows on x direction.
+     * @param roiN Number of data points of the windows on y direction.
+     * @param lambda Wavelength.
+     * @param z Distance.
+     * @param dx Sampling pitch on x direction.
+     * @param dy Sampling pitch on y direction.
+     * @param dxOut X pitch on the output field.
+     * @param dyOut Y pitch on the output field.
+     */
+    public DoubleFresnelBluesteinRoi(int M, int N, int roiM, int roiN, double lambda, double z,
+            double dx, double dy, double dxOut, double dyOut) {
+
+        if (roiM < 1 || roiN < 1) {
+            throw new IllegalArgumentException("Window dimensions must be at least 1 x 1.");
+        }
+
+        this.M = M;
+        this.N = N;
+        this.roiM = roiM;
+        this.roiN = roiN;
+        this.lambda = lambda;
+        this.dx = dx;
+        this.dy = dy;
+        this.dxOut = dxOut;
+        this.dyOut = dyOut;
+        this.z = z;
+
+        //the chirp-z transforms are linear convolutions of the field with
+        //M + roiM - 1 lags
+        paddedM = FFTUtils.smoothSize(M + roiM - 1);
+        paddedN = FFTUtils.smoothSize(N + roiN - 1);
+
+        kernelRows = new double[2 * M];
+        kernelColumns = new double[2 * N];
+        rowFft = new DoubleFFT_1D(paddedN);
+        columnFft = new DoubleFFT_1D(paddedM);
+        spectrum = new double[M][2 * paddedN];
+        rows = new double[M][2 * roiN];
+
+        calculateKernels();
+    }
+
+    private double factor() {
+        return Math.PI / (lambda * z);
+    }
+
+    private void calculateKernels() {
+        double factor = factor();
+
+        for (int i = 0; i < M; i++) {
+            double x = i - M / 2;
+            double phase = factor * dx * (dx - dxOut) * x * x;
+            kernelRows[2 * i] = Math.cos(phase);
+            kernelRows[2 * i + 1] = Math.sin(phase);
+        }
+
+        for (int j = 0; j < N; j++) {
+            double y = j - N / 2;
+            double phase = factor * dy * (dy - dyOut) * y * y;
+            kernelColumns[2 * j] = Math.cos(phase);
+            kernelColumns[2 * j + 1] = Math.sin(phase);
+        }
+    }
+
+    /**
+     * Writes the FFT of the chirp {@code exp(i * a * (k + shift)^2)} for the
+     * lags {@code -M < k < roiM}, with the negative lags wrapped to the end of
+     * the padded length.
+     */
+    private static double[] chirpSpectrum(int M, int roiM, int paddedM, double a, double shift) {
+        double[] chirp = new double[2 * paddedM];
+
+        for (int k = -(M - 1); k < roiM; k++) {
+            double t = k + shift;
+            double phase = a * t * t;
+            int index = k < 0 ? k + paddedM : k;
+            chirp[2 * index] = Math.cos(phase);
+            chirp[2 * index + 1] = Math.sin(phase);
+        }
+
+        new DoubleFFT_1D(paddedM).complexForward(chirp);
+        return chirp;
+    }
+
+    /**
+     * Output coordinate, in output pitches, of each point of a window of
+     * {@code roiM} points centered on {@code offset}.
+     */
+    private static double coordinate(int i, int roiM, double offset, double pitch) {
+        return i - roiM / 2 + offset / pitch;
+    }
+
+    /**
+     * Takes the field whose windows are computed afterwards. The field isn't
+     * modified; its rows are multiplied by the input chirp and transformed,
+     * and kept until the next call.
+     *
+     * @param field The complex field to diffract.
+     */
+    public void setInput(final double[][] field) {
+        if (M != field.length || 2 * N != field[0].length) {
+            throw new IllegalArgumentException("Array dimension must be " + M + " x " + 2 * N + ".");
+        }
+
+        ParallelArrayUtils.forRows(M, paddedN, new ParallelArrayUtils.RowRange() {
+            @Override
+            public void apply(int from, int to) {
+                for (int i = from; i < to; i++) {
+                    double[] row = spectrum[i];
+                    double rowReal = kernelRows[2 * i];
+                    double rowImaginary = kernelRows[2 * i + 1];
+
+                    for (int j = 0; j < N; j++) {
+                        double kernelReal = rowReal * kernelColumns[2 * j] - rowImaginary * kernelColumns[2 * j + 1];
+                        double kernelImaginary = rowReal * kernelColumns[2 * j + 1] + rowImaginary * kernelColumns[2 * j];
+                        double real = field[i][2 * j];
+                        double imaginary = field[i][2 * j + 1];
+
+                        row[2 * j] = (real * kernelReal) - (imaginary * kernelImaginary);
+                        row[2 * j + 1] = (real * kernelImaginary) + (imaginary * kernelReal);
+                    }
+                    Arrays.fill(row, 2 * N, 2 * paddedN, 0);
+
+                    rowFft.complexForward(row);
+                }
+            }
+        });
+
+        hasInput = true;
+        hasRows = false;
+    }
+
+    /**
+     * Computes the window centered on {@code (xOffset, yOffset)} of the
+     * output plane, leaving it in {@code roi}. The layout is the same as for
+     * the fields:
+     * <p>
+     * {@code
+     * roi[i][2 * j] = Re[i][j],
+     * roi[i][2 * j + 1] = Im[i][j]; 0 &lt;= i &lt; roiM, 0 &lt;= j &lt; roiN
+     * }
+     *
+     * @param roi Array for the window.
+     * @param xOffset Center of the window on x direction.
+     * @param yOffset Center of the window on y direction.
+     */
+    public void diffract(final double[][] roi, double xOffset, double yOffset) {
+        if (roiM != roi.length || 2 * roiN != roi[0].length) {
+            throw new IllegalArgumentException("Array dimension must be " + roiM + " x " + 2 * roiN + ".");
+        }
+        if (!hasInput) {
+            throw new IllegalStateException("No input field. Call setInput first.");
+        }
+
+        final double factor = factor();
+
+        if (!hasRows || rowsOffset != yOffset) {
+            rowPass(yOffset, factor);
+            hasRows = true;
+            rowsOffset = yOffset;
+        }
+
+        final double[] chirp = chirpSpectrum(M, roiM, paddedM, factor * dx * dxOut, M / 2 - roiM / 2 + xOffset / dxOut);
+
+        //output factor of the rows, with the constant factors
+        final double[] output = new double[2 * roiM];
+        double factor2 = Math.PI * 2 * z / lambda;
+        double factor3 = lambda * z;
+        for (int i = 0; i < roiM; i++) {
+            double x = coordinate(i, roiM, xOffset, dxOut);
+            double phase = factor2 - factor * dxOut * (dx - dxOut) * x * x;
+            output[2 * i] = Math.sin(phase) / factor3;
+            output[2 * i + 1] = -Math.cos(phase) / factor3;
+        }
+
+        //chirp-z transform of each column of the row pass
+        ParallelArrayUtils.forRows(roiN, paddedM, new ParallelArrayUtils.RowRange() {
+            @Override
+            public void apply(int from, int to) {
+                double[] column = new double[2 * paddedM];
+
+                for (int j = from; j < to; j++) {
+                    for (int i = 0; i < M; i++) {
+                        column[2 * i] = rows[i][2 * j];
+                        column[2 * i + 1] = rows[i][2 * j + 1];
+                    }
+                    Arrays.fill(column, 2 * M, 2 * paddedM, 0);
+
+                    columnFft.complexForward(column);
+                    ArrayUtils.complexMultiplication2(1, paddedM, column, chirp);
+                    columnFft.complexInverse(column, true);
+
+                    for (int i = 0; i < roiM; i++) {
+                        double real = column[2 * i];
+                        double imaginary = column[2 * i + 1];
+
+                        roi[i][2 * j] = (real * output[2 * i]) - (imaginary * output[2 * i + 1]);
+                        roi[i][2 * j + 1] = (real * output[2 * i + 1]) + (imaginary * output[2 * i]);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Same as {@link #diffract(double[][], double, double)}, allocating the
+     * window.
+     *
+     * @param xOffset Center of the window on x direction.
+     * @param yOffset Center of the window on y direction.
+     * @return the window
+     */
+    public double[][] diffract(double xOffset, double yOffset) {
+        double[][] roi = new double[roiM][2 * roiN];
+        diffract(roi, xOffset, yOffset);
+        return roi;
+    }
+
+    /**
+     * Chirp-z transform of the rows for the windows centered on
+     * {@code yOffset}, keeping {@code roiN} values per row.
+     */
+    private void rowPass(double yOffset, double factor) {
+        final double[] chirp = chirpSpectrum(N, roiN, paddedN, factor * dy * dyOut, N / 2 - roiN / 2 + yOffset / dyOut);
+
+        final double[] output = new double[2 * roiN];
+        for (int j = 0; j < roiN; j++) {
+            double y = coordinate(j, roiN, yOffset, dyOut);
+            double phase = -factor * dyOut * (dy - dyOut) * y * y;
+            output[2 * j] = Math.cos(phase);
+            output[2 * j + 1] = Math.sin(phase);
+        }
+
+        ParallelArrayUtils.forRows(M, paddedN, new ParallelArrayUtils.RowRange() {
+            @Override
+            public void apply(int from, int to) {
+                double[] row = new double[2 * paddedN];
+
+                for (int i = from; i < to; i++) {
+                    System.arraycopy(spectrum[i], 0, row, 0, 2 * paddedN);
+                    ArrayUtils.complexMultiplication2(1, paddedN, row, chirp);
+                    rowFft.complexInverse(row, true);
+
+                    System.arraycopy(row, 0, rows[i], 0, 2 * roiN);
+                    ArrayUtils.complexMultiplication2(1, roiN, rows[i], output);
+                }
+            }
+        });
+    }
+
+    public int getM() {
+        return M;
+    }
+
+    public int getN() {
+        return N;
+    }
+
+    public int getRoiM() {
+        return roiM;
+    }
+
+    public int getRoiN() {
+        return roiN;
+    }
+
+    public int getPaddedM() {
+        return paddedM;
+    }
+
+    public int getPaddedN() {
+        return paddedN;
+    }
+
+    public double getZ() {
+        return z;
+    }
+
+    public double getLambda() {
+        return lambda;
+    }
+
+    public double getDx() {
+        return dx;
+    }
+
+    public double getDy() {
+        return dy;
+    }
+
+    public double getDxOut() {
+        return dxOut;
+    }
+
+    public double getDyOut() {
+        return dyOut;
+    }
+
+}
@@ -0,0 +1,252 @@
+/*
+ * Copyright 2016 Universidad Nacional de Colombia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package unal.od.jdiffraction.cpu;
+
+import org.jtransforms.fft.DoubleFFT_1D;
+import org.jtransforms.fft.DoubleFFT_2D;
+import unal.od.jdiffraction.cpu.utils.ArrayUtils;
+import unal.od.jdiffraction.cpu.utils.ParallelArrayUtils;
+
+/**
+ * Computes wave diffraction through
+ * <a href="http://dx.doi.org/10.1364/AO.49.006430" target="_blank">Fresnel-Bluestein</a>
+ * method with double precision, storing the kernels as the product of a row
+ * and a column factor. The chirps split exactly, and so does the 2D FFT of
+ * the second chirp, which is the product of the 1D FFTs of its factors. The
+ * kernels take O(M + N) memory and M + N trigonometric evaluations instead of
+ * M * N. Results match {@link DoubleFresnelBluestein} up to rounding, except
+ * for odd {@code N}, where the last column of the full kernels doesn't follow
+ * the chirp and here it does.
+ *
+ * @author Pablo Piedrahita-Quintero (jppiedrahitaq@unal.edu.co)
+ * @author Carlos Trujillo (catrujila@unal.edu.co)
+ * @author Jorge Garcia-Sucerquia (jigarcia@unal.edu.co)
+ *
+ * @since JDiffraction 1.3
+ */
+public class DoubleFresnelBluesteinSeparable extends DoublePropagator {
+
+    private final int M, N;
+    private final double z, lambda, dx, dy, dxOut, dyOut;
+    private final double[] kernel1Rows, kernel1Columns, kernel2Rows, kernel2Columns,
+            outputRows, outputColumns;
+    private final DoubleFFT_2D fft;
+    //JTransforms plans keep state during a transform, so each thread of a
+    //batch needs its own
+    private final ThreadLocal<DoubleSequentialFFT> sequentialFft = new ThreadLocal<DoubleSequentialFFT>();
+    private final boolean fused;
+
+    /**
+     * Creates a new instance of DoubleFresnelBluesteinSeparable. Also performs
+     * kernel calculations.
+     *
+     * @param M Number of data points on x direction.
+     * @param N Number of data points on y direction.
+     * @param lambda Wavelength.
+     * @param z Distance.
+     * @param dx Sampling pitch on x direction.
+     * @param dy Sampling pitch on y direction.
+     * @param dxOut X pitch on the output field.
+     * @param dyOut Y pitch on the output field.
+     */
+    public DoubleFresnelBluesteinSeparable(int M, int N, double lambda, double z, double dx,
+            double dy, double dxOut, double dyOut) {
+
+        this.M = M;
+        this.N = N;
+        this.lambda = lambda;
+        this.dx = dx;
+        this.dy = dy;
+        this.dxOut = dxOut;
+        this.dyOut = dyOut;
+        this.z = z;
+
+        kernel1Rows = new double[2 * M];
+        kernel1Columns = new double[2 * N];
+        kernel2Rows = new double[2 * M];
+        kernel2Columns = new double[2 * N];
+        outputRows = new double[2 * M];
+        outputColumns = new double[2 * N];
+        fft = new DoubleFFT_2D(M, N);
+
+        calculateKernels();
+
+        //for even sizes, complexShift after the inverse FFT is the same as a
+        //(-1)^(i + j) modulation of the spectrum, which is folded into the
+        //factors of kernel2
+        fused = M % 2 == 0 && N % 2 == 0;
+        if (fused) {
+            SeparableKernel.checkerboard(kernel2Rows);
+            SeparableKernel.checkerboard(kernel2Columns);
+        }
+    }
+
+    /**
+     * Creates a new instance of DoubleFresnelBluesteinSeparable that shares the
+     * kernels of {@code other} but has its own FFT plans.
+     *
+     * @param other Propagator whose kernels are shared.
+     */
+    DoubleFresnelBluesteinSeparable(DoubleFresnelBluesteinSeparable other) {
+        M = other.M;
+        N = other.N;
+        z = other.z;
+        lambda = other.lambda;
+        dx = other.dx;
+        dy = other.dy;
+        dxOut = other.dxOut;
+        dyOut = other.dyOut;
+        kernel1Rows = other.kernel1Rows;
+        kernel1Columns = other.kernel1Columns;
+        kernel2Rows = other.kernel2Rows;
+        kernel2Columns = other.kernel2Columns;
+        outputRows = other.outputRows;
+        outputColumns = other.outputColumns;
+        fft = new DoubleFFT_2D(M, N);
+        fused = other.fused;
+    }
+
+    private void calculateKernels() {
+        double factor, factor2, factor3, kernelFactorX1, kernelFactorX2,
+                kernelFactorY1, kernelFactorY2, outputFactorX, outputFactorY;
+
+        factor = Math.PI / (lambda * z);
+        factor2 = Math.PI * 2 * z / lambda;
+        factor3 = lambda * z;
+
+        kernelFactorX1 = dx * (dx - dxOut);
+        kernelFactorY1 = dy * (dy - dyOut);
+        kernelFactorX2 = dx * dxOut;
+        kernelFactorY2 = dy * dyOut;
+
+        outputFactorX = dxOut * (dx - dxOut);
+        outputFactorY = dyOut * (dy - dyOut);
+
+        //the constant factors of the output phase go with the rows
+        for (int i = 0; i < M; i++) {
+            int i2 = SeparableKernel.coordinate(i, M);
+            double phase;
+
+            phase = factor * (i2 * i2 * kernelFactorX1);
+            kernel1Rows[2 * i] = Math.cos(phase);
+            kernel1Rows[2 * i + 1] = Math.sin(phase);
+
+            phase = factor * (i2 * i2 * kernelFactorX2);
+            kernel2Rows[2 * i] = Math.cos(phase);
+            kernel2Rows[2 * i + 1] = Math.sin(phase);
+
+            phase = -factor * (i2 * i2 * outputFactorX);
+            outputRows[2 * i] = Math.sin(factor2 + phase) / factor3;
+            outputRows[2 * i + 1] = -Math.cos(factor2 + phase) / factor3;
+        }
+
+        for (int j = 0; j < N; j++) {
+            int j2 = SeparableKernel.coordinate(j, N);
+            double phase;
+
+            phase = factor * (j2 * j2 * kernelFactorY1);
+            kernel1Columns[2 * j] = Math.cos(phase);
+            kernel1Columns[2 * j + 1] = Math.sin(phase);
+
+            phase = factor * (j2 * j2 * kernelFactorY2);
+            kernel2Columns[2 * j] = Math.cos(phase);
+            kernel2Columns[2 * j + 1] = Math.sin(phase);
+
+            phase = -factor * (j2 * j2 * outputFactorY);
+            outputColumns[2 * j] = Math.cos(phase);
+            outputColumns[2 * j + 1] = Math.sin(phase);
+        }
+
+        new DoubleFFT_1D(M).complexForward(kernel2Rows);
+        new DoubleFFT_1D(N).complexForward(kernel2Columns);
+    }
+
+    @Override
+    public void diffract(double[][] field) {
+        if (M != field.length || 2 * N != field[0].length) {
+            throw new IllegalArgumentException("Array dimension must be " + M + " x " + 2 * N + ".");
+        }
+
+        SeparableKernel.multiply(field, kernel1Rows, kernel1Columns, true);
+        fft.complexForward(field);
+        SeparableKernel.multiply(field, kernel2Rows, kernel2Columns, true);
+        fft.complexInverse(field, true);
+        if (!fused) {
+            ParallelArrayUtils.complexShift(field);
+        }
+        SeparableKernel.multiply(field, outputRows, outputColumns, true);
+    }
+
+    @Override
+    protected void diffractSequential(double[][] field) {
+        if (M != field.length || 2 * N != field[0].length) {
+            throw new IllegalArgumentException("Array dimension must be " + M + " x " + 2 * N + ".");
+        }
+
+        DoubleSequentialFFT plan = sequentialFFT();
+
+        SeparableKernel.multiply(field, kernel1Rows, kernel1Columns, false);
+        plan.complexForward(field);
+        SeparableKernel.multiply(field, kernel2Rows, kernel2Columns, false);
+        plan.complexInverse(field, true);
+        if (!fused) {
+            ArrayUtils.complexShift(field);
+        }
+        SeparableKernel.multiply(field, outputRows, outputColumns, false);
+    }
+
+    private DoubleSequentialFFT sequentialFFT() {
+        DoubleSequentialFFT plan = sequentialFft.get();
+        if (plan == null) {
+            plan = FFTUtils.singleThreadedDouble(M, N);
+            sequentialFft.set(plan);
+        }
+        return plan;
+    }
+
+    public int getM() {
+        return M;
+    }
+
+    public int getN() {
+        return N;
+    }
+
+    public double getZ() {
+        return z;
+    }
+
+    public double getLambda() {
+        return lambda;
+    }
+
+    public double getDx() {
+        return dx;
+    }
+
+    public double getDy() {
+        return dy;
+    }
+
+    public double getDxOut() {
+        return dxOut;
+    }
+
+    public double getDyOut() {
+        return dyOut;
+    }
+
+}
@@ -0,0 +1,288 @@
+/*
+ * Copyright 2016 Universidad Nacional de Colombia
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package unal.od.jdiffraction.cpu;
+
+import org.jtransforms.fft.DoubleFFT_2D;
+import unal.od.jdiffraction.cpu.utils.ArrayUtils;
+import unal.od.jdiffraction.cpu.utils.ParallelArrayUtils;
+
+/**
+ * Computes wave diffraction through Fresnel-Fourier method with double
+ * precision, storing only one quadrant of the kernels. The kernels take a
+ * fourth of the memory used by {@link DoubleFresnelFourier}; the mirrored
+ * values are looked up while multiplying, so results are the same.
+ *
+ * @author Pablo Piedrahita-Quintero (jppiedrahitaq@unal.edu.co)
+ * @author Carlos Trujillo (catrujila@unal.edu.co)
+ * @author Jorge Garcia-Sucerquia (jigarcia@unal.edu.co)
+ *
+ * @since JDiffraction 1.3
+ */
+public class DoubleFresnelFourierCompact extends DoublePropagator {
+
+    private final int M, N;
+    private final double z, lambda, dx, dy, dxOut, dyOut;
+    private final double[][] kernel, outputPhase;
+    private final QuadrantIndex index;
+    private final DoubleFFT_2D fft;
+    //JTransforms plans keep state during a transform, so each thread of a
+    //batch needs its own
+    private final ThreadLocal<DoubleSequentialFFT> sequentialFft = new ThreadLocal<DoubleSequentialFFT>();
+    private final boolean fused;
+    private final int outputSign;
+
+    /**
+     * Creates a new instance of DoubleFresnelFourierCompact. Also performs kernel
+     * calculations.
+     *
+     * @param M Number of data points on x direction.
+     * @param N Number of data points on y direction.
+     * @param lambda Wavelength.
+     * @param z Distance.
+     * @param dx Sampling pitch on x direction.
+     * @param dy Sampling pitch on y direction.
+     */
+    public DoubleFresnelFourierCompact(int M, int N, double lambda, double z, double dx, double dy) {
+        this.M = M;
+        this.N = N;
+        this.lambda = lambda;
+        this.dx = dx;
+        this.dy = dy;
+        this.z = z;
+
+        dxOut = lambda * z / (M * dx);
+        dyOut = lambda * z / (N * dy);
+
+        kernel = new double[QuadrantIndex.size(M)][2 * QuadrantIndex.size(N)];
+        outputPhase = new double[QuadrantIndex.size(M)][2 * QuadrantIndex.size(N)];
+        fft = new DoubleFFT_2D(M, N);
+
+        calculateKernels();
+
+        index = QuadrantIndex.centered(M, N);
+
+        //for even sizes, complexShift before and after the FFT is the same as
+        //a (-1)^(i + j) modulation, which is applied while multiplying
+        fused = M % 2 == 0 && N % 2 == 0;
+        outputSign = (M / 2 + N / 2) % 2 != 0 ? -1 : 1;
+    }
+
+    /**
+     * Creates a new instance of DoubleFresnelFourierCompact that shares the
+     * kernels of {@code other} but has its own FFT plans.
+     *
+     * @param other Propagator whose kernels are shared.
+     */
+    DoubleFresnelFourierCompact(DoubleFresnelFourierCompact other) {
+        M = other.M;
+        N = other.N;
+        z = other.z;
+        lambda = other.lambda;
+        dx = other.dx;
+        dy = other.dy;
+        dxOut = other.dxOut;
+        dyOut = other.dyOut;
+        kernel = other.kernel;
+        outputPhase = other.outputPhase;
+        index = other.index;
+        fft = new DoubleFFT_2D(M, N);
+        fused = other.fused;
+        outputSign = other.outputSign;
+    }
+
+    private void calculateKernels() {
+
+        int M2, N2;
+        double factor, factor2, factor3, dxSq, dySq, dxOutSq, dyOutSq;
+
+        M2 = M / 2;
+        N2 = N / 2;
+
+        dxOutSq = dxOut * dxOut;
+        dyOutSq = dyOut * dyOut;
+
+        dxSq = dx * dx;
+        dySq = dy * dy;
+        factor = Math.PI / (lambda * z);
+        factor2 = Math.PI * 2 * z / lambda;
+        factor3 = dx * dy / (lambda * z);
+
+        for (int i = 0; i < M2; i++) {
+            int i2 = i - M2 + 1;
+            double p1 = i2 * i2 * dxSq;
+            double p2 = i2 * i2 * dxOutSq;
+
+            for (int j = 0; j < N2; j++) {
+                int j2 = j - N2 + 1;
+                double phase;
+
+                phase = p1 + j2 * j2 * dySq;
+                phase *= factor;
+                kernel[i][2 * j] = Math.cos(phase);
+
+                kernel[i][2 * j + 1] = Math.sin(phase);
+
+                phase = p2 + j2 * j2 * dyOutSq;
+                phase *= factor;
+                outputPhase[i][2 * j] = Math.sin(factor2 + phase) * factor3;
+
+                outputPhase[i][2 * j + 1] = -Math.cos(factor2 + phase) * factor3;
+            }
+        }
+
+        if (M % 2 != 0) {
+            int i2 = M - M2 + 1;
+            double p1 = i2 * i2 * dxSq;
+            double p2 = i2 * i2 * dxOutSq;
+
+            for (int j = 0; j < N2; j++) {
+                int j2 = j - N2 + 1;
+                double phase;
+
+                phase = p1 + j2 * j2 * dySq;
+                phase *= factor;
+                kernel[M2][2 * j] = Math.cos(phase);
+                kernel[M2][2 * j + 1] = Math.sin(phase);
+
+                phase = p2 + j2 * j2 * dyOutSq;
+                phase *= factor;
+                outputPhase[M2][2 * j] = Math.sin(factor2 + phase) * factor3;
+                outputPhase[M2][2 * j + 1] = -Math.cos(factor2 + phase) * factor3;
+            }
+        }
+
+        if (N % 2 != 0) {
+            int j2 = N - N2 + 1;
+            double p1 = j2 * j2 * dySq;
+            double p2 = j2 * j2 * dyOutSq;
+
+            //same rows as in the full kernel
+            for (int i = 0; i < Math.min(M2, N2); i++) {
+                int i2 = M - M2 + 1;
+                double phase;
+
+                phase = p1 + j2 * j2 * dySq;
+                phase *= factor;
+                kernel[i][2 * N2] = Math.cos(phase);
+                kernel[i][2 * N2 + 1] = Math.sin(phase);
+
+                phase = p2 + j2 * j2 * dyOutSq;
+                phase *= factor;
+                outputPhase[i][2 * N2] = Math.sin(factor2 + phase) * factor3;
+                outputPhase[i][2 * N2 + 1] = -Math.cos(factor2 + phase) * factor3;
+            }
+        }
+
+        if (M % 2 != 0 && N % 2 != 0) {
+            int i2 = M - M2 + 1;
+            int j2 = N - N2 + 1;
+
+            double phase;
+
+            phase = i2 * i2 * dxSq + j2 * j2 * dySq;
+            phase *= factor;
+            kernel[M2][2 * N2] = Math.cos(phase);
+            kernel[M2][2 * N2 + 1] = Math.sin(phase);
+
+            phase = i2 * i2 * dxOutSq + j2 * j2 * dyOutSq;
+            phase *= factor;
+            outputPhase[M2][2 * N2] = Math.sin(factor2 + phase) * factor3;
+            outputPhase[M2][2 * N2 + 1] = -Math.cos(factor2 + phase) * factor3;
+        }
+    }
+
+    @Override
+    public void diffract(double[][] field) {
+        if (M != field.length || 2 * N != field[0].length) {
+            throw new IllegalArgumentException("Array dimension must be " + M + " x " + 2 * N + ".");
+        }
+
+        if (fused) {
+            index.multiply(field, kernel, 1, true);
+            fft.complexForward(field);
+            index.multiply(field, outputPhase, outputSign, true);
+        } else {
+            index.multiply(field, kernel, 0, true);
+            ParallelArrayUtils.complexShift(field);
+            fft.complexForward(field);
+            ParallelArrayUtils.complexShift(field);
+            index.multiply(field, outputPhase, 0, true);
+        }
+    }
+
+    @Override
+    protected void diffractSequential(double[][] field) {
+        if (M != field.length || 2 * N != field[0].length) {
+            throw new IllegalArgumentException("Array dimension must be " + M + " x " + 2 * N + ".");
+        }
+
+        DoubleSequentialFFT plan = sequentialFFT();
+
+        if (fused) {
+            index.multiply(field, kernel, 1, false);
+            plan.complexForward(field);
+            index.multiply(field, outputPhase, outputSign, false);
+        } else {
+            index.multiply(field, kernel, 0, false);
+            ArrayUtils.complexShift(field);
+            plan.complexForward(field);
+            ArrayUtils.complexShift(field);
+            index.multiply(field, outputPhase, 0, false);
+        }
+    }
+
+    private DoubleSequentialFFT sequentialFFT() {
+        DoubleSequentialFFT plan = sequentialFft.get();
+        if (plan == null) {
+            plan = FFTUtils.singleThreadedDouble(M, N);
+            sequentialFft.set(plan);
+        }
+        return plan;
+    }
+
+    public int getM() {
+        return M;
+    }
+
+    public int getN() {
+        return N;
+    }
+
+    public double getZ() {
+        return z;
+    }
+
+    public double getLambda() {
+        return lambda;
+    }
+
+    public double getDx() {
+        return dx;
+    }
+
+    public double getDy() {
+        return dy;
+    }
+
+    public double getDxOut() {
+        return dxOut;
+    }
+
+    public double getDyOut() {
+        return dyOut;
+    }
+
+}
@@ -0,0 +1,232 @@
+/*
+ * Copyright 2016 Universidad Nacional de Colombia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package unal.od.jdiffraction.cpu;
+
+import org.jtransforms.fft.DoubleFFT_2D;
+import unal.od.jdiffraction.cpu.utils.ArrayUtils;
+import unal.od.jdiffraction.cpu.utils.ParallelArrayUtils;
+
+/**
+ * Computes wave diffraction through Fresnel-Fourier method with double
+ * precision, storing the kernels as the product of a row and a column factor.
+ * The quadratic phases exp(i * a * (x^2 + y^2)) split exactly, so the kernels
+ * take O(M + N) memory and M + N trigonometric evaluations instead of M * N.
+ * Results match {@link DoubleFresnelFourier} up to rounding, except for odd
+ * {@code N}, where the last column of the full kernels doesn't follow the
+ * quadratic phase and here it does.
+ *
+ * @author Pablo Piedrahita-Quintero (jppiedrahitaq@unal.edu.co)
+ * @author Carlos Trujillo (catrujila@unal.edu.co)
+ * @author Jorge Garcia-Sucerquia (jigarcia@unal.edu.co)
+ *
+ * @since JDiffraction 1.3
+ */
+public class DoubleFresnelFourierSeparable extends DoublePropagator {
+
+    private final int M, N;
+    private final double z, lambda, dx, dy, dxOut, dyOut;
+    private final double[] kernelRows, kernelColumns, outputRows, outputColumns;
+    private final DoubleFFT_2D fft;
+    //JTransforms plans keep state during a transform, so each thread of a
+    //batch needs its own
+    private final ThreadLocal<DoubleSequentialFFT> sequentialFft = new ThreadLocal<DoubleSequentialFFT>();
+    private final boolean fused;
+
+    /**
+     * Creates a new instance of DoubleFresnelFourierSeparable. Also performs
+     * kernel calculations.
+     *
+     * @param M Number of data points on x direction.
+     * @param N Number of data points on y direction.
+     * @param lambda Wavelength.
+     * @param z Distance.
+     * @param dx Sampling pitch on x direction.
+     * @param dy Sampling pitch on y direction.
+     */
+    public DoubleFresnelFourierSeparable(int M, int N, double lambda, double z, double dx, double dy) {
+        this.M = M;
+        this.N = N;
+        this.lambda = lambda;
+        this.dx = dx;
+        this.dy = dy;
+        this.z = z;
+
+        dxOut = lambda * z / (M * dx);
+        dyOut = lambda * z / (N * dy);
+
+        kernelRows = new double[2 * M];
+        kernelColumns = new double[2 * N];
+        outputRows = new double[2 * M];
+        outputColumns = new double[2 * N];
+        fft = new DoubleFFT_2D(M, N);
+
+        calculateKernels();
+
+        //for even sizes, complexShift before and after the FFT is the same as
+        //a (-1)^(i + j) modulation, which can be folded into the factors
+        fused = M % 2 == 0 && N % 2 == 0;
+        if (fused) {
+            SeparableKernel.checkerboard(kernelRows);
+            SeparableKernel.checkerboard(kernelColumns);
+            SeparableKernel.checkerboard(outputRows);
+            SeparableKernel.checkerboard(outputColumns);
+            if ((M / 2 + N / 2) % 2 != 0) {
+                ArrayUtils.multiply(outputRows, -1);
+            }
+        }
+    }
+
+    /**
+     * Creates a new instance of DoubleFresnelFourierSeparable that shares the
+     * kernels of {@code other} but has its own FFT plans.
+     *
+     * @param other Propagator whose kernels are shared.
+     */
+    DoubleFresnelFourierSeparable(DoubleFresnelFourierSeparable other) {
+        M = other.M;
+        N = other.N;
+        z = other.z;
+        lambda = other.lambda;
+        dx = other.dx;
+        dy = other.dy;
+        dxOut = other.dxOut;
+        dyOut = other.dyOut;
+        kernelRows = other.kernelRows;
+        kernelColumns = other.kernelColumns;
+        outputRows = other.outputRows;
+        outputColumns = other.outputColumns;
+        fft = new DoubleFFT_2D(M, N);
+        fused = other.fused;
+    }
+
+    private void calculateKernels() {
+        double factor, factor2, factor3, dxSq, dySq, dxOutSq, dyOutSq;
+
+        dxOutSq = dxOut * dxOut;
+        dyOutSq = dyOut * dyOut;
+
+        dxSq = dx * dx;
+        dySq = dy * dy;
+        factor = Math.PI / (lambda * z);
+        factor2 = Math.PI * 2 * z / lambda;
+        factor3 = dx * dy / (lambda * z);
+
+        //the constant factors of the output phase go with the rows
+        for (int i = 0; i < M; i++) {
+            int i2 = SeparableKernel.coordinate(i, M);
+            double phase;
+
+            phase = i2 * i2 * dxSq * factor;
+            kernelRows[2 * i] = Math.cos(phase);
+            kernelRows[2 * i + 1] = Math.sin(phase);
+
+            phase = i2 * i2 * dxOutSq * factor;
+            outputRows[2 * i] = Math.sin(factor2 + phase) * factor3;
+            outputRows[2 * i + 1] = -Math.cos(factor2 + phase) * factor3;
+        }
+
+        for (int j = 0; j < N; j++) {
+            int j2 = SeparableKernel.coordinate(j, N);
+            double phase;
+
+            phase = j2 * j2 * dySq * factor;
+            kernelColumns[2 * j] = Math.cos(phase);
+            kernelColumns[2 * j + 1] = Math.sin(phase);
+
+            phase = j2 * j2 * dyOutSq * factor;
+            outputColumns[2 * j] = Math.cos(phase);
+            outputColumns[2 * j + 1] = Math.sin(phase);
+        }
+    }
+
+    @Override
+    public void diffract(double[][] field) {
+        if (M != field.length || 2 * N != field[0].length) {
+            throw new IllegalArgumentException("Array dimension must be " + M + " x " + 2 * N + ".");
+        }
+
+        SeparableKernel.multiply(field, kernelRows, kernelColumns, true);
+        if (fused) {
+            fft.complexForward(field);
+        } else {
+            ParallelArrayUtils.complexShift(field);
+            fft.complexForward(field);
+            ParallelArrayUtils.complexShift(field);
+        }
+        SeparableKernel.multiply(field, outputRows, outputColumns, true);
+    }
+
+    @Override
+    protected void diffractSequential(double[][] field) {
+        if (M != field.length || 2 * N != field[0].length) {
+            throw new IllegalArgumentException("Array dimension must be " + M + " x " + 2 * N + ".");
+        }
+
+        DoubleSequentialFFT plan = sequentialFFT();
+
+        SeparableKernel.multiply(field, kernelRows, kernelColumns, false);
+        if (fused) {
+            plan.complexForward(field);
+        } else {
+            ArrayUtils.complexShift(field);
+            plan.complexForward(field);
+            ArrayUtils.complexShift(field);
+        }
+        SeparableKernel.multiply(field, outputRows, outputColumns, false);
+    }
+
+    private DoubleSequentialFFT sequentialFFT() {
+        DoubleSequentialFFT plan = sequentialFft.get();
+        if (plan == null) {
+            plan = FFTUtils.singleThreadedDouble(M, N);
+            sequentialFft.set(plan);
+        }
+        return plan;
+    }
+
+    public int getM() {
+        return M;
+    }
+
+    public int getN() {
+        return N;
+    }
+
+    public double getZ() {
+        return z;
+    }
+
+    public double getLambda() {
+        return lambda;
+    }
+
+    public double getDx() {
+        return dx;
+    }
+
+    public double getDy() {
+        return dy;
+    }
+
+    public double getDxOut() {
+        return dxOut;
+    }
+
+    public double getDyOut() {
+        return dyOut;
+    }
+
+}
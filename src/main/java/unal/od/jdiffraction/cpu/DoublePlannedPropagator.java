@@ -0,0 +1,199 @@
+/*
+ * Copyright 2016 Universidad Nacional de Colombia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package unal.od.jdiffraction.cpu;
+
+import java.util.Arrays;
+import unal.od.jdiffraction.cpu.utils.ParallelArrayUtils;
+
+/**
+ * Runs a propagator built for a {@code paddedM x paddedN} grid on M x N
+ * fields. The field is centered on the grid: when the grid is bigger it's
+ * zero padded, when it's smaller the central part is taken and its borders
+ * are tapered with a raised cosine to avoid the ringing of a hard cut. The
+ * result is cropped, or zero padded, back to M x N.
+ * <p>
+ * Created by {@link PropagatorPlanner}.
+ *
+ * @author Pablo Piedrahita-Quintero (jppiedrahitaq@unal.edu.co)
+ * @author Carlos Trujillo (catrujila@unal.edu.co)
+ * @author Jorge Garcia-Sucerquia (jigarcia@unal.edu.co)
+ *
+ * @since JDiffraction 1.3
+ */
+final class DoublePlannedPropagator extends DoublePropagator {
+
+    private final DoublePropagator propagator;
+    private final int M, N, paddedM, paddedN;
+    //first row and column of the overlap, on the field and on the grid
+    private final int fieldRow, fieldColumn, gridRow, gridColumn;
+    //size of the overlap
+    private final int rows, columns;
+    private final double[] rowWeights, columnWeights;
+    //paddedM x 2 * paddedN grid, one per thread
+    private final ThreadLocal<double[][]> workspace = new ThreadLocal<double[][]>();
+
+    DoublePlannedPropagator(DoublePropagator propagator, int M, int N, int paddedM, int paddedN) {
+        this.propagator = propagator;
+        this.M = M;
+        this.N = N;
+        this.paddedM = paddedM;
+        this.paddedN = paddedN;
+
+        //the centers, M / 2 and paddedM / 2, are aligned
+        fieldRow = Math.max(0, M / 2 - paddedM / 2);
+        gridRow = Math.max(0, paddedM / 2 - M / 2);
+        rows = Math.min(M, paddedM);
+        fieldColumn = Math.max(0, N / 2 - paddedN / 2);
+        gridColumn = Math.max(0, paddedN / 2 - N / 2);
+        columns = Math.min(N, paddedN);
+
+        rowWeights = weights(paddedM, paddedM < M);
+        columnWeights = weights(paddedN, paddedN < N);
+    }
+
+    /**
+     * Raised cosine taper over {@code size / 32} points at each end when
+     * {@code cropped}, ones otherwise.
+     */
+    private static double[] weights(int size, boolean cropped) {
+        double[] weights = new double[size];
+        Arrays.fill(weights, 1);
+
+        if (cropped) {
+            int width = Math.max(1, size / 32);
+            for (int k = 0; k < width; k++) {
+                double w = 0.5 * (1 - Math.cos(Math.PI * (k + 0.5) / width));
+                weights[k] = weights[size - 1 - k] = w;
+            }
+        }
+        return weights;
+    }
+
+    @Override
+    public void diffract(double[][] field) {
+        if (M != field.length || 2 * N != field[0].length) {
+            throw new IllegalArgumentException("Array dimension must be " + M + " x " + 2 * N + ".");
+        }
+
+        double[][] grid = workspace();
+
+        load(field, grid, true);
+        propagator.diffract(grid);
+        store(grid, field, true);
+    }
+
+    @Override
+    protected void diffractSequential(double[][] field) {
+        if (M != field.length || 2 * N != field[0].length) {
+            throw new IllegalArgumentException("Array dimension must be " + M + " x " + 2 * N + ".");
+        }
+
+        double[][] grid = workspace();
+
+        load(field, grid, false);
+        propagator.diffractSequential(grid);
+        store(grid, field, false);
+    }
+
+    private double[][] workspace() {
+        double[][] grid = workspace.get();
+        if (grid == null) {
+            grid = new double[paddedM][2 * paddedN];
+            workspace.set(grid);
+        }
+        return grid;
+    }
+
+    private void load(final double[][] field, final double[][] grid, boolean parallel) {
+        run(paddedM, paddedN, parallel, new ParallelArrayUtils.RowRange() {
+            @Override
+            public void apply(int from, int to) {
+                for (int i = from; i < to; i++) {
+                    double[] row = grid[i];
+                    int k = i - gridRow;
+
+                    if (k < 0 || k >= rows) {
+                        Arrays.fill(row, 0);
+                        continue;
+                    }
+
+                    double[] source = field[fieldRow + k];
+                    double rowWeight = rowWeights[i];
+
+                    Arrays.fill(row, 0, 2 * gridColumn, 0);
+                    for (int j = 0; j < columns; j++) {
+                        double weight = rowWeight * columnWeights[gridColumn + j];
+                        row[2 * (gridColumn + j)] = weight * source[2 * (fieldColumn + j)];
+                        row[2 * (gridColumn + j) + 1] = weight * source[2 * (fieldColumn + j) + 1];
+                    }
+                    Arrays.fill(row, 2 * (gridColumn + columns), 2 * paddedN, 0);
+                }
+            }
+        });
+    }
+
+    private void store(final double[][] grid, final double[][] field, boolean parallel) {
+        run(M, N, parallel, new ParallelArrayUtils.RowRange() {
+            @Override
+            public void apply(int from, int to) {
+                for (int i = from; i < to; i++) {
+                    double[] row = field[i];
+                    int k = i - fieldRow;
+
+                    if (k < 0 || k >= rows) {
+                        Arrays.fill(row, 0);
+                        continue;
+                    }
+
+                    Arrays.fill(row, 0, 2 * fieldColumn, 0);
+                    System.arraycopy(grid[gridRow + k], 2 * gridColumn, row, 2 * fieldColumn, 2 * columns);
+                    Arrays.fill(row, 2 * (fieldColumn + columns), 2 * N, 0);
+                }
+            }
+        });
+    }
+
+    private static void run(int rows, int rowLength, boolean parallel, ParallelArrayUtils.RowRange range) {
+        if (parallel) {
+            ParallelArrayUtils.forRows(rows, rowLength, range);
+        } else {
+            range.apply(0, rows);
+        }
+    }
+
+    /**
+     * Returns the propagator used on the padded or cropped grid.
+     */
+    DoublePropagator getPropagator() {
+        return propagator;
+    }
+
+    public int getM() {
+        return M;
+    }
+
+    public int getN() {
+        return N;
+    }
+
+    public int getPaddedM() {
+        return paddedM;
+    }
+
+    public int getPaddedN() {
+        return paddedN;
+    }
+}
@@ -0,0 +1,601 @@
+/*
+ * Copyright 2016 Universidad Nacional de Colombia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package unal.od.jdiffraction.cpu;
+
+import java.util.Arrays;
+import org.jtransforms.fft.DoubleFFT_2D;
+import unal.od.jdiffraction.cpu.utils.ParallelArrayUtils;
+
+/**
+ * Computes the field diffracted by a set of point sources with single
+ * precision, as when simulating holograms of particle clouds. The sources are
+ * given by their coordinates, {@code (x, y)} relative to the center of the
+ * output field and {@code z} from the output plane, and their complex
+ * amplitudes; the output is an M x N field of pitch {@code (dx, dy)}, whose
+ * point {@code (i, j)} is at {@code ((i - M / 2) * dx, (j - N / 2) * dy)}.
+ * <p>
+ * Each source gives the Rayleigh-Sommerfeld spherical wave
+ * <p>
+ * {@code a * z / (2 * pi * r^2) * (1 / r - i * k) * exp(i * k * r)}
+ * <p>
+ * which is evaluated by one of two methods:
+ * <ul>
+ * <li>Direct summation over the output points. The phase is taken from a
+ * table of {@code exp(i * 2 * pi * t)} over one turn, corrected with a short
+ * Taylor series, so no trigonometric function is evaluated per point. The
+ * cost is proportional to the number of sources times M x N.</li>
+ * <li>A non-uniform FFT: the sources are grouped in slabs of depth, those of
+ * each slab are spread onto an oversampled grid with a Gaussian kernel, as in
+ * <a href="http://dx.doi.org/10.1137/S003614450343200X" target="_blank">Greengard and Lee</a>,
+ * and their spectrum is multiplied by the angular spectrum kernel of the
+ * middle depth of the slab. Each source is moved to that depth by the phase
+ * of its offset at an axial frequency within the band of the spectrum, and
+ * the slabs are thin enough that the phase error left is at most 0.01 rad
+ * over the band: about 1 um thick at {@code z = 10 mm} and 6 um at
+ * {@code z = 50 mm} for a 256 x 256 field of 5 um pitch at 632.8 nm. The
+ * spectrum is taken on a 2M x 2N period and band limited as in
+ * {@link DoubleAngularSpectrumBandLimited}, so the waves of sources within the
+ * output field don't wrap around into it; the oversampled grid is twice as
+ * big on each direction. The cost is that of the FFTs plus a few hundred
+ * operations per source.</li>
+ * </ul>
+ * By default each slab goes through the cheapest method for its number of
+ * sources, and the slabs fall back to the direct summation when there are
+ * too many of them for their FFTs to pay off, so sources at scattered depths
+ * are summed directly and dense planes of sources go through the FFTs.
+ * {@link #setMethod(int)} fixes the method when the results must not depend
+ * on the number of sources, since the two methods don't give the same field:
+ * the direct summation gives samples of the exact field, aliased wherever its
+ * local frequency exceeds {@code 1 / (2 * dx)}, while the non-uniform FFT
+ * gives samples of its band limited angular spectrum. For an on-axis source
+ * and a 256 x 256 field of 5 um pitch at 632.8 nm they differ by 8% of the
+ * field norm at {@code z = 50 mm}, by 18% at {@code z = 10 mm} and completely
+ * at {@code z = 2 mm}, where the direct samples are aliased.
+ * <p>
+ * Instances keep FFT plans and must not be used by several threads at the
+ * same time. The direct summation runs over the threads of
+ * {@link ParallelArrayUtils#getPool()}.
+ *
+ * @author Pablo Piedrahita-Quintero (jppiedrahitaq@unal.edu.co)
+ * @author Carlos Trujillo (catrujila@unal.edu.co)
+ * @author Jorge Garcia-Sucerquia (jigarcia@unal.edu.co)
+ *
+ * @since JDiffraction 1.3
+ */
+public class DoublePointSourcePropagator {
+
+    /**
+     * Picks the method for each depth slab from its number of sources and the
+     * number of slabs.
+     */
+    public static final int AUTO = 0;
+    /**
+     * Direct summation for all the sources.
+     */
+    public static final int DIRECT = 1;
+    /**
+     * Non-uniform FFT for all the sources.
+     */
+    public static final int NUFFT = 2;
+
+    //entries of the phase table, per turn
+    private static final int TABLE_SIZE = 4096;
+    //half width of the spreading kernel, in grid points
+    private static final int SPREAD = 12;
+    //largest phase error, in radians, of moving a source to the middle of its
+    //depth slab
+    private static final double MAX_RESIDUAL = 0.01;
+    //cost of a point of the direct summation relative to a point of the
+    //FFTs, per log2 of the FFT size
+    private static final double DIRECT_COST = 12;
+
+    private static final double[] COS_TABLE = new double[TABLE_SIZE + 1];
+    private static final double[] SIN_TABLE = new double[TABLE_SIZE + 1];
+
+    static {
+        for (int i = 0; i <= TABLE_SIZE; i++) {
+            double phase = 2 * Math.PI * i / TABLE_SIZE;
+            COS_TABLE[i] = Math.cos(phase);
+            SIN_TABLE[i] = Math.sin(phase);
+        }
+    }
+
+    private final int M, N;
+    private final double lambda, dx, dy;
+    //size of the spectrum and of the spreading grid
+    private final int paddedM, paddedN, gridM, gridN;
+    private final GaussianGridding griddingM, griddingN;
+    private DoubleFFT_2D gridFft, spectrumFft;
+    private int method = AUTO;
+
+    /**
+     * Creates a new instance of DoublePointSourcePropagator.
+     *
+     * @param M Number of data points on x direction.
+     * @param N Number of data points on y direction.
+     * @param lambda Wavelength.
+     * @param dx Sampling pitch on x direction.
+     * @param dy Sampling pitch on y direction.
+     */
+    public DoublePointSourcePropagator(int M, int N, double lambda, double dx, double dy) {
+        this.M = M;
+        this.N = N;
+        this.lambda = lambda;
+        this.dx = dx;
+        this.dy = dy;
+
+        paddedM = FFTUtils.smoothSize(2 * M);
+        paddedN = FFTUtils.smoothSize(2 * N);
+        griddingM = new GaussianGridding(paddedM, SPREAD);
+        griddingN = new GaussianGridding(paddedN, SPREAD);
+        gridM = griddingM.size();
+        gridN = griddingN.size();
+    }
+
+    /**
+     * Computes the field of the sources, leaving it in {@code field}. The
+     * amplitudes are interleaved, as the fields:
+     * <p>
+     * {@code
+     * amplitudes[2 * p] = Re[p],
+     * amplitudes[2 * p + 1] = Im[p]
+     * }
+     *
+     * @param x Coordinates of the sources on x direction.
+     * @param y Coordinates of the sources on y direction.
+     * @param z Distances from the sources to the output plane.
+     * @param amplitudes Complex amplitudes of the sources.
+     * @param field Array for the output field.
+     */
+    public void diffract(double[] x, double[] y, double[] z, double[] amplitudes, double[][] field) {
+        if (M != field.length || 2 * N != field[0].length) {
+            throw new IllegalArgumentException("Array dimension must be " + M + " x " + 2 * N + ".");
+        }
+
+        final int sources = x.length;
+        if (y.length != sources || z.length != sources || amplitudes.length != 2 * sources) {
+            throw new IllegalArgumentException("There must be one x, y, z and complex amplitude per source.");
+        }
+
+        for (int p = 0; p < sources; p++) {
+            if (z[p] == 0) {
+                throw new IllegalArgumentException("Sources can't lie on the output plane.");
+            }
+        }
+
+        if (method == DIRECT) {
+            for (double[] row : field) {
+                Arrays.fill(row, 0);
+            }
+
+            int[] all = new int[sources];
+            for (int p = 0; p < sources; p++) {
+                all[p] = p;
+            }
+            sum(x, y, z, amplitudes, all, field);
+            return;
+        }
+
+        int[] order = sortByDepth(z);
+
+        //slabs of sources, as their first position on order, closed by the
+        //number of sources
+        int[] slabs = new int[sources + 1];
+        int slabCount = 0;
+        for (int first = 0; first < sources;) {
+            int last = first + 1;
+            while (last < sources && inSlab(z[order[first]], z[order[last]])) {
+                last++;
+            }
+
+            slabs[slabCount++] = first;
+            first = last;
+        }
+        slabs[slabCount] = sources;
+
+        boolean[] nufft = useNufft(slabs, slabCount);
+        int[] direct = new int[sources];
+        int directCount = 0;
+        double[][] grid = null;
+        double[][] spectrum = null;
+
+        for (int s = 0; s < slabCount; s++) {
+            int first = slabs[s];
+            int last = slabs[s + 1];
+
+            if (nufft[s]) {
+                if (spectrum == null) {
+                    grid = new double[gridM][2 * gridN];
+                    spectrum = new double[paddedM][2 * paddedN];
+                }
+                addSpectrum(x, y, z, amplitudes, Arrays.copyOfRange(order, first, last), grid, spectrum);
+            } else {
+                System.arraycopy(order, first, direct, directCount, last - first);
+                directCount += last - first;
+            }
+        }
+
+        if (spectrum != null) {
+            inverse(spectrum, field);
+        } else {
+            for (double[] row : field) {
+                Arrays.fill(row, 0);
+            }
+        }
+
+        if (directCount > 0) {
+            sum(x, y, z, amplitudes, Arrays.copyOf(direct, directCount), field);
+        }
+    }
+
+    /**
+     * Same as {@link #diffract(double[], double[], double[], double[], double[][])},
+     * allocating the output field.
+     *
+     * @param x Coordinates of the sources on x direction.
+     * @param y Coordinates of the sources on y direction.
+     * @param z Distances from the sources to the output plane.
+     * @param amplitudes Complex amplitudes of the sources.
+     * @return the output field
+     */
+    public double[][] diffract(double[] x, double[] y, double[] z, double[] amplitudes) {
+        double[][] field = new double[M][2 * N];
+        diffract(x, y, z, amplitudes, field);
+        return field;
+    }
+
+    /**
+     * Indices of the sources sorted by depth, by a bottom-up merge sort on
+     * the primitive indices.
+     */
+    private static int[] sortByDepth(double[] z) {
+        int sources = z.length;
+        int[] order = new int[sources];
+        int[] merged = new int[sources];
+        for (int p = 0; p < sources; p++) {
+            order[p] = p;
+        }
+
+        for (int width = 1; width < sources; width *= 2) {
+            for (int from = 0; from < sources; from += 2 * width) {
+                int middle = Math.min(from + width, sources);
+                int to = Math.min(from + 2 * width, sources);
+                int a = from;
+                int b = middle;
+
+                for (int k = from; k < to; k++) {
+                    if (b == to || (a < middle && Double.compare(z[order[a]], z[order[b]]) <= 0)) {
+                        merged[k] = order[a++];
+                    } else {
+                        merged[k] = order[b++];
+                    }
+                }
+            }
+
+            int[] swap = order;
+            order = merged;
+            merged = swap;
+        }
+
+        return order;
+    }
+
+    /**
+     * Whether a source at {@code depth} fits in the slab starting at
+     * {@code first}, {@code depth >= first}: both on the same side of the
+     * output plane and within twice the half thickness that keeps the
+     * residual phase below {@link #MAX_RESIDUAL}.
+     */
+    private boolean inSlab(double first, double depth) {
+        if (Math.signum(first) != Math.signum(depth)) {
+            return false;
+        }
+
+        double nearest = Math.min(Math.abs(first), Math.abs(depth));
+        double halfThickness = MAX_RESIDUAL / (Math.PI * axialSpread(nearest));
+        return depth - first <= 2 * halfThickness;
+    }
+
+    /**
+     * Difference between {@code 1 / lambda} and the smallest axial frequency
+     * within the band of the spectrum at {@code depth}. A source moved by
+     * {@code dz} along z and corrected by the phase {@code 2 * pi * dz * w}
+     * at the axial frequency {@code w = 1 / lambda - spread / 2} is off by at
+     * most {@code pi * |dz| * spread} over the band.
+     */
+    private double axialSpread(double depth) {
+        double periodM = paddedM * dx;
+        double periodN = paddedN * dy;
+        double fxMax = Math.min(bandLimit(depth, periodM), 1 / (2 * dx));
+        double fyMax = Math.min(bandLimit(depth, periodN), 1 / (2 * dy));
+        double inverseLambdaSq = 1 / (lambda * lambda);
+        double fSq = Math.min(fxMax * fxMax + fyMax * fyMax, inverseLambdaSq);
+
+        return 1 / lambda - Math.sqrt(inverseLambdaSq - fSq);
+    }
+
+    /**
+     * Largest frequency whose rays from {@code depth} spread less than half
+     * the period, so they don't come back from the neighbouring periods.
+     */
+    private double bandLimit(double depth, double period) {
+        return 1 / (lambda * Math.sqrt(4 * depth * depth / (period * period) + 1));
+    }
+
+    /**
+     * Whether each slab goes through the non-uniform FFT. With {@link #AUTO}
+     * a slab does when its FFT, kernel and spreading cost less than summing
+     * its sources directly, and the slabs picked keep it only if, together
+     * with the inverse FFT they share, they still cost less than the direct
+     * summation of all their sources.
+     */
+    private boolean[] useNufft(int[] slabs, int slabCount) {
+        boolean[] nufft = new boolean[slabCount];
+        if (method != AUTO) {
+            Arrays.fill(nufft, method == NUFFT);
+            return nufft;
+        }
+
+        double gridSize = (double) gridM * gridN;
+        double paddedSize = (double) paddedM * paddedN;
+        double gridCost = gridSize * Math.log(gridSize) / Math.log(2);
+        double spectrumCost = paddedSize * Math.log(paddedSize) / Math.log(2);
+
+        double nufftCost = spectrumCost;
+        double directCost = 0;
+        for (int s = 0; s < slabCount; s++) {
+            double sources = slabs[s + 1] - slabs[s];
+            double slabNufft = gridCost + spectrumCost + sources * 4 * SPREAD * SPREAD;
+            double slabDirect = DIRECT_COST * sources * M * N;
+
+            if (slabNufft < slabDirect) {
+                nufft[s] = true;
+                nufftCost += slabNufft;
+                directCost += slabDirect;
+            }
+        }
+
+        if (nufftCost >= directCost) {
+            Arrays.fill(nufft, false);
+        }
+        return nufft;
+    }
+
+    /**
+     * Direct summation of the spherical waves of {@code sources}, added to
+     * {@code field}.
+     */
+    private void sum(final double[] x, final double[] y, final double[] z, final double[] amplitudes,
+            final int[] sources, final double[][] field) {
+
+        final double k = 2 * Math.PI / lambda;
+        final double turnsPerMeter = 1 / lambda;
+
+        ParallelArrayUtils.forRows(M, (int) Math.min(Integer.MAX_VALUE, (long) N * sources.length),
+                new ParallelArrayUtils.RowRange() {
+            @Override
+            public void apply(int from, int to) {
+                for (int i = from; i < to; i++) {
+                    double[] sum = field[i];
+                    double X = (i - M / 2) * dx;
+
+                    for (int p : sources) {
+                        double ax = X - x[p];
+                        double depth = Math.abs(z[p]);
+                        double sign = Math.signum(z[p]);
+                        double base = ax * ax + depth * depth;
+                        double factor = depth / (2 * Math.PI);
+                        double real = amplitudes[2 * p];
+                        double imaginary = amplitudes[2 * p + 1];
+
+                        for (int j = 0; j < N; j++) {
+                            double ay = (j - N / 2) * dy - y[p];
+                            double rSq = base + ay * ay;
+                            double r = Math.sqrt(rSq);
+                            double inverseR = 1 / r;
+                            double inverseRSq = inverseR * inverseR;
+
+                            //exp(i * k * r) from the nearest entry of the table
+                            double turns = r * turnsPerMeter;
+                            turns = (turns - (long) turns) * TABLE_SIZE;
+                            int index = (int) (turns + 0.5);
+                            double delta = (turns - index) * (2 * Math.PI / TABLE_SIZE);
+                            double deltaSq = delta * delta;
+                            double cosDelta = 1 - 0.5 * deltaSq * (1 - deltaSq / 12);
+                            double sinDelta = delta * (1 - deltaSq / 6);
+                            double waveReal = COS_TABLE[index] * cosDelta - SIN_TABLE[index] * sinDelta;
+                            double waveImaginary = sign * (SIN_TABLE[index] * cosDelta + COS_TABLE[index] * sinDelta);
+
+                            //z / (2 * pi * r^2) * (1 / r - i * k), conjugated
+                            //backwards
+                            double gainReal = factor * inverseRSq * inverseR;
+                            double gainImaginary = -sign * factor * k * inverseRSq;
+
+                            double hReal = gainReal * waveReal - gainImaginary * waveImaginary;
+                            double hImaginary = gainReal * waveImaginary + gainImaginary * waveReal;
+
+                            sum[2 * j] += real * hReal - imaginary * hImaginary;
+                            sum[2 * j + 1] += real * hImaginary + imaginary * hReal;
+                        }
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Spectrum, on the padded period, of the sources of a slab, sorted by
+     * depth, times the angular spectrum kernel of the middle depth of the
+     * slab, added to {@code spectrum}. Each source is first moved to that
+     * depth by its residual phase. {@code grid} is the spreading grid, cleared
+     * here so that it is allocated once for all the slabs.
+     */
+    private void addSpectrum(double[] x, double[] y, double[] z, double[] amplitudes, int[] sources,
+            double[][] grid, double[][] spectrum) {
+
+        if (gridFft == null) {
+            gridFft = new DoubleFFT_2D(gridM, gridN);
+        }
+
+        double nearestDepth = z[sources[0]];
+        double farthestDepth = z[sources[sources.length - 1]];
+        double depth = (nearestDepth + farthestDepth) / 2;
+        double spread = axialSpread(Math.min(Math.abs(nearestDepth), Math.abs(farthestDepth)));
+        double residualFactor = 2 * Math.PI * (1 / lambda - spread / 2);
+
+        double periodM = paddedM * dx;
+        double periodN = paddedN * dy;
+        for (double[] row : grid) {
+            Arrays.fill(row, 0);
+        }
+        double[] weightsM = new double[2 * SPREAD];
+        double[] weightsN = new double[2 * SPREAD];
+
+        for (int p : sources) {
+            int firstM = griddingM.weights(x[p] / periodM, weightsM);
+            int firstN = griddingN.weights(y[p] / periodN, weightsN);
+            double real = amplitudes[2 * p];
+            double imaginary = amplitudes[2 * p + 1];
+
+            double residual = residualFactor * (z[p] - depth);
+            if (residual != 0) {
+                double cos = Math.cos(residual);
+                double sin = Math.sin(residual);
+                double rotated = real * cos - imaginary * sin;
+                imaginary = real * sin + imaginary * cos;
+                real = rotated;
+            }
+
+            for (int a = 0; a < 2 * SPREAD; a++) {
+                double[] row = grid[Math.floorMod(firstM + a, gridM)];
+                double wReal = real * weightsM[a];
+                double wImaginary = imaginary * weightsM[a];
+
+                for (int b = 0; b < 2 * SPREAD; b++) {
+                    int column = Math.floorMod(firstN + b, gridN);
+                    row[2 * column] += (wReal * weightsN[b]);
+                    row[2 * column + 1] += (wImaginary * weightsN[b]);
+                }
+            }
+        }
+
+        gridFft.complexForward(grid);
+
+        //deconvolution of the Gaussian and angular spectrum kernel
+        double lambdaSq = lambda * lambda;
+        double kernelFactor = 2 * Math.PI * depth;
+        double limitM = bandLimit(depth, periodM);
+        double limitN = bandLimit(depth, periodN);
+
+        for (int i = 0; i < paddedM; i++) {
+            int k1 = i < paddedM / 2 ? i : i - paddedM;
+            double fx = k1 / periodM;
+            if (Math.abs(fx) > limitM) {
+                continue;
+            }
+            double[] gridRow = grid[Math.floorMod(k1, gridM)];
+
+            for (int j = 0; j < paddedN; j++) {
+                int k2 = j < paddedN / 2 ? j : j - paddedN;
+                double fy = k2 / periodN;
+                if (Math.abs(fy) > limitN) {
+                    continue;
+                }
+                int column = Math.floorMod(k2, gridN);
+
+                double scale = griddingM.deconvolution(i) * griddingN.deconvolution(j);
+                double root = 1 / lambdaSq - fx * fx - fy * fy;
+                double kernelReal, kernelImaginary;
+                if (root >= 0) {
+                    double phase = kernelFactor * Math.sqrt(root);
+                    kernelReal = scale * Math.cos(phase);
+                    kernelImaginary = scale * Math.sin(phase);
+                } else {
+                    kernelReal = scale * Math.exp(-Math.abs(kernelFactor) * Math.sqrt(-root));
+                    kernelImaginary = 0;
+                }
+
+                double real = gridRow[2 * column];
+                double imaginary = gridRow[2 * column + 1];
+                spectrum[i][2 * j] += (real * kernelReal - imaginary * kernelImaginary);
+                spectrum[i][2 * j + 1] += (real * kernelImaginary + imaginary * kernelReal);
+            }
+        }
+    }
+
+    /**
+     * Inverse transform of the spectrum, leaving the center M x N points of
+     * the padded period in {@code field}.
+     */
+    private void inverse(double[][] spectrum, double[][] field) {
+        if (spectrumFft == null) {
+            spectrumFft = new DoubleFFT_2D(paddedM, paddedN);
+        }
+
+        spectrumFft.complexInverse(spectrum, false);
+
+        //Fourier series normalization
+        double scale = 1 / (paddedM * dx * paddedN * dy);
+
+        for (int i = 0; i < M; i++) {
+            double[] row = spectrum[Math.floorMod(i - M / 2, paddedM)];
+
+            for (int j = 0; j < N; j++) {
+                int column = Math.floorMod(j - N / 2, paddedN);
+                field[i][2 * j] = scale * row[2 * column];
+                field[i][2 * j + 1] = scale * row[2 * column + 1];
+            }
+        }
+    }
+
+    /**
+     * Sets the method used for the sources: {@link #AUTO}, the default,
+     * {@link #DIRECT} or {@link #NUFFT}.
+     *
+     * @param method the method
+     */
+    public void setMethod(int method) {
+        if (method != AUTO && method != DIRECT && method != NUFFT) {
+            throw new IllegalArgumentException("Unknown method: " + method + ".");
+        }
+        this.method = method;
+    }
+
+    public int getMethod() {
+        return method;
+    }
+
+    public int getM() {
+        return M;
+    }
+
+    public int getN() {
+        return N;
+    }
+
+    public double getLambda() {
+        return lambda;
+    }
+
+    public double getDx() {
+        return dx;
+    }
+
+    public double getDy() {
+        return dy;
+    }
+
+}
@@ -15,6 +15,10 @@
  */
 package unal.od.jdiffraction.cpu;
 
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import unal.od.jdiffraction.cpu.utils.ParallelArrayUtils;
+
 /**
  * Abstract class for CPU diffraction calculation with double precision.
  * 
@@ -26,6 +30,8 @@ package unal.od.jdiffraction.cpu;
  */
 public abstract class DoublePropagator {
 
+    private volatile int batchThreshold = 1 << 20;
+
     /**
      * Performs numerical diffraction of the complex data in <code>field</code>,
      * leaving the result in <code>field</code>. The physical layout of the
@@ -39,4 +45,91 @@ public abstract class DoublePropagator {
      * @param field The complex field to diffract.
      */
     public abstract void diffract(double[][] field);
+
+    /**
+     * Same as {@link #diffract(double[][])}, but without splitting the work
+     * between threads. Used by {@link #diffract(double[][][])} when each field
+     * gets its own thread. The default implementation just calls
+     * {@link #diffract(double[][])}.
+     *
+     * @param field The complex field to diffract.
+     *
+     * @since JDiffraction 1.3
+     */
+    protected void diffractSequential(double[][] field) {
+        diffract(field);
+    }
+
+    /**
+     * Performs numerical diffraction of several fields with the same
+     * geometry, leaving each result in its own array. Fields with less than
+     * {@link #getBatchThreshold()} data points are diffracted in parallel,
+     * one field per thread of {@link ParallelArrayUtils#getPool()} with
+     * single-threaded FFTs; bigger fields are diffracted one after another,
+     * each one using all the threads.
+     *
+     * @param fields The complex fields to diffract.
+     *
+     * @since JDiffraction 1.3
+     */
+    public void diffract(final double[][][] fields) {
+        if (fields.length == 0) {
+            return;
+        }
+
+        int points = fields[0].length * (fields[0][0].length / 2);
+        ForkJoinPool pool = ParallelArrayUtils.getPool();
+
+        if (fields.length > 1 && points < batchThreshold && pool.getParallelism() > 1) {
+            ParallelArrayUtils.forRows(pool, fields.length, points, new ParallelArrayUtils.RowRange() {
+                @Override
+                public void apply(int from, int to) {
+                    for (int k = from; k < to; k++) {
+                        diffractSequential(fields[k]);
+                    }
+                }
+            });
+        } else {
+            for (double[][] field : fields) {
+                diffract(field);
+            }
+        }
+    }
+
+    /**
+     * Performs numerical diffraction of several fields with the same
+     * geometry. See {@link #diffract(double[][][])}.
+     *
+     * @param fields The complex fields to diffract.
+     *
+     * @since JDiffraction 1.3
+     */
+    public void diffract(List<double[][]> fields) {
+        diffract(fields.toArray(new double[fields.size()][][]));
+    }
+
+    /**
+     * Sets the number of data points per field below which batches are
+     * diffracted one field per thread. The default value is 1048576
+     * (1024 x 1024).
+     *
+     * @param batchThreshold number of data points
+     *
+     * @since JDiffraction 1.3
+     */
+    public void setBatchThreshold(int batchThreshold) {
+        this.batchThreshold = batchThreshold;
+    }
+
+    /**
+     * Returns the number of data points per field below which batches are
+     * diffracted one field per thread.
+     *
+     * @return number of data points
+     *
+     * @since JDiffraction 1.3
+     */
+    public int getBatchThreshold() {
+        return batchThreshold;
+    }
 }
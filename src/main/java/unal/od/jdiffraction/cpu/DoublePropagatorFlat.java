@@ -0,0 +1,139 @@
+/*
+ * Copyright 2016 Universidad Nacional de Colombia
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package unal.od.jdiffraction.cpu;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import unal.od.jdiffraction.cpu.utils.ParallelArrayUtils;
+
+/**
+ * Abstract class for CPU diffraction calculation with double precision on
+ * complex data stored in a 1D array. This is the same layout used by
+ * {@link unal.od.jdiffraction.gpu.DoublePropagatorGPU}, so fields can be
+ * shared with GPU code or taken from image pixel arrays without copying them
+ * into 2D arrays.
+ * 
+ * @author Pablo Piedrahita-Quintero (jppiedrahitaq@unal.edu.co)
+ * @author Carlos Trujillo (catrujila@unal.edu.co)
+ * @author Jorge Garcia-Sucerquia (jigarcia@unal.edu.co)
+ *
+ * @since JDiffraction 1.3
+ */
+public abstract class DoublePropagatorFlat {
+
+    private volatile int batchThreshold = 1 << 20;
+
+    /**
+     * Performs numerical diffraction of the complex data in <code>field</code>,
+     * leaving the result in <code>field</code>. The physical layout of the
+     * complex data must be the same as in JTransforms:
+     * <p>
+     * {@code
+     * field[i * 2 * N + 2 * j] = Re[i][j],
+     * field[i * 2 * N + 2 * j + 1] = Im[i][j]; 0 &lt;= i &lt; M, 0 &lt;= j &lt; N
+     * }
+     *
+     * @param field The complex field to diffract.
+     */
+    public abstract void diffract(double[] field);
+
+    /**
+     * Same as {@link #diffract(double[])}, but without splitting the work
+     * between threads. Used by {@link #diffract(double[][])} when each field
+     * gets its own thread. The default implementation just calls
+     * {@link #diffract(double[])}.
+     *
+     * @param field The complex field to diffract.
+     *
+     * @since JDiffraction 1.3
+     */
+    protected void diffractSequential(double[] field) {
+        diffract(field);
+    }
+
+    /**
+     * Performs numerical diffraction of several fields with the same
+     * geometry, leaving each result in its own array. Fields with less than
+     * {@link #getBatchThreshold()} data points are diffracted in parallel,
+     * one field per thread of {@link ParallelArrayUtils#getPool()} with
+     * single-threaded FFTs; bigger fields are diffracted one after another,
+     * each one using all the threads.
+     *
+     * @param fields The complex fields to diffract.
+     *
+     * @since JDiffraction 1.3
+     */
+    public void diffract(final double[][] fields) {
+        if (fields.length == 0) {
+            return;
+        }
+
+        int points = fields[0].length / 2;
+        ForkJoinPool pool = ParallelArrayUtils.getPool();
+
+        if (fields.length > 1 && points < batchThreshold && pool.getParallelism() > 1) {
+            ParallelArrayUtils.forRows(pool, fields.length, points, new ParallelArrayUtils.RowRange() {
+                @Override
+                public void apply(int from, int to) {
+                    for (int k = from; k < to; k++) {
+                        diffractSequential(fields[k]);
+                    }
+                }
+            });
+        } else {
+            for (double[] field : fields) {
+                diffract(field);
+            }
+        }
+    }
+
+    /**
+     * Performs numerical diffraction of several fields with the same
+     * geometry. See {@link #diffract(double[][])}.
+     *
+     * @param fields The complex fields to diffract.
+     *
+     * @since JDiffraction 1.3
+     */
+    public void diffract(List<double[]> fields) {
+        diffract(fields.toArray(new double[fields.size()][]));
+    }
+
+    /**
+     * Sets the number of data points per field below which batches are
+     * diffracted one field per thread. The default value is 1048576
+     * (1024 x 1024).
+     *
+     * @param batchThreshold number of data points
+     *
+     * @since JDiffraction 1.3
+     */
+    public void setBatchThreshold(int batchThreshold) {
+        this.batchThreshold = batchThreshold;
+    }
+
+    /**
+     * Returns the number of data points per field below which batches are
+     * diffracted one field per thread.
+     *
+     * @return number of data points
+     *
+     * @since JDiffraction 1.3
+     */
+    public int getBatchThreshold() {
+        return batchThreshold;
+    }
+}
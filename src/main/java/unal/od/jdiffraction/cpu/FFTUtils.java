@@ -0,0 +1,88 @@
+/*
+ * Copyright 2016 Universidad Nacional de Colombia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package unal.od.jdiffraction.cpu;
+
+/**
+ * Helpers for creating FFT plans.
+ *
+ * @since JDiffraction 1.3
+ */
+final class FFTUtils {
+
+    private FFTUtils() {
+    }
+
+    /**
+     * Creates a 2D FFT that never splits a transform between threads. Used
+     * when several fields are diffracted at the same time, one per thread.
+     * Built from 1D passes so that no JTransforms library-wide setting is
+     * changed while other threads may be creating plans.
+     */
+    static FloatSequentialFFT singleThreadedFloat(int M, int N) {
+        return new FloatSequentialFFT(M, N);
+    }
+
+    /**
+     * Double precision version of {@link #singleThreadedFloat(int, int)}.
+     */
+    static DoubleSequentialFFT singleThreadedDouble(int M, int N) {
+        return new DoubleSequentialFFT(M, N);
+    }
+
+    /**
+     * Returns the smallest 2-3-5-7 smooth number not less than {@code n}.
+     * JTransforms has radix 2, 3, 4 and 5 passes and uses a general radix pass
+     * for a remaining factor below 211, so only 7 and 49 are allowed for the
+     * factor 7; larger remainders would take the Bluestein path.
+     */
+    static int smoothSize(int n) {
+        int size = Math.max(n, 1);
+        while (!isSmooth(size)) {
+            size++;
+        }
+        return size;
+    }
+
+    /**
+     * Returns the biggest 2-3-5-7 smooth number not greater than {@code n},
+     * with the same limits as {@link #smoothSize(int)}.
+     */
+    static int smoothSizeBelow(int n) {
+        int size = Math.max(n, 1);
+        while (!isSmooth(size)) {
+            size--;
+        }
+        return size;
+    }
+
+    private static boolean isSmooth(int n) {
+        while (n % 2 == 0) {
+            n /= 2;
+        }
+        while (n % 3 == 0) {
+            n /= 3;
+        }
+        while (n % 5 == 0) {
+            n /= 5;
+        }
+        if (n % 49 == 0) {
+            n /= 49;
+        } else if (n % 7 == 0) {
+            n /= 7;
+        }
+        return n == 1;
+    }
+}
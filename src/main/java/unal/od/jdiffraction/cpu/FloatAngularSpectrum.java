@@ -17,6 +17,7 @@ package unal.od.jdiffraction.cpu;
 
 import org.jtransforms.fft.FloatFFT_2D;
 import unal.od.jdiffraction.cpu.utils.ArrayUtils;
+import unal.od.jdiffraction.cpu.utils.ParallelArrayUtils;
 
 /**
  * Computes wave diffraction through angular spectrum method with single
@@ -34,6 +35,9 @@ public class FloatAngularSpectrum extends FloatPropagator {
     private final float z, lambda, dx, dy;
     private final float[][] kernel;
     private final FloatFFT_2D fft;
+    //JTransforms plans keep state during a transform, so each thread of a
+    //batch needs its own
+    private final ThreadLocal<FloatSequentialFFT> sequentialFft = new ThreadLocal<FloatSequentialFFT>();
 
     /**
      * Creates a new instance of FloatAngularSpectrum. Also performs kernel
@@ -57,7 +61,34 @@ public class FloatAngularSpectrum extends FloatPropagator {
         kernel = new float[M][2 * N];
         fft = new FloatFFT_2D(M, N);
 
-        calculateKernels();
+        //on square grids the kernel depends only on i2^2 + j2^2, so it's
+        //symmetric about the diagonal
+        if (M == N && dx == dy && M % 2 == 0) {
+            calculateRadialKernel();
+        } else {
+            calculateKernels();
+        }
+
+        //the kernel is stored in FFT order, so the spectrum doesn't need to be
+        //centered before the multiplication and un-centered after it
+        ArrayUtils.complexShift(kernel);
+    }
+
+    /**
+     * Creates a new instance of FloatAngularSpectrum that shares the kernels of
+     * {@code other} but has its own FFT plans.
+     *
+     * @param other Propagator whose kernels are shared.
+     */
+    FloatAngularSpectrum(FloatAngularSpectrum other) {
+        M = other.M;
+        N = other.N;
+        z = other.z;
+        lambda = other.lambda;
+        dx = other.dx;
+        dy = other.dy;
+        kernel = other.kernel;
+        fft = new FloatFFT_2D(M, N);
     }
 
     private void calculateKernels() {
@@ -164,6 +195,57 @@ public class FloatAngularSpectrum extends FloatPropagator {
         }
     }
 
+    /**
+     * Kernel calculation for M == N and dx == dy. Only the octant
+     * {@code j >= i} of the quadrant is computed, so each radius is evaluated
+     * once, up to the few radii shared by different pairs, and the rows are
+     * filled in parallel.
+     */
+    private void calculateRadialKernel() {
+        final int M2 = M / 2;
+        final int endM = 2 * M2 - 1;
+        final float lambdaSq = lambda * lambda;
+        final float df = 1 / (dx * M);
+        final float dfSq = df * df;
+        final float kernelFactor = (2 * (float) Math.PI * z) / lambda;
+
+        ParallelArrayUtils.forRows(M2, M2, new ParallelArrayUtils.RowRange() {
+            @Override
+            public void apply(int from, int to) {
+                for (int i = from; i < to; i++) {
+                    int i2 = i - M2 + 1;
+
+                    for (int j = i; j < M2; j++) {
+                        int j2 = j - M2 + 1;
+                        float kernelPhase;
+
+                        kernelPhase = i2 * i2 * dfSq + j2 * j2 * dfSq;
+                        kernelPhase *= lambdaSq;
+                        kernelPhase = 1 - kernelPhase;
+                        if (kernelPhase < 0) {
+                            kernelPhase = 0;
+                        }
+                        kernelPhase = (float) Math.sqrt(kernelPhase);
+                        kernelPhase *= kernelFactor;
+
+                        float real = (float) Math.cos(kernelPhase);
+                        float imaginary = (float) Math.sin(kernelPhase);
+
+                        setMirrored(i, j, endM, real, imaginary);
+                        setMirrored(j, i, endM, real, imaginary);
+                    }
+                }
+            }
+        });
+    }
+
+    private void setMirrored(int i, int j, int endM, float real, float imaginary) {
+        kernel[i][2 * j] = kernel[endM - i][2 * j] = kernel[i][2 * (endM - j)]
+                = kernel[endM - i][2 * (endM - j)] = real;
+        kernel[i][2 * j + 1] = kernel[endM - i][2 * j + 1] = kernel[i][2 * (endM - j) + 1]
+                = kernel[endM - i][2 * (endM - j) + 1] = imaginary;
+    }
+
     @Override
     public void diffract(float[][] field) {
         if (M != field.length || 2 * N != field[0].length) {
@@ -171,12 +253,40 @@ public class FloatAngularSpectrum extends FloatPropagator {
         }
 
         fft.complexForward(field);
-        ArrayUtils.complexShift(field);
-        ArrayUtils.complexMultiplication2(field, kernel);
-        ArrayUtils.complexShift(field);
+        ParallelArrayUtils.complexMultiplication2(field, kernel);
         fft.complexInverse(field, true);
     }
 
+    @Override
+    protected void diffractSequential(float[][] field) {
+        if (M != field.length || 2 * N != field[0].length) {
+            throw new IllegalArgumentException("Array dimension must be " + M + " x " + 2 * N + ".");
+        }
+
+        FloatSequentialFFT plan = sequentialFFT();
+
+        plan.complexForward(field);
+        ArrayUtils.complexMultiplication2(field, kernel);
+        plan.complexInverse(field, true);
+    }
+
+    private FloatSequentialFFT sequentialFFT() {
+        FloatSequentialFFT plan = sequentialFft.get();
+        if (plan == null) {
+            plan = FFTUtils.singleThreadedFloat(M, N);
+            sequentialFft.set(plan);
+        }
+        return plan;
+    }
+
+    /**
+     * Returns the kernel, which {@link FloatAngularSpectrumFlat} lays out in a
+     * 1D array.
+     */
+    float[][] getKernel() {
+        return kernel;
+    }
+
     public int getM() {
         return M;
     }
@@ -0,0 +1,479 @@
+/*
+ * Copyright 2016 Universidad Nacional de Colombia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package unal.od.jdiffraction.cpu;
+
+import java.util.Arrays;
+import org.jtransforms.fft.FloatFFT_2D;
+import unal.od.jdiffraction.cpu.utils.ParallelArrayUtils;
+
+/**
+ * Computes wave diffraction through band limited angular spectrum method with
+ * single precision. Beyond some frequency the phase of the kernel changes
+ * faster than the frequency sampling can follow and the kernel is aliased;
+ * the limit on x is
+ * <p>
+ * {@code 1 / (lambda * sqrt((2 * z / (M * dx))^2 + 1))}
+ * <p>
+ * and the same goes for y. The passband is the rectangle given by both
+ * limits, cut by the disk {@code fx^2 + fy^2 <= 1 / lambda^2} outside of
+ * which the components are evanescent. Everything outside the passband is
+ * zeroed.
+ * <p>
+ * The output window can be shifted laterally by {@code (xOffset, yOffset)},
+ * as in the
+ * <a href="http://dx.doi.org/10.1364/OE.18.018453" target="_blank">shifted angular spectrum</a>
+ * method. Along a shifted direction the field is zero padded to twice its
+ * size and the window is cropped from the padded output; the kernel gets the
+ * linear phase of the shift and the passband on x becomes the frequencies
+ * whose rays, {@code z * fx / sqrt(1 / lambda^2 - fx^2)}, land within
+ * {@code M * dx} of {@code xOffset}, which covers the rays from every point of
+ * the field to every point of the window. An off-axis region of interest is
+ * then propagated with FFTs of twice its size, whatever the shift.
+ * <p>
+ * Some wrap around is left. With a shift, the hard edge of the passband
+ * rings and spreads a small part of the light over the padded period. Along
+ * a direction without shift the field isn't padded, so the light between
+ * points more than {@code M * dx / 2} apart is cut from the passband and
+ * arrives instead through the wrap around, as with the other unpadded
+ * propagators.
+ * <p>
+ * The passband of each row of the spectrum is a span of columns around the
+ * zero frequency, or around the shift, so the kernel is stored only over
+ * those spans, in FFT order, and the multiplication zeroes the rest of each
+ * row with a fill. At
+ * long distances the passband is a small part of the spectrum and so are the
+ * kernel and the multiplication. The kernel uses the exact FFT frequencies,
+ * {@code k * df} and {@code (k - M) * df}, and its phase is calculated with
+ * double precision.
+ *
+ * @author Pablo Piedrahita-Quintero (jppiedrahitaq@unal.edu.co)
+ * @author Carlos Trujillo (catrujila@unal.edu.co)
+ * @author Jorge Garcia-Sucerquia (jigarcia@unal.edu.co)
+ *
+ * @since JDiffraction 1.3
+ */
+public class FloatAngularSpectrumBandLimited extends FloatPropagator {
+
+    private final int M, N, gridM, gridN;
+    private final float z, lambda, dx, dy, xOffset, yOffset;
+    //passband, in frequency
+    private final double minFx, maxFx, minFy, maxFy;
+    //passband of each row, as signed frequency indexes; empty if min > max
+    private final int[] minIndex, maxIndex;
+    //passband values of each row, from minIndex to maxIndex
+    private final float[][] kernel;
+    private final FloatFFT_2D fft;
+    //gridM x 2 * gridN padded field, one per thread, used if the window is
+    //shifted
+    private final ThreadLocal<float[][]> workspace = new ThreadLocal<float[][]>();
+    //JTransforms plans keep state during a transform, so each thread of a
+    //batch needs its own
+    private final ThreadLocal<FloatSequentialFFT> sequentialFft = new ThreadLocal<FloatSequentialFFT>();
+
+    /**
+     * Creates a new instance of FloatAngularSpectrumBandLimited. Also performs
+     * kernel calculations.
+     *
+     * @param M Number of data points on x direction.
+     * @param N Number of data points on y direction.
+     * @param lambda Wavelength.
+     * @param z Distance.
+     * @param dx Sampling pitch on x direction.
+     * @param dy Sampling pitch on y direction.
+     */
+    public FloatAngularSpectrumBandLimited(int M, int N, float lambda, float z, float dx, float dy) {
+        this(M, N, lambda, z, dx, dy, 0, 0);
+    }
+
+    /**
+     * Creates a new instance of FloatAngularSpectrumBandLimited with the
+     * output window centered on {@code (xOffset, yOffset)}. Also performs
+     * kernel calculations.
+     *
+     * @param M Number of data points on x direction.
+     * @param N Number of data points on y direction.
+     * @param lambda Wavelength.
+     * @param z Distance.
+     * @param dx Sampling pitch on x direction.
+     * @param dy Sampling pitch on y direction.
+     * @param xOffset Shift of the output window on x direction.
+     * @param yOffset Shift of the output window on y direction.
+     */
+    public FloatAngularSpectrumBandLimited(int M, int N, float lambda, float z, float dx, float dy,
+            float xOffset, float yOffset) {
+        this.M = M;
+        this.N = N;
+        this.lambda = lambda;
+        this.dx = dx;
+        this.dy = dy;
+        this.z = z;
+        this.xOffset = xOffset;
+        this.yOffset = yOffset;
+
+        //shifted directions are padded, so the passband can hold the rays from
+        //the whole field to the window instead of those within half the field
+        gridM = xOffset == 0 ? M : 2 * M;
+        gridN = yOffset == 0 ? N : 2 * N;
+        double[] bandX = band(lambda, z, gridM * (double) dx / 2, xOffset);
+        double[] bandY = band(lambda, z, gridN * (double) dy / 2, yOffset);
+        minFx = bandX[0];
+        maxFx = bandX[1];
+        minFy = bandY[0];
+        maxFy = bandY[1];
+
+        minIndex = new int[gridM];
+        maxIndex = new int[gridM];
+        kernel = new float[gridM][];
+        fft = new FloatFFT_2D(gridM, gridN);
+
+        calculateKernels();
+    }
+
+    /**
+     * Creates a new instance of FloatAngularSpectrumBandLimited that shares the
+     * kernels of {@code other} but has its own FFT plans.
+     *
+     * @param other Propagator whose kernels are shared.
+     */
+    FloatAngularSpectrumBandLimited(FloatAngularSpectrumBandLimited other) {
+        M = other.M;
+        N = other.N;
+        gridM = other.gridM;
+        gridN = other.gridN;
+        z = other.z;
+        lambda = other.lambda;
+        dx = other.dx;
+        dy = other.dy;
+        xOffset = other.xOffset;
+        yOffset = other.yOffset;
+        minFx = other.minFx;
+        maxFx = other.maxFx;
+        minFy = other.minFy;
+        maxFy = other.maxFy;
+        minIndex = other.minIndex;
+        maxIndex = other.maxIndex;
+        kernel = other.kernel;
+        fft = new FloatFFT_2D(gridM, gridN);
+    }
+
+    /**
+     * Frequencies whose rays land within {@code reach} of {@code offset},
+     * beyond which the kernel is aliased on a grid of {@code 2 * reach}.
+     * Without offset the limits are
+     * {@code +-1 / (lambda * sqrt((z / reach)^2 + 1))}.
+     */
+    private static double[] band(double lambda, double z, double reach, double offset) {
+        if (z == 0) {
+            return new double[]{Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY};
+        }
+
+        double low = rayFrequency(lambda, z, offset - reach);
+        double high = rayFrequency(lambda, z, offset + reach);
+        return new double[]{Math.min(low, high), Math.max(low, high)};
+    }
+
+    /**
+     * Frequency whose ray travels {@code s} laterally over {@code z}.
+     */
+    private static double rayFrequency(double lambda, double z, double s) {
+        return Math.signum(z) * s / (lambda * Math.sqrt(z * z + s * s));
+    }
+
+    private void calculateKernels() {
+        final double dfx = 1 / ((double) dx * gridM);
+        final double dfy = 1 / ((double) dy * gridN);
+        final double lambdaSq = (double) lambda * lambda;
+        final double cutoffSq = 1 / lambdaSq;
+        final double kernelFactor = 2 * Math.PI * z / lambda;
+        final double shiftX = 2 * Math.PI * xOffset;
+        final double shiftY = 2 * Math.PI * yOffset;
+
+        ParallelArrayUtils.forRows(gridM, gridN, new ParallelArrayUtils.RowRange() {
+            @Override
+            public void apply(int from, int to) {
+                for (int i = from; i < to; i++) {
+                    double fx = (i <= gridM / 2 ? i : i - gridM) * dfx;
+                    double fxSq = fx * fx;
+
+                    minIndex[i] = 0;
+                    maxIndex[i] = -1;
+                    kernel[i] = new float[0];
+
+                    if (fx < minFx || fx > maxFx || fxSq > cutoffSq) {
+                        continue;
+                    }
+
+                    //column indexes inside the passband, within the signed
+                    //range of the FFT
+                    double cutoff = Math.sqrt(cutoffSq - fxSq);
+                    double first = Math.ceil(Math.max(minFy, -cutoff) / dfy);
+                    double last = Math.floor(Math.min(maxFy, cutoff) / dfy);
+                    int min = (int) Math.max(first, -((gridN - 1) / 2));
+                    int max = (int) Math.min(last, gridN / 2);
+                    if (min > max) {
+                        continue;
+                    }
+
+                    float[] row = new float[2 * (max - min + 1)];
+                    for (int j = min; j <= max; j++) {
+                        double fy = j * dfy;
+
+                        double kernelPhase = 1 - lambdaSq * (fxSq + fy * fy);
+                        if (kernelPhase < 0) {
+                            kernelPhase = 0;
+                        }
+                        kernelPhase = kernelFactor * Math.sqrt(kernelPhase) + shiftX * fx + shiftY * fy;
+
+                        row[2 * (j - min)] = (float) Math.cos(kernelPhase);
+                        row[2 * (j - min) + 1] = (float) Math.sin(kernelPhase);
+                    }
+                    minIndex[i] = min;
+                    maxIndex[i] = max;
+                    kernel[i] = row;
+                }
+            }
+        });
+    }
+
+    @Override
+    public void diffract(float[][] field) {
+        if (M != field.length || 2 * N != field[0].length) {
+            throw new IllegalArgumentException("Array dimension must be " + M + " x " + 2 * N + ".");
+        }
+
+        float[][] grid = load(field, true);
+
+        fft.complexForward(grid);
+        multiply(grid, true);
+        fft.complexInverse(grid, true);
+        crop(grid, field, true);
+    }
+
+    @Override
+    protected void diffractSequential(float[][] field) {
+        if (M != field.length || 2 * N != field[0].length) {
+            throw new IllegalArgumentException("Array dimension must be " + M + " x " + 2 * N + ".");
+        }
+
+        FloatSequentialFFT plan = sequentialFFT();
+
+        float[][] grid = load(field, false);
+
+        plan.complexForward(grid);
+        multiply(grid, false);
+        plan.complexInverse(grid, true);
+        crop(grid, field, false);
+    }
+
+    /**
+     * Places {@code field} at the center of the padded grid and returns the
+     * grid, or returns {@code field} if the window isn't shifted.
+     */
+    private float[][] load(final float[][] field, boolean parallel) {
+        if (gridM == M && gridN == N) {
+            return field;
+        }
+
+        final float[][] grid = workspace();
+        final int rowOffset = gridM / 2 - M / 2;
+        final int columnOffset = gridN / 2 - N / 2;
+
+        run(gridM, gridN, parallel, new ParallelArrayUtils.RowRange() {
+            @Override
+            public void apply(int from, int to) {
+                for (int i = from; i < to; i++) {
+                    float[] row = grid[i];
+                    int source = i - rowOffset;
+
+                    if (source < 0 || source >= M) {
+                        Arrays.fill(row, 0);
+                        continue;
+                    }
+
+                    Arrays.fill(row, 0, 2 * columnOffset, 0);
+                    System.arraycopy(field[source], 0, row, 2 * columnOffset, 2 * N);
+                    Arrays.fill(row, 2 * (columnOffset + N), 2 * gridN, 0);
+                }
+            }
+        });
+        return grid;
+    }
+
+    /**
+     * Copies the window from the center of the padded grid to {@code field}.
+     */
+    private void crop(final float[][] grid, final float[][] field, boolean parallel) {
+        if (grid == field) {
+            return;
+        }
+
+        final int rowOffset = gridM / 2 - M / 2;
+        final int columnOffset = gridN / 2 - N / 2;
+
+        run(M, N, parallel, new ParallelArrayUtils.RowRange() {
+            @Override
+            public void apply(int from, int to) {
+                for (int i = from; i < to; i++) {
+                    System.arraycopy(grid[i + rowOffset], 2 * columnOffset, field[i], 0, 2 * N);
+                }
+            }
+        });
+    }
+
+    /**
+     * Multiplies the passband of each row by the kernel and zeroes the rest.
+     */
+    private void multiply(final float[][] field, boolean parallel) {
+        ParallelArrayUtils.RowRange range = new ParallelArrayUtils.RowRange() {
+            @Override
+            public void apply(int from, int to) {
+                for (int i = from; i < to; i++) {
+                    float[] row = field[i];
+                    float[] kernelRow = kernel[i];
+                    int min = minIndex[i];
+                    int max = maxIndex[i];
+
+                    if (min > max) {
+                        Arrays.fill(row, 0);
+                        continue;
+                    }
+
+                    //columns of the non negative and of the negative indexes
+                    int positiveStart = Math.max(min, 0);
+                    int positiveEnd = Math.max(max + 1, positiveStart);
+                    int negativeStart = gridN + min;
+                    int negativeEnd = gridN + Math.min(max + 1, 0);
+                    if (negativeEnd <= negativeStart) {
+                        negativeStart = negativeEnd = gridN;
+                    }
+
+                    Arrays.fill(row, 0, 2 * positiveStart, 0);
+                    for (int j = positiveStart; j < positiveEnd; j++) {
+                        multiply(row, j, kernelRow, j - min);
+                    }
+                    Arrays.fill(row, 2 * positiveEnd, 2 * negativeStart, 0);
+                    for (int j = negativeStart; j < negativeEnd; j++) {
+                        multiply(row, j, kernelRow, j - gridN - min);
+                    }
+                    Arrays.fill(row, 2 * negativeEnd, 2 * gridN, 0);
+                }
+            }
+        };
+
+        run(gridM, gridN, parallel, range);
+    }
+
+    private static void run(int rows, int rowLength, boolean parallel, ParallelArrayUtils.RowRange range) {
+        if (parallel) {
+            ParallelArrayUtils.forRows(rows, rowLength, range);
+        } else {
+            range.apply(0, rows);
+        }
+    }
+
+    private float[][] workspace() {
+        float[][] grid = workspace.get();
+        if (grid == null) {
+            grid = new float[gridM][2 * gridN];
+            workspace.set(grid);
+        }
+        return grid;
+    }
+
+    private static void multiply(float[] row, int j, float[] kernelRow, int k) {
+        float real = row[2 * j];
+        float imaginary = row[2 * j + 1];
+        float kernelReal = kernelRow[2 * k];
+        float kernelImaginary = kernelRow[2 * k + 1];
+
+        row[2 * j] = (real * kernelReal) - (imaginary * kernelImaginary);
+        row[2 * j + 1] = (real * kernelImaginary) + (imaginary * kernelReal);
+    }
+
+    private FloatSequentialFFT sequentialFFT() {
+        FloatSequentialFFT plan = sequentialFft.get();
+        if (plan == null) {
+            plan = FFTUtils.singleThreadedFloat(gridM, gridN);
+            sequentialFft.set(plan);
+        }
+        return plan;
+    }
+
+    /**
+     * Returns the number of data points stored by the kernel, which is the
+     * size of the passband.
+     *
+     * @return data points on the passband
+     */
+    public long getPassbandSize() {
+        long size = 0;
+        for (int i = 0; i < gridM; i++) {
+            size += Math.max(0, maxIndex[i] - minIndex[i] + 1);
+        }
+        return size;
+    }
+
+    public int getM() {
+        return M;
+    }
+
+    public int getN() {
+        return N;
+    }
+
+    public float getZ() {
+        return z;
+    }
+
+    public float getLambda() {
+        return lambda;
+    }
+
+    public float getDx() {
+        return dx;
+    }
+
+    public float getDy() {
+        return dy;
+    }
+
+    public float getXOffset() {
+        return xOffset;
+    }
+
+    public float getYOffset() {
+        return yOffset;
+    }
+
+    /**
+     * Returns the passband on x direction.
+     *
+     * @return {minFx, maxFx}
+     */
+    public double[] getBandX() {
+        return new double[]{minFx, maxFx};
+    }
+
+    /**
+     * Returns the passband on y direction.
+     *
+     * @return {minFy, maxFy}
+     */
+    public double[] getBandY() {
+        return new double[]{minFy, maxFy};
+    }
+
+}
@@ -0,0 +1,247 @@
+/*
+ * Copyright 2016 Universidad Nacional de Colombia
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package unal.od.jdiffraction.cpu;
+
+import org.jtransforms.fft.FloatFFT_2D;
+
+/**
+ * Computes wave diffraction through angular spectrum method with single
+ * precision, storing only one quadrant of the kernel. The kernel takes a
+ * fourth of the memory used by {@link FloatAngularSpectrum}; the mirrored
+ * values are looked up while multiplying, so results are the same.
+ *
+ * @author Pablo Piedrahita-Quintero (jppiedrahitaq@unal.edu.co)
+ * @author Carlos Trujillo (catrujila@unal.edu.co)
+ * @author Jorge Garcia-Sucerquia (jigarcia@unal.edu.co)
+ *
+ * @since JDiffraction 1.3
+ */
+public class FloatAngularSpectrumCompact extends FloatPropagator {
+
+    private final int M, N;
+    private final float z, lambda, dx, dy;
+    private final float[][] kernel;
+    private final QuadrantIndex index;
+    private final FloatFFT_2D fft;
+    //JTransforms plans keep state during a transform, so each thread of a
+    //batch needs its own
+    private final ThreadLocal<FloatSequentialFFT> sequentialFft = new ThreadLocal<FloatSequentialFFT>();
+
+    /**
+     * Creates a new instance of FloatAngularSpectrumCompact. Also performs kernel
+     * calculations.
+     *
+     * @param M Number of data points on x direction.
+     * @param N Number of data points on y direction.
+     * @param lambda Wavelength.
+     * @param z Distance.
+     * @param dx Sampling pitch on x direction.
+     * @param dy Sampling pitch on y direction.
+     */
+    public FloatAngularSpectrumCompact(int M, int N, float lambda, float z, float dx, float dy) {
+        this.M = M;
+        this.N = N;
+        this.lambda = lambda;
+        this.dx = dx;
+        this.dy = dy;
+        this.z = z;
+
+        kernel = new float[QuadrantIndex.size(M)][2 * QuadrantIndex.size(N)];
+        fft = new FloatFFT_2D(M, N);
+
+        calculateKernels();
+
+        //the spectrum isn't centered, so the kernel is read in FFT order
+        index = QuadrantIndex.shifted(M, N);
+    }
+
+    /**
+     * Creates a new instance of FloatAngularSpectrumCompact that shares the
+     * kernels of {@code other} but has its own FFT plans.
+     *
+     * @param other Propagator whose kernels are shared.
+     */
+    FloatAngularSpectrumCompact(FloatAngularSpectrumCompact other) {
+        M = other.M;
+        N = other.N;
+        z = other.z;
+        lambda = other.lambda;
+        dx = other.dx;
+        dy = other.dy;
+        kernel = other.kernel;
+        index = other.index;
+        fft = new FloatFFT_2D(M, N);
+    }
+
+    private void calculateKernels() {
+
+        int M2, N2;
+        float kernelFactor, lambdaSq, dfx, dfy, dfxSq, dfySq;
+
+        M2 = M / 2;
+        N2 = N / 2;
+        lambdaSq = lambda * lambda;
+        dfx = 1 / (dx * M);
+        dfy = 1 / (dy * N);
+        dfxSq = dfx * dfx;
+        dfySq = dfy * dfy;
+        kernelFactor = (2 * (float) Math.PI * z) / lambda;
+
+        for (int i = 0; i < M2; i++) {
+            int i2 = i - M2 + 1;
+            float c1 = i2 * i2 * dfxSq;
+
+            for (int j = 0; j < N2; j++) {
+                int j2 = j - N2 + 1;
+                float kernelPhase;
+
+                kernelPhase = c1 + j2 * j2 * dfySq;
+                kernelPhase *= lambdaSq;
+                kernelPhase = 1 - kernelPhase;
+                if (kernelPhase < 0) {
+                    kernelPhase = 0;
+                }
+                kernelPhase = (float) Math.sqrt(kernelPhase);
+                kernelPhase *= kernelFactor;
+
+                kernel[i][2 * j] = (float) Math.cos(kernelPhase);
+                kernel[i][2 * j + 1] = (float) Math.sin(kernelPhase);
+            }
+        }
+
+        if (M % 2 != 0) {
+            int i2 = M - M2 + 1;
+            float c1 = i2 * i2 * dfxSq;
+
+            for (int j = 0; j < N2; j++) {
+                int j2 = j - N2 + 1;
+                float kernelPhase;
+
+                kernelPhase = c1 + j2 * j2 * dfySq;
+                kernelPhase *= lambdaSq;
+                kernelPhase = 1 - kernelPhase;
+                if (kernelPhase < 0) {
+                    kernelPhase = 0;
+                }
+                kernelPhase = (float) Math.sqrt(kernelPhase);
+                kernelPhase *= kernelFactor;
+
+                kernel[M2][2 * j] = (float) Math.cos(kernelPhase);
+                kernel[M2][2 * j + 1] = (float) Math.sin(kernelPhase);
+            }
+        }
+
+        if (N % 2 != 0) {
+            int j2 = N - N2 + 1;
+            float c1 = j2 * j2 * dfySq;
+
+            //same rows as in the full kernel
+            for (int i = 0; i < Math.min(M2, N2); i++) {
+                int i2 = M - M2 + 1;
+                float kernelPhase;
+
+                kernelPhase = c1 + i2 * i2 * dfxSq;
+                kernelPhase *= lambdaSq;
+                kernelPhase = 1 - kernelPhase;
+                if (kernelPhase < 0) {
+                    kernelPhase = 0;
+                }
+                kernelPhase = (float) Math.sqrt(kernelPhase);
+                kernelPhase *= kernelFactor;
+
+                kernel[i][2 * N2] = (float) Math.cos(kernelPhase);
+                kernel[i][2 * N2 + 1] = (float) Math.sin(kernelPhase);
+            }
+        }
+
+        if (M % 2 != 0 && N % 2 != 0) {
+            int i2 = M - M2 + 1;
+            int j2 = N - N2 + 1;
+
+            float kernelPhase;
+
+            kernelPhase = i2 * i2 * dfxSq + j2 * j2 * dfySq;
+            kernelPhase *= lambdaSq;
+            kernelPhase = 1 - kernelPhase;
+            if (kernelPhase < 0) {
+                    kernelPhase = 0;
+                }
+            kernelPhase = (float) Math.sqrt(kernelPhase);
+            kernelPhase *= kernelFactor;
+
+            kernel[M2][2 * N2] = (float) Math.cos(kernelPhase);
+            kernel[M2][2 * N2 + 1] = (float) Math.sin(kernelPhase);
+        }
+    }
+
+    @Override
+    public void diffract(float[][] field) {
+        if (M != field.length || 2 * N != field[0].length) {
+            throw new IllegalArgumentException("Array dimension must be " + M + " x " + 2 * N + ".");
+        }
+
+        fft.complexForward(field);
+        index.multiply(field, kernel, 0, true);
+        fft.complexInverse(field, true);
+    }
+
+    @Override
+    protected void diffractSequential(float[][] field) {
+        if (M != field.length || 2 * N != field[0].length) {
+            throw new IllegalArgumentException("Array dimension must be " + M + " x " + 2 * N + ".");
+        }
+
+        FloatSequentialFFT plan = sequentialFFT();
+
+        plan.complexForward(field);
+        index.multiply(field, kernel, 0, false);
+        plan.complexInverse(field, true);
+    }
+
+    private FloatSequentialFFT sequentialFFT() {
+        FloatSequentialFFT plan = sequentialFft.get();
+        if (plan == null) {
+            plan = FFTUtils.singleThreadedFloat(M, N);
+            sequentialFft.set(plan);
+        }
+        return plan;
+    }
+
+    public int getM() {
+        return M;
+    }
+
+    public int getN() {
+        return N;
+    }
+
+    public float getZ() {
+        return z;
+    }
+
+    public float getLambda() {
+        return lambda;
+    }
+
+    public float getDx() {
+        return dx;
+    }
+
+    public float getDy() {
+        return dy;
+    }
+
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2016 Universidad Nacional de Colombia
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package unal.od.jdiffraction.cpu;
+
+import org.jtransforms.fft.FloatFFT_2D;
+import unal.od.jdiffraction.cpu.utils.ArrayUtils;
+import unal.od.jdiffraction.cpu.utils.ParallelArrayUtils;
+
+/**
+ * Computes wave diffraction through angular spectrum method with single
+ * precision.
+ * <p>
+ * Works directly on complex data stored in a 1D array, see
+ * {@link FloatPropagatorFlat}.
+ *
+ * @author Pablo Piedrahita-Quintero (jppiedrahitaq@unal.edu.co)
+ * @author Carlos Trujillo (catrujila@unal.edu.co)
+ * @author Jorge Garcia-Sucerquia (jigarcia@unal.edu.co)
+ *
+ * @since JDiffraction 1.3
+ */
+public class FloatAngularSpectrumFlat extends FloatPropagatorFlat {
+
+    private final int M, N;
+    private final float z, lambda, dx, dy;
+    private final float[] kernel;
+    private final FloatFFT_2D fft;
+    //JTransforms plans keep state during a transform, so each thread of a
+    //batch needs its own
+    private final ThreadLocal<FloatSequentialFFT> sequentialFft = new ThreadLocal<FloatSequentialFFT>();
+
+    /**
+     * Creates a new instance of FloatAngularSpectrumFlat. Also performs kernel
+     * calculations.
+     *
+     * @param M Number of data points on x direction.
+     * @param N Number of data points on y direction.
+     * @param lambda Wavelength.
+     * @param z Distance.
+     * @param dx Sampling pitch on x direction.
+     * @param dy Sampling pitch on y direction.
+     */
+    public FloatAngularSpectrumFlat(int M, int N, float lambda, float z, float dx, float dy) {
+        this.M = M;
+        this.N = N;
+        this.lambda = lambda;
+        this.dx = dx;
+        this.dy = dy;
+        this.z = z;
+
+        kernel = new float[M * 2 * N];
+        fft = new FloatFFT_2D(M, N);
+
+        //the kernel is the one of FloatAngularSpectrum, in FFT order, laid out
+        //in a 1D array
+        FloatAngularSpectrum kernels = new FloatAngularSpectrum(M, N, lambda, z, dx, dy);
+        ArrayUtils.matrixToVectorArray(M, 2 * N, kernels.getKernel(), kernel);
+    }
+
+    /**
+     * Creates a new instance of FloatAngularSpectrumFlat that shares the
+     * kernels of {@code other} but has its own FFT plans.
+     *
+     * @param other Propagator whose kernels are shared.
+     */
+    FloatAngularSpectrumFlat(FloatAngularSpectrumFlat other) {
+        M = other.M;
+        N = other.N;
+        z = other.z;
+        lambda = other.lambda;
+        dx = other.dx;
+        dy = other.dy;
+        kernel = other.kernel;
+        fft = new FloatFFT_2D(M, N);
+    }
+
+    @Override
+    public void diffract(float[] field) {
+        if (field.length != M * 2 * N) {
+            throw new IllegalArgumentException("Array dimension must be " + M * 2 * N + ".");
+        }
+
+        fft.complexForward(field);
+        ParallelArrayUtils.complexMultiplication2(M, N, field, kernel);
+        fft.complexInverse(field, true);
+    }
+
+    @Override
+    protected void diffractSequential(float[] field) {
+        if (field.length != M * 2 * N) {
+            throw new IllegalArgumentException("Array dimension must be " + M * 2 * N + ".");
+        }
+
+        FloatSequentialFFT plan = sequentialFFT();
+
+        plan.complexForward(field);
+        ArrayUtils.complexMultiplication2(M, N, field, kernel);
+        plan.complexInverse(field, true);
+    }
+
+    private FloatSequentialFFT sequentialFFT() {
+        FloatSequentialFFT plan = sequentialFft.get();
+        if (plan == null) {
+            plan = FFTUtils.singleThreadedFloat(M, N);
+            sequentialFft.set(plan);
+        }
+        return plan;
+    }
+
+    public int getM() {
+        return M;
+    }
+
+    public int getN() {
+        return N;
+    }
+
+    public float getZ() {
+        return z;
+    }
+
+    public float getLambda() {
+        return lambda;
+    }
+
+    public float getDx() {
+        return dx;
+    }
+
+    public float getDy() {
+        return dy;
+    }
+
+}
@@ -0,0 +1,429 @@
+/*
+ * Copyright 2016 Universidad Nacional de Colombia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package unal.od.jdiffraction.cpu;
+
+import org.jtransforms.fft.FloatFFT_2D;
+import unal.od.jdiffraction.cpu.utils.ParallelArrayUtils;
+
+/**
+ * Computes stacks of planes through angular spectrum method with single
+ * precision. The spectrum of the input field is calculated once and reused for
+ * every distance. For evenly spaced distances the kernel of each plane is the
+ * kernel of the previous one times a fixed step exp(i * kz * 2 * pi * dz /
+ * lambda), so after the first plane of a run of up to 32 planes each plane
+ * costs a kernel multiplication and an inverse FFT, with no sines or cosines.
+ * Other distances get their kernel evaluated directly. Kernels are kept on a
+ * single quadrant of M / 2 + M %% 2 x N / 2 + N %% 2 points. Each plane is
+ * the one given by {@link FloatAngularSpectrum} for that distance, up to
+ * single precision rounding, except for odd N: FloatAngularSpectrum fills the
+ * last column of its kernel only on the first min(M / 2, N / 2) rows and
+ * with the frequency of the last row, while here every row of that column
+ * has its own frequency.
+ *
+ * @author Pablo Piedrahita-Quintero (jppiedrahitaq@unal.edu.co)
+ * @author Carlos Trujillo (catrujila@unal.edu.co)
+ * @author Jorge Garcia-Sucerquia (jigarcia@unal.edu.co)
+ *
+ * @since JDiffraction 1.3
+ */
+public class FloatAngularSpectrumStack {
+
+    /**
+     * Receives the planes of a stack as they are calculated.
+     */
+    public interface PlaneConsumer {
+
+        /**
+         * Called once per distance, in the order of the distances array. The
+         * plane array is reused for the next distance, so it must be copied
+         * if it is needed after this method returns.
+         *
+         * @param index index of the distance
+         * @param z distance
+         * @param plane diffracted field
+         */
+        void accept(int index, float z, float[][] plane);
+    }
+
+    /**
+     * Maximum number of planes whose kernels are obtained from one evaluated
+     * kernel; bounds the rounding accumulated by the phase recurrence.
+     */
+    private static final int RUN = 32;
+
+    private final int M, N;
+    private final float lambda, dx, dy;
+    //sqrt(1 - lambda^2 * (fx^2 + fy^2)) on the quadrant held by the compact
+    //kernels, see QuadrantIndex
+    private final float[][] kz;
+    private final QuadrantIndex index;
+    private final FloatFFT_2D fft;
+
+    /**
+     * Creates a new instance of FloatAngularSpectrumStack. Also performs the
+     * distance-independent part of the kernel calculations.
+     *
+     * @param M Number of data points on x direction.
+     * @param N Number of data points on y direction.
+     * @param lambda Wavelength.
+     * @param dx Sampling pitch on x direction.
+     * @param dy Sampling pitch on y direction.
+     */
+    public FloatAngularSpectrumStack(int M, int N, float lambda, float dx, float dy) {
+        this.M = M;
+        this.N = N;
+        this.lambda = lambda;
+        this.dx = dx;
+        this.dy = dy;
+
+        kz = new float[QuadrantIndex.size(M)][QuadrantIndex.size(N)];
+        fft = new FloatFFT_2D(M, N);
+
+        calculateKernels();
+
+        //the spectrum isn't centered, so the kernel is read in FFT order
+        index = QuadrantIndex.shifted(M, N);
+    }
+
+    /**
+     * Calculates sqrt(1 - lambda^2 * (fx^2 + fy^2)) on the quadrant held by
+     * the kernels; the kernel phase is this value times 2 * pi * z / lambda.
+     */
+    private void calculateKernels() {
+
+        int M2, N2;
+        float lambdaSq, dfx, dfy, dfxSq, dfySq;
+
+        M2 = M / 2;
+        N2 = N / 2;
+        lambdaSq = lambda * lambda;
+        dfx = 1 / (dx * M);
+        dfy = 1 / (dy * N);
+        dfxSq = dfx * dfx;
+        dfySq = dfy * dfy;
+
+        for (int i = 0; i < M2; i++) {
+            int i2 = i - M2 + 1;
+            float c1 = i2 * i2 * dfxSq;
+
+            for (int j = 0; j < N2; j++) {
+                int j2 = j - N2 + 1;
+                float kernelPhase;
+
+                kernelPhase = c1 + j2 * j2 * dfySq;
+                kernelPhase *= lambdaSq;
+                kernelPhase = 1 - kernelPhase;
+                if (kernelPhase < 0) {
+                    kernelPhase = 0;
+                }
+
+                kz[i][j] = (float) Math.sqrt(kernelPhase);
+            }
+        }
+
+        if (M % 2 != 0) {
+            int i2 = M - M2 + 1;
+            float c1 = i2 * i2 * dfxSq;
+
+            for (int j = 0; j < N2; j++) {
+                int j2 = j - N2 + 1;
+                float kernelPhase;
+
+                kernelPhase = c1 + j2 * j2 * dfySq;
+                kernelPhase *= lambdaSq;
+                kernelPhase = 1 - kernelPhase;
+                if (kernelPhase < 0) {
+                    kernelPhase = 0;
+                }
+
+                kz[M2][j] = (float) Math.sqrt(kernelPhase);
+            }
+        }
+
+        if (N % 2 != 0) {
+            int j2 = N - N2 + 1;
+            float c1 = j2 * j2 * dfySq;
+
+            //every row with its own frequency
+            for (int i = 0; i < M2; i++) {
+                int i2 = i - M2 + 1;
+                float kernelPhase;
+
+                kernelPhase = c1 + i2 * i2 * dfxSq;
+                kernelPhase *= lambdaSq;
+                kernelPhase = 1 - kernelPhase;
+                if (kernelPhase < 0) {
+                    kernelPhase = 0;
+                }
+
+                kz[i][N2] = (float) Math.sqrt(kernelPhase);
+            }
+        }
+
+        if (M % 2 != 0 && N % 2 != 0) {
+            int i2 = M - M2 + 1;
+            int j2 = N - N2 + 1;
+
+            float kernelPhase;
+
+            kernelPhase = i2 * i2 * dfxSq + j2 * j2 * dfySq;
+            kernelPhase *= lambdaSq;
+            kernelPhase = 1 - kernelPhase;
+            if (kernelPhase < 0) {
+                kernelPhase = 0;
+            }
+
+            kz[M2][N2] = (float) Math.sqrt(kernelPhase);
+        }
+    }
+
+    private void checkField(float[][] field) {
+        if (M != field.length || 2 * N != field[0].length) {
+            throw new IllegalArgumentException("Array dimension must be " + M + " x " + 2 * N + ".");
+        }
+    }
+
+    private float[][] spectrum(float[][] field) {
+        checkField(field);
+
+        float[][] spectrum = new float[M][];
+        for (int i = 0; i < M; i++) {
+            spectrum[i] = field[i].clone();
+        }
+
+        fft.complexForward(spectrum);
+        return spectrum;
+    }
+
+    /**
+     * Number of planes in a run of evenly spaced distances whose kernels are
+     * obtained from the first one through the phase recurrence, as long as
+     * <code>z[start] + n * dz</code> stays within a few ulps of
+     * <code>z[start + n]</code>. Returns 1 when there is no such run of at
+     * least 3 planes, as a run of 2 would cost the same as evaluating both
+     * kernels.
+     */
+    private static int evenRun(float[] z, int start) {
+        int length = Math.min(RUN, z.length - start);
+
+        for (; length >= 3; length--) {
+            double first = z[start];
+            double last = z[start + length - 1];
+            double dz = (last - first) / (length - 1);
+            double tolerance = 4 * Math.ulp(Math.max(Math.abs(z[start]), Math.abs(z[start + length - 1])));
+
+            boolean even = true;
+            for (int n = 1; n < length - 1 && even; n++) {
+                even = Math.abs(z[start + n] - (first + n * dz)) <= tolerance;
+            }
+
+            if (even) {
+                return length;
+            }
+        }
+
+        return 1;
+    }
+
+    /**
+     * Writes exp(i * kz * 2 * pi * z / lambda) into the compact kernel. This
+     * is the only path evaluating sines and cosines for a plane.
+     */
+    private void kernel(final float[][] kernel, float z) {
+        final float kernelFactor = (2 * (float) Math.PI * z) / lambda;
+        final int N2 = kz[0].length;
+
+        ParallelArrayUtils.forRows(kz.length, N2, new ParallelArrayUtils.RowRange() {
+            @Override
+            public void apply(int from, int to) {
+                for (int i = from; i < to; i++) {
+                    float[] k = kernel[i];
+                    float[] kzRow = kz[i];
+
+                    for (int j = 0; j < N2; j++) {
+                        float kernelPhase = kzRow[j];
+                        kernelPhase *= kernelFactor;
+
+                        k[2 * j] = (float) Math.cos(kernelPhase);
+                        k[2 * j + 1] = (float) Math.sin(kernelPhase);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Writes exp(i * kz * 2 * pi * dz / lambda) into the compact step. The
+     * phase is evaluated in double precision because the rounding of the step
+     * is repeated once per plane of the run.
+     */
+    private void step(final float[][] step, double dz) {
+        final double kernelFactor = (2 * Math.PI * dz) / lambda;
+        final int N2 = kz[0].length;
+
+        ParallelArrayUtils.forRows(kz.length, N2, new ParallelArrayUtils.RowRange() {
+            @Override
+            public void apply(int from, int to) {
+                for (int i = from; i < to; i++) {
+                    float[] s = step[i];
+                    float[] kzRow = kz[i];
+
+                    for (int j = 0; j < N2; j++) {
+                        double kernelPhase = kzRow[j] * kernelFactor;
+
+                        s[2 * j] = (float) Math.cos(kernelPhase);
+                        s[2 * j + 1] = (float) Math.sin(kernelPhase);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Advances the compact kernel by one step of the run,
+     * kernel = kernel * step.
+     */
+    private void advance(final float[][] kernel, final float[][] step) {
+        final int N2 = kz[0].length;
+
+        ParallelArrayUtils.forRows(kz.length, N2, new ParallelArrayUtils.RowRange() {
+            @Override
+            public void apply(int from, int to) {
+                for (int i = from; i < to; i++) {
+                    float[] k = kernel[i];
+                    float[] s = step[i];
+
+                    for (int j = 0; j < N2; j++) {
+                        float kernelReal = (k[2 * j] * s[2 * j]) - (k[2 * j + 1] * s[2 * j + 1]);
+                        float kernelImaginary = (k[2 * j] * s[2 * j + 1]) + (k[2 * j + 1] * s[2 * j]);
+
+                        k[2 * j] = kernelReal;
+                        k[2 * j + 1] = kernelImaginary;
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Writes spectrum * kernel into plane and takes it back to the space
+     * domain.
+     */
+    private void propagate(float[][] spectrum, float[][] kernel, float[][] plane) {
+        for (int i = 0; i < M; i++) {
+            System.arraycopy(spectrum[i], 0, plane[i], 0, 2 * N);
+        }
+
+        index.multiply(plane, kernel, 0, true);
+        fft.complexInverse(plane, true);
+    }
+
+    /**
+     * Diffracts <code>field</code> to every distance in <code>z</code>,
+     * passing each plane to <code>consumer</code>. <code>field</code> is not
+     * modified. The physical layout of the complex data must be the same as
+     * in JTransforms:
+     * <p>
+     * {@code
+     * field[i][2 * j] = Re[i][j],
+     * field[i][2 * j + 1] = Im[i][j]; 0 &lt;= i &lt; M, 0 &lt;= j &lt; N
+     * }
+     *
+     * @param field The complex field to diffract.
+     * @param z Distances.
+     * @param consumer Receives the diffracted planes.
+     */
+    public void diffract(float[][] field, float[] z, PlaneConsumer consumer) {
+        diffract(field, z, null, consumer);
+    }
+
+    /**
+     * Diffracts <code>field</code> to every distance in <code>z</code>,
+     * leaving the plane for <code>z[k]</code> in <code>planes[k]</code>.
+     * <code>field</code> is not modified.
+     *
+     * @param field The complex field to diffract.
+     * @param z Distances.
+     * @param planes M x 2N arrays receiving the diffracted planes, one per
+     * distance.
+     */
+    public void diffract(float[][] field, float[] z, float[][][] planes) {
+        if (planes.length != z.length) {
+            throw new IllegalArgumentException("There must be one plane per distance.");
+        }
+        for (float[][] plane : planes) {
+            checkField(plane);
+        }
+
+        diffract(field, z, planes, null);
+    }
+
+    private void diffract(float[][] field, float[] z, float[][][] planes, PlaneConsumer consumer) {
+        float[][] spectrum = spectrum(field);
+        float[][] kernel = new float[kz.length][2 * kz[0].length];
+        float[][] step = null;
+        float[][] plane = planes == null ? new float[M][2 * N] : null;
+
+        for (int k = 0; k < z.length;) {
+            int run = evenRun(z, k);
+
+            kernel(kernel, z[k]);
+            if (run > 1) {
+                if (step == null) {
+                    step = new float[kz.length][2 * kz[0].length];
+                }
+                step(step, ((double) z[k + run - 1] - z[k]) / (run - 1));
+            }
+
+            for (int n = 0; n < run; n++) {
+                if (n > 0) {
+                    advance(kernel, step);
+                }
+                if (planes != null) {
+                    plane = planes[k + n];
+                }
+
+                propagate(spectrum, kernel, plane);
+                if (consumer != null) {
+                    consumer.accept(k + n, z[k + n], plane);
+                }
+            }
+
+            k += run;
+        }
+    }
+
+    public int getM() {
+        return M;
+    }
+
+    public int getN() {
+        return N;
+    }
+
+    public float getLambda() {
+        return lambda;
+    }
+
+    public float getDx() {
+        return dx;
+    }
+
+    public float getDy() {
+        return dy;
+    }
+
+}
@@ -0,0 +1,480 @@
+/*
+ * Copyright 2016 Universidad Nacional de Colombia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package unal.od.jdiffraction.cpu;
+
+import java.util.Arrays;
+import org.jtransforms.fft.FloatFFT_2D;
+import unal.od.jdiffraction.cpu.utils.ParallelArrayUtils;
+
+/**
+ * Computes wave diffraction onto a tilted plane through the
+ * <a href="http://dx.doi.org/10.1364/JOSAA.20.001755" target="_blank">rotational transformation</a>
+ * of the angular spectrum, with single precision. The output plane goes
+ * through {@code (0, 0, z)} and its points {@code (u, v)} lie at
+ * <p>
+ * {@code (x, y, z) = Ry(tiltX) * Rx(tiltY) * (u, v, 0) + (0, 0, z)}
+ * <p>
+ * where {@code Ry(a)} rotates by {@code a} about the y axis and
+ * {@code Rx(b)} about the x axis; with {@code tiltY = 0} the point
+ * {@code (u, v)} is at {@code (u * cos(tiltX), v, z - u * sin(tiltX))}. The
+ * output has the same size and pitch as the input, with {@code (u, v) = (0, 0)}
+ * at {@code (M / 2, N / 2)}.
+ * <p>
+ * Each frequency of the output spectrum is a plane wave of the input with the
+ * rotated frequency, so the output spectrum is the input spectrum, times the
+ * angular spectrum kernel, evaluated on a curved grid, times the Jacobian of
+ * the change of variables. The input spectrum is evaluated on that grid with
+ * a non-uniform FFT, interpolating a spectrum oversampled about 1.5 times
+ * along each side with a Gaussian over 14 x 14 points, as in
+ * <a href="http://dx.doi.org/10.1137/S003614450343200X" target="_blank">Greengard and Lee</a>.
+ * The grid coordinates, the kernel and the weights, split into a table per
+ * direction and a ratio per output frequency, are computed once.
+ * <p>
+ * A propagation is not one FFT pair: it costs an FFT on the oversampled grid,
+ * about 2.25 times as many points as the input, the interpolation and an
+ * M x N inverse FFT. The interpolation takes most of the time, and a
+ * propagation takes about 7 to 10 times as long as with
+ * {@link FloatAngularSpectrum} on one core.
+ * <p>
+ * The zero frequency of the input goes to the frequency
+ * {@code (-sin(tiltX), cos(tiltX) * sin(tiltY)) / lambda} of the output,
+ * which is usually far beyond the output band. The output spectrum is taken
+ * around it, so the output is the field on the tilted plane times
+ * {@code exp(-i * 2 * pi * (carrierX * u + carrierY * v))}, see
+ * {@link #getCarrierX()} and {@link #getCarrierY()}; the intensity isn't
+ * affected. Output frequencies that are evanescent, that come from
+ * frequencies beyond the input band or that travel backwards are zeroed.
+ *
+ * @author Pablo Piedrahita-Quintero (jppiedrahitaq@unal.edu.co)
+ * @author Carlos Trujillo (catrujila@unal.edu.co)
+ * @author Jorge Garcia-Sucerquia (jigarcia@unal.edu.co)
+ *
+ * @since JDiffraction 1.3
+ */
+public class FloatAngularSpectrumTilted extends FloatPropagator {
+
+    //oversampling of the grid and half width of the interpolation kernel, in
+    //grid points
+    private static final double OVERSAMPLING = 1.5;
+    private static final int SPREAD = 7;
+
+    private final int M, N, gridM, gridN;
+    private final float z, lambda, dx, dy, tiltX, tiltY;
+    private final double carrierX, carrierY;
+    private final GaussianGridding griddingM, griddingN;
+    //deconvolution of the Gaussian for each row and column of the input
+    private final float[] rowFactors, columnFactors;
+    //first grid row and column used by each output frequency, wrapped; the
+    //row is -1 outside the passband
+    private final int[][] firstRows, firstColumns;
+    //weights of a point on a grid point, and ratio that takes them to the
+    //weights of each output frequency along rows and columns
+    private final float[] rowWeights, columnWeights;
+    private final float[][] rowRatios, columnRatios;
+    //angular spectrum kernel times the Jacobian and the scale of the weights,
+    //at each output frequency
+    private final float[][] kernel;
+    private final FloatFFT_2D gridFft, fft;
+    //gridM x 2 * gridN grid, and plans, one per thread of a batch
+    private final ThreadLocal<float[][]> workspace = new ThreadLocal<float[][]>();
+    private final ThreadLocal<FloatSequentialFFT> sequentialGridFft = new ThreadLocal<FloatSequentialFFT>();
+    private final ThreadLocal<FloatSequentialFFT> sequentialFft = new ThreadLocal<FloatSequentialFFT>();
+
+    /**
+     * Creates a new instance of FloatAngularSpectrumTilted. Also performs
+     * kernel and interpolation calculations.
+     *
+     * @param M Number of data points on x direction.
+     * @param N Number of data points on y direction.
+     * @param lambda Wavelength.
+     * @param z Distance to the center of the output plane.
+     * @param dx Sampling pitch on x direction.
+     * @param dy Sampling pitch on y direction.
+     * @param tiltX Rotation of the output plane about the y axis, in radians.
+     * @param tiltY Rotation of the output plane about the x axis, in radians.
+     */
+    public FloatAngularSpectrumTilted(int M, int N, float lambda, float z, float dx, float dy,
+            float tiltX, float tiltY) {
+        this.M = M;
+        this.N = N;
+        this.lambda = lambda;
+        this.dx = dx;
+        this.dy = dy;
+        this.z = z;
+        this.tiltX = tiltX;
+        this.tiltY = tiltY;
+
+        carrierX = -Math.sin(tiltX) / lambda;
+        carrierY = Math.cos(tiltX) * Math.sin(tiltY) / lambda;
+
+        gridM = FFTUtils.smoothSize((int) Math.ceil(OVERSAMPLING * M));
+        gridN = FFTUtils.smoothSize((int) Math.ceil(OVERSAMPLING * N));
+        griddingM = new GaussianGridding(M, gridM, SPREAD);
+        griddingN = new GaussianGridding(N, gridN, SPREAD);
+
+        rowFactors = new float[M];
+        columnFactors = new float[N];
+        firstRows = new int[M][N];
+        firstColumns = new int[M][N];
+        rowWeights = weights(griddingM);
+        columnWeights = weights(griddingN);
+        rowRatios = new float[M][N];
+        columnRatios = new float[M][N];
+        kernel = new float[M][2 * N];
+
+        gridFft = new FloatFFT_2D(gridM, gridN);
+        fft = new FloatFFT_2D(M, N);
+
+        calculateKernels();
+    }
+
+    /**
+     * Creates a new instance of FloatAngularSpectrumTilted that shares the
+     * kernels of {@code other} but has its own FFT plans.
+     *
+     * @param other Propagator whose kernels are shared.
+     */
+    FloatAngularSpectrumTilted(FloatAngularSpectrumTilted other) {
+        M = other.M;
+        N = other.N;
+        gridM = other.gridM;
+        gridN = other.gridN;
+        z = other.z;
+        lambda = other.lambda;
+        dx = other.dx;
+        dy = other.dy;
+        tiltX = other.tiltX;
+        tiltY = other.tiltY;
+        carrierX = other.carrierX;
+        carrierY = other.carrierY;
+        griddingM = other.griddingM;
+        griddingN = other.griddingN;
+        rowFactors = other.rowFactors;
+        columnFactors = other.columnFactors;
+        firstRows = other.firstRows;
+        firstColumns = other.firstColumns;
+        rowWeights = other.rowWeights;
+        rowRatios = other.rowRatios;
+        columnWeights = other.columnWeights;
+        columnRatios = other.columnRatios;
+        kernel = other.kernel;
+        gridFft = new FloatFFT_2D(gridM, gridN);
+        fft = new FloatFFT_2D(M, N);
+    }
+
+    /**
+     * Weights of a point on a grid point of {@code gridding}.
+     */
+    private static float[] weights(GaussianGridding gridding) {
+        double[] weights = new double[gridding.width()];
+        gridding.weights(weights);
+
+        float[] result = new float[weights.length];
+        for (int a = 0; a < weights.length; a++) {
+            result[a] = (float) weights[a];
+        }
+        return result;
+    }
+
+    private void calculateKernels() {
+        //the input point i is the mode i - M / 2 of the non-uniform FFT
+        for (int i = 0; i < M; i++) {
+            rowFactors[i] = (float) griddingM.deconvolution(Math.floorMod(i - M / 2, M));
+        }
+        for (int j = 0; j < N; j++) {
+            columnFactors[j] = (float) griddingN.deconvolution(Math.floorMod(j - N / 2, N));
+        }
+
+        double cosX = Math.cos(tiltX);
+        double sinX = Math.sin(tiltX);
+        double cosY = Math.cos(tiltY);
+        double sinY = Math.sin(tiltY);
+        //first two rows of Ry(tiltX) * Rx(tiltY), which takes the output
+        //frequencies to the input ones, and its third row
+        final double a1 = cosX, a2 = sinX * sinY, a3 = sinX * cosY;
+        final double a4 = 0, a5 = cosY, a6 = -sinY;
+        final double a7 = -sinX, a8 = cosX * sinY, a9 = cosX * cosY;
+
+        final double dfx = 1 / ((double) dx * M);
+        final double dfy = 1 / ((double) dy * N);
+        final double cutoffSq = 1 / ((double) lambda * lambda);
+        final double kernelFactor = 2 * Math.PI * z;
+        final double nyquistX = 1 / (2.0 * dx);
+        final double nyquistY = 1 / (2.0 * dy);
+
+        ParallelArrayUtils.forRows(M, N, new ParallelArrayUtils.RowRange() {
+            @Override
+            public void apply(int from, int to) {
+                for (int i = from; i < to; i++) {
+                    int k1 = i < M / 2 ? i : i - M;
+                    double u = k1 * dfx + carrierX;
+
+                    for (int j = 0; j < N; j++) {
+                        int k2 = j < N / 2 ? j : j - N;
+                        double v = k2 * dfy + carrierY;
+
+                        firstRows[i][j] = -1;
+                        kernel[i][2 * j] = 0;
+                        kernel[i][2 * j + 1] = 0;
+
+                        double wSq = cutoffSq - u * u - v * v;
+                        if (wSq <= 0) {
+                            continue;
+                        }
+                        double w = Math.sqrt(wSq);
+
+                        double fx = a1 * u + a2 * v + a3 * w;
+                        double fy = a4 * u + a5 * v + a6 * w;
+                        double fz = a7 * u + a8 * v + a9 * w;
+                        if (fz <= 0 || fx < -nyquistX || fx >= nyquistX || fy < -nyquistY || fy >= nyquistY) {
+                            continue;
+                        }
+
+                        //Jacobian of (fx, fy) with respect to (u, v)
+                        double jacobian = (a1 - a3 * u / w) * (a5 - a6 * v / w)
+                                - (a2 - a3 * v / w) * (a4 - a6 * u / w);
+
+                        //the phase also moves the origin of the output to
+                        //(M / 2, N / 2)
+                        double phase = kernelFactor * fz
+                                - 2 * Math.PI * ((double) k1 * (M / 2) / M + (double) k2 * (N / 2) / N);
+                        double positionX = fx * dx;
+                        double positionY = fy * dy;
+                        double amplitude = Math.abs(jacobian) * griddingM.scale(positionX)
+                                * griddingN.scale(positionY);
+                        kernel[i][2 * j] = (float) (amplitude * Math.cos(phase));
+                        kernel[i][2 * j + 1] = (float) (amplitude * Math.sin(phase));
+
+                        firstRows[i][j] = Math.floorMod(griddingM.first(positionX), gridM);
+                        firstColumns[i][j] = Math.floorMod(griddingN.first(positionY), gridN);
+                        rowRatios[i][j] = (float) griddingM.ratio(positionX);
+                        columnRatios[i][j] = (float) griddingN.ratio(positionY);
+                    }
+                }
+            }
+        });
+    }
+
+    @Override
+    public void diffract(float[][] field) {
+        if (M != field.length || 2 * N != field[0].length) {
+            throw new IllegalArgumentException("Array dimension must be " + M + " x " + 2 * N + ".");
+        }
+
+        float[][] grid = workspace();
+
+        load(field, grid, true);
+        gridFft.complexForward(grid);
+        interpolate(grid, field, true);
+        fft.complexInverse(field, true);
+    }
+
+    @Override
+    protected void diffractSequential(float[][] field) {
+        if (M != field.length || 2 * N != field[0].length) {
+            throw new IllegalArgumentException("Array dimension must be " + M + " x " + 2 * N + ".");
+        }
+
+        float[][] grid = workspace();
+        FloatSequentialFFT gridPlan = sequentialGridFft.get();
+        FloatSequentialFFT plan = sequentialFft.get();
+        if (plan == null) {
+            gridPlan = FFTUtils.singleThreadedFloat(gridM, gridN);
+            plan = FFTUtils.singleThreadedFloat(M, N);
+            sequentialGridFft.set(gridPlan);
+            sequentialFft.set(plan);
+        }
+
+        load(field, grid, false);
+        gridPlan.complexForward(grid);
+        interpolate(grid, field, false);
+        plan.complexInverse(field, true);
+    }
+
+    private float[][] workspace() {
+        float[][] grid = workspace.get();
+        if (grid == null) {
+            grid = new float[gridM][2 * gridN];
+            workspace.set(grid);
+        }
+        return grid;
+    }
+
+    /**
+     * Writes the input, divided by the transform of the Gaussian, on the
+     * oversampled grid, with the center of the input on the origin.
+     */
+    private void load(final float[][] field, final float[][] grid, boolean parallel) {
+        run(gridM, gridN, parallel, new ParallelArrayUtils.RowRange() {
+            @Override
+            public void apply(int from, int to) {
+                for (int k = from; k < to; k++) {
+                    float[] row = grid[k];
+                    Arrays.fill(row, 0);
+
+                    //input row whose mode goes to this grid row
+                    int mode = k < gridM / 2 ? k : k - gridM;
+                    int i = mode + M / 2;
+                    if (i < 0 || i >= M) {
+                        continue;
+                    }
+
+                    float[] source = field[i];
+                    float rowFactor = rowFactors[i];
+
+                    for (int j = 0; j < N; j++) {
+                        int column = Math.floorMod(j - N / 2, gridN);
+                        float factor = rowFactor * columnFactors[j];
+                        row[2 * column] = factor * source[2 * j];
+                        row[2 * column + 1] = factor * source[2 * j + 1];
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Interpolates the oversampled spectrum at the input frequency of each
+     * output frequency and multiplies it by the kernel, leaving the output
+     * spectrum in {@code field}.
+     */
+    private void interpolate(final float[][] grid, final float[][] field, boolean parallel) {
+        run(M, N, parallel, new ParallelArrayUtils.RowRange() {
+            @Override
+            public void apply(int from, int to) {
+                int width = 2 * SPREAD;
+                float[] weights = new float[width];
+                int[] columns = new int[width];
+
+                for (int i = from; i < to; i++) {
+                    float[] row = field[i];
+
+                    for (int j = 0; j < N; j++) {
+                        int firstRow = firstRows[i][j];
+                        if (firstRow < 0) {
+                            row[2 * j] = 0;
+                            row[2 * j + 1] = 0;
+                            continue;
+                        }
+
+                        float power = 1;
+                        float ratio = columnRatios[i][j];
+                        int column = firstColumns[i][j];
+                        for (int b = 0; b < width; b++) {
+                            weights[b] = columnWeights[b] * power;
+                            columns[b] = 2 * column;
+                            power *= ratio;
+                            if (++column == gridN) {
+                                column = 0;
+                            }
+                        }
+
+                        float real = 0;
+                        float imaginary = 0;
+                        power = 1;
+                        ratio = rowRatios[i][j];
+                        int gridRow = firstRow;
+
+                        for (int a = 0; a < width; a++) {
+                            float[] source = grid[gridRow];
+                            float partialReal = 0;
+                            float partialImaginary = 0;
+
+                            for (int b = 0; b < width; b++) {
+                                partialReal += weights[b] * source[columns[b]];
+                                partialImaginary += weights[b] * source[columns[b] + 1];
+                            }
+
+                            float weight = rowWeights[a] * power;
+                            real += weight * partialReal;
+                            imaginary += weight * partialImaginary;
+                            power *= ratio;
+                            if (++gridRow == gridM) {
+                                gridRow = 0;
+                            }
+                        }
+
+                        float kernelReal = kernel[i][2 * j];
+                        float kernelImaginary = kernel[i][2 * j + 1];
+                        row[2 * j] = (real * kernelReal) - (imaginary * kernelImaginary);
+                        row[2 * j + 1] = (real * kernelImaginary) + (imaginary * kernelReal);
+                    }
+                }
+            }
+        });
+    }
+
+    private static void run(int rows, int rowLength, boolean parallel, ParallelArrayUtils.RowRange range) {
+        if (parallel) {
+            ParallelArrayUtils.forRows(rows, rowLength, range);
+        } else {
+            range.apply(0, rows);
+        }
+    }
+
+    public int getM() {
+        return M;
+    }
+
+    public int getN() {
+        return N;
+    }
+
+    public float getZ() {
+        return z;
+    }
+
+    public float getLambda() {
+        return lambda;
+    }
+
+    public float getDx() {
+        return dx;
+    }
+
+    public float getDy() {
+        return dy;
+    }
+
+    public float getTiltX() {
+        return tiltX;
+    }
+
+    public float getTiltY() {
+        return tiltY;
+    }
+
+    /**
+     * Returns the frequency, on the output plane, of the carrier removed from
+     * the output on x direction.
+     *
+     * @return carrier frequency on x direction
+     */
+    public double getCarrierX() {
+        return carrierX;
+    }
+
+    /**
+     * Returns the frequency, on the output plane, of the carrier removed from
+     * the output on y direction.
+     *
+     * @return carrier frequency on y direction
+     */
+    public double getCarrierY() {
+        return carrierY;
+    }
+
+}
@@ -0,0 +1,642 @@
+/*
+ * Copyright 2016 Universidad Nacional de Colombia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package unal.od.jdiffraction.cpu;
+
+import java.util.concurrent.RecursiveAction;
+import org.jtransforms.fft.FloatFFT_2D;
+import unal.od.jdiffraction.cpu.utils.ParallelArrayUtils;
+
+/**
+ * Finds the distance at which a field is in focus, with single precision.
+ * The spectrum of the field is computed once, in {@link #setInput(float[][])};
+ * the search then scans the distances of a range with low resolution
+ * reconstructions, which take only the low frequencies of the spectrum, and
+ * refines the best one with a golden-section search on full resolution
+ * reconstructions. Each reconstruction is the angular spectrum propagation of
+ * the stored spectrum; the frequency-dependent part of the kernel phase is
+ * tabulated on construction, so only its sine and cosine depend on the
+ * distance.
+ * <p>
+ * The focus metrics are taken on the amplitude of the reconstructions:
+ * <ul>
+ * <li>{@link #TAMURA}: the Tamura coefficient, {@code sqrt(std / mean)}.</li>
+ * <li>{@link #GRADIENT}: the mean squared difference between neighbouring
+ * points.</li>
+ * <li>{@link #VARIANCE}: the variance.</li>
+ * </ul>
+ * Amplitude objects are sharpest in focus and the metrics are maximized by
+ * default; phase objects are flattest in focus and need
+ * {@link #setMinimize(boolean)}. The amplitude and the metrics are computed in
+ * a single pass over the reconstruction. The workspaces, and the tasks that
+ * split the passes over the threads of {@link ParallelArrayUtils#getPool()},
+ * are allocated on construction, so searches don't allocate memory besides
+ * the temporary buffers of the JTransforms plans.
+ * <p>
+ * Instances keep FFT plans and workspaces and must not be used by several
+ * threads at the same time; when focusing many fields at once, use an
+ * instance per thread.
+ *
+ * @author Pablo Piedrahita-Quintero (jppiedrahitaq@unal.edu.co)
+ * @author Carlos Trujillo (catrujila@unal.edu.co)
+ * @author Jorge Garcia-Sucerquia (jigarcia@unal.edu.co)
+ *
+ * @since JDiffraction 1.3
+ */
+public class FloatAutofocus {
+
+    /**
+     * Tamura coefficient of the amplitude.
+     */
+    public static final int TAMURA = 0;
+    /**
+     * Gradient energy of the amplitude.
+     */
+    public static final int GRADIENT = 1;
+    /**
+     * Variance of the amplitude.
+     */
+    public static final int VARIANCE = 2;
+
+    private static final double GOLDEN = (Math.sqrt(5) - 1) / 2;
+    //smallest size of the low resolution reconstructions
+    private static final int MIN_COARSE = 16;
+    //passes run by the tasks
+    private static final int KERNEL = 0;
+    private static final int METRIC = 1;
+
+    private final int M, N, coarseM, coarseN;
+    private final float lambda, dx, dy;
+    //sqrt(1 / lambda^2 - fx^2 - fy^2) - 1 / lambda, the kernel phase per
+    //unit distance over 2 * pi; positive for evanescent waves, which are
+    //dropped
+    private final double[][] kz;
+    private final float[][] spectrum, workspace, coarse;
+    private final FloatFFT_2D fft, coarseFft;
+    private final Reconstruction full, low;
+    private boolean hasInput;
+
+    private int metric = TAMURA;
+    private boolean minimize = false;
+    private int coarseSteps = 32;
+    private float tolerance = 0;
+
+    /**
+     * Creates a new instance of FloatAutofocus, whose low resolution
+     * reconstructions are about 4 times smaller on each direction.
+     *
+     * @param M Number of data points on x direction.
+     * @param N Number of data points on y direction.
+     * @param lambda Wavelength.
+     * @param dx Sampling pitch on x direction.
+     * @param dy Sampling pitch on y direction.
+     */
+    public FloatAutofocus(int M, int N, float lambda, float dx, float dy) {
+        this(M, N, lambda, dx, dy, 4);
+    }
+
+    /**
+     * Creates a new instance of FloatAutofocus, whose low resolution
+     * reconstructions are about {@code decimation} times smaller on each
+     * direction.
+     *
+     * @param M Number of data points on x direction.
+     * @param N Number of data points on y direction.
+     * @param lambda Wavelength.
+     * @param dx Sampling pitch on x direction.
+     * @param dy Sampling pitch on y direction.
+     * @param decimation Size reduction of the low resolution reconstructions.
+     */
+    public FloatAutofocus(int M, int N, float lambda, float dx, float dy, int decimation) {
+        if (decimation < 1) {
+            throw new IllegalArgumentException("The decimation must be at least 1.");
+        }
+
+        this.M = M;
+        this.N = N;
+        this.lambda = lambda;
+        this.dx = dx;
+        this.dy = dy;
+
+        coarseM = coarseSize(M, decimation);
+        coarseN = coarseSize(N, decimation);
+
+        double cutoffSq = 1 / ((double) lambda * lambda);
+        double k0 = 1 / (double) lambda;
+
+        double[] fySq = new double[N];
+        for (int j = 0; j < N; j++) {
+            double fy = (j < N / 2 ? j : j - N) / ((double) dy * N);
+            fySq[j] = fy * fy;
+        }
+
+        kz = new double[M][N];
+        for (int i = 0; i < M; i++) {
+            double fx = (i < M / 2 ? i : i - M) / ((double) dx * M);
+            double c1 = cutoffSq - fx * fx;
+
+            for (int j = 0; j < N; j++) {
+                double root = c1 - fySq[j];
+                kz[i][j] = root < 0 ? 1 : Math.sqrt(root) - k0;
+            }
+        }
+
+        spectrum = new float[M][2 * N];
+        workspace = new float[M][2 * N];
+        coarse = new float[coarseM][2 * coarseN];
+        fft = new FloatFFT_2D(M, N);
+        coarseFft = new FloatFFT_2D(coarseM, coarseN);
+
+        full = new Reconstruction(workspace, frequencies(M, M), frequencies(N, N), fft);
+        low = new Reconstruction(coarse, frequencies(coarseM, M), frequencies(coarseN, N), coarseFft);
+    }
+
+    private static int coarseSize(int M, int decimation) {
+        if (decimation == 1 || M <= MIN_COARSE) {
+            return M;
+        }
+        return Math.min(M, FFTUtils.smoothSizeBelow(Math.max(MIN_COARSE, M / decimation)));
+    }
+
+    /**
+     * Index, on a spectrum of size {@code M}, of each frequency of a spectrum
+     * of size {@code size}, both in FFT order.
+     */
+    private static int[] frequencies(int size, int M) {
+        int[] index = new int[size];
+        for (int i = 0; i < size; i++) {
+            int k = i < size / 2 ? i : i - size;
+            index[i] = Math.floorMod(k, M);
+        }
+        return index;
+    }
+
+    /**
+     * Takes the field to focus. The field isn't modified; its spectrum is
+     * kept until the next call.
+     *
+     * @param field The complex field to focus.
+     */
+    public void setInput(float[][] field) {
+        if (M != field.length || 2 * N != field[0].length) {
+            throw new IllegalArgumentException("Array dimension must be " + M + " x " + 2 * N + ".");
+        }
+
+        for (int i = 0; i < M; i++) {
+            System.arraycopy(field[i], 0, spectrum[i], 0, 2 * N);
+        }
+        fft.complexForward(spectrum);
+
+        hasInput = true;
+    }
+
+    /**
+     * Finds the distance in {@code [zMin, zMax]} that optimizes the focus
+     * metric. The range is scanned with {@link #getCoarseSteps()} low
+     * resolution reconstructions. The interval of one step around the best
+     * of them is then checked at full resolution, and moved by whole steps
+     * while one of its ends is better than its center, so that it encloses
+     * the full resolution optimum; a golden-section search on full resolution
+     * reconstructions narrows it down to {@link #getTolerance()}, or to a
+     * thousandth of the range if the tolerance is 0.
+     *
+     * @param zMin Start of the range.
+     * @param zMax End of the range.
+     * @return the distance in focus
+     */
+    public float focus(float zMin, float zMax) {
+        checkInput();
+
+        double start = Math.min(zMin, zMax);
+        double end = Math.max(zMin, zMax);
+        double step = (end - start) / (coarseSteps - 1);
+
+        int best = 0;
+        double bestValue = Double.NEGATIVE_INFINITY;
+        for (int k = 0; k < coarseSteps; k++) {
+            double value = score(low, start + k * step);
+            if (value > bestValue) {
+                best = k;
+                bestValue = value;
+            }
+        }
+
+        //the optimum of the low resolution reconstructions can be a step or
+        //more away from the full resolution one
+        double center = start + best * step;
+        double a = Math.max(center - step, start);
+        double b = Math.min(center + step, end);
+        double valueA = a < center ? score(full, a) : Double.NEGATIVE_INFINITY;
+        double valueB = b > center ? score(full, b) : Double.NEGATIVE_INFINITY;
+        double valueCenter = score(full, center);
+
+        while (true) {
+            if (a < center && valueA > valueCenter) {
+                b = center;
+                center = a;
+                valueCenter = valueA;
+                a = Math.max(center - step, start);
+                valueA = a < center ? score(full, a) : Double.NEGATIVE_INFINITY;
+            } else if (b > center && valueB > valueCenter) {
+                a = center;
+                center = b;
+                valueCenter = valueB;
+                b = Math.min(center + step, end);
+                valueB = b > center ? score(full, b) : Double.NEGATIVE_INFINITY;
+            } else {
+                break;
+            }
+        }
+
+        //golden-section search on the enclosing interval
+        double tol = tolerance > 0 ? tolerance : (end - start) / 1000;
+        double c = b - GOLDEN * (b - a);
+        double d = a + GOLDEN * (b - a);
+        double valueC = score(full, c);
+        double valueD = score(full, d);
+
+        while (Math.abs(b - a) > tol) {
+            if (valueC > valueD) {
+                b = d;
+                d = c;
+                valueD = valueC;
+                c = b - GOLDEN * (b - a);
+                valueC = score(full, c);
+            } else {
+                a = c;
+                c = d;
+                valueC = valueD;
+                d = a + GOLDEN * (b - a);
+                valueD = score(full, d);
+            }
+        }
+
+        return (float) ((a + b) / 2);
+    }
+
+    /**
+     * Returns the focus metric of the full resolution reconstruction at
+     * {@code z}.
+     *
+     * @param z Distance.
+     * @return the focus metric
+     */
+    public double metric(float z) {
+        checkInput();
+        return full.evaluate(z);
+    }
+
+    private void checkInput() {
+        if (!hasInput) {
+            throw new IllegalStateException("No input field. Call setInput first.");
+        }
+    }
+
+    /**
+     * Metric at {@code z}, with the sign that makes the focus a maximum.
+     */
+    private double score(Reconstruction reconstruction, double z) {
+        double value = reconstruction.evaluate(z);
+        return minimize ? -value : value;
+    }
+
+    /**
+     * Reconstructions of a given size, with the tasks splitting their passes
+     * over the pool.
+     */
+    private final class Reconstruction {
+
+        private final float[][] image;
+        //row and column of the spectrum used by each point of the image
+        private final int[] rowIndex, columnIndex;
+        private final FloatFFT_2D plan;
+        private final Pass[] passes;
+        private final Split split;
+        //2 * pi * z of the current kernel pass
+        private double factor;
+
+        Reconstruction(float[][] image, int[] rowIndex, int[] columnIndex, FloatFFT_2D plan) {
+            this.image = image;
+            this.rowIndex = rowIndex;
+            this.columnIndex = columnIndex;
+            this.plan = plan;
+
+            //same partitioning as ParallelArrayUtils.forRows
+            int rows = image.length;
+            int parallelism = Math.max(1, ParallelArrayUtils.getPool().getParallelism());
+            int grain = Math.max((rows + 4 * parallelism - 1) / (4 * parallelism),
+                    Math.max(1, ParallelArrayUtils.getThreshold() / Math.max(1, columnIndex.length)));
+            int count = (rows + grain - 1) / grain;
+
+            passes = new Pass[count];
+            for (int p = 0; p < count; p++) {
+                passes[p] = new Pass(this, p * grain, Math.min(rows, (p + 1) * grain));
+            }
+            split = new Split(passes);
+        }
+
+        /**
+         * Reconstructs the image at {@code z}, from the lowest frequencies of
+         * the spectrum, and returns its focus metric.
+         */
+        double evaluate(double z) {
+            factor = 2 * Math.PI * z;
+            run(KERNEL);
+
+            //the metrics don't depend on the scale
+            plan.complexInverse(image, false);
+
+            run(METRIC);
+
+            double sum = 0;
+            double square = 0;
+            double gradient = 0;
+            for (Pass pass : passes) {
+                sum += pass.sum;
+                square += pass.square;
+                gradient += pass.gradient;
+            }
+
+            double points = (double) image.length * columnIndex.length;
+            double mean = sum / points;
+            double variance = Math.max(square / points - mean * mean, 0);
+
+            switch (metric) {
+                case GRADIENT:
+                    return gradient / points;
+                case VARIANCE:
+                    return variance;
+                default:
+                    return mean > 0 ? Math.sqrt(Math.sqrt(variance) / mean) : 0;
+            }
+        }
+
+        private void run(int stage) {
+            for (Pass pass : passes) {
+                pass.stage = stage;
+            }
+
+            if (passes.length == 1 || ParallelArrayUtils.getPool().getParallelism() < 2) {
+                for (Pass pass : passes) {
+                    pass.apply();
+                }
+            } else {
+                for (Pass pass : passes) {
+                    pass.reinitialize();
+                }
+                split.reinitialize();
+                ParallelArrayUtils.getPool().invoke(split);
+            }
+        }
+
+        /**
+         * Spectrum times the angular spectrum kernel, without the constant
+         * phase of the distance, for the rows {@code [from, to)}.
+         */
+        void kernel(int from, int to) {
+            int columns = columnIndex.length;
+
+            for (int i = from; i < to; i++) {
+                int row = rowIndex[i];
+                float[] source = spectrum[row];
+                double[] kzRow = kz[row];
+                float[] target = image[i];
+
+                for (int j = 0; j < columns; j++) {
+                    int column = columnIndex[j];
+                    double kernelPhase = kzRow[column];
+                    if (kernelPhase > 0) {
+                        target[2 * j] = 0;
+                        target[2 * j + 1] = 0;
+                        continue;
+                    }
+
+                    kernelPhase *= factor;
+                    float kernelReal = (float) Math.cos(kernelPhase);
+                    float kernelImaginary = (float) Math.sin(kernelPhase);
+                    float real = source[2 * column];
+                    float imaginary = source[2 * column + 1];
+
+                    target[2 * j] = (real * kernelReal) - (imaginary * kernelImaginary);
+                    target[2 * j + 1] = (real * kernelImaginary) + (imaginary * kernelReal);
+                }
+            }
+        }
+
+        /**
+         * Amplitude sums of the rows {@code [from, to)} and squared
+         * differences with their right and lower neighbours, left in
+         * {@code pass}. The amplitude of a row is kept for the vertical
+         * differences with the next one.
+         */
+        void metric(Pass pass, int from, int to) {
+            int rows = image.length;
+            int columns = columnIndex.length;
+            float[] current = pass.current;
+            float[] next = pass.next;
+            double sum = 0;
+            double square = 0;
+            double gradient = 0;
+
+            amplitude(image[from], current);
+
+            for (int i = from; i < to; i++) {
+                boolean last = i + 1 == rows;
+                if (!last) {
+                    amplitude(image[i + 1], next);
+                }
+
+                for (int j = 0; j < columns; j++) {
+                    double amplitude = current[j];
+                    sum += amplitude;
+                    square += amplitude * amplitude;
+
+                    if (j + 1 < columns) {
+                        double difference = current[j + 1] - amplitude;
+                        gradient += difference * difference;
+                    }
+                    if (!last) {
+                        double difference = next[j] - amplitude;
+                        gradient += difference * difference;
+                    }
+                }
+
+                float[] swap = current;
+                current = next;
+                next = swap;
+            }
+
+            pass.sum = sum;
+            pass.square = square;
+            pass.gradient = gradient;
+        }
+
+        private void amplitude(float[] row, float[] amplitude) {
+            for (int j = 0; j < amplitude.length; j++) {
+                float real = row[2 * j];
+                float imaginary = row[2 * j + 1];
+                amplitude[j] = (float) Math.sqrt(real * real + imaginary * imaginary);
+            }
+        }
+    }
+
+    /**
+     * A range of rows of a reconstruction, with the buffers and partial sums
+     * of the metric pass.
+     */
+    private static final class Pass extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient Reconstruction reconstruction;
+        private final int from, to;
+        private final float[] current, next;
+        private int stage;
+        private double sum, square, gradient;
+
+        Pass(Reconstruction reconstruction, int from, int to) {
+            this.reconstruction = reconstruction;
+            this.from = from;
+            this.to = to;
+            current = new float[reconstruction.columnIndex.length];
+            next = new float[reconstruction.columnIndex.length];
+        }
+
+        void apply() {
+            if (stage == KERNEL) {
+                reconstruction.kernel(from, to);
+            } else {
+                reconstruction.metric(this, from, to);
+            }
+        }
+
+        @Override
+        protected void compute() {
+            apply();
+        }
+    }
+
+    /**
+     * Runs all the passes of a reconstruction.
+     */
+    private static final class Split extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Pass[] passes;
+
+        Split(Pass[] passes) {
+            this.passes = passes;
+        }
+
+        @Override
+        protected void compute() {
+            invokeAll(passes);
+        }
+    }
+
+    /**
+     * Sets the focus metric: {@link #TAMURA}, the default, {@link #GRADIENT}
+     * or {@link #VARIANCE}.
+     *
+     * @param metric the metric
+     */
+    public void setMetric(int metric) {
+        if (metric != TAMURA && metric != GRADIENT && metric != VARIANCE) {
+            throw new IllegalArgumentException("Unknown metric: " + metric + ".");
+        }
+        this.metric = metric;
+    }
+
+    public int getMetric() {
+        return metric;
+    }
+
+    /**
+     * Sets whether the focus is the minimum of the metric, as for phase
+     * objects, instead of the maximum.
+     *
+     * @param minimize true to minimize the metric
+     */
+    public void setMinimize(boolean minimize) {
+        this.minimize = minimize;
+    }
+
+    public boolean isMinimize() {
+        return minimize;
+    }
+
+    /**
+     * Sets the number of distances of the low resolution scan, 32 by default.
+     *
+     * @param coarseSteps number of distances, at least 3
+     */
+    public void setCoarseSteps(int coarseSteps) {
+        if (coarseSteps < 3) {
+            throw new IllegalArgumentException("The scan needs at least 3 steps.");
+        }
+        this.coarseSteps = coarseSteps;
+    }
+
+    public int getCoarseSteps() {
+        return coarseSteps;
+    }
+
+    /**
+     * Sets the width of the final interval of the search. With 0, the
+     * default, it is a thousandth of the range.
+     *
+     * @param tolerance width of the final interval
+     */
+    public void setTolerance(float tolerance) {
+        if (tolerance < 0) {
+            throw new IllegalArgumentException("The tolerance can't be negative.");
+        }
+        this.tolerance = tolerance;
+    }
+
+    public float getTolerance() {
+        return tolerance;
+    }
+
+    public int getM() {
+        return M;
+    }
+
+    public int getN() {
+        return N;
+    }
+
+    public int getCoarseM() {
+        return coarseM;
+    }
+
+    public int getCoarseN() {
+        return coarseN;
+    }
+
+    public float getLambda() {
+        return lambda;
+    }
+
+    public float getDx() {
+        return dx;
+    }
+
+    public float getDy() {
+        return dy;
+    }
+
+}
@@ -0,0 +1,418 @@
+/*
+ * Copyright 2016 Universidad Nacional de Colombia
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package unal.od.jdiffraction.cpu;
+
+import org.jtransforms.fft.FloatFFT_2D;
+import unal.od.jdiffraction.cpu.utils.ArrayUtils;
+import unal.od.jdiffraction.cpu.utils.ParallelArrayUtils;
+
+/**
+ * Computes wave diffraction through
+ * <a href="http://dx.doi.org/10.1364/AO.49.006430" target="_blank">Fresnel-Bluestein</a>
+ * method with single precision, storing only one quadrant of the kernels.
+ * For even sizes, the kernels take a fourth of the memory used by
+ * {@link FloatFresnelBluestein}; for odd sizes the spectrum of the chirp is kept
+ * whole, so they take half. Results are the same as the ones of
+ * {@link FloatFresnelBluestein}, up to rounding of the mirrored frequencies.
+ *
+ * @author Pablo Piedrahita-Quintero (jppiedrahitaq@unal.edu.co)
+ * @author Carlos Trujillo (catrujila@unal.edu.co)
+ * @author Jorge Garcia-Sucerquia (jigarcia@unal.edu.co)
+ *
+ * @since JDiffraction 1.3
+ */
+public class FloatFresnelBluesteinCompact extends FloatPropagator {
+
+    private final int M, N;
+    private final float z, lambda, dx, dy, dxOut, dyOut;
+    private final float[][] kernel1, kernel2, outputPhase;
+    private final float[] rowTwiddle, columnTwiddle;
+    private final QuadrantIndex index;
+    private final FloatFFT_2D fft;
+    //JTransforms plans keep state during a transform, so each thread of a
+    //batch needs its own
+    private final ThreadLocal<FloatSequentialFFT> sequentialFft = new ThreadLocal<FloatSequentialFFT>();
+    private final boolean fused;
+
+    /**
+     * Creates a new instance of FloatFresnelBluesteinCompact. Also performs kernel
+     * calculations.
+     *
+     * @param M Number of data points on x direction.
+     * @param N Number of data points on y direction.
+     * @param lambda Wavelength.
+     * @param z Distance.
+     * @param dx Sampling pitch on x direction.
+     * @param dy Sampling pitch on y direction.
+     * @param dxOut X pitch on the output field.
+     * @param dyOut Y pitch on the output field.
+     */
+    public FloatFresnelBluesteinCompact(int M, int N, float lambda, float z, float dx,
+            float dy, float dxOut, float dyOut) {
+
+        this.M = M;
+        this.N = N;
+        this.lambda = lambda;
+        this.dx = dx;
+        this.dy = dy;
+        this.dxOut = dxOut;
+        this.dyOut = dyOut;
+        this.z = z;
+
+        kernel1 = new float[QuadrantIndex.size(M)][2 * QuadrantIndex.size(N)];
+        outputPhase = new float[QuadrantIndex.size(M)][2 * QuadrantIndex.size(N)];
+        float[][] chirp = new float[QuadrantIndex.size(M)][2 * QuadrantIndex.size(N)];
+        fft = new FloatFFT_2D(M, N);
+
+        calculateKernels(chirp);
+
+        index = QuadrantIndex.centered(M, N);
+
+        float[][] spectrum = new float[M][2 * N];
+        index.expand(chirp, spectrum);
+        fft.complexForward(spectrum);
+
+        //for even sizes, complexShift after the inverse FFT is the same as a
+        //(-1)^(i + j) modulation of the spectrum. The chirp is then mirror
+        //symmetric, so its spectrum is kept for the frequencies [0, M / 2] x
+        //[0, N / 2] only; odd sizes keep the whole spectrum
+        fused = M % 2 == 0 && N % 2 == 0;
+        if (fused) {
+            kernel2 = new float[M / 2 + 1][N + 2];
+            for (int i = 0; i <= M / 2; i++) {
+                System.arraycopy(spectrum[i], 0, kernel2[i], 0, N + 2);
+            }
+            rowTwiddle = twiddle(M);
+            columnTwiddle = twiddle(N);
+        } else {
+            kernel2 = spectrum;
+            rowTwiddle = columnTwiddle = null;
+        }
+    }
+
+    /**
+     * Creates a new instance of FloatFresnelBluesteinCompact that shares the
+     * kernels of {@code other} but has its own FFT plans.
+     *
+     * @param other Propagator whose kernels are shared.
+     */
+    FloatFresnelBluesteinCompact(FloatFresnelBluesteinCompact other) {
+        M = other.M;
+        N = other.N;
+        z = other.z;
+        lambda = other.lambda;
+        dx = other.dx;
+        dy = other.dy;
+        dxOut = other.dxOut;
+        dyOut = other.dyOut;
+        kernel1 = other.kernel1;
+        kernel2 = other.kernel2;
+        outputPhase = other.outputPhase;
+        rowTwiddle = other.rowTwiddle;
+        columnTwiddle = other.columnTwiddle;
+        index = other.index;
+        fft = new FloatFFT_2D(M, N);
+        fused = other.fused;
+    }
+
+    private void calculateKernels(float[][] chirp) {
+        int M2, N2;
+        float factor, factor2, factor3, kernelFactorX1, kernelFactorX2,
+                kernelFactorY1, kernelFactorY2, outputFactorX, outputFactorY;
+
+        M2 = M / 2;
+        N2 = N / 2;
+
+        factor = (float) Math.PI / (lambda * z);
+        factor2 = (float) Math.PI * 2 * z / lambda;
+        factor3 = lambda * z;
+
+        kernelFactorX1 = dx * (dx - dxOut);
+        kernelFactorY1 = dy * (dy - dyOut);
+        kernelFactorX2 = dx * dxOut;
+        kernelFactorY2 = dy * dyOut;
+
+        outputFactorX = dxOut * (dx - dxOut);
+        outputFactorY = dyOut * (dy - dyOut);
+
+        for (int i = 0; i < M2; i++) {
+            int i2 = i - M2 + 1;
+            float c1 = i2 * i2 * kernelFactorX1;
+            float c2 = i2 * i2 * kernelFactorX2;
+            float p1 = i2 * i2 * outputFactorX;
+
+            for (int j = 0; j < N2; j++) {
+                int j2 = j - N2 + 1;
+                float c3 = j2 * j2 * kernelFactorY1;
+                float c4 = j2 * j2 * kernelFactorY2;
+                float p2 = j2 * j2 * outputFactorY;
+
+                float kernelPhase1, kernelPhase2, phase;
+
+                kernelPhase1 = factor * (c1 + c3);
+                kernelPhase2 = factor * (c2 + c4);
+
+                kernel1[i][2 * j] = (float) Math.cos(kernelPhase1);
+                kernel1[i][2 * j + 1] = (float) Math.sin(kernelPhase1);
+
+                chirp[i][2 * j] = (float) Math.cos(kernelPhase2);
+                chirp[i][2 * j + 1] = (float) Math.sin(kernelPhase2);
+
+                phase = -factor * (p1 + p2);
+
+                outputPhase[i][2 * j] = (float) Math.sin(factor2 + phase) / factor3;
+                outputPhase[i][2 * j + 1] = (float) -Math.cos(factor2 + phase) / factor3;
+            }
+        }
+
+        if (M % 2 != 0) {
+            int i2 = M - M2 + 1;
+            float c1 = i2 * i2 * kernelFactorX1;
+            float c2 = i2 * i2 * kernelFactorX2;
+            float p1 = i2 * i2 * outputFactorX;
+
+            for (int j = 0; j < N2; j++) {
+                int j2 = j - N2 + 1;
+                float c3 = j2 * j2 * kernelFactorY1;
+                float c4 = j2 * j2 * kernelFactorY2;
+                float p2 = j2 * j2 * outputFactorY;
+
+                float kernelPhase1, kernelPhase2, phase;
+
+                kernelPhase1 = factor * (c1 + c3);
+                kernelPhase2 = factor * (c2 + c4);
+
+                kernel1[M2][2 * j] = (float) Math.cos(kernelPhase1);
+                kernel1[M2][2 * j + 1] = (float) Math.sin(kernelPhase1);
+
+                chirp[M2][2 * j] = (float) Math.cos(kernelPhase2);
+                chirp[M2][2 * j + 1] = (float) Math.sin(kernelPhase2);
+
+                phase = -factor * (p1 + p2);
+
+                outputPhase[M2][2 * j] = (float) Math.sin(factor2 + phase) / factor3;
+                outputPhase[M2][2 * j + 1] = (float) -Math.cos(factor2 + phase) / factor3;
+            }
+        }
+
+        if (N % 2 != 0) {
+            int j2 = N - N2 + 1;
+            float c1 = j2 * j2 * kernelFactorY1;
+            float c2 = j2 * j2 * kernelFactorY2;
+            float p1 = j2 * j2 * outputFactorY;
+
+            //same rows as in the full kernel
+            for (int i = 0; i < Math.min(M2, N2); i++) {
+                int i2 = M - M2 + 1;
+                float c3 = i2 * i2 * kernelFactorX1;
+                float c4 = i2 * i2 * kernelFactorX2;
+                float p2 = i2 * i2 * outputFactorX;
+
+                float kernelPhase1, kernelPhase2, phase;
+
+                kernelPhase1 = factor * (c1 + c3);
+                kernelPhase2 = factor * (c2 + c4);
+
+                kernel1[i][2 * N2] = (float) Math.cos(kernelPhase1);
+                kernel1[i][2 * N2 + 1] = (float) Math.sin(kernelPhase1);
+
+                chirp[i][2 * N2] = (float) Math.cos(kernelPhase2);
+                chirp[i][2 * N2 + 1] = (float) Math.sin(kernelPhase2);
+
+                phase = -factor * (p1 + p2);
+
+                outputPhase[i][2 * N2] = (float) Math.sin(factor2 + phase) / factor3;
+                outputPhase[i][2 * N2 + 1] = (float) -Math.cos(factor2 + phase) / factor3;
+            }
+        }
+
+        if (M % 2 != 0 && N % 2 != 0) {
+            int i2 = M - M2 + 1;
+            int j2 = N - N2 + 1;
+
+            float c1 = j2 * j2 * kernelFactorY1;
+            float c2 = j2 * j2 * kernelFactorY2;
+            float p1 = j2 * j2 * outputFactorY;
+
+            float c3 = i2 * i2 * kernelFactorX1;
+            float c4 = i2 * i2 * kernelFactorX2;
+            float p2 = i2 * i2 * outputFactorX;
+
+            float kernelPhase1, kernelPhase2, phase;
+
+            kernelPhase1 = factor * (c1 + c3);
+            kernelPhase2 = factor * (c2 + c4);
+
+            kernel1[M2][2 * N2] = (float) Math.cos(kernelPhase1);
+            kernel1[M2][2 * N2 + 1] = (float) Math.sin(kernelPhase1);
+
+            chirp[M2][2 * N2] = (float) Math.cos(kernelPhase2);
+            chirp[M2][2 * N2 + 1] = (float) Math.sin(kernelPhase2);
+
+            phase = -factor * (p1 + p2);
+
+            outputPhase[M2][2 * N2] = (float) Math.sin(factor2 + phase) / factor3;
+            outputPhase[M2][2 * N2 + 1] = (float) -Math.cos(factor2 + phase) / factor3;
+        }
+    }
+
+    /**
+     * Phase factors relating the mirrored frequencies of a symmetric chirp,
+     * X[k] = exp(2 * pi * i * k / M) * X[M - k] for k &gt; M / 2, times the
+     * (-1)^k modulation that replaces complexShift.
+     */
+    private static float[] twiddle(int M) {
+        float[] twiddle = new float[2 * M];
+
+        for (int k = 0; k < M; k++) {
+            double sign = k % 2 == 0 ? 1 : -1;
+
+            if (k <= M / 2) {
+                twiddle[2 * k] = (float) sign;
+            } else {
+                double angle = 2 * Math.PI * k / M;
+                twiddle[2 * k] = (float) (sign * Math.cos(angle));
+                twiddle[2 * k + 1] = (float) (sign * Math.sin(angle));
+            }
+        }
+        return twiddle;
+    }
+
+    /**
+     * Multiplies the spectrum of the field by the spectrum of the chirp,
+     * rebuilding the mirrored frequencies from the stored quadrant.
+     */
+    private void multiplySpectrum(final float[][] field, boolean parallel) {
+        ParallelArrayUtils.RowRange range = new ParallelArrayUtils.RowRange() {
+            @Override
+            public void apply(int from, int to) {
+                int M2 = M / 2;
+                int N2 = N / 2;
+
+                for (int i = from; i < to; i++) {
+                    float[] row = field[i];
+                    float[] kernelRow = kernel2[i <= M2 ? i : M - i];
+                    float rowReal = rowTwiddle[2 * i];
+                    float rowImaginary = rowTwiddle[2 * i + 1];
+
+                    for (int j = 0; j < N; j++) {
+                        int j2 = j <= N2 ? j : N - j;
+                        float twiddleReal = (rowReal * columnTwiddle[2 * j]) - (rowImaginary * columnTwiddle[2 * j + 1]);
+                        float twiddleImaginary = (rowReal * columnTwiddle[2 * j + 1]) + (rowImaginary * columnTwiddle[2 * j]);
+
+                        float kernelReal = (kernelRow[2 * j2] * twiddleReal) - (kernelRow[2 * j2 + 1] * twiddleImaginary);
+                        float kernelImaginary = (kernelRow[2 * j2] * twiddleImaginary) + (kernelRow[2 * j2 + 1] * twiddleReal);
+                        float real = row[2 * j];
+                        float imaginary = row[2 * j + 1];
+
+                        row[2 * j] = (real * kernelReal) - (imaginary * kernelImaginary);
+                        row[2 * j + 1] = (real * kernelImaginary) + (imaginary * kernelReal);
+                    }
+                }
+            }
+        };
+
+        if (parallel) {
+            ParallelArrayUtils.forRows(M, N, range);
+        } else {
+            range.apply(0, M);
+        }
+    }
+
+    @Override
+    public void diffract(float[][] field) {
+        if (M != field.length || 2 * N != field[0].length) {
+            throw new IllegalArgumentException("Array dimension must be " + M + " x " + 2 * N + ".");
+        }
+
+        index.multiply(field, kernel1, 0, true);
+        fft.complexForward(field);
+        if (fused) {
+            multiplySpectrum(field, true);
+        } else {
+            ParallelArrayUtils.complexMultiplication2(field, kernel2);
+        }
+        fft.complexInverse(field, true);
+        if (!fused) {
+            ParallelArrayUtils.complexShift(field);
+        }
+        index.multiply(field, outputPhase, 0, true);
+    }
+
+    @Override
+    protected void diffractSequential(float[][] field) {
+        if (M != field.length || 2 * N != field[0].length) {
+            throw new IllegalArgumentException("Array dimension must be " + M + " x " + 2 * N + ".");
+        }
+
+        FloatSequentialFFT plan = sequentialFFT();
+
+        index.multiply(field, kernel1, 0, false);
+        plan.complexForward(field);
+        if (fused) {
+            multiplySpectrum(field, false);
+        } else {
+            ArrayUtils.complexMultiplication2(field, kernel2);
+        }
+        plan.complexInverse(field, true);
+        if (!fused) {
+            ArrayUtils.complexShift(field);
+        }
+        index.multiply(field, outputPhase, 0, false);
+    }
+
+    private FloatSequentialFFT sequentialFFT() {
+        FloatSequentialFFT plan = sequentialFft.get();
+        if (plan == null) {
+            plan = FFTUtils.singleThreadedFloat(M, N);
+            sequentialFft.set(plan);
+        }
+        return plan;
+    }
+
+    public int getM() {
+        return M;
+    }
+
+    public int getN() {
+        return N;
+    }
+
+    public float getZ() {
+        return z;
+    }
+
+    public float getLambda() {
+        return lambda;
+    }
+
+    public float getDx() {
+        return dx;
+    }
+
+    public float getDy() {
+        return dy;
+    }
+
+    public float getDxOut() {
+        return dxOut;
+    }
+
+    public float getDyOut() {
+        return dyOut;
+    }
+
+}
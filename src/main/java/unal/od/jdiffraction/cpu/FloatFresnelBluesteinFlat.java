@@ -0,0 +1,187 @@
+/*
+ * Copyright 2016 Universidad Nacional de Colombia
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package unal.od.jdiffraction.cpu;
+
+import org.jtransforms.fft.FloatFFT_2D;
+import unal.od.jdiffraction.cpu.utils.ArrayUtils;
+import unal.od.jdiffraction.cpu.utils.ParallelArrayUtils;
+
+/**
+ * Computes wave diffraction through
+ * <a href="http://dx.doi.org/10.1364/AO.49.006430" target="_blank">Fresnel-Bluestein</a>
+ * method
+ *
+ * with single precision.
+ * <p>
+ * Works directly on complex data stored in a 1D array, see
+ * {@link FloatPropagatorFlat}.
+ *
+ * @author Pablo Piedrahita-Quintero (jppiedrahitaq@unal.edu.co)
+ * @author Carlos Trujillo (catrujila@unal.edu.co)
+ * @author Jorge Garcia-Sucerquia (jigarcia@unal.edu.co)
+ *
+ * @since JDiffraction 1.3
+ */
+public class FloatFresnelBluesteinFlat extends FloatPropagatorFlat {
+
+    private final int M, N;
+    private final float z, lambda, dx, dy, dxOut, dyOut;
+    private final float[] kernel1, kernel2, outputPhase;
+    private final FloatFFT_2D fft;
+    //JTransforms plans keep state during a transform, so each thread of a
+    //batch needs its own
+    private final ThreadLocal<FloatSequentialFFT> sequentialFft = new ThreadLocal<FloatSequentialFFT>();
+    private final boolean fused;
+
+    /**
+     * Creates a new instance of FloatFresnelBluesteinFlat. Also performs kernel
+     * calculations.
+     *
+     * @param M Number of data points on x direction.
+     * @param N Number of data points on y direction.
+     * @param lambda Wavelength.
+     * @param z Distance.
+     * @param dx Sampling pitch on x direction.
+     * @param dy Sampling pitch on y direction.
+     * @param dxOut X pitch on the output field.
+     * @param dyOut Y pitch on the output field.
+     */
+    public FloatFresnelBluesteinFlat(int M, int N, float lambda, float z, float dx,
+            float dy, float dxOut, float dyOut) {
+
+        this.M = M;
+        this.N = N;
+        this.lambda = lambda;
+        this.dx = dx;
+        this.dy = dy;
+        this.dxOut = dxOut;
+        this.dyOut = dyOut;
+        this.z = z;
+
+        kernel1 = new float[M * 2 * N];
+        kernel2 = new float[M * 2 * N];
+        outputPhase = new float[M * 2 * N];
+        fft = new FloatFFT_2D(M, N);
+
+        //the kernels are the ones of FloatFresnelBluestein, laid out in 1D arrays
+        FloatFresnelBluestein kernels = new FloatFresnelBluestein(M, N, lambda, z, dx, dy, dxOut, dyOut);
+        ArrayUtils.matrixToVectorArray(M, 2 * N, kernels.getKernel1(), kernel1);
+        ArrayUtils.matrixToVectorArray(M, 2 * N, kernels.getKernel2(), kernel2);
+        ArrayUtils.matrixToVectorArray(M, 2 * N, kernels.getOutputPhase(), outputPhase);
+
+        //for even sizes, FloatFresnelBluestein folds complexShift after the
+        //inverse FFT into kernel2
+        fused = M % 2 == 0 && N % 2 == 0;
+    }
+
+    /**
+     * Creates a new instance of FloatFresnelBluesteinFlat that shares the
+     * kernels of {@code other} but has its own FFT plans.
+     *
+     * @param other Propagator whose kernels are shared.
+     */
+    FloatFresnelBluesteinFlat(FloatFresnelBluesteinFlat other) {
+        M = other.M;
+        N = other.N;
+        z = other.z;
+        lambda = other.lambda;
+        dx = other.dx;
+        dy = other.dy;
+        dxOut = other.dxOut;
+        dyOut = other.dyOut;
+        kernel1 = other.kernel1;
+        kernel2 = other.kernel2;
+        outputPhase = other.outputPhase;
+        fft = new FloatFFT_2D(M, N);
+        fused = other.fused;
+    }
+
+    @Override
+    public void diffract(float[] field) {
+        if (field.length != M * 2 * N) {
+            throw new IllegalArgumentException("Array dimension must be " + M * 2 * N + ".");
+        }
+
+        ParallelArrayUtils.complexMultiplication2(M, N, field, kernel1);
+        fft.complexForward(field);
+        ParallelArrayUtils.complexMultiplication2(M, N, field, kernel2);
+        fft.complexInverse(field, true);
+        if (!fused) {
+            ParallelArrayUtils.complexShift(M, N, field);
+        }
+        ParallelArrayUtils.complexMultiplication2(M, N, field, outputPhase);
+    }
+
+    @Override
+    protected void diffractSequential(float[] field) {
+        if (field.length != M * 2 * N) {
+            throw new IllegalArgumentException("Array dimension must be " + M * 2 * N + ".");
+        }
+
+        FloatSequentialFFT plan = sequentialFFT();
+
+        ArrayUtils.complexMultiplication2(M, N, field, kernel1);
+        plan.complexForward(field);
+        ArrayUtils.complexMultiplication2(M, N, field, kernel2);
+        plan.complexInverse(field, true);
+        if (!fused) {
+            ArrayUtils.complexShift(M, N, field);
+        }
+        ArrayUtils.complexMultiplication2(M, N, field, outputPhase);
+    }
+
+    private FloatSequentialFFT sequentialFFT() {
+        FloatSequentialFFT plan = sequentialFft.get();
+        if (plan == null) {
+            plan = FFTUtils.singleThreadedFloat(M, N);
+            sequentialFft.set(plan);
+        }
+        return plan;
+    }
+
+    public int getM() {
+        return M;
+    }
+
+    public int getN() {
+        return N;
+    }
+
+    public float getZ() {
+        return z;
+    }
+
+    public float getLambda() {
+        return lambda;
+    }
+
+    public float getDx() {
+        return dx;
+    }
+
+    public float getDy() {
+        return dy;
+    }
+
+    public float getDxOut() {
+        return dxOut;
+    }
+
+    public float getDyOut() {
+        return dyOut;
+    }
+
+}
@@ -0,0 +1,417 @@
+/*
+ * Copyright 2016 Universidad Nacional de Colombia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package unal.od.jdiffraction.cpu;
+
+import java.util.Arrays;
+import org.jtransforms.fft.DoubleFFT_1D;
+import org.jtransforms.fft.FloatFFT_1D;
+import unal.od.jdiffraction.cpu.utils.ArrayUtils;
+import unal.od.jdiffraction.cpu.utils.ParallelArrayUtils;
+
+/**
+ * Computes wave diffraction through
+ * <a href="http://dx.doi.org/10.1364/AO.49.006430" target="_blank">Fresnel-Bluestein</a>
+ * method with single precision, doing the chirp convolution as a linear
+ * convolution. {@link FloatFresnelBluestein} convolves on the M x N grid, so
+ * the chirp wraps around the borders; here the grid is padded to at least
+ * (2M - 1) x (2N - 1), by default the smallest 2-3-5-7 smooth sizes so the
+ * FFTs stay on the fast JTransforms paths.
+ * <p>
+ * Input and output coordinates are centered on {@code (M / 2, N / 2)}. The
+ * kernels are separable and stored as row and column factors, including the
+ * spectrum of the chirp, which is calculated once per instance. The FFTs are
+ * done by rows and columns, pruned as in
+ * {@link FloatAngularSpectrumPadded}: only the rows holding the field are
+ * transformed forward and only the M x N output window is transformed back.
+ * <p>
+ * The output window can be shifted laterally by {@code (xOffset, yOffset)}
+ * to reconstruct an off-axis region of interest without padding the field up
+ * to it. The shift adds a linear phase to the input factors and moves the
+ * coordinates of the output factors, so the cost is the same.
+ *
+ * @author Pablo Piedrahita-Quintero (jppiedrahitaq@unal.edu.co)
+ * @author Carlos Trujillo (catrujila@unal.edu.co)
+ * @author Jorge Garcia-Sucerquia (jigarcia@unal.edu.co)
+ *
+ * @since JDiffraction 1.3
+ */
+public class FloatFresnelBluesteinPadded extends FloatPropagator {
+
+    private final int M, N, paddedM, paddedN;
+    private final float z, lambda, dx, dy, dxOut, dyOut, xOffset, yOffset;
+    private final float[] kernelRows, kernelColumns, chirpRows, chirpColumns,
+            outputRows, outputColumns;
+    private final FloatFFT_1D rowFft, columnFft;
+    //M x 2 * paddedN rows of the padded field, one per thread
+    private final ThreadLocal<float[][]> workspace = new ThreadLocal<float[][]>();
+
+    /**
+     * Creates a new instance of FloatFresnelBluesteinPadded, padding to the
+     * smallest 2-3-5-7 smooth sizes of at least (2M - 1) x (2N - 1). Also
+     * performs kernel calculations.
+     *
+     * @param M Number of data points on x direction.
+     * @param N Number of data points on y direction.
+     * @param lambda Wavelength.
+     * @param z Distance.
+     * @param dx Sampling pitch on x direction.
+     * @param dy Sampling pitch on y direction.
+     * @param dxOut X pitch on the output field.
+     * @param dyOut Y pitch on the output field.
+     */
+    public FloatFresnelBluesteinPadded(int M, int N, float lambda, float z, float dx,
+            float dy, float dxOut, float dyOut) {
+
+        this(M, N, FFTUtils.smoothSize(2 * M - 1), FFTUtils.smoothSize(2 * N - 1), lambda, z,
+                dx, dy, dxOut, dyOut);
+    }
+
+    /**
+     * Creates a new instance of FloatFresnelBluesteinPadded. Also performs
+     * kernel calculations.
+     *
+     * @param M Number of data points on x direction.
+     * @param N Number of data points on y direction.
+     * @param paddedM Number of data points on x direction after padding.
+     * @param paddedN Number of data points on y direction after padding.
+     * @param lambda Wavelength.
+     * @param z Distance.
+     * @param dx Sampling pitch on x direction.
+     * @param dy Sampling pitch on y direction.
+     * @param dxOut X pitch on the output field.
+     * @param dyOut Y pitch on the output field.
+     */
+    public FloatFresnelBluesteinPadded(int M, int N, int paddedM, int paddedN, float lambda,
+            float z, float dx, float dy, float dxOut, float dyOut) {
+
+        this(M, N, paddedM, paddedN, lambda, z, dx, dy, dxOut, dyOut, 0, 0);
+    }
+
+    /**
+     * Creates a new instance of FloatFresnelBluesteinPadded with the output
+     * window centered on {@code (xOffset, yOffset)}, padding to the smallest
+     * 2-3-5-7 smooth sizes of at least (2M - 1) x (2N - 1). Also performs
+     * kernel calculations.
+     *
+     * @param M Number of data points on x direction.
+     * @param N Number of data points on y direction.
+     * @param lambda Wavelength.
+     * @param z Distance.
+     * @param dx Sampling pitch on x direction.
+     * @param dy Sampling pitch on y direction.
+     * @param dxOut X pitch on the output field.
+     * @param dyOut Y pitch on the output field.
+     * @param xOffset Shift of the output window on x direction.
+     * @param yOffset Shift of the output window on y direction.
+     */
+    public FloatFresnelBluesteinPadded(int M, int N, float lambda, float z, float dx, float dy,
+            float dxOut, float dyOut, float xOffset, float yOffset) {
+
+        this(M, N, FFTUtils.smoothSize(2 * M - 1), FFTUtils.smoothSize(2 * N - 1), lambda, z,
+                dx, dy, dxOut, dyOut, xOffset, yOffset);
+    }
+
+    /**
+     * Creates a new instance of FloatFresnelBluesteinPadded. Also performs
+     * kernel calculations. The output window is centered on
+     * {@code (xOffset, yOffset)}.
+     *
+     * @param M Number of data points on x direction.
+     * @param N Number of data points on y direction.
+     * @param paddedM Number of data points on x direction after padding.
+     * @param paddedN Number of data points on y direction after padding.
+     * @param lambda Wavelength.
+     * @param z Distance.
+     * @param dx Sampling pitch on x direction.
+     * @param dy Sampling pitch on y direction.
+     * @param dxOut X pitch on the output field.
+     * @param dyOut Y pitch on the output field.
+     * @param xOffset Shift of the output window on x direction.
+     * @param yOffset Shift of the output window on y direction.
+     */
+    public FloatFresnelBluesteinPadded(int M, int N, int paddedM, int paddedN, float lambda,
+            float z, float dx, float dy, float dxOut, float dyOut, float xOffset, float yOffset) {
+
+        if (paddedM < 2 * M - 1 || paddedN < 2 * N - 1) {
+            throw new IllegalArgumentException("Padded dimensions must be at least " + (2 * M - 1)
+                    + " x " + (2 * N - 1) + ".");
+        }
+
+        this.M = M;
+        this.N = N;
+        this.paddedM = paddedM;
+        this.paddedN = paddedN;
+        this.lambda = lambda;
+        this.dx = dx;
+        this.dy = dy;
+        this.dxOut = dxOut;
+        this.dyOut = dyOut;
+        this.xOffset = xOffset;
+        this.yOffset = yOffset;
+        this.z = z;
+
+        kernelRows = new float[2 * M];
+        kernelColumns = new float[2 * N];
+        chirpRows = new float[2 * paddedM];
+        chirpColumns = new float[2 * paddedN];
+        outputRows = new float[2 * M];
+        outputColumns = new float[2 * N];
+        rowFft = new FloatFFT_1D(paddedN);
+        columnFft = new FloatFFT_1D(paddedM);
+
+        calculateKernels();
+    }
+
+    /**
+     * Creates a new instance of FloatFresnelBluesteinPadded that shares the
+     * kernels and the one-dimensional FFT plans of {@code other}.
+     *
+     * @param other Propagator whose kernels are shared.
+     */
+    FloatFresnelBluesteinPadded(FloatFresnelBluesteinPadded other) {
+        M = other.M;
+        N = other.N;
+        paddedM = other.paddedM;
+        paddedN = other.paddedN;
+        z = other.z;
+        lambda = other.lambda;
+        dx = other.dx;
+        dy = other.dy;
+        dxOut = other.dxOut;
+        dyOut = other.dyOut;
+        xOffset = other.xOffset;
+        yOffset = other.yOffset;
+        kernelRows = other.kernelRows;
+        kernelColumns = other.kernelColumns;
+        chirpRows = other.chirpRows;
+        chirpColumns = other.chirpColumns;
+        outputRows = other.outputRows;
+        outputColumns = other.outputColumns;
+        rowFft = other.rowFft;
+        columnFft = other.columnFft;
+    }
+
+    private void calculateKernels() {
+        double factor, factor2, factor3;
+
+        factor = Math.PI / ((double) lambda * z);
+        factor2 = Math.PI * 2 * z / lambda;
+        factor3 = (double) lambda * z;
+
+        //the constant factors of the output phase go with the rows; the
+        //shift adds a linear phase on the input and moves the output
+        //coordinates
+        for (int i = 0; i < M; i++) {
+            double x = i - M / 2;
+            double phase;
+
+            phase = factor * dx * (dx - dxOut) * x * x - 2 * factor * xOffset * dx * x;
+            kernelRows[2 * i] = (float) Math.cos(phase);
+            kernelRows[2 * i + 1] = (float) Math.sin(phase);
+
+            phase = factor2 - factor * dxOut * (dx - dxOut) * x * x
+                    + factor * xOffset * (xOffset + 2 * dxOut * x);
+            outputRows[2 * i] = (float) (Math.sin(phase) / factor3);
+            outputRows[2 * i + 1] = (float) (-Math.cos(phase) / factor3);
+        }
+
+        for (int j = 0; j < N; j++) {
+            double y = j - N / 2;
+            double phase;
+
+            phase = factor * dy * (dy - dyOut) * y * y - 2 * factor * yOffset * dy * y;
+            kernelColumns[2 * j] = (float) Math.cos(phase);
+            kernelColumns[2 * j + 1] = (float) Math.sin(phase);
+
+            phase = -factor * dyOut * (dy - dyOut) * y * y
+                    + factor * yOffset * (yOffset + 2 * dyOut * y);
+            outputColumns[2 * j] = (float) Math.cos(phase);
+            outputColumns[2 * j + 1] = (float) Math.sin(phase);
+        }
+
+        chirpSpectrum(M, paddedM, factor * dx * dxOut, chirpRows);
+        chirpSpectrum(N, paddedN, factor * dy * dyOut, chirpColumns);
+    }
+
+    /**
+     * Writes the FFT of exp(i * a * k^2) for the lags {@code -M < k < M},
+     * with the negative lags wrapped to the end of the padded length.
+     */
+    private static void chirpSpectrum(int M, int paddedM, double a, float[] spectrum) {
+        double[] chirp = new double[2 * paddedM];
+
+        for (int k = 0; k < M; k++) {
+            double phase = a * k * k;
+            chirp[2 * k] = Math.cos(phase);
+            chirp[2 * k + 1] = Math.sin(phase);
+
+            if (k > 0) {
+                chirp[2 * (paddedM - k)] = chirp[2 * k];
+                chirp[2 * (paddedM - k) + 1] = chirp[2 * k + 1];
+            }
+        }
+
+        new DoubleFFT_1D(paddedM).complexForward(chirp);
+
+        for (int k = 0; k < 2 * paddedM; k++) {
+            spectrum[k] = (float) chirp[k];
+        }
+    }
+
+    @Override
+    public void diffract(float[][] field) {
+        if (M != field.length || 2 * N != field[0].length) {
+            throw new IllegalArgumentException("Array dimension must be " + M + " x " + 2 * N + ".");
+        }
+
+        propagate(field, true);
+    }
+
+    @Override
+    protected void diffractSequential(float[][] field) {
+        if (M != field.length || 2 * N != field[0].length) {
+            throw new IllegalArgumentException("Array dimension must be " + M + " x " + 2 * N + ".");
+        }
+
+        propagate(field, false);
+    }
+
+    private void propagate(final float[][] field, boolean parallel) {
+        final float[][] rows = workspace();
+
+        SeparableKernel.multiply(field, kernelRows, kernelColumns, parallel);
+
+        //forward FFT of the rows holding the field, times the column factor of
+        //the chirp spectrum
+        run(M, paddedN, parallel, new ParallelArrayUtils.RowRange() {
+            @Override
+            public void apply(int from, int to) {
+                for (int i = from; i < to; i++) {
+                    System.arraycopy(field[i], 0, rows[i], 0, 2 * N);
+                    Arrays.fill(rows[i], 2 * N, 2 * paddedN, 0);
+                    rowFft.complexForward(rows[i]);
+                    ArrayUtils.complexMultiplication2(1, paddedN, rows[i], chirpColumns);
+                }
+            }
+        });
+
+        //forward FFT, row factor of the chirp spectrum and inverse FFT of each
+        //column; only the first M values of a column are non zero before the
+        //FFT and needed after it
+        run(paddedN, paddedM, parallel, new ParallelArrayUtils.RowRange() {
+            @Override
+            public void apply(int from, int to) {
+                float[] column = new float[2 * paddedM];
+
+                for (int j = from; j < to; j++) {
+                    for (int i = 0; i < M; i++) {
+                        column[2 * i] = rows[i][2 * j];
+                        column[2 * i + 1] = rows[i][2 * j + 1];
+                    }
+                    Arrays.fill(column, 2 * M, 2 * paddedM, 0);
+
+                    columnFft.complexForward(column);
+                    ArrayUtils.complexMultiplication2(1, paddedM, column, chirpRows);
+                    columnFft.complexInverse(column, true);
+
+                    for (int i = 0; i < M; i++) {
+                        rows[i][2 * j] = column[2 * i];
+                        rows[i][2 * j + 1] = column[2 * i + 1];
+                    }
+                }
+            }
+        });
+
+        //inverse FFT of the rows of the output window
+        run(M, paddedN, parallel, new ParallelArrayUtils.RowRange() {
+            @Override
+            public void apply(int from, int to) {
+                for (int i = from; i < to; i++) {
+                    rowFft.complexInverse(rows[i], true);
+                    System.arraycopy(rows[i], 0, field[i], 0, 2 * N);
+                }
+            }
+        });
+
+        SeparableKernel.multiply(field, outputRows, outputColumns, parallel);
+    }
+
+    private static void run(int rows, int rowLength, boolean parallel, ParallelArrayUtils.RowRange range) {
+        if (parallel) {
+            ParallelArrayUtils.forRows(rows, rowLength, range);
+        } else {
+            range.apply(0, rows);
+        }
+    }
+
+    private float[][] workspace() {
+        float[][] rows = workspace.get();
+        if (rows == null) {
+            rows = new float[M][2 * paddedN];
+            workspace.set(rows);
+        }
+        return rows;
+    }
+
+    public int getM() {
+        return M;
+    }
+
+    public int getN() {
+        return N;
+    }
+
+    public int getPaddedM() {
+        return paddedM;
+    }
+
+    public int getPaddedN() {
+        return paddedN;
+    }
+
+    public float getZ() {
+        return z;
+    }
+
+    public float getLambda() {
+        return lambda;
+    }
+
+    public float getDx() {
+        return dx;
+    }
+
+    public float getDy() {
+        return dy;
+    }
+
+    public float getDxOut() {
+        return dxOut;
+    }
+
+    public float getDyOut() {
+        return dyOut;
+    }
+
+    public float getXOffset() {
+        return xOffset;
+    }
+
+    public float getYOffset() {
+        return yOffset;
+    }
+
+}
@@ -17,6 +17,7 @@ package unal.od.jdiffraction.cpu;
 
 import org.jtransforms.fft.FloatFFT_2D;
 import unal.od.jdiffraction.cpu.utils.ArrayUtils;
+import unal.od.jdiffraction.cpu.utils.ParallelArrayUtils;
 
 /**
  * Computes wave diffraction through Fresnel-Fourier method with single
@@ -34,6 +35,10 @@ public class FloatFresnelFourier extends FloatPropagator {
     private final float z, lambda, dx, dy, dxOut, dyOut;
     private final float[][] kernel, outputPhase;
     private final FloatFFT_2D fft;
+    //JTransforms plans keep state during a transform, so each thread of a
+    //batch needs its own
+    private final ThreadLocal<FloatSequentialFFT> sequentialFft = new ThreadLocal<FloatSequentialFFT>();
+    private final boolean fused;
 
     /**
      * Creates a new instance of FloatFresnelFourier. Also performs kernel
@@ -62,17 +67,48 @@ public class FloatFresnelFourier extends FloatPropagator {
         fft = new FloatFFT_2D(M, N);
 
         calculateKernels();
+
+        //for even sizes, complexShift before and after the FFT is the same as
+        //a (-1)^(i + j) modulation, which can be folded into the kernels
+        fused = M % 2 == 0 && N % 2 == 0;
+        if (fused) {
+            ArrayUtils.checkerboard(kernel);
+            ArrayUtils.checkerboard(outputPhase);
+            if ((M / 2 + N / 2) % 2 != 0) {
+                ArrayUtils.multiply(outputPhase, -1);
+            }
+        }
+    }
+
+    /**
+     * Creates a new instance of FloatFresnelFourier that shares the kernels of
+     * {@code other} but has its own FFT plans.
+     *
+     * @param other Propagator whose kernels are shared.
+     */
+    FloatFresnelFourier(FloatFresnelFourier other) {
+        M = other.M;
+        N = other.N;
+        z = other.z;
+        lambda = other.lambda;
+        dx = other.dx;
+        dy = other.dy;
+        dxOut = other.dxOut;
+        dyOut = other.dyOut;
+        kernel = other.kernel;
+        outputPhase = other.outputPhase;
+        fft = new FloatFFT_2D(M, N);
+        fused = other.fused;
     }
 
     private void calculateKernels() {
 
-        int M2, N2, endM, endN;
+        int M2, N2, endM;
         float factor, factor2, factor3, dxSq, dySq, dxOutSq, dyOutSq;
 
         M2 = M / 2;
         N2 = N / 2;
         endM = 2 * M2 - 1;
-        endN = 2 * N2 - 1;
 
         dxOutSq = dxOut * dxOut;
         dyOutSq = dyOut * dyOut;
@@ -83,53 +119,15 @@ public class FloatFresnelFourier extends FloatPropagator {
         factor2 = (float) Math.PI * 2 * z / lambda;
         factor3 = dx * dy / (lambda * z);
 
-        for (int i = 0; i < M2; i++) {
-            int i2 = i - M2 + 1;
-            float p1 = i2 * i2 * dxSq;
-            float p2 = i2 * i2 * dxOutSq;
-
-            for (int j = 0; j < N2; j++) {
-                int j2 = j - N2 + 1;
-                float phase;
-
-                phase = p1 + j2 * j2 * dySq;
-                phase *= factor;
-                kernel[i][2 * j] = kernel[endM - i][2 * j] = kernel[i][2 * (endN - j)]
-                        = kernel[endM - i][2 * (endN - j)] = (float) Math.cos(phase);
-
-                kernel[i][2 * j + 1] = kernel[endM - i][2 * j + 1] = kernel[i][2 * (endN - j) + 1]
-                        = kernel[endM - i][2 * (endN - j) + 1] = (float) Math.sin(phase);
-
-                phase = p2 + j2 * j2 * dyOutSq;
-                phase *= factor;
-                outputPhase[i][2 * j] = outputPhase[endM - i][2 * j] = outputPhase[i][2 * (endN - j)]
-                        = outputPhase[endM - i][2 * (endN - j)] = (float) Math.sin(factor2 + phase) * factor3;
-
-                outputPhase[i][2 * j + 1] = outputPhase[endM - i][2 * j + 1] = outputPhase[i][2 * (endN - j) + 1]
-                        = outputPhase[endM - i][2 * (endN - j) + 1] = (float) -Math.cos(factor2 + phase) * factor3;
-            }
-        }
-
-        if (M % 2 != 0) {
-            int i2 = M - M2 + 1;
-            float p1 = i2 * i2 * dxSq;
-            float p2 = i2 * i2 * dxOutSq;
-
-            for (int j = 0; j < N2; j++) {
-                int j2 = j - N2 + 1;
-                float phase;
-
-                phase = p1 + j2 * j2 * dySq;
-                phase *= factor;
-                kernel[M - 1][2 * j] = kernel[M - 1][2 * (endN - j)] = (float) Math.cos(phase);
-                kernel[M - 1][2 * j + 1] = kernel[M - 1][2 * (endN - j) + 1] = (float) Math.sin(phase);
+        //the quadratic phases split into row and column factors, which are
+        //generated with rotation recurrences; the last column of odd N is
+        //filled below
+        double[] outputRows = QuadraticPhase.factor(M, factor * dxOutSq, factor2);
+        QuadraticPhase.multiply(outputRows, 0, -factor3);
 
-                phase = p2 + j2 * j2 * dyOutSq;
-                phase *= factor;
-                outputPhase[M - 1][2 * j] = outputPhase[M - 1][2 * (endN - j)] = (float) Math.sin(factor2 + phase) * factor3;
-                outputPhase[M - 1][2 * j + 1] = outputPhase[M - 1][2 * (endN - j) + 1] = (float) -Math.cos(factor2 + phase) * factor3;
-            }
-        }
+        QuadraticPhase.fill(kernel, QuadraticPhase.factor(M, factor * dxSq, 0),
+                QuadraticPhase.factor(N, factor * dySq, 0));
+        QuadraticPhase.fill(outputPhase, outputRows, QuadraticPhase.factor(N, factor * dyOutSq, 0));
 
         if (N % 2 != 0) {
             int j2 = N - N2 + 1;
@@ -176,11 +174,63 @@ public class FloatFresnelFourier extends FloatPropagator {
             throw new IllegalArgumentException("Array dimension must be " + M + " x " + 2 * N + ".");
         }
 
-        ArrayUtils.complexMultiplication2(field, kernel);
-        ArrayUtils.complexShift(field);
-        fft.complexForward(field);
-        ArrayUtils.complexShift(field);
-        ArrayUtils.complexMultiplication2(field, outputPhase);
+        if (fused) {
+            ParallelArrayUtils.complexMultiplication2(field, kernel);
+            fft.complexForward(field);
+            ParallelArrayUtils.complexMultiplication2(field, outputPhase);
+        } else {
+            ParallelArrayUtils.complexMultiplication2(field, kernel);
+            ParallelArrayUtils.complexShift(field);
+            fft.complexForward(field);
+            ParallelArrayUtils.complexShift(field);
+            ParallelArrayUtils.complexMultiplication2(field, outputPhase);
+        }
+    }
+
+    @Override
+    protected void diffractSequential(float[][] field) {
+        if (M != field.length || 2 * N != field[0].length) {
+            throw new IllegalArgumentException("Array dimension must be " + M + " x " + 2 * N + ".");
+        }
+
+        FloatSequentialFFT plan = sequentialFFT();
+
+        if (fused) {
+            ArrayUtils.complexMultiplication2(field, kernel);
+            plan.complexForward(field);
+            ArrayUtils.complexMultiplication2(field, outputPhase);
+        } else {
+            ArrayUtils.complexMultiplication2(field, kernel);
+            ArrayUtils.complexShift(field);
+            plan.complexForward(field);
+            ArrayUtils.complexShift(field);
+            ArrayUtils.complexMultiplication2(field, outputPhase);
+        }
+    }
+
+    private FloatSequentialFFT sequentialFFT() {
+        FloatSequentialFFT plan = sequentialFft.get();
+        if (plan == null) {
+            plan = FFTUtils.singleThreadedFloat(M, N);
+            sequentialFft.set(plan);
+        }
+        return plan;
+    }
+
+    /**
+     * Returns the kernel, which {@link FloatFresnelFourierFlat} lays out in a
+     * 1D array.
+     */
+    float[][] getKernel() {
+        return kernel;
+    }
+
+    /**
+     * Returns the output phase, which {@link FloatFresnelFourierFlat} lays out
+     * in a 1D array.
+     */
+    float[][] getOutputPhase() {
+        return outputPhase;
     }
 
     public int getM() {
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2016 Universidad Nacional de Colombia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package unal.od.jdiffraction.cpu;
+
+import org.jtransforms.fft.FloatFFT_1D;
+
+/**
+ * 2D complex FFT made of 1D row and column passes on the calling thread. Used
+ * when several fields are diffracted at the same time, one per thread, in
+ * place of a {@code FloatFFT_2D}, which decides whether to split a transform
+ * between threads from a library-wide threshold. Same interleaved layout and
+ * scaling as {@code FloatFFT_2D}, for {@code float[M][2N]} arrays or flat
+ * {@code float[M * 2N]} arrays.
+ * <p>
+ * An instance holds a column buffer, so it must not be shared between threads.
+ * JTransforms may still split a single 1D transform of 8192 points or more.
+ *
+ * @since JDiffraction 1.3
+ */
+final class FloatSequentialFFT {
+
+    /**
+     * Number of columns copied out and transformed together.
+     */
+    private static final int BLOCK = 8;
+
+    private final int M, N;
+    private final FloatFFT_1D rowFft;
+    private final FloatFFT_1D columnFft;
+    private final float[] columns;
+
+    FloatSequentialFFT(int M, int N) {
+        this.M = M;
+        this.N = N;
+        rowFft = new FloatFFT_1D(N);
+        columnFft = M == N ? rowFft : new FloatFFT_1D(M);
+        columns = new float[Math.min(BLOCK, N) * 2 * M];
+    }
+
+    void complexForward(float[][] a) {
+        for (int i = 0; i < M; i++) {
+            rowFft.complexForward(a[i]);
+        }
+        columnPass(a, false, false);
+    }
+
+    void complexInverse(float[][] a, boolean scale) {
+        for (int i = 0; i < M; i++) {
+            rowFft.complexInverse(a[i], scale);
+        }
+        columnPass(a, true, scale);
+    }
+
+    void complexForward(float[] a) {
+        for (int i = 0; i < M; i++) {
+            rowFft.complexForward(a, 2 * i * N);
+        }
+        columnPass(a, false, false);
+    }
+
+    void complexInverse(float[] a, boolean scale) {
+        for (int i = 0; i < M; i++) {
+            rowFft.complexInverse(a, 2 * i * N, scale);
+        }
+        columnPass(a, true, scale);
+    }
+
+    private void columnPass(float[][] a, boolean inverse, boolean scale) {
+        final int M2 = 2 * M;
+
+        for (int j0 = 0; j0 < N; j0 += BLOCK) {
+            int block = Math.min(BLOCK, N - j0);
+
+            for (int i = 0; i < M; i++) {
+                float[] row = a[i];
+                for (int b = 0, j = 2 * j0; b < block; b++, j += 2) {
+                    columns[b * M2 + 2 * i] = row[j];
+                    columns[b * M2 + 2 * i + 1] = row[j + 1];
+                }
+            }
+
+            transformColumns(block, inverse, scale);
+
+            for (int i = 0; i < M; i++) {
+                float[] row = a[i];
+                for (int b = 0, j = 2 * j0; b < block; b++, j += 2) {
+                    row[j] = columns[b * M2 + 2 * i];
+                    row[j + 1] = columns[b * M2 + 2 * i + 1];
+                }
+            }
+        }
+    }
+
+    private void columnPass(float[] a, boolean inverse, boolean scale) {
+        final int M2 = 2 * M;
+        final int N2 = 2 * N;
+
+        for (int j0 = 0; j0 < N; j0 += BLOCK) {
+            int block = Math.min(BLOCK, N - j0);
+
+            for (int i = 0; i < M; i++) {
+                for (int b = 0, j = i * N2 + 2 * j0; b < block; b++, j += 2) {
+                    columns[b * M2 + 2 * i] = a[j];
+                    columns[b * M2 + 2 * i + 1] = a[j + 1];
+                }
+            }
+
+            transformColumns(block, inverse, scale);
+
+            for (int i = 0; i < M; i++) {
+                for (int b = 0, j = i * N2 + 2 * j0; b < block; b++, j += 2) {
+                    a[j] = columns[b * M2 + 2 * i];
+                    a[j + 1] = columns[b * M2 + 2 * i + 1];
+                }
+            }
+        }
+    }
+
+    private void transformColumns(int block, boolean inverse, boolean scale) {
+        for (int b = 0; b < block; b++) {
+            if (inverse) {
+                columnFft.complexInverse(columns, 2 * b * M, scale);
+            } else {
+                columnFft.complexForward(columns, 2 * b * M);
+            }
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2016 Universidad Nacional de Colombia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package unal.od.jdiffraction.cpu;
+
+/**
+ * Gaussian gridding along one direction, for the non-uniform FFTs of
+ * <a href="http://dx.doi.org/10.1137/S003614450343200X" target="_blank">Greengard and Lee</a>.
+ * The direction has {@code modes} Fourier modes, {@code -modes / 2} to
+ * {@code modes / 2 - 1}, and an oversampled grid of {@code size} points over
+ * one period, {@code 2 * modes} by default. A non-uniform point is spread to,
+ * or interpolated from, the {@code 2 * spread} grid points around it with a
+ * Gaussian, whose transform is divided out of the modes. The width of the
+ * Gaussian follows the oversampling {@code R = size / modes} as in Greengard
+ * and Lee, and the error is about {@code exp(-pi * spread / 2)} for
+ * {@code R = 2}; smaller grids need a bigger spread for the same error.
+ * <p>
+ * Positions are given in periods, so integer positions are the same point.
+ *
+ * @author Pablo Piedrahita-Quintero (jppiedrahitaq@unal.edu.co)
+ * @author Carlos Trujillo (catrujila@unal.edu.co)
+ * @author Jorge Garcia-Sucerquia (jigarcia@unal.edu.co)
+ *
+ * @since JDiffraction 1.3
+ */
+final class GaussianGridding {
+
+    private static final int OVERSAMPLING = 2;
+
+    private final int modes, size, spread;
+    private final double tau;
+    //deconvolution of each mode, in FFT order
+    private final double[] deconvolution;
+
+    GaussianGridding(int modes, int spread) {
+        this(modes, OVERSAMPLING * modes, spread);
+    }
+
+    GaussianGridding(int modes, int size, int spread) {
+        if (size < modes) {
+            throw new IllegalArgumentException("The grid must have at least " + modes + " points.");
+        }
+
+        this.modes = modes;
+        this.size = size;
+        this.spread = spread;
+
+        double oversampling = (double) size / modes;
+        tau = Math.PI * spread / ((double) modes * modes * oversampling * (oversampling - 0.5));
+
+        //transform of the Gaussian, with the normalization of the grid FFT
+        deconvolution = new double[modes];
+        double factor = Math.sqrt(Math.PI / tau) / size;
+        for (int i = 0; i < modes; i++) {
+            int k = i < modes / 2 ? i : i - modes;
+            deconvolution[i] = factor * Math.exp(k * k * tau);
+        }
+    }
+
+    /**
+     * Number of points of the oversampled grid.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Number of grid points used by each non-uniform point.
+     */
+    int width() {
+        return 2 * spread;
+    }
+
+    /**
+     * Deconvolution factor of the mode at {@code index}, in FFT order.
+     */
+    double deconvolution(int index) {
+        return deconvolution[index];
+    }
+
+    /**
+     * First grid point used by a point at {@code position}, not wrapped.
+     */
+    int first(double position) {
+        return (int) Math.floor(position * size) - spread + 1;
+    }
+
+    /**
+     * Writes the {@link #width()} weights of a point at {@code position} and
+     * returns its first grid point, not wrapped.
+     */
+    int weights(double position, double[] weights) {
+        int first = first(position);
+
+        for (int a = 0; a < 2 * spread; a++) {
+            double distance = distance(first + a, position);
+            weights[a] = Math.exp(-distance * distance / (4 * tau));
+        }
+        return first;
+    }
+
+    /**
+     * Writes the {@link #width()} weights of a point on a grid point. The
+     * weights of a point at {@code position} are these times
+     * {@code scale(position) * ratio(position)^a}, which separates the part
+     * that depends on the point from the part that depends on the grid point.
+     */
+    void weights(double[] weights) {
+        weights(0, weights);
+    }
+
+    /**
+     * Ratio between the separable parts of consecutive weights of a point at
+     * {@code position}.
+     */
+    double ratio(double position) {
+        double offset = offset(position);
+        return Math.exp(2 * exponent() * offset);
+    }
+
+    /**
+     * Scale of the weights of a point at {@code position}.
+     */
+    double scale(double position) {
+        double offset = offset(position);
+        return Math.exp(exponent() * offset * (2 * (1 - spread) - offset));
+    }
+
+    //offset of the position from the previous grid point, in grid steps
+    private double offset(double position) {
+        return position * size - Math.floor(position * size);
+    }
+
+    //weights are exp(-exponent * d^2), with d the distance in grid steps
+    private double exponent() {
+        double h = 2 * Math.PI / size;
+        return h * h / (4 * tau);
+    }
+
+    private double distance(int point, double position) {
+        return 2 * Math.PI * (point - position * size) / size;
+    }
+
+}
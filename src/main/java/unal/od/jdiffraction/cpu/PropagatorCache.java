@@ -0,0 +1,1260 @@
+/*
+ * Copyright 2016 Universidad Nacional de Colombia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package unal.od.jdiffraction.cpu;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Factory for CPU propagators that keeps the built kernels, so repeated
+ * requests for the same geometry skip kernel calculations. Kernels are keyed
+ * by method, precision, data layout and all the physical parameters. The cache
+ * is bounded by the memory taken by the kernels; when a new one doesn't fit,
+ * the least recently used ones are evicted.
+ * <p>
+ * The kernels don't change after construction, but the FFT plans of
+ * JTransforms keep state while a transform runs. Each request then returns a
+ * new propagator that shares the cached kernels and has its own FFT plans, so
+ * the propagators returned to different threads can be used at the same time.
+ * Requests for a geometry whose kernels are being built wait for that build
+ * instead of starting another one.
+ *
+ * @author Pablo Piedrahita-Quintero (jppiedrahitaq@unal.edu.co)
+ * @author Carlos Trujillo (catrujila@unal.edu.co)
+ * @author Jorge Garcia-Sucerquia (jigarcia@unal.edu.co)
+ *
+ * @since JDiffraction 1.3
+ */
+public class PropagatorCache {
+
+    private static final int FLOAT_BYTES = 4;
+    private static final int DOUBLE_BYTES = 8;
+
+    private final long maxBytes;
+    private final LinkedHashMap<Key, Entry> entries;
+    //kernels being built, so that concurrent requests share the build
+    private final HashMap<Key, FutureTask<Object>> pending;
+
+    private long bytes;
+    private long hits, misses, evictions;
+
+    /**
+     * Creates a new cache that keeps at most {@code maxBytes} bytes of
+     * kernels.
+     *
+     * @param maxBytes Max memory for cached kernels, in bytes.
+     */
+    public PropagatorCache(long maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("The cache size must be greater than 0.");
+        }
+
+        this.maxBytes = maxBytes;
+
+        entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true);
+        pending = new HashMap<Key, FutureTask<Object>>();
+    }
+
+    private interface Builder {
+
+        Object build();
+    }
+
+    private static final class Key {
+
+        private final Class<?> type;
+        private final int M, N;
+        private final double[] parameters;
+
+        Key(Class<?> type, int M, int N, double... parameters) {
+            this.type = type;
+            this.M = M;
+            this.N = N;
+            this.parameters = parameters;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+
+            Key k = (Key) o;
+            return type == k.type && M == k.M && N == k.N && Arrays.equals(parameters, k.parameters);
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = type.hashCode();
+            hash = 31 * hash + M;
+            hash = 31 * hash + N;
+            hash = 31 * hash + Arrays.hashCode(parameters);
+            return hash;
+        }
+    }
+
+    private static final class Entry {
+
+        private final Object propagator;
+        private final long bytes;
+
+        Entry(Object propagator, long bytes) {
+            this.propagator = propagator;
+            this.bytes = bytes;
+        }
+    }
+
+    private static long kernelBytes(int kernels, int M, int N, int elementBytes) {
+        return (long) kernels * M * 2 * N * elementBytes;
+    }
+
+    private static long compactBytes(int kernels, int M, int N, int elementBytes) {
+        return kernelBytes(kernels, QuadrantIndex.size(M), QuadrantIndex.size(N), elementBytes);
+    }
+
+    private static long separableBytes(int kernels, int M, int N, int elementBytes) {
+        return (long) kernels * 2 * (M + N) * elementBytes;
+    }
+
+    //the workspaces belong to the returned propagators, so only the kernel
+    //is counted
+    private static long paddedBytes(int paddedM, int paddedN, int elementBytes) {
+        return kernelBytes(1, paddedM, paddedN, elementBytes);
+    }
+
+    private static long bluesteinPaddedBytes(int M, int N, int elementBytes) {
+        int paddedM = FFTUtils.smoothSize(2 * M - 1);
+        int paddedN = FFTUtils.smoothSize(2 * N - 1);
+        return separableBytes(2, M, N, elementBytes) + separableBytes(1, paddedM, paddedN, elementBytes);
+    }
+
+    private static long bluesteinCompactBytes(int M, int N, int elementBytes) {
+        //the spectrum of the chirp keeps M / 2 + 1 x N / 2 + 1 values for even
+        //sizes and all of them for odd ones
+        long spectrumBytes = M % 2 == 0 && N % 2 == 0
+                ? kernelBytes(1, M / 2 + 1, N / 2 + 1, elementBytes)
+                : kernelBytes(1, M, N, elementBytes);
+        return compactBytes(2, M, N, elementBytes) + spectrumBytes;
+    }
+
+    //at most the whole spectrum, which is padded to twice the size along
+    //shifted directions; the padded field belongs to the returned propagators
+    private static long bandLimitedBytes(int M, int N, double xOffset, double yOffset, int elementBytes) {
+        return kernelBytes(1, xOffset == 0 ? M : 2 * M, yOffset == 0 ? N : 2 * N, elementBytes);
+    }
+
+    //the kernel and the interpolation tables (two ints and two values per
+    //point); the weights of each direction are negligible
+    private static long tiltedBytes(int M, int N, int elementBytes) {
+        return kernelBytes(2, M, N, elementBytes) + (long) M * N * 8;
+    }
+
+    /**
+     * Returns the propagator built for {@code key}, which only the returned
+     * propagators use, through their constructors that share its kernels.
+     */
+    private Object get(Key key, long size, final Builder builder) {
+        FutureTask<Object> task;
+        boolean owner = false;
+
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                hits++;
+                return entry.propagator;
+            }
+
+            task = pending.get(key);
+            if (task != null) {
+                hits++;
+            } else {
+                misses++;
+                task = new FutureTask<Object>(new Callable<Object>() {
+                    @Override
+                    public Object call() {
+                        return builder.build();
+                    }
+                });
+                pending.put(key, task);
+                owner = true;
+            }
+        }
+
+        //kernels are calculated outside the lock, so other geometries can be
+        //served meanwhile
+        if (owner) {
+            task.run();
+        }
+
+        Object propagator = null;
+        try {
+            propagator = result(task);
+        } finally {
+            if (owner) {
+                synchronized (this) {
+                    pending.remove(key);
+                    if (propagator != null) {
+                        put(key, propagator, size);
+                    }
+                }
+            }
+        }
+        return propagator;
+    }
+
+    private void put(Key key, Object propagator, long size) {
+        if (size > maxBytes) {
+            return;
+        }
+
+        Iterator<Map.Entry<Key, Entry>> it = entries.entrySet().iterator();
+        while (bytes + size > maxBytes && it.hasNext()) {
+            bytes -= it.next().getValue().bytes;
+            it.remove();
+            evictions++;
+        }
+
+        entries.put(key, new Entry(propagator, size));
+        bytes += size;
+    }
+
+    /**
+     * Waits for {@code task}, rethrowing the exceptions of the builder.
+     * Interruptions don't stop the wait, since the build is shared with other
+     * threads; the interrupt status is restored afterwards.
+     */
+    private static Object result(FutureTask<Object> task) {
+        boolean interrupted = false;
+
+        try {
+            while (true) {
+                try {
+                    return task.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    }
+                    if (cause instanceof Error) {
+                        throw (Error) cause;
+                    }
+                    throw new IllegalStateException(cause);
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Returns a angular spectrum propagator with single precision for the given
+     * geometry, building the kernels only if they are not cached.
+     *
+     * @param M Number of data points on x direction.
+     * @param N Number of data points on y direction.
+     * @param lambda Wavelength.
+     * @param z Distance.
+     * @param dx Sampling pitch on x direction.
+     * @param dy Sampling pitch on y direction.
+     * @return a new propagator sharing the cached or newly built kernels
+     */
+    public FloatAngularSpectrum getFloatAngularSpectrum(final int M, final int N, final float lambda, final float z,
+            final float dx, final float dy) {
+        Key key = new Key(FloatAngularSpectrum.class, M, N, lambda, z, dx, dy);
+
+        Object shared = get(key, kernelBytes(1, M, N, FLOAT_BYTES), new Builder() {
+            @Override
+            public Object build() {
+                return new FloatAngularSpectrum(M, N, lambda, z, dx, dy);
+            }
+        });
+        return new FloatAngularSpectrum((FloatAngularSpectrum) shared);
+    }
+
+    /**
+     * Returns a angular spectrum propagator for 1D arrays with single precision
+     * for the given geometry, building the kernels only if they are not cached.
+     *
+     * @param M Number of data points on x direction.
+     * @param N Number of data points on y direction.
+     * @param lambda Wavelength.
+     * @param z Distance.
+     * @param dx Sampling pitch on x direction.
+     * @param dy Sampling pitch on y direction.
+     * @return a new propagator sharing the cached or newly built kernels
+     */
+    public FloatAngularSpectrumFlat getFloatAngularSpectrumFlat(final int M, final int N, final float lambda, final float z,
+            final float dx, final float dy) {
+        Key key = new Key(FloatAngularSpectrumFlat.class, M, N, lambda, z, dx, dy);
+
+        Object shared = get(key, kernelBytes(1, M, N, FLOAT_BYTES), new Builder() {
+            @Override
+            public Object build() {
+                return new FloatAngularSpectrumFlat(M, N, lambda, z, dx, dy);
+            }
+        });
+        return new FloatAngularSpectrumFlat((FloatAngularSpectrumFlat) shared);
+    }
+
+    /**
+     * Returns a angular spectrum propagator with double precision for the given
+     * geometry, building the kernels only if they are not cached.
+     *
+     * @param M Number of data points on x direction.
+     * @param N Number of data points on y direction.
+     * @param lambda Wavelength.
+     * @param z Distance.
+     * @param dx Sampling pitch on x direction.
+     * @param dy Sampling pitch on y direction.
+     * @return a new propagator sharing the cached or newly built kernels
+     */
+    public DoubleAngularSpectrum getDoubleAngularSpectrum(final int M, final int N, final double lambda, final double z,
+            final double dx, final double dy) {
+        Key key = new Key(DoubleAngularSpectrum.class, M, N, lambda, z, dx, dy);
+
+        Object shared = get(key, kernelBytes(1, M, N, DOUBLE_BYTES), new Builder() {
+            @Override
+            public Object build() {
+                return new DoubleAngularSpectrum(M, N, lambda, z, dx, dy);
+            }
+        });
+        return new DoubleAngularSpectrum((DoubleAngularSpectrum) shared);
+    }
+
+    /**
+     * Returns a angular spectrum propagator for 1D arrays with double precision
+     * for the given geometry, building the kernels only if they are not cached.
+     *
+     * @param M Number of data points on x direction.
+     * @param N Number of data points on y direction.
+     * @param lambda Wavelength.
+     * @param z Distance.
+     * @param dx Sampling pitch on x direction.
+     * @param dy Sampling pitch on y direction.
+     * @return a new propagator sharing the cached or newly built kernels
+     */
+    public DoubleAngularSpectrumFlat getDoubleAngularSpectrumFlat(final int M, final int N, final double lambda, final double z,
+            final double dx, final double dy) {
+        Key key = new Key(DoubleAngularSpectrumFlat.class, M, N, lambda, z, dx, dy);
+
+        Object shared = get(key, kernelBytes(1, M, N, DOUBLE_BYTES), new Builder() {
+            @Override
+            public Object build() {
+                return new DoubleAngularSpectrumFlat(M, N, lambda, z, dx, dy);
+            }
+        });
+        return new DoubleAngularSpectrumFlat((DoubleAngularSpectrumFlat) shared);
+    }
+
+    /**
+     * Returns a angular spectrum propagator with compact kernels and single precision for the given
+     * geometry, building the kernels only if they are not cached.
+     *
+     * @param M Number of data points on x direction.
+     * @param N Number of data points on y direction.
+     * @param lambda Wavelength.
+     * @param z Distance.
+     * @param dx Sampling pitch on x direction.
+     * @param dy Sampling pitch on y direction.
+     * @return a new propagator sharing the cached or newly built kernels
+     */
+    public FloatAngularSpectrumCompact getFloatAngularSpectrumCompact(final int M, final int N, final float lambda, final float z,
+            final float dx, final float dy) {
+        Key key = new Key(FloatAngularSpectrumCompact.class, M, N, lambda, z, dx, dy);
+
+        Object shared = get(key, compactBytes(1, M, N, FLOAT_BYTES), new Builder() {
+            @Override
+            public Object build() {
+                return new FloatAngularSpectrumCompact(M, N, lambda, z, dx, dy);
+            }
+        });
+        return new FloatAngularSpectrumCompact((FloatAngularSpectrumCompact) shared);
+    }
+
+    /**
+     * Returns a angular spectrum propagator with compact kernels and double precision for the given
+     * geometry, building the kernels only if they are not cached.
+     *
+     * @param M Number of data points on x direction.
+     * @param N Number of data points on y direction.
+     * @param lambda Wavelength.
+     * @param z Distance.
+     * @param dx Sampling pitch on x direction.
+     * @param dy Sampling pitch on y direction.
+     * @return a new propagator sharing the cached or newly built kernels
+     */
+    public DoubleAngularSpectrumCompact getDoubleAngularSpectrumCompact(final int M, final int N, final double lambda, final double z,
+            final double dx, final double dy) {
+        Key key = new Key(DoubleAngularSpectrumCompact.class, M, N, lambda, z, dx, dy);
+
+        Object shared = get(key, compactBytes(1, M, N, DOUBLE_BYTES), new Builder() {
+            @Override
+            public Object build() {
+                return new DoubleAngularSpectrumCompact(M, N, lambda, z, dx, dy);
+            }
+        });
+        return new DoubleAngularSpectrumCompact((DoubleAngularSpectrumCompact) shared);
+    }
+
+    /**
+     * Returns a angular spectrum propagator with zero padding and single precision for the given
+     * geometry, building the kernels only if they are not cached.
+     *
+     * @param M Number of data points on x direction.
+     * @param N Number of data points on y direction.
+     * @param paddedM Number of data points on x direction after padding.
+     * @param paddedN Number of data points on y direction after padding.
+     * @param lambda Wavelength.
+     * @param z Distance.
+     * @param dx Sampling pitch on x direction.
+     * @param dy Sampling pitch on y direction.
+     * @return a new propagator sharing the cached or newly built kernels
+     */
+    public FloatAngularSpectrumPadded getFloatAngularSpectrumPadded(final int M, final int N, final int paddedM,
+            final int paddedN, final float lambda, final float z, final float dx, final float dy) {
+        Key key = new Key(FloatAngularSpectrumPadded.class, M, N, paddedM, paddedN, lambda, z, dx, dy);
+
+        Object shared = get(key, paddedBytes(paddedM, paddedN, FLOAT_BYTES), new Builder() {
+            @Override
+            public Object build() {
+                return new FloatAngularSpectrumPadded(M, N, paddedM, paddedN, lambda, z, dx, dy);
+            }
+        });
+        return new FloatAngularSpectrumPadded((FloatAngularSpectrumPadded) shared);
+    }
+
+    /**
+     * Returns a angular spectrum propagator with zero padding and double precision for the given
+     * geometry, building the kernels only if they are not cached.
+     *
+     * @param M Number of data points on x direction.
+     * @param N Number of data points on y direction.
+     * @param paddedM Number of data points on x direction after padding.
+     * @param paddedN Number of data points on y direction after padding.
+     * @param lambda Wavelength.
+     * @param z Distance.
+     * @param dx Sampling pitch on x direction.
+     * @param dy Sampling pitch on y direction.
+     * @return a new propagator sharing the cached or newly built kernels
+     */
+    public DoubleAngularSpectrumPadded getDoubleAngularSpectrumPadded(final int M, final int N, final int paddedM,
+            final int paddedN, final double lambda, final double z, final double dx, final double dy) {
+        Key key = new Key(DoubleAngularSpectrumPadded.class, M, N, paddedM, paddedN, lambda, z, dx, dy);
+
+        Object shared = get(key, paddedBytes(paddedM, paddedN, DOUBLE_BYTES), new Builder() {
+            @Override
+            public Object build() {
+                return new DoubleAngularSpectrumPadded(M, N, paddedM, paddedN, lambda, z, dx, dy);
+            }
+        });
+        return new DoubleAngularSpectrumPadded((DoubleAngularSpectrumPadded) shared);
+    }
+
+    /**
+     * Returns a tiled angular spectrum propagator with single precision for the given
+     * geometry, building the kernels only if they are not cached.
+     *
+     * @param M Number of data points on x direction.
+     * @param N Number of data points on y direction.
+     * @param tileSize Number of data points on each side of a tile.
+     * @param lambda Wavelength.
+     * @param z Distance.
+     * @param dx Sampling pitch on x direction.
+     * @param dy Sampling pitch on y direction.
+     * @return a new propagator sharing the cached or newly built kernels
+     */
+    public FloatAngularSpectrumTiled getFloatAngularSpectrumTiled(final int M, final int N, final int tileSize,
+            final float lambda, final float z, final float dx, final float dy) {
+        Key key = new Key(FloatAngularSpectrumTiled.class, M, N, tileSize, lambda, z, dx, dy);
+
+        Object shared = get(key, kernelBytes(1, tileSize, tileSize, FLOAT_BYTES), new Builder() {
+            @Override
+            public Object build() {
+                return new FloatAngularSpectrumTiled(M, N, tileSize, lambda, z, dx, dy);
+            }
+        });
+        return new FloatAngularSpectrumTiled((FloatAngularSpectrumTiled) shared);
+    }
+
+    /**
+     * Returns a tiled angular spectrum propagator with double precision for the given
+     * geometry, building the kernels only if they are not cached.
+     *
+     * @param M Number of data points on x direction.
+     * @param N Number of data points on y direction.
+     * @param tileSize Number of data points on each side of a tile.
+     * @param lambda Wavelength.
+     * @param z Distance.
+     * @param dx Sampling pitch on x direction.
+     * @param dy Sampling pitch on y direction.
+     * @return a new propagator sharing the cached or newly built kernels
+     */
+    public DoubleAngularSpectrumTiled getDoubleAngularSpectrumTiled(final int M, final int N, final int tileSize,
+            final double lambda, final double z, final double dx, final double dy) {
+        Key key = new Key(DoubleAngularSpectrumTiled.class, M, N, tileSize, lambda, z, dx, dy);
+
+        Object shared = get(key, kernelBytes(1, tileSize, tileSize, DOUBLE_BYTES), new Builder() {
+            @Override
+            public Object build() {
+                return new DoubleAngularSpectrumTiled(M, N, tileSize, lambda, z, dx, dy);
+            }
+        });
+        return new DoubleAngularSpectrumTiled((DoubleAngularSpectrumTiled) shared);
+    }
+
+    /**
+     * Returns a band limited angular spectrum propagator with single precision for the given
+     * geometry, building the kernels only if they are not cached. The kernel is counted
+     * as a full M x N kernel, an upper bound of its passband.
+     *
+     * @param M Number of data points on x direction.
+     * @param N Number of data points on y direction.
+     * @param lambda Wavelength.
+     * @param z Distance.
+     * @param dx Sampling pitch on x direction.
+     * @param dy Sampling pitch on y direction.
+     * @return a new propagator sharing the cached or newly built kernels
+     */
+    public FloatAngularSpectrumBandLimited getFloatAngularSpectrumBandLimited(final int M, final int N,
+            final float lambda, final float z, final float dx, final float dy) {
+        return getFloatAngularSpectrumBandLimited(M, N, lambda, z, dx, dy, 0, 0);
+    }
+
+    /**
+     * Returns a band limited angular spectrum propagator with single precision and the output
+     * window centered on {@code (xOffset, yOffset)} for the given geometry,
+     * building the kernels only if they are not cached. The kernel is counted as a full
+     * kernel over the grid, padded along shifted directions, an upper bound of
+     * its passband.
+     *
+     * @param M Number of data points on x direction.
+     * @param N Number of data points on y direction.
+     * @param lambda Wavelength.
+     * @param z Distance.
+     * @param dx Sampling pitch on x direction.
+     * @param dy Sampling pitch on y direction.
+     * @param xOffset Shift of the output window on x direction.
+     * @param yOffset Shift of the output window on y direction.
+     * @return a new propagator sharing the cached or newly built kernels
+     */
+    public FloatAngularSpectrumBandLimited getFloatAngularSpectrumBandLimited(final int M, final int N,
+            final float lambda, final float z, final float dx, final float dy, final float xOffset, final float yOffset) {
+        Key key = new Key(FloatAngularSpectrumBandLimited.class, M, N, lambda, z, dx, dy, xOffset, yOffset);
+
+        Object shared = get(key, bandLimitedBytes(M, N, xOffset, yOffset, FLOAT_BYTES), new Builder() {
+            @Override
+            public Object build() {
+                return new FloatAngularSpectrumBandLimited(M, N, lambda, z, dx, dy, xOffset, yOffset);
+            }
+        });
+        return new FloatAngularSpectrumBandLimited((FloatAngularSpectrumBandLimited) shared);
+    }
+
+    /**
+     * Returns a band limited angular spectrum propagator with double precision for the given
+     * geometry, building the kernels only if they are not cached. The kernel is counted
+     * as a full M x N kernel, an upper bound of its passband.
+     *
+     * @param M Number of data points on x direction.
+     * @param N Number of data points on y direction.
+     * @param lambda Wavelength.
+     * @param z Distance.
+     * @param dx Sampling pitch on x direction.
+     * @param dy Sampling pitch on y direction.
+     * @return a new propagator sharing the cached or newly built kernels
+     */
+    public DoubleAngularSpectrumBandLimited getDoubleAngularSpectrumBandLimited(final int M, final int N,
+            final double lambda, final double z, final double dx, final double dy) {
+        return getDoubleAngularSpectrumBandLimited(M, N, lambda, z, dx, dy, 0, 0);
+    }
+
+    /**
+     * Returns a band limited angular spectrum propagator with double precision and the output
+     * window centered on {@code (xOffset, yOffset)} for the given geometry,
+     * building the kernels only if they are not cached. The kernel is counted as a full
+     * kernel over the grid, padded along shifted directions, an upper bound of
+     * its passband.
+     *
+     * @param M Number of data points on x direction.
+     * @param N Number of data points on y direction.
+     * @param lambda Wavelength.
+     * @param z Distance.
+     * @param dx Sampling pitch on x direction.
+     * @param dy Sampling pitch on y direction.
+     * @param xOffset Shift of the output window on x direction.
+     * @param yOffset Shift of the output window on y direction.
+     * @return a new propagator sharing the cached or newly built kernels
+     */
+    public DoubleAngularSpectrumBandLimited getDoubleAngularSpectrumBandLimited(final int M, final int N,
+            final double lambda, final double z, final double dx, final double dy, final double xOffset, final double yOffset) {
+        Key key = new Key(DoubleAngularSpectrumBandLimited.class, M, N, lambda, z, dx, dy, xOffset, yOffset);
+
+        Object shared = get(key, bandLimitedBytes(M, N, xOffset, yOffset, DOUBLE_BYTES), new Builder() {
+            @Override
+            public Object build() {
+                return new DoubleAngularSpectrumBandLimited(M, N, lambda, z, dx, dy, xOffset, yOffset);
+            }
+        });
+        return new DoubleAngularSpectrumBandLimited((DoubleAngularSpectrumBandLimited) shared);
+    }
+
+    /**
+     * Returns an angular spectrum propagator onto a tilted plane with single
+     * precision for the given geometry, building the kernels only if they are not cached.
+     *
+     * @param M Number of data points on x direction.
+     * @param N Number of data points on y direction.
+     * @param lambda Wavelength.
+     * @param z Distance to the center of the output plane.
+     * @param dx Sampling pitch on x direction.
+     * @param dy Sampling pitch on y direction.
+     * @param tiltX Rotation of the output plane about the y axis, in radians.
+     * @param tiltY Rotation of the output plane about the x axis, in radians.
+     * @return a new propagator sharing the cached or newly built kernels
+     */
+    public FloatAngularSpectrumTilted getFloatAngularSpectrumTilted(final int M, final int N,
+            final float lambda, final float z, final float dx, final float dy, final float tiltX, final float tiltY) {
+        Key key = new Key(FloatAngularSpectrumTilted.class, M, N, lambda, z, dx, dy, tiltX, tiltY);
+
+        Object shared = get(key, tiltedBytes(M, N, FLOAT_BYTES), new Builder() {
+            @Override
+            public Object build() {
+                return new FloatAngularSpectrumTilted(M, N, lambda, z, dx, dy, tiltX, tiltY);
+            }
+        });
+        return new FloatAngularSpectrumTilted((FloatAngularSpectrumTilted) shared);
+    }
+
+    /**
+     * Returns an angular spectrum propagator onto a tilted plane with double
+     * precision for the given geometry, building the kernels only if they are not cached.
+     *
+     * @param M Number of data points on x direction.
+     * @param N Number of data points on y direction.
+     * @param lambda Wavelength.
+     * @param z Distance to the center of the output plane.
+     * @param dx Sampling pitch on x direction.
+     * @param dy Sampling pitch on y direction.
+     * @param tiltX Rotation of the output plane about the y axis, in radians.
+     * @param tiltY Rotation of the output plane about the x axis, in radians.
+     * @return a new propagator sharing the cached or newly built kernels
+     */
+    public DoubleAngularSpectrumTilted getDoubleAngularSpectrumTilted(final int M, final int N,
+            final double lambda, final double z, final double dx, final double dy, final double tiltX,
+            final double tiltY) {
+        Key key = new Key(DoubleAngularSpectrumTilted.class, M, N, lambda, z, dx, dy, tiltX, tiltY);
+
+        Object shared = get(key, tiltedBytes(M, N, DOUBLE_BYTES), new Builder() {
+            @Override
+            public Object build() {
+                return new DoubleAngularSpectrumTilted(M, N, lambda, z, dx, dy, tiltX, tiltY);
+            }
+        });
+        return new DoubleAngularSpectrumTilted((DoubleAngularSpectrumTilted) shared);
+    }
+
+    /**
+     * Returns a Fresnel-Fourier propagator with single precision for the given
+     * geometry, building the kernels only if they are not cached.
+     *
+     * @param M Number of data points on x direction.
+     * @param N Number of data points on y direction.
+     * @param lambda Wavelength.
+     * @param z Distance.
+     * @param dx Sampling pitch on x direction.
+     * @param dy Sampling pitch on y direction.
+     * @return a new propagator sharing the cached or newly built kernels
+     */
+    public FloatFresnelFourier getFloatFresnelFourier(final int M, final int N, final float lambda, final float z,
+            final float dx, final float dy) {
+        Key key = new Key(FloatFresnelFourier.class, M, N, lambda, z, dx, dy);
+
+        Object shared = get(key, kernelBytes(2, M, N, FLOAT_BYTES), new Builder() {
+            @Override
+            public Object build() {
+                return new FloatFresnelFourier(M, N, lambda, z, dx, dy);
+            }
+        });
+        return new FloatFresnelFourier((FloatFresnelFourier) shared);
+    }
+
+    /**
+     * Returns a Fresnel-Fourier propagator for 1D arrays with single precision
+     * for the given geometry, building the kernels only if they are not cached.
+     *
+     * @param M Number of data points on x direction.
+     * @param N Number of data points on y direction.
+     * @param lambda Wavelength.
+     * @param z Distance.
+     * @param dx Sampling pitch on x direction.
+     * @param dy Sampling pitch on y direction.
+     * @return a new propagator sharing the cached or newly built kernels
+     */
+    public FloatFresnelFourierFlat getFloatFresnelFourierFlat(final int M, final int N, final float lambda, final float z,
+            final float dx, final float dy) {
+        Key key = new Key(FloatFresnelFourierFlat.class, M, N, lambda, z, dx, dy);
+
+        Object shared = get(key, kernelBytes(2, M, N, FLOAT_BYTES), new Builder() {
+            @Override
+            public Object build() {
+                return new FloatFresnelFourierFlat(M, N, lambda, z, dx, dy);
+            }
+        });
+        return new FloatFresnelFourierFlat((FloatFresnelFourierFlat) shared);
+    }
+
+    /**
+     * Returns a Fresnel-Fourier propagator with double precision for the given
+     * geometry, building the kernels only if they are not cached.
+     *
+     * @param M Number of data points on x direction.
+     * @param N Number of data points on y direction.
+     * @param lambda Wavelength.
+     * @param z Distance.
+     * @param dx Sampling pitch on x direction.
+     * @param dy Sampling pitch on y direction.
+     * @return a new propagator sharing the cached or newly built kernels
+     */
+    public DoubleFresnelFourier getDoubleFresnelFourier(final int M, final int N, final double lambda, final double z,
+            final double dx, final double dy) {
+        Key key = new Key(DoubleFresnelFourier.class, M, N, lambda, z, dx, dy);
+
+        Object shared = get(key, kernelBytes(2, M, N, DOUBLE_BYTES), new Builder() {
+            @Override
+            public Object build() {
+                return new DoubleFresnelFourier(M, N, lambda, z, dx, dy);
+            }
+        });
+        return new DoubleFresnelFourier((DoubleFresnelFourier) shared);
+    }
+
+    /**
+     * Returns a Fresnel-Fourier propagator for 1D arrays with double precision
+     * for the given geometry, building the kernels only if they are not cached.
+     *
+     * @param M Number of data points on x direction.
+     * @param N Number of data points on y direction.
+     * @param lambda Wavelength.
+     * @param z Distance.
+     * @param dx Sampling pitch on x direction.
+     * @param dy Sampling pitch on y direction.
+     * @return a new propagator sharing the cached or newly built kernels
+     */
+    public DoubleFresnelFourierFlat getDoubleFresnelFourierFlat(final int M, final int N, final double lambda, final double z,
+            final double dx, final double dy) {
+        Key key = new Key(DoubleFresnelFourierFlat.class, M, N, lambda, z, dx, dy);
+
+        Object shared = get(key, kernelBytes(2, M, N, DOUBLE_BYTES), new Builder() {
+            @Override
+            public Object build() {
+                return new DoubleFresnelFourierFlat(M, N, lambda, z, dx, dy);
+            }
+        });
+        return new DoubleFresnelFourierFlat((DoubleFresnelFourierFlat) shared);
+    }
+
+    /**
+     * Returns a Fresnel-Fourier propagator with compact kernels and single precision for the given
+     * geometry, building the kernels only if they are not cached.
+     *
+     * @param M Number of data points on x direction.
+     * @param N Number of data points on y direction.
+     * @param lambda Wavelength.
+     * @param z Distance.
+     * @param dx Sampling pitch on x direction.
+     * @param dy Sampling pitch on y direction.
+     * @return a new propagator sharing the cached or newly built kernels
+     */
+    public FloatFresnelFourierCompact getFloatFresnelFourierCompact(final int M, final int N, final float lambda, final float z,
+            final float dx, final float dy) {
+        Key key = new Key(FloatFresnelFourierCompact.class, M, N, lambda, z, dx, dy);
+
+        Object shared = get(key, compactBytes(2, M, N, FLOAT_BYTES), new Builder() {
+            @Override
+            public Object build() {
+                return new FloatFresnelFourierCompact(M, N, lambda, z, dx, dy);
+            }
+        });
+        return new FloatFresnelFourierCompact((FloatFresnelFourierCompact) shared);
+    }
+
+    /**
+     * Returns a Fresnel-Fourier propagator with compact kernels and double precision for the given
+     * geometry, building the kernels only if they are not cached.
+     *
+     * @param M Number of data points on x direction.
+     * @param N Number of data points on y direction.
+     * @param lambda Wavelength.
+     * @param z Distance.
+     * @param dx Sampling pitch on x direction.
+     * @param dy Sampling pitch on y direction.
+     * @return a new propagator sharing the cached or newly built kernels
+     */
+    public DoubleFresnelFourierCompact getDoubleFresnelFourierCompact(final int M, final int N, final double lambda, final double z,
+            final double dx, final double dy) {
+        Key key = new Key(DoubleFresnelFourierCompact.class, M, N, lambda, z, dx, dy);
+
+        Object shared = get(key, compactBytes(2, M, N, DOUBLE_BYTES), new Builder() {
+            @Override
+            public Object build() {
+                return new DoubleFresnelFourierCompact(M, N, lambda, z, dx, dy);
+            }
+        });
+        return new DoubleFresnelFourierCompact((DoubleFresnelFourierCompact) shared);
+    }
+
+    /**
+     * Returns a Fresnel-Fourier propagator with separable kernels and single precision for the given
+     * geometry, building the kernels only if they are not cached.
+     *
+     * @param M Number of data points on x direction.
+     * @param N Number of data points on y direction.
+     * @param lambda Wavelength.
+     * @param z Distance.
+     * @param dx Sampling pitch on x direction.
+     * @param dy Sampling pitch on y direction.
+     * @return a new propagator sharing the cached or newly built kernels
+     */
+    public FloatFresnelFourierSeparable getFloatFresnelFourierSeparable(final int M, final int N, final float lambda, final float z,
+            final float dx, final float dy) {
+        Key key = new Key(FloatFresnelFourierSeparable.class, M, N, lambda, z, dx, dy);
+
+        Object shared = get(key, separableBytes(2, M, N, FLOAT_BYTES), new Builder() {
+            @Override
+            public Object build() {
+                return new FloatFresnelFourierSeparable(M, N, lambda, z, dx, dy);
+            }
+        });
+        return new FloatFresnelFourierSeparable((FloatFresnelFourierSeparable) shared);
+    }
+
+    /**
+     * Returns a Fresnel-Fourier propagator with separable kernels and double precision for the given
+     * geometry, building the kernels only if they are not cached.
+     *
+     * @param M Number of data points on x direction.
+     * @param N Number of data points on y direction.
+     * @param lambda Wavelength.
+     * @param z Distance.
+     * @param dx Sampling pitch on x direction.
+     * @param dy Sampling pitch on y direction.
+     * @return a new propagator sharing the cached or newly built kernels
+     */
+    public DoubleFresnelFourierSeparable getDoubleFresnelFourierSeparable(final int M, final int N, final double lambda, final double z,
+            final double dx, final double dy) {
+        Key key = new Key(DoubleFresnelFourierSeparable.class, M, N, lambda, z, dx, dy);
+
+        Object shared = get(key, separableBytes(2, M, N, DOUBLE_BYTES), new Builder() {
+            @Override
+            public Object build() {
+                return new DoubleFresnelFourierSeparable(M, N, lambda, z, dx, dy);
+            }
+        });
+        return new DoubleFresnelFourierSeparable((DoubleFresnelFourierSeparable) shared);
+    }
+
+    /**
+     * Returns a Fresnel-Bluestein propagator with single precision for the
+     * given geometry, building the kernels only if they are not cached.
+     *
+     * @param M Number of data points on x direction.
+     * @param N Number of data points on y direction.
+     * @param lambda Wavelength.
+     * @param z Distance.
+     * @param dx Sampling pitch on x direction.
+     * @param dy Sampling pitch on y direction.
+     * @param dxOut X pitch on the output field.
+     * @param dyOut Y pitch on the output field.
+     * @return a new propagator sharing the cached or newly built kernels
+     */
+    public FloatFresnelBluestein getFloatFresnelBluestein(final int M, final int N, final float lambda, final float z,
+            final float dx, final float dy, final float dxOut, final float dyOut) {
+        Key key = new Key(FloatFresnelBluestein.class, M, N, lambda, z, dx, dy, dxOut, dyOut);
+
+        Object shared = get(key, kernelBytes(3, M, N, FLOAT_BYTES), new Builder() {
+            @Override
+            public Object build() {
+                return new FloatFresnelBluestein(M, N, lambda, z, dx, dy, dxOut, dyOut);
+            }
+        });
+        return new FloatFresnelBluestein((FloatFresnelBluestein) shared);
+    }
+
+    /**
+     * Returns a Fresnel-Bluestein propagator for 1D arrays with single
+     * precision for the given geometry, building the kernels only if they are not cached.
+     *
+     * @param M Number of data points on x direction.
+     * @param N Number of data points on y direction.
+     * @param lambda Wavelength.
+     * @param z Distance.
+     * @param dx Sampling pitch on x direction.
+     * @param dy Sampling pitch on y direction.
+     * @param dxOut X pitch on the output field.
+     * @param dyOut Y pitch on the output field.
+     * @return a new propagator sharing the cached or newly built kernels
+     */
+    public FloatFresnelBluesteinFlat getFloatFresnelBluesteinFlat(final int M, final int N, final float lambda, final float z,
+            final float dx, final float dy, final float dxOut, final float dyOut) {
+        Key key = new Key(FloatFresnelBluesteinFlat.class, M, N, lambda, z, dx, dy, dxOut, dyOut);
+
+        Object shared = get(key, kernelBytes(3, M, N, FLOAT_BYTES), new Builder() {
+            @Override
+            public Object build() {
+                return new FloatFresnelBluesteinFlat(M, N, lambda, z, dx, dy, dxOut, dyOut);
+            }
+        });
+        return new FloatFresnelBluesteinFlat((FloatFresnelBluesteinFlat) shared);
+    }
+
+    /**
+     * Returns a Fresnel-Bluestein propagator with double precision for the
+     * given geometry, building the kernels only if they are not cached.
+     *
+     * @param M Number of data points on x direction.
+     * @param N Number of data points on y direction.
+     * @param lambda Wavelength.
+     * @param z Distance.
+     * @param dx Sampling pitch on x direction.
+     * @param dy Sampling pitch on y direction.
+     * @param dxOut X pitch on the output field.
+     * @param dyOut Y pitch on the output field.
+     * @return a new propagator sharing the cached or newly built kernels
+     */
+    public DoubleFresnelBluestein getDoubleFresnelBluestein(final int M, final int N, final double lambda, final double z,
+            final double dx, final double dy, final double dxOut, final double dyOut) {
+        Key key = new Key(DoubleFresnelBluestein.class, M, N, lambda, z, dx, dy, dxOut, dyOut);
+
+        Object shared = get(key, kernelBytes(3, M, N, DOUBLE_BYTES), new Builder() {
+            @Override
+            public Object build() {
+                return new DoubleFresnelBluestein(M, N, lambda, z, dx, dy, dxOut, dyOut);
+            }
+        });
+        return new DoubleFresnelBluestein((DoubleFresnelBluestein) shared);
+    }
+
+    /**
+     * Returns a Fresnel-Bluestein propagator for 1D arrays with double
+     * precision for the given geometry, building the kernels only if they are not cached.
+     *
+     * @param M Number of data points on x direction.
+     * @param N Number of data points on y direction.
+     * @param lambda Wavelength.
+     * @param z Distance.
+     * @param dx Sampling pitch on x direction.
+     * @param dy Sampling pitch on y direction.
+     * @param dxOut X pitch on the output field.
+     * @param dyOut Y pitch on the output field.
+     * @return a new propagator sharing the cached or newly built kernels
+     */
+    public DoubleFresnelBluesteinFlat getDoubleFresnelBluesteinFlat(final int M, final int N, final double lambda, final double z,
+            final double dx, final double dy, final double dxOut, final double dyOut) {
+        Key key = new Key(DoubleFresnelBluesteinFlat.class, M, N, lambda, z, dx, dy, dxOut, dyOut);
+
+        Object shared = get(key, kernelBytes(3, M, N, DOUBLE_BYTES), new Builder() {
+            @Override
+            public Object build() {
+                return new DoubleFresnelBluesteinFlat(M, N, lambda, z, dx, dy, dxOut, dyOut);
+            }
+        });
+        return new DoubleFresnelBluesteinFlat((DoubleFresnelBluesteinFlat) shared);
+    }
+
+    /**
+     * Returns a Fresnel-Bluestein propagator with compact kernels and single precision for the
+     * given geometry, building the kernels only if they are not cached.
+     *
+     * @param M Number of data points on x direction.
+     * @param N Number of data points on y direction.
+     * @param lambda Wavelength.
+     * @param z Distance.
+     * @param dx Sampling pitch on x direction.
+     * @param dy Sampling pitch on y direction.
+     * @param dxOut X pitch on the output field.
+     * @param dyOut Y pitch on the output field.
+     * @return a new propagator sharing the cached or newly built kernels
+     */
+    public FloatFresnelBluesteinCompact getFloatFresnelBluesteinCompact(final int M, final int N, final float lambda, final float z,
+            final float dx, final float dy, final float dxOut, final float dyOut) {
+        Key key = new Key(FloatFresnelBluesteinCompact.class, M, N, lambda, z, dx, dy, dxOut, dyOut);
+
+        Object shared = get(key, bluesteinCompactBytes(M, N, FLOAT_BYTES), new Builder() {
+            @Override
+            public Object build() {
+                return new FloatFresnelBluesteinCompact(M, N, lambda, z, dx, dy, dxOut, dyOut);
+            }
+        });
+        return new FloatFresnelBluesteinCompact((FloatFresnelBluesteinCompact) shared);
+    }
+
+    /**
+     * Returns a Fresnel-Bluestein propagator with compact kernels and double precision for the
+     * given geometry, building the kernels only if they are not cached.
+     *
+     * @param M Number of data points on x direction.
+     * @param N Number of data points on y direction.
+     * @param lambda Wavelength.
+     * @param z Distance.
+     * @param dx Sampling pitch on x direction.
+     * @param dy Sampling pitch on y direction.
+     * @param dxOut X pitch on the output field.
+     * @param dyOut Y pitch on the output field.
+     * @return a new propagator sharing the cached or newly built kernels
+     */
+    public DoubleFresnelBluesteinCompact getDoubleFresnelBluesteinCompact(final int M, final int N, final double lambda, final double z,
+            final double dx, final double dy, final double dxOut, final double dyOut) {
+        Key key = new Key(DoubleFresnelBluesteinCompact.class, M, N, lambda, z, dx, dy, dxOut, dyOut);
+
+        Object shared = get(key, bluesteinCompactBytes(M, N, DOUBLE_BYTES), new Builder() {
+            @Override
+            public Object build() {
+                return new DoubleFresnelBluesteinCompact(M, N, lambda, z, dx, dy, dxOut, dyOut);
+            }
+        });
+        return new DoubleFresnelBluesteinCompact((DoubleFresnelBluesteinCompact) shared);
+    }
+
+    /**
+     * Returns a Fresnel-Bluestein propagator with separable kernels and single precision for the
+     * given geometry, building the kernels only if they are not cached.
+     *
+     * @param M Number of data points on x direction.
+     * @param N Number of data points on y direction.
+     * @param lambda Wavelength.
+     * @param z Distance.
+     * @param dx Sampling pitch on x direction.
+     * @param dy Sampling pitch on y direction.
+     * @param dxOut X pitch on the output field.
+     * @param dyOut Y pitch on the output field.
+     * @return a new propagator sharing the cached or newly built kernels
+     */
+    public FloatFresnelBluesteinSeparable getFloatFresnelBluesteinSeparable(final int M, final int N, final float lambda, final float z,
+            final float dx, final float dy, final float dxOut, final float dyOut) {
+        Key key = new Key(FloatFresnelBluesteinSeparable.class, M, N, lambda, z, dx, dy, dxOut, dyOut);
+
+        Object shared = get(key, separableBytes(3, M, N, FLOAT_BYTES), new Builder() {
+            @Override
+            public Object build() {
+                return new FloatFresnelBluesteinSeparable(M, N, lambda, z, dx, dy, dxOut, dyOut);
+            }
+        });
+        return new FloatFresnelBluesteinSeparable((FloatFresnelBluesteinSeparable) shared);
+    }
+
+    /**
+     * Returns a Fresnel-Bluestein propagator with separable kernels and double precision for the
+     * given geometry, building the kernels only if they are not cached.
+     *
+     * @param M Number of data points on x direction.
+     * @param N Number of data points on y direction.
+     * @param lambda Wavelength.
+     * @param z Distance.
+     * @param dx Sampling pitch on x direction.
+     * @param dy Sampling pitch on y direction.
+     * @param dxOut X pitch on the output field.
+     * @param dyOut Y pitch on the output field.
+     * @return a new propagator sharing the cached or newly built kernels
+     */
+    public DoubleFresnelBluesteinSeparable getDoubleFresnelBluesteinSeparable(final int M, final int N, final double lambda, final double z,
+            final double dx, final double dy, final double dxOut, final double dyOut) {
+        Key key = new Key(DoubleFresnelBluesteinSeparable.class, M, N, lambda, z, dx, dy, dxOut, dyOut);
+
+        Object shared = get(key, separableBytes(3, M, N, DOUBLE_BYTES), new Builder() {
+            @Override
+            public Object build() {
+                return new DoubleFresnelBluesteinSeparable(M, N, lambda, z, dx, dy, dxOut, dyOut);
+            }
+        });
+        return new DoubleFresnelBluesteinSeparable((DoubleFresnelBluesteinSeparable) shared);
+    }
+
+    /**
+     * Returns a Fresnel-Bluestein propagator with linear convolution and single precision for the
+     * given geometry, building the kernels only if they are not cached.
+     *
+     * @param M Number of data points on x direction.
+     * @param N Number of data points on y direction.
+     * @param lambda Wavelength.
+     * @param z Distance.
+     * @param dx Sampling pitch on x direction.
+     * @param dy Sampling pitch on y direction.
+     * @param dxOut X pitch on the output field.
+     * @param dyOut Y pitch on the output field.
+     * @return a new propagator sharing the cached or newly built kernels
+     */
+    public FloatFresnelBluesteinPadded getFloatFresnelBluesteinPadded(final int M, final int N, final float lambda, final float z,
+            final float dx, final float dy, final float dxOut, final float dyOut) {
+        return getFloatFresnelBluesteinPadded(M, N, lambda, z, dx, dy, dxOut, dyOut, 0, 0);
+    }
+
+    /**
+     * Returns a Fresnel-Bluestein propagator with linear convolution, single precision and the
+     * output window centered on {@code (xOffset, yOffset)} for the given
+     * geometry, building the kernels only if they are not cached.
+     *
+     * @param M Number of data points on x direction.
+     * @param N Number of data points on y direction.
+     * @param lambda Wavelength.
+     * @param z Distance.
+     * @param dx Sampling pitch on x direction.
+     * @param dy Sampling pitch on y direction.
+     * @param dxOut X pitch on the output field.
+     * @param dyOut Y pitch on the output field.
+     * @param xOffset Shift of the output window on x direction.
+     * @param yOffset Shift of the output window on y direction.
+     * @return a new propagator sharing the cached or newly built kernels
+     */
+    public FloatFresnelBluesteinPadded getFloatFresnelBluesteinPadded(final int M, final int N, final float lambda, final float z,
+            final float dx, final float dy, final float dxOut, final float dyOut, final float xOffset, final float yOffset) {
+        Key key = new Key(FloatFresnelBluesteinPadded.class, M, N, lambda, z, dx, dy, dxOut, dyOut, xOffset, yOffset);
+
+        Object shared = get(key, bluesteinPaddedBytes(M, N, FLOAT_BYTES), new Builder() {
+            @Override
+            public Object build() {
+                return new FloatFresnelBluesteinPadded(M, N, lambda, z, dx, dy, dxOut, dyOut, xOffset, yOffset);
+            }
+        });
+        return new FloatFresnelBluesteinPadded((FloatFresnelBluesteinPadded) shared);
+    }
+
+    /**
+     * Returns a Fresnel-Bluestein propagator with linear convolution and double precision for the
+     * given geometry, building the kernels only if they are not cached.
+     *
+     * @param M Number of data points on x direction.
+     * @param N Number of data points on y direction.
+     * @param lambda Wavelength.
+     * @param z Distance.
+     * @param dx Sampling pitch on x direction.
+     * @param dy Sampling pitch on y direction.
+     * @param dxOut X pitch on the output field.
+     * @param dyOut Y pitch on the output field.
+     * @return a new propagator sharing the cached or newly built kernels
+     */
+    public DoubleFresnelBluesteinPadded getDoubleFresnelBluesteinPadded(final int M, final int N, final double lambda, final double z,
+            final double dx, final double dy, final double dxOut, final double dyOut) {
+        return getDoubleFresnelBluesteinPadded(M, N, lambda, z, dx, dy, dxOut, dyOut, 0, 0);
+    }
+
+    /**
+     * Returns a Fresnel-Bluestein propagator with linear convolution, double precision and the
+     * output window centered on {@code (xOffset, yOffset)} for the given
+     * geometry, building the kernels only if they are not cached.
+     *
+     * @param M Number of data points on x direction.
+     * @param N Number of data points on y direction.
+     * @param lambda Wavelength.
+     * @param z Distance.
+     * @param dx Sampling pitch on x direction.
+     * @param dy Sampling pitch on y direction.
+     * @param dxOut X pitch on the output field.
+     * @param dyOut Y pitch on the output field.
+     * @param xOffset Shift of the output window on x direction.
+     * @param yOffset Shift of the output window on y direction.
+     * @return a new propagator sharing the cached or newly built kernels
+     */
+    public DoubleFresnelBluesteinPadded getDoubleFresnelBluesteinPadded(final int M, final int N, final double lambda, final double z,
+            final double dx, final double dy, final double dxOut, final double dyOut, final double xOffset, final double yOffset) {
+        Key key = new Key(DoubleFresnelBluesteinPadded.class, M, N, lambda, z, dx, dy, dxOut, dyOut, xOffset, yOffset);
+
+        Object shared = get(key, bluesteinPaddedBytes(M, N, DOUBLE_BYTES), new Builder() {
+            @Override
+            public Object build() {
+                return new DoubleFresnelBluesteinPadded(M, N, lambda, z, dx, dy, dxOut, dyOut, xOffset, yOffset);
+            }
+        });
+        return new DoubleFresnelBluesteinPadded((DoubleFresnelBluesteinPadded) shared);
+    }
+
+    /**
+     * Removes all the cached propagators. Statistics are not reset.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    /**
+     * Returns the max memory for cached kernels, in bytes.
+     *
+     * @return max size in bytes
+     */
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Returns the memory taken by the cached kernels, in bytes.
+     *
+     * @return size in bytes
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Returns the number of cached propagators.
+     *
+     * @return number of entries
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the number of requests served from the cache.
+     *
+     * @return hit count
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Returns the number of requests that had to build a propagator.
+     *
+     * @return miss count
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Returns the number of propagators evicted to make room for new ones.
+     *
+     * @return eviction count
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "PropagatorCache[entries=" + entries.size() + ", bytes=" + bytes + "/" + maxBytes
+                + ", hits=" + hits + ", misses=" + misses + ", evictions=" + evictions + "]";
+    }
+}
@@ -0,0 +1,435 @@
+/*
+ * Copyright 2016 Universidad Nacional de Colombia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package unal.od.jdiffraction.cpu;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.jtransforms.fft.DoubleFFT_1D;
+import org.jtransforms.fft.DoubleFFT_2D;
+import org.jtransforms.fft.FloatFFT_1D;
+import org.jtransforms.fft.FloatFFT_2D;
+
+/**
+ * Factory for CPU propagators that run the FFTs on sizes JTransforms handles
+ * well. Sizes with big prime factors, as the 1022 x 766 of some camera ROIs,
+ * go through the general radix or the Bluestein paths of JTransforms and are
+ * several times slower than a nearby 2-3-5-7 smooth size.
+ * <p>
+ * For each dimension the candidates are the size itself and the next smooth
+ * sizes up to 25% bigger; when cropping is allowed, the biggest smooth size
+ * down to 12.5% smaller is also tried. The 1D FFT of each candidate length is
+ * timed, the 2D cost of each pair of candidates is estimated from the 1D
+ * timings and the cheapest pairs are timed in 2D, along with M x N. The
+ * fastest one wins, unless M x N is within 10% of it. Timings and plans are
+ * kept, so each (M, N) is planned only once, which takes a few seconds for
+ * megapixel fields.
+ * <p>
+ * The propagators returned take and give back M x N fields: the field is
+ * centered on the planned grid, zero padded or cropped with tapered borders,
+ * and the result is cropped or zero padded back. Padding only widens the
+ * field of view, so with the default settings the results are those of a
+ * propagator on a padded field. Cropping throws away the borders of the
+ * field and leaves them as zeros on the output.
+ * <p>
+ * The output pitch of the Fresnel-Fourier method depends on the number of
+ * data points, so those propagators are always built for M x N.
+ *
+ * @author Pablo Piedrahita-Quintero (jppiedrahitaq@unal.edu.co)
+ * @author Carlos Trujillo (catrujila@unal.edu.co)
+ * @author Jorge Garcia-Sucerquia (jigarcia@unal.edu.co)
+ *
+ * @since JDiffraction 1.3
+ */
+public class PropagatorPlanner {
+
+    //timing rounds per length and min time of each round, in ns
+    private static final int ROUNDS = 5;
+    private static final long ROUND_TIME = 1000000;
+    //sizes timed in 2D and timing rounds for each one
+    private static final int SHORTLIST = 3;
+    private static final int ROUNDS_2D = 2;
+    private static final double MAX_PADDING = 0.25;
+    private static final double MAX_CROP = 0.125;
+    private static final double TOLERANCE = 0.1;
+
+    private final Map<Integer, Double> floatCosts = new HashMap<Integer, Double>();
+    private final Map<Integer, Double> doubleCosts = new HashMap<Integer, Double>();
+    private final Map<List<Object>, int[]> plans = new HashMap<List<Object>, int[]>();
+
+    private volatile boolean cropAllowed = false;
+
+    /**
+     * Creates a new planner. Cropping is not allowed by default.
+     */
+    public PropagatorPlanner() {
+    }
+
+    /**
+     * Candidate sizes for a dimension of size {@code n}, starting with
+     * {@code n}.
+     */
+    private List<Integer> candidates(int n, boolean crop) {
+        List<Integer> candidates = new ArrayList<Integer>();
+        candidates.add(n);
+
+        int size = FFTUtils.smoothSize(n + 1);
+        while (size <= n + n * MAX_PADDING) {
+            candidates.add(size);
+            size = FFTUtils.smoothSize(size + 1);
+        }
+
+        if (crop && n > 1) {
+            size = FFTUtils.smoothSizeBelow(n - 1);
+            if (size >= n - n * MAX_CROP) {
+                candidates.add(size);
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * Times a forward and an inverse 1D FFT of each length, in ns. The JIT
+     * compiles the radix passes while the first lengths run, so the lengths
+     * are timed in several interleaved rounds, keeping the best time.
+     */
+    private void measure(List<Integer> lengths, boolean doublePrecision) {
+        Map<Integer, Double> costs = doublePrecision ? doubleCosts : floatCosts;
+
+        List<Integer> missing = new ArrayList<Integer>();
+        for (int n : lengths) {
+            if (!costs.containsKey(n) && !missing.contains(n)) {
+                missing.add(n);
+            }
+        }
+
+        double[] best = new double[missing.size()];
+        Arrays.fill(best, Double.MAX_VALUE);
+
+        for (int round = 0; round < ROUNDS; round++) {
+            for (int k = 0; k < best.length; k++) {
+                best[k] = Math.min(best[k], time(missing.get(k), doublePrecision));
+            }
+        }
+
+        for (int k = 0; k < best.length; k++) {
+            costs.put(missing.get(k), best[k]);
+        }
+    }
+
+    private static double time(int n, boolean doublePrecision) {
+        int repetitions = 0;
+        long start = System.nanoTime();
+        long elapsed;
+
+        if (doublePrecision) {
+            DoubleFFT_1D fft = new DoubleFFT_1D(n);
+            double[] data = new double[2 * n];
+            data[0] = 1;
+
+            do {
+                fft.complexForward(data);
+                fft.complexInverse(data, true);
+                repetitions++;
+                elapsed = System.nanoTime() - start;
+            } while (elapsed < ROUND_TIME);
+        } else {
+            FloatFFT_1D fft = new FloatFFT_1D(n);
+            float[] data = new float[2 * n];
+            data[0] = 1;
+
+            do {
+                fft.complexForward(data);
+                fft.complexInverse(data, true);
+                repetitions++;
+                elapsed = System.nanoTime() - start;
+            } while (elapsed < ROUND_TIME);
+        }
+
+        return (double) elapsed / repetitions;
+    }
+
+    private static double time(int M, int N, boolean doublePrecision) {
+        long start;
+
+        if (doublePrecision) {
+            DoubleFFT_2D fft = new DoubleFFT_2D(M, N);
+            double[][] data = new double[M][2 * N];
+            data[0][0] = 1;
+
+            start = System.nanoTime();
+            fft.complexForward(data);
+            fft.complexInverse(data, true);
+        } else {
+            FloatFFT_2D fft = new FloatFFT_2D(M, N);
+            float[][] data = new float[M][2 * N];
+            data[0][0] = 1;
+
+            start = System.nanoTime();
+            fft.complexForward(data);
+            fft.complexInverse(data, true);
+        }
+
+        return System.nanoTime() - start;
+    }
+
+    private synchronized int[] plan(int M, int N, boolean doublePrecision) {
+        boolean crop = cropAllowed;
+        List<Object> key = new ArrayList<Object>();
+        key.add(M);
+        key.add(N);
+        key.add(doublePrecision);
+        key.add(crop);
+
+        int[] plan = plans.get(key);
+        if (plan == null) {
+            List<Integer> rows = candidates(M, crop);
+            List<Integer> columns = candidates(N, crop);
+
+            List<Integer> lengths = new ArrayList<Integer>(rows);
+            lengths.addAll(columns);
+            measure(lengths, doublePrecision);
+            Map<Integer, Double> costs = doublePrecision ? doubleCosts : floatCosts;
+
+            //a 2D transform is done by rows and by columns, so its cost is
+            //estimated from the 1D timings; the cheapest pairs and the size
+            //asked for are then timed in 2D
+            List<double[]> pairs = new ArrayList<double[]>();
+            for (int paddedM : rows) {
+                for (int paddedN : columns) {
+                    double cost = paddedN * costs.get(paddedM) + paddedM * costs.get(paddedN);
+                    pairs.add(new double[]{cost, paddedM, paddedN});
+                }
+            }
+            Collections.sort(pairs, new Comparator<double[]>() {
+                @Override
+                public int compare(double[] a, double[] b) {
+                    return Double.compare(a[0], b[0]);
+                }
+            });
+
+            List<int[]> shortlist = new ArrayList<int[]>();
+            shortlist.add(new int[]{M, N});
+            for (double[] pair : pairs.subList(0, Math.min(SHORTLIST, pairs.size()))) {
+                if (pair[1] != M || pair[2] != N) {
+                    shortlist.add(new int[]{(int) pair[1], (int) pair[2]});
+                }
+            }
+
+            double[] best = new double[shortlist.size()];
+            Arrays.fill(best, Double.MAX_VALUE);
+            for (int round = 0; round < ROUNDS_2D; round++) {
+                for (int k = 0; k < best.length; k++) {
+                    best[k] = Math.min(best[k], time(shortlist.get(k)[0], shortlist.get(k)[1], doublePrecision));
+                }
+            }
+
+            int fastest = 0;
+            for (int k = 1; k < best.length; k++) {
+                if (best[k] < best[fastest]) {
+                    fastest = k;
+                }
+            }
+
+            //the size asked for is kept unless the gain is clear
+            plan = best[0] <= best[fastest] * (1 + TOLERANCE) ? shortlist.get(0) : shortlist.get(fastest);
+
+            plans.put(key, plan);
+        }
+        return plan.clone();
+    }
+
+    /**
+     * Returns the grid used by the single precision propagators for M x N
+     * fields. Plans the size if it wasn't planned before.
+     *
+     * @param M Number of data points on x direction.
+     * @param N Number of data points on y direction.
+     * @return {paddedM, paddedN}
+     */
+    public int[] getFloatPlan(int M, int N) {
+        return plan(M, N, false);
+    }
+
+    /**
+     * Returns the grid used by the double precision propagators for M x N
+     * fields. Plans the size if it wasn't planned before.
+     *
+     * @param M Number of data points on x direction.
+     * @param N Number of data points on y direction.
+     * @return {paddedM, paddedN}
+     */
+    public int[] getDoublePlan(int M, int N) {
+        return plan(M, N, true);
+    }
+
+    private static FloatPropagator wrap(FloatPropagator propagator, int M, int N, int[] plan) {
+        if (plan[0] == M && plan[1] == N) {
+            return propagator;
+        }
+        return new FloatPlannedPropagator(propagator, M, N, plan[0], plan[1]);
+    }
+
+    private static DoublePropagator wrap(DoublePropagator propagator, int M, int N, int[] plan) {
+        if (plan[0] == M && plan[1] == N) {
+            return propagator;
+        }
+        return new DoublePlannedPropagator(propagator, M, N, plan[0], plan[1]);
+    }
+
+    /**
+     * Returns a propagator using angular spectrum method with single
+     * precision on the planned grid.
+     *
+     * @param M Number of data points on x direction.
+     * @param N Number of data points on y direction.
+     * @param lambda Wavelength.
+     * @param z Distance.
+     * @param dx Sampling pitch on x direction.
+     * @param dy Sampling pitch on y direction.
+     * @return the propagator
+     */
+    public FloatPropagator getFloatAngularSpectrum(int M, int N, float lambda, float z, float dx, float dy) {
+        int[] plan = getFloatPlan(M, N);
+        return wrap(new FloatAngularSpectrum(plan[0], plan[1], lambda, z, dx, dy), M, N, plan);
+    }
+
+    /**
+     * Returns a propagator using angular spectrum method with double
+     * precision on the planned grid.
+     *
+     * @param M Number of data points on x direction.
+     * @param N Number of data points on y direction.
+     * @param lambda Wavelength.
+     * @param z Distance.
+     * @param dx Sampling pitch on x direction.
+     * @param dy Sampling pitch on y direction.
+     * @return the propagator
+     */
+    public DoublePropagator getDoubleAngularSpectrum(int M, int N, double lambda, double z, double dx, double dy) {
+        int[] plan = getDoublePlan(M, N);
+        return wrap(new DoubleAngularSpectrum(plan[0], plan[1], lambda, z, dx, dy), M, N, plan);
+    }
+
+    /**
+     * Returns a propagator using Fresnel-Fourier method with single
+     * precision. The output pitch depends on the size, so the propagator is
+     * built for M x N.
+     *
+     * @param M Number of data points on x direction.
+     * @param N Number of data points on y direction.
+     * @param lambda Wavelength.
+     * @param z Distance.
+     * @param dx Sampling pitch on x direction.
+     * @param dy Sampling pitch on y direction.
+     * @return the propagator
+     */
+    public FloatPropagator getFloatFresnelFourier(int M, int N, float lambda, float z, float dx, float dy) {
+        return new FloatFresnelFourier(M, N, lambda, z, dx, dy);
+    }
+
+    /**
+     * Returns a propagator using Fresnel-Fourier method with double
+     * precision. The output pitch depends on the size, so the propagator is
+     * built for M x N.
+     *
+     * @param M Number of data points on x direction.
+     * @param N Number of data points on y direction.
+     * @param lambda Wavelength.
+     * @param z Distance.
+     * @param dx Sampling pitch on x direction.
+     * @param dy Sampling pitch on y direction.
+     * @return the propagator
+     */
+    public DoublePropagator getDoubleFresnelFourier(int M, int N, double lambda, double z, double dx, double dy) {
+        return new DoubleFresnelFourier(M, N, lambda, z, dx, dy);
+    }
+
+    /**
+     * Returns a propagator using Fresnel-Bluestein method with single
+     * precision on the planned grid. The output keeps the pitches
+     * {@code dxOut} and {@code dyOut}.
+     *
+     * @param M Number of data points on x direction.
+     * @param N Number of data points on y direction.
+     * @param lambda Wavelength.
+     * @param z Distance.
+     * @param dx Sampling pitch on x direction.
+     * @param dy Sampling pitch on y direction.
+     * @param dxOut X pitch on the output field.
+     * @param dyOut Y pitch on the output field.
+     * @return the propagator
+     */
+    public FloatPropagator getFloatFresnelBluestein(int M, int N, float lambda, float z, float dx, float dy,
+            float dxOut, float dyOut) {
+        int[] plan = getFloatPlan(M, N);
+        return wrap(new FloatFresnelBluestein(plan[0], plan[1], lambda, z, dx, dy, dxOut, dyOut), M, N, plan);
+    }
+
+    /**
+     * Returns a propagator using Fresnel-Bluestein method with double
+     * precision on the planned grid. The output keeps the pitches
+     * {@code dxOut} and {@code dyOut}.
+     *
+     * @param M Number of data points on x direction.
+     * @param N Number of data points on y direction.
+     * @param lambda Wavelength.
+     * @param z Distance.
+     * @param dx Sampling pitch on x direction.
+     * @param dy Sampling pitch on y direction.
+     * @param dxOut X pitch on the output field.
+     * @param dyOut Y pitch on the output field.
+     * @return the propagator
+     */
+    public DoublePropagator getDoubleFresnelBluestein(int M, int N, double lambda, double z, double dx, double dy,
+            double dxOut, double dyOut) {
+        int[] plan = getDoublePlan(M, N);
+        return wrap(new DoubleFresnelBluestein(plan[0], plan[1], lambda, z, dx, dy, dxOut, dyOut), M, N, plan);
+    }
+
+    /**
+     * Allows candidate sizes smaller than the field. The borders of the field
+     * are tapered and dropped, so the results change. Plans made before are
+     * kept for the previous setting.
+     *
+     * @param cropAllowed true to allow cropping
+     */
+    public void setCropAllowed(boolean cropAllowed) {
+        this.cropAllowed = cropAllowed;
+    }
+
+    /**
+     * Returns whether candidate sizes smaller than the field are allowed.
+     *
+     * @return true if cropping is allowed
+     */
+    public boolean isCropAllowed() {
+        return cropAllowed;
+    }
+
+    /**
+     * Removes all the timings and plans.
+     */
+    public synchronized void clear() {
+        floatCosts.clear();
+        doubleCosts.clear();
+        plans.clear();
+    }
+}
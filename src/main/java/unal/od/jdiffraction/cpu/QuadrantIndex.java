@@ -0,0 +1,354 @@
+/*
+ * Copyright 2016 Universidad Nacional de Colombia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package unal.od.jdiffraction.cpu;
+
+import unal.od.jdiffraction.cpu.utils.ParallelArrayUtils;
+
+/**
+ * Maps the positions of an M x N kernel to a compact kernel holding a single
+ * quadrant. The kernels of the propagators are filled mirroring the quadrant
+ * {@code [0, M / 2) x [0, N / 2)}: row {@code i} is the same as row
+ * {@code 2 * (M / 2) - 1 - i} and, for odd sizes, the last row is stored on
+ * its own. The same goes for columns. The compact kernel has
+ * {@code M / 2 + M % 2} rows and {@code N / 2 + N % 2} complex columns.
+ * <p>
+ * The multiplication resolves the mirrored positions through index tables,
+ * so the full kernel is never built.
+ *
+ * @author Pablo Piedrahita-Quintero (jppiedrahitaq@unal.edu.co)
+ * @author Carlos Trujillo (catrujila@unal.edu.co)
+ * @author Jorge Garcia-Sucerquia (jigarcia@unal.edu.co)
+ *
+ * @since JDiffraction 1.3
+ */
+final class QuadrantIndex {
+
+    private final int M, N;
+    //compact row used by each row of the field
+    private final int[] rows;
+    //compact row used by the last column of each row, for odd N
+    private final int[] lastColumnRows;
+    //compact column (times 2) used by each column, per field row
+    private final int[][] columns;
+
+    private QuadrantIndex(int M, int N, int[] rows, int[] lastColumnRows, int[][] columns) {
+        this.M = M;
+        this.N = N;
+        this.rows = rows;
+        this.lastColumnRows = lastColumnRows;
+        this.columns = columns;
+    }
+
+    /**
+     * Number of rows (or columns) of the compact kernel for a dimension of
+     * size {@code M}.
+     */
+    static int size(int M) {
+        return M / 2 + M % 2;
+    }
+
+    /**
+     * Compact index of each position of a dimension of size {@code M}, in the
+     * order used by {@code calculateKernels}.
+     */
+    private static int[] mirror(int M) {
+        int M2 = M / 2;
+        int endM = 2 * M2 - 1;
+
+        int[] index = new int[M];
+        for (int i = 0; i < M; i++) {
+            if (i < M2) {
+                index[i] = i;
+            } else if (i <= endM) {
+                index[i] = endM - i;
+            } else {
+                index[i] = M2;
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Position, before {@code ArrayUtils.complexShift}, of each position of a
+     * dimension of size {@code M}. The last position of odd sizes isn't moved.
+     */
+    private static int[] shift(int M) {
+        int M2 = M / 2;
+
+        int[] index = new int[M];
+        for (int i = 0; i < M; i++) {
+            if (i < M2) {
+                index[i] = i + M2;
+            } else if (i < 2 * M2) {
+                index[i] = i - M2;
+            } else {
+                index[i] = i;
+            }
+        }
+        return index;
+    }
+
+    private static int[] twice(int[] index) {
+        int[] twice = new int[index.length];
+        for (int i = 0; i < index.length; i++) {
+            twice[i] = 2 * index[i];
+        }
+        return twice;
+    }
+
+    /**
+     * Index for kernels used as calculated.
+     */
+    static QuadrantIndex centered(int M, int N) {
+        int[] rows = mirror(M);
+        int[] columns = twice(mirror(N));
+
+        int[][] rowColumns = new int[M][];
+        for (int i = 0; i < M; i++) {
+            rowColumns[i] = columns;
+        }
+
+        return new QuadrantIndex(M, N, rows, rows, rowColumns);
+    }
+
+    /**
+     * Index for kernels stored in FFT order, as left by
+     * {@code ArrayUtils.complexShift}. For odd sizes the shift leaves the last
+     * row and the last column in place, so they are mapped without shifting.
+     */
+    static QuadrantIndex shifted(int M, int N) {
+        int[] mirrorM = mirror(M);
+        int[] mirrorN = mirror(N);
+        int[] shiftM = shift(M);
+        int[] shiftN = shift(N);
+
+        int[] rows = new int[M];
+        for (int i = 0; i < M; i++) {
+            rows[i] = mirrorM[shiftM[i]];
+        }
+
+        int[] shiftedColumns = new int[N];
+        for (int j = 0; j < N; j++) {
+            shiftedColumns[j] = 2 * mirrorN[shiftN[j]];
+        }
+        int[] columns = twice(mirrorN);
+
+        int[][] rowColumns = new int[M][];
+        for (int i = 0; i < M; i++) {
+            rowColumns[i] = i < 2 * (M / 2) ? shiftedColumns : columns;
+        }
+
+        return new QuadrantIndex(M, N, rows, mirrorM, rowColumns);
+    }
+
+    /**
+     * Writes the full M x 2N kernel represented by {@code kernel} in
+     * {@code full}.
+     */
+    void expand(float[][] kernel, float[][] full) {
+        int end = 2 * (N / 2);
+
+        for (int i = 0; i < M; i++) {
+            float[] kernelRow = kernel[rows[i]];
+            int[] index = columns[i];
+
+            for (int j = 0; j < end; j++) {
+                full[i][2 * j] = kernelRow[index[j]];
+                full[i][2 * j + 1] = kernelRow[index[j] + 1];
+            }
+
+            if (end < N) {
+                kernelRow = kernel[lastColumnRows[i]];
+                full[i][2 * end] = kernelRow[index[end]];
+                full[i][2 * end + 1] = kernelRow[index[end] + 1];
+            }
+        }
+    }
+
+    /**
+     * Double precision version of {@link #expand(float[][], float[][])}.
+     */
+    void expand(double[][] kernel, double[][] full) {
+        int end = 2 * (N / 2);
+
+        for (int i = 0; i < M; i++) {
+            double[] kernelRow = kernel[rows[i]];
+            int[] index = columns[i];
+
+            for (int j = 0; j < end; j++) {
+                full[i][2 * j] = kernelRow[index[j]];
+                full[i][2 * j + 1] = kernelRow[index[j] + 1];
+            }
+
+            if (end < N) {
+                kernelRow = kernel[lastColumnRows[i]];
+                full[i][2 * end] = kernelRow[index[end]];
+                full[i][2 * end + 1] = kernelRow[index[end] + 1];
+            }
+        }
+    }
+
+    /**
+     * Writes the full M x 2N kernel represented by {@code kernel} in
+     * {@code full} by columns, {@code full[j][2 * i]} being the position
+     * {@code (i, j)}.
+     */
+    void expandByColumns(float[][] kernel, float[][] full) {
+        int end = 2 * (N / 2);
+
+        for (int i = 0; i < M; i++) {
+            float[] kernelRow = kernel[rows[i]];
+            int[] index = columns[i];
+
+            for (int j = 0; j < end; j++) {
+                full[j][2 * i] = kernelRow[index[j]];
+                full[j][2 * i + 1] = kernelRow[index[j] + 1];
+            }
+
+            if (end < N) {
+                kernelRow = kernel[lastColumnRows[i]];
+                full[end][2 * i] = kernelRow[index[end]];
+                full[end][2 * i + 1] = kernelRow[index[end] + 1];
+            }
+        }
+    }
+
+    /**
+     * Double precision version of
+     * {@link #expandByColumns(float[][], float[][])}.
+     */
+    void expandByColumns(double[][] kernel, double[][] full) {
+        int end = 2 * (N / 2);
+
+        for (int i = 0; i < M; i++) {
+            double[] kernelRow = kernel[rows[i]];
+            int[] index = columns[i];
+
+            for (int j = 0; j < end; j++) {
+                full[j][2 * i] = kernelRow[index[j]];
+                full[j][2 * i + 1] = kernelRow[index[j] + 1];
+            }
+
+            if (end < N) {
+                kernelRow = kernel[lastColumnRows[i]];
+                full[end][2 * i] = kernelRow[index[end]];
+                full[end][2 * i + 1] = kernelRow[index[end] + 1];
+            }
+        }
+    }
+
+    /**
+     * Multiplies {@code field} by the full kernel represented by
+     * {@code kernel}, leaving the result in {@code field}. With a non-zero
+     * {@code checkerboard}, the kernel is also multiplied by
+     * {@code checkerboard * (-1)^(i + j)}.
+     */
+    void multiply(final float[][] field, final float[][] kernel, final int checkerboard, boolean parallel) {
+        ParallelArrayUtils.RowRange range = new ParallelArrayUtils.RowRange() {
+            @Override
+            public void apply(int from, int to) {
+                int end = 2 * (N / 2);
+
+                for (int i = from; i < to; i++) {
+                    float[] row = field[i];
+                    float[] kernelRow = kernel[rows[i]];
+                    int[] index = columns[i];
+                    float sign = checkerboard == 0 ? 1 : (i % 2 == 0 ? checkerboard : -checkerboard);
+                    float step = checkerboard == 0 ? 1 : -1;
+
+                    for (int j = 0; j < end; j++) {
+                        float kernelReal = sign * kernelRow[index[j]];
+                        float kernelImaginary = sign * kernelRow[index[j] + 1];
+                        float real = row[2 * j];
+                        float imaginary = row[2 * j + 1];
+
+                        row[2 * j] = (real * kernelReal) - (imaginary * kernelImaginary);
+                        row[2 * j + 1] = (real * kernelImaginary) + (imaginary * kernelReal);
+                        sign *= step;
+                    }
+
+                    if (end < N) {
+                        kernelRow = kernel[lastColumnRows[i]];
+
+                        float kernelReal = sign * kernelRow[index[end]];
+                        float kernelImaginary = sign * kernelRow[index[end] + 1];
+                        float real = row[2 * end];
+                        float imaginary = row[2 * end + 1];
+
+                        row[2 * end] = (real * kernelReal) - (imaginary * kernelImaginary);
+                        row[2 * end + 1] = (real * kernelImaginary) + (imaginary * kernelReal);
+                    }
+                }
+            }
+        };
+
+        if (parallel) {
+            ParallelArrayUtils.forRows(M, N, range);
+        } else {
+            range.apply(0, M);
+        }
+    }
+
+    /**
+     * Double precision version of
+     * {@link #multiply(float[][], float[][], int, boolean)}.
+     */
+    void multiply(final double[][] field, final double[][] kernel, final int checkerboard, boolean parallel) {
+        ParallelArrayUtils.RowRange range = new ParallelArrayUtils.RowRange() {
+            @Override
+            public void apply(int from, int to) {
+                int end = 2 * (N / 2);
+
+                for (int i = from; i < to; i++) {
+                    double[] row = field[i];
+                    double[] kernelRow = kernel[rows[i]];
+                    int[] index = columns[i];
+                    double sign = checkerboard == 0 ? 1 : (i % 2 == 0 ? checkerboard : -checkerboard);
+                    double step = checkerboard == 0 ? 1 : -1;
+
+                    for (int j = 0; j < end; j++) {
+                        double kernelReal = sign * kernelRow[index[j]];
+                        double kernelImaginary = sign * kernelRow[index[j] + 1];
+                        double real = row[2 * j];
+                        double imaginary = row[2 * j + 1];
+
+                        row[2 * j] = (real * kernelReal) - (imaginary * kernelImaginary);
+                        row[2 * j + 1] = (real * kernelImaginary) + (imaginary * kernelReal);
+                        sign *= step;
+                    }
+
+                    if (end < N) {
+                        kernelRow = kernel[lastColumnRows[i]];
+
+                        double kernelReal = sign * kernelRow[index[end]];
+                        double kernelImaginary = sign * kernelRow[index[end] + 1];
+                        double real = row[2 * end];
+                        double imaginary = row[2 * end + 1];
+
+                        row[2 * end] = (real * kernelReal) - (imaginary * kernelImaginary);
+                        row[2 * end + 1] = (real * kernelImaginary) + (imaginary * kernelReal);
+                    }
+                }
+            }
+        };
+
+        if (parallel) {
+            ParallelArrayUtils.forRows(M, N, range);
+        } else {
+            range.apply(0, M);
+        }
+    }
+}
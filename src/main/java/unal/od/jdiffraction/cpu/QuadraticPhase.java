@@ -0,0 +1,154 @@
+/*
+ * Copyright 2016 Universidad Nacional de Colombia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package unal.od.jdiffraction.cpu;
+
+import unal.od.jdiffraction.cpu.utils.ParallelArrayUtils;
+
+/**
+ * Generator of the quadratic phase kernels of the Fresnel propagators. The
+ * kernels have the form {@code rows[i] * columns[j]}, with factors
+ * exp(i * (offset + a * k^2)) over the coordinates {@code k} used by
+ * {@code calculateKernels}. The factors are computed with complex rotation
+ * recurrences: consecutive values differ by exp(i * a * (2k + 1)), which in
+ * turn differs by exp(i * 2a). The recurrence is re-seeded with direct
+ * evaluations every {@value #RESEED} values to bound the rounding error. The
+ * kernels are then filled with one complex multiplication per element, split
+ * by rows over {@link ParallelArrayUtils#forRows}.
+ * <p>
+ * Factors are always computed in double precision.
+ *
+ * @author Pablo Piedrahita-Quintero (jppiedrahitaq@unal.edu.co)
+ * @author Carlos Trujillo (catrujila@unal.edu.co)
+ * @author Jorge Garcia-Sucerquia (jigarcia@unal.edu.co)
+ *
+ * @since JDiffraction 1.3
+ */
+final class QuadraticPhase {
+
+    private static final int RESEED = 32;
+
+    private QuadraticPhase() {
+
+    }
+
+    /**
+     * Returns exp(i * (offset + a * k^2)) for the M coordinates {@code k} of
+     * {@link SeparableKernel#coordinate(int, int)}, as an interleaved complex
+     * array of length 2M.
+     */
+    static double[] factor(int M, double a, double offset) {
+        int M2 = M / 2;
+        //coordinates go from -M2 + 1 to M2 - 1, plus M2 + 2 for odd M
+        int size = M2 + 3;
+
+        double[] values = new double[2 * size];
+        double rotationReal = Math.cos(2 * a);
+        double rotationImaginary = Math.sin(2 * a);
+        double real = 0, imaginary = 0, stepReal = 0, stepImaginary = 0;
+
+        for (int k = 0; k < size; k++) {
+            if (k % RESEED == 0) {
+                double phase = offset + a * k * k;
+                real = Math.cos(phase);
+                imaginary = Math.sin(phase);
+
+                phase = a * (2 * k + 1);
+                stepReal = Math.cos(phase);
+                stepImaginary = Math.sin(phase);
+            }
+
+            values[2 * k] = real;
+            values[2 * k + 1] = imaginary;
+
+            double tmp = (real * stepReal) - (imaginary * stepImaginary);
+            imaginary = (real * stepImaginary) + (imaginary * stepReal);
+            real = tmp;
+
+            tmp = (stepReal * rotationReal) - (stepImaginary * rotationImaginary);
+            stepImaginary = (stepReal * rotationImaginary) + (stepImaginary * rotationReal);
+            stepReal = tmp;
+        }
+
+        double[] factor = new double[2 * M];
+        for (int i = 0; i < M; i++) {
+            int k = Math.abs(SeparableKernel.coordinate(i, M));
+            factor[2 * i] = values[2 * k];
+            factor[2 * i + 1] = values[2 * k + 1];
+        }
+
+        return factor;
+    }
+
+    /**
+     * Multiplies the complex array {@code a} by {@code real + i * imaginary}.
+     */
+    static void multiply(double[] a, double real, double imaginary) {
+        for (int i = 0; i < a.length; i += 2) {
+            double tmp = (a[i] * real) - (a[i + 1] * imaginary);
+            a[i + 1] = (a[i] * imaginary) + (a[i + 1] * real);
+            a[i] = tmp;
+        }
+    }
+
+    /**
+     * Writes {@code rows[i] * columns[j]} in {@code kernel}. For odd sizes
+     * the last column is left to the caller, as {@code calculateKernels}
+     * fills it on its own.
+     */
+    static void fill(final float[][] kernel, final double[] rows, final double[] columns) {
+        final int N = 2 * (columns.length / 4);
+
+        ParallelArrayUtils.forRows(kernel.length, N, new ParallelArrayUtils.RowRange() {
+            @Override
+            public void apply(int from, int to) {
+                for (int i = from; i < to; i++) {
+                    float[] row = kernel[i];
+                    double rowReal = rows[2 * i];
+                    double rowImaginary = rows[2 * i + 1];
+
+                    for (int j = 0; j < N; j++) {
+                        row[2 * j] = (float) ((rowReal * columns[2 * j]) - (rowImaginary * columns[2 * j + 1]));
+                        row[2 * j + 1] = (float) ((rowReal * columns[2 * j + 1]) + (rowImaginary * columns[2 * j]));
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Double precision version of
+     * {@link #fill(float[][], double[], double[])}.
+     */
+    static void fill(final double[][] kernel, final double[] rows, final double[] columns) {
+        final int N = 2 * (columns.length / 4);
+
+        ParallelArrayUtils.forRows(kernel.length, N, new ParallelArrayUtils.RowRange() {
+            @Override
+            public void apply(int from, int to) {
+                for (int i = from; i < to; i++) {
+                    double[] row = kernel[i];
+                    double rowReal = rows[2 * i];
+                    double rowImaginary = rows[2 * i + 1];
+
+                    for (int j = 0; j < N; j++) {
+                        row[2 * j] = (rowReal * columns[2 * j]) - (rowImaginary * columns[2 * j + 1]);
+                        row[2 * j + 1] = (rowReal * columns[2 * j + 1]) + (rowImaginary * columns[2 * j]);
+                    }
+                }
+            }
+        });
+    }
+}
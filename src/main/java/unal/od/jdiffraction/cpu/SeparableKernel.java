@@ -0,0 +1,152 @@
+/*
+ * Copyright 2016 Universidad Nacional de Colombia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package unal.od.jdiffraction.cpu;
+
+import unal.od.jdiffraction.cpu.utils.ParallelArrayUtils;
+
+/**
+ * Operations over kernels of the form {@code rows[i] * columns[j]}, where
+ * {@code rows} and {@code columns} are 1D complex arrays. Quadratic phase
+ * factors such as exp(i * a * x^2 + i * b * y^2) are stored this way in
+ * O(M + N) memory.
+ *
+ * @author Pablo Piedrahita-Quintero (jppiedrahitaq@unal.edu.co)
+ * @author Carlos Trujillo (catrujila@unal.edu.co)
+ * @author Jorge Garcia-Sucerquia (jigarcia@unal.edu.co)
+ *
+ * @since JDiffraction 1.3
+ */
+final class SeparableKernel {
+
+    private SeparableKernel() {
+
+    }
+
+    /**
+     * Coordinate, in samples, of position {@code i} of a dimension of size
+     * {@code M}, as used by {@code calculateKernels} of the full propagators.
+     */
+    static int coordinate(int i, int M) {
+        int M2 = M / 2;
+        int endM = 2 * M2 - 1;
+
+        if (i < M2) {
+            return i - M2 + 1;
+        } else if (i <= endM) {
+            return endM - i - M2 + 1;
+        } else {
+            return M - M2 + 1;
+        }
+    }
+
+    /**
+     * Multiplies the odd positions of the complex array {@code a} by -1. Used
+     * to fold the separable {@code (-1)^(i + j)} modulation into the factors.
+     */
+    static void checkerboard(float[] a) {
+        for (int i = 2; i < a.length; i += 4) {
+            a[i] = -a[i];
+            a[i + 1] = -a[i + 1];
+        }
+    }
+
+    /**
+     * Double precision version of {@link #checkerboard(float[])}.
+     */
+    static void checkerboard(double[] a) {
+        for (int i = 2; i < a.length; i += 4) {
+            a[i] = -a[i];
+            a[i + 1] = -a[i + 1];
+        }
+    }
+
+    /**
+     * Multiplies {@code field} by the kernel {@code rows[i] * columns[j]},
+     * leaving the result in {@code field}. The kernel value is built while
+     * multiplying, so the full kernel is never stored.
+     */
+    static void multiply(final float[][] field, final float[] rows, final float[] columns, boolean parallel) {
+        final int M = rows.length / 2;
+        final int N = columns.length / 2;
+
+        ParallelArrayUtils.RowRange range = new ParallelArrayUtils.RowRange() {
+            @Override
+            public void apply(int from, int to) {
+                for (int i = from; i < to; i++) {
+                    float[] row = field[i];
+                    float rowReal = rows[2 * i];
+                    float rowImaginary = rows[2 * i + 1];
+
+                    for (int j = 0; j < N; j++) {
+                        float columnReal = columns[2 * j];
+                        float columnImaginary = columns[2 * j + 1];
+                        float kernelReal = (rowReal * columnReal) - (rowImaginary * columnImaginary);
+                        float kernelImaginary = (rowReal * columnImaginary) + (rowImaginary * columnReal);
+                        float real = row[2 * j];
+                        float imaginary = row[2 * j + 1];
+
+                        row[2 * j] = (real * kernelReal) - (imaginary * kernelImaginary);
+                        row[2 * j + 1] = (real * kernelImaginary) + (imaginary * kernelReal);
+                    }
+                }
+            }
+        };
+
+        if (parallel) {
+            ParallelArrayUtils.forRows(M, N, range);
+        } else {
+            range.apply(0, M);
+        }
+    }
+
+    /**
+     * Double precision version of
+     * {@link #multiply(float[][], float[], float[], boolean)}.
+     */
+    static void multiply(final double[][] field, final double[] rows, final double[] columns, boolean parallel) {
+        final int M = rows.length / 2;
+        final int N = columns.length / 2;
+
+        ParallelArrayUtils.RowRange range = new ParallelArrayUtils.RowRange() {
+            @Override
+            public void apply(int from, int to) {
+                for (int i = from; i < to; i++) {
+                    double[] row = field[i];
+                    double rowReal = rows[2 * i];
+                    double rowImaginary = rows[2 * i + 1];
+
+                    for (int j = 0; j < N; j++) {
+                        double columnReal = columns[2 * j];
+                        double columnImaginary = columns[2 * j + 1];
+                        double kernelReal = (rowReal * columnReal) - (rowImaginary * columnImaginary);
+                        double kernelImaginary = (rowReal * columnImaginary) + (rowImaginary * columnReal);
+                        double real = row[2 * j];
+                        double imaginary = row[2 * j + 1];
+
+                        row[2 * j] = (real * kernelReal) - (imaginary * kernelImaginary);
+                        row[2 * j + 1] = (real * kernelImaginary) + (imaginary * kernelReal);
+                    }
+                }
+            }
+        };
+
+        if (parallel) {
+            ParallelArrayUtils.forRows(M, N, range);
+        } else {
+            range.apply(0, M);
+        }
+    }
+}
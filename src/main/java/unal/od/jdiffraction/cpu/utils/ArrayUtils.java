@@ -23,6 +23,18 @@ package unal.od.jdiffraction.cpu.utils;
  * a[i][2 * j] = Re[i][j],
  * a[i][2 * j + 1] = Im[i][j]; 0 &lt;= i &lt; M, 0 &lt;= j &lt; N
  * }
+ * <p>
+ * {@code complexMultiplication2}, {@code modulus}, {@code modulusSq} and
+ * {@code phase} use SIMD instructions when running on JDK 17+ with
+ * {@code --add-modules jdk.incubator.vector}. Set the system property
+ * {@code jdiffraction.simd} to {@code false} to disable them.
+ * <p>
+ * {@code phase}, {@code modulus}, {@code modulusSq}, {@code real},
+ * {@code imaginary}, {@code log10}, {@code scale},
+ * {@code complexMultiplication} and {@code complexAmplitude} have overloads
+ * taking the destination array as last argument. The destination is checked
+ * once per call and nothing is allocated, so the same arrays can be reused
+ * frame after frame.
  *
  * @author Pablo Piedrahita-Quintero (jppiedrahitaq@unal.edu.co)
  * @author Carlos Trujillo (catrujila@unal.edu.co)
@@ -34,6 +46,8 @@ public class ArrayUtils {
 
     private static final String VERSION = "1.2";
 
+    private static final ComplexKernels KERNELS = ComplexKernels.INSTANCE;
+
     private ArrayUtils() {
     }
 
@@ -53,6 +67,54 @@ public class ArrayUtils {
         }
     }
 
+    private static void checkDimension(int M, int N, boolean complex, float[] a) {
+        if (a.length == 0) {
+            throw new IllegalArgumentException("Arrays dimension must be greater than 0.");
+        }
+
+        if (complex && a.length != (M * 2 * N)) {
+            throw new IllegalArgumentException("Arrays dimension must be M * 2 * N.");
+        } else if (!complex && a.length != (M * N)) {
+            throw new IllegalArgumentException("Arrays dimension must be M * N.");
+        }
+    }
+
+    private static void checkDimension(int M, int N, boolean complex, double[] a) {
+        if (a.length == 0) {
+            throw new IllegalArgumentException("Arrays dimension must be greater than 0.");
+        }
+
+        if (complex && a.length != (M * 2 * N)) {
+            throw new IllegalArgumentException("Arrays dimension must be M * 2 * N.");
+        } else if (!complex && a.length != (M * N)) {
+            throw new IllegalArgumentException("Arrays dimension must be M * N.");
+        }
+    }
+
+    private static void checkDestination(int M, int N, float[][] b) {
+        if (b.length != M) {
+            throw new IllegalArgumentException("Destination array dimension must be " + M + " x " + N + ".");
+        }
+
+        for (int i = 0; i < M; i++) {
+            if (b[i].length != N) {
+                throw new IllegalArgumentException("Destination array dimension must be " + M + " x " + N + ".");
+            }
+        }
+    }
+
+    private static void checkDestination(int M, int N, double[][] b) {
+        if (b.length != M) {
+            throw new IllegalArgumentException("Destination array dimension must be " + M + " x " + N + ".");
+        }
+
+        for (int i = 0; i < M; i++) {
+            if (b[i].length != N) {
+                throw new IllegalArgumentException("Destination array dimension must be " + M + " x " + N + ".");
+            }
+        }
+    }
+
     /**
      * Returns the library version as a String.
      *
@@ -76,17 +138,30 @@ public class ArrayUtils {
      */
     public static float[][] phase(float[][] a) {
         checkDimension(a);
+
+        float[][] phase = new float[a.length][a[0].length / 2];
+        phase(a, phase);
+        return phase;
+    }
+
+    /**
+     * Computes the phase (angle) of a complex array leaving the result in
+     * {@code phase}, which must be M x N for an M x 2N complex array.
+     *
+     * @param a complex array
+     * @param phase phase (angle) array
+     *
+     * @since JDiffraction 1.3
+     */
+    public static void phase(float[][] a, float[][] phase) {
+        checkDimension(a);
         int M = a.length;
         int N = a[0].length / 2;
-
-        float[][] phase = new float[M][N];
+        checkDestination(M, N, phase);
 
         for (int i = 0; i < M; i++) {
-            for (int j = 0; j < N; j++) {
-                phase[i][j] = (float) Math.atan2(a[i][2 * j + 1], a[i][2 * j]);
-            }
+            KERNELS.phase(a[i], phase[i], N);
         }
-        return phase;
     }
 
     /**
@@ -101,17 +176,30 @@ public class ArrayUtils {
      */
     public static double[][] phase(double[][] a) {
         checkDimension(a);
+
+        double[][] phase = new double[a.length][a[0].length / 2];
+        phase(a, phase);
+        return phase;
+    }
+
+    /**
+     * Computes the phase (angle) of a complex array leaving the result in
+     * {@code phase}, which must be M x N for an M x 2N complex array.
+     *
+     * @param a complex array
+     * @param phase phase (angle) array
+     *
+     * @since JDiffraction 1.3
+     */
+    public static void phase(double[][] a, double[][] phase) {
+        checkDimension(a);
         int M = a.length;
         int N = a[0].length / 2;
-
-        double[][] phase = new double[M][N];
+        checkDestination(M, N, phase);
 
         for (int i = 0; i < M; i++) {
-            for (int j = 0; j < N; j++) {
-                phase[i][j] = Math.atan2(a[i][2 * j + 1], a[i][2 * j]);
-            }
+            KERNELS.phase(a[i], phase[i], N);
         }
-        return phase;
     }
 
     /**
@@ -126,19 +214,30 @@ public class ArrayUtils {
      */
     public static float[][] modulus(float[][] a) {
         checkDimension(a);
+
+        float[][] modulus = new float[a.length][a[0].length / 2];
+        modulus(a, modulus);
+        return modulus;
+    }
+
+    /**
+     * Computes the modulus of a complex array leaving the result in
+     * {@code modulus}, which must be M x N for an M x 2N complex array.
+     *
+     * @param a complex array
+     * @param modulus modulus array
+     *
+     * @since JDiffraction 1.3
+     */
+    public static void modulus(float[][] a, float[][] modulus) {
+        checkDimension(a);
         int M = a.length;
         int N = a[0].length / 2;
-
-        float[][] modulus = new float[M][N];
+        checkDestination(M, N, modulus);
 
         for (int i = 0; i < M; i++) {
-            for (int j = 0; j < N; j++) {
-                modulus[i][j] = a[i][2 * j] * a[i][2 * j];
-                modulus[i][j] += a[i][2 * j + 1] * a[i][2 * j + 1];
-                modulus[i][j] = (float) Math.sqrt(modulus[i][j]);
-            }
+            KERNELS.modulus(a[i], modulus[i], N);
         }
-        return modulus;
     }
 
     /**
@@ -153,19 +252,30 @@ public class ArrayUtils {
      */
     public static double[][] modulus(double[][] a) {
         checkDimension(a);
+
+        double[][] modulus = new double[a.length][a[0].length / 2];
+        modulus(a, modulus);
+        return modulus;
+    }
+
+    /**
+     * Computes the modulus of a complex array leaving the result in
+     * {@code modulus}, which must be M x N for an M x 2N complex array.
+     *
+     * @param a complex array
+     * @param modulus modulus array
+     *
+     * @since JDiffraction 1.3
+     */
+    public static void modulus(double[][] a, double[][] modulus) {
+        checkDimension(a);
         int M = a.length;
         int N = a[0].length / 2;
-
-        double[][] modulus = new double[M][N];
+        checkDestination(M, N, modulus);
 
         for (int i = 0; i < M; i++) {
-            for (int j = 0; j < N; j++) {
-                modulus[i][j] = a[i][2 * j] * a[i][2 * j];
-                modulus[i][j] += a[i][2 * j + 1] * a[i][2 * j + 1];
-                modulus[i][j] = Math.sqrt(modulus[i][j]);
-            }
+            KERNELS.modulus(a[i], modulus[i], N);
         }
-        return modulus;
     }
 
     /**
@@ -180,17 +290,30 @@ public class ArrayUtils {
      */
     public static float[][] modulusSq(float[][] a) {
         checkDimension(a);
+
+        float[][] modulusSq = new float[a.length][a[0].length / 2];
+        modulusSq(a, modulusSq);
+        return modulusSq;
+    }
+
+    /**
+     * Computes the squared modulus of a complex array leaving the result in
+     * {@code modulusSq}, which must be M x N for an M x 2N complex array.
+     *
+     * @param a complex array
+     * @param modulusSq modulus squared array
+     *
+     * @since JDiffraction 1.3
+     */
+    public static void modulusSq(float[][] a, float[][] modulusSq) {
+        checkDimension(a);
         int M = a.length;
         int N = a[0].length / 2;
-
-        float[][] modulusSq = new float[M][N];
+        checkDestination(M, N, modulusSq);
 
         for (int i = 0; i < M; i++) {
-            for (int j = 0; j < N; j++) {
-                modulusSq[i][j] = (a[i][2 * j] * a[i][2 * j]) + (a[i][2 * j + 1] * a[i][2 * j + 1]);
-            }
+            KERNELS.modulusSq(a[i], modulusSq[i], N);
         }
-        return modulusSq;
     }
 
     /**
@@ -205,17 +328,30 @@ public class ArrayUtils {
      */
     public static double[][] modulusSq(double[][] a) {
         checkDimension(a);
+
+        double[][] modulusSq = new double[a.length][a[0].length / 2];
+        modulusSq(a, modulusSq);
+        return modulusSq;
+    }
+
+    /**
+     * Computes the squared modulus of a complex array leaving the result in
+     * {@code modulusSq}, which must be M x N for an M x 2N complex array.
+     *
+     * @param a complex array
+     * @param modulusSq modulus squared array
+     *
+     * @since JDiffraction 1.3
+     */
+    public static void modulusSq(double[][] a, double[][] modulusSq) {
+        checkDimension(a);
         int M = a.length;
         int N = a[0].length / 2;
-
-        double[][] modulusSq = new double[M][N];
+        checkDestination(M, N, modulusSq);
 
         for (int i = 0; i < M; i++) {
-            for (int j = 0; j < N; j++) {
-                modulusSq[i][j] = (a[i][2 * j] * a[i][2 * j]) + (a[i][2 * j + 1] * a[i][2 * j + 1]);
-            }
+            KERNELS.modulusSq(a[i], modulusSq[i], N);
         }
-        return modulusSq;
     }
 
     /**
@@ -245,6 +381,42 @@ public class ArrayUtils {
         return multiplied;
     }
 
+    /**
+     * Computes the pointwise complex multiplication of 2 arrays leaving the
+     * result in {@code multiplied}, which must have the size of {@code a}.
+     * {@code multiplied} can be {@code a} or {@code b}.
+     *
+     * @param a complex array
+     * @param b complex array
+     * @param multiplied multiplication
+     *
+     * @since JDiffraction 1.3
+     */
+    public static void complexMultiplication(float[][] a, float[][] b, float[][] multiplied) {
+        checkDimension(a);
+        checkDimension(b);
+        int M = a.length;
+        int N = a[0].length;
+        if (M != b.length || N != b[0].length) {
+            throw new IllegalArgumentException("Arrays must be equal-sized.");
+        }
+        checkDestination(M, N, multiplied);
+
+        for (int i = 0; i < M; i++) {
+            float[] aRow = a[i];
+            float[] bRow = b[i];
+            float[] row = multiplied[i];
+
+            for (int j = 0; j < N / 2; j++) {
+                float real = (aRow[2 * j] * bRow[2 * j]) - (aRow[2 * j + 1] * bRow[2 * j + 1]);
+                float imaginary = (aRow[2 * j] * bRow[2 * j + 1]) + (aRow[2 * j + 1] * bRow[2 * j]);
+
+                row[2 * j] = real;
+                row[2 * j + 1] = imaginary;
+            }
+        }
+    }
+
     /**
      * Computes the pointwise complex multiplication of 2 arrays.
      *
@@ -274,12 +446,16 @@ public class ArrayUtils {
 
     /**
      * Computes the pointwise complex multiplication of 2 arrays leaving the
-     * result in {@code a}.
+     * result in {@code multiplied}, which must have the size of {@code a}.
+     * {@code multiplied} can be {@code a} or {@code b}.
      *
      * @param a complex array
      * @param b complex array
+     * @param multiplied multiplication
+     *
+     * @since JDiffraction 1.3
      */
-    public static void complexMultiplication2(float[][] a, float[][] b) {
+    public static void complexMultiplication(double[][] a, double[][] b, double[][] multiplied) {
         checkDimension(a);
         checkDimension(b);
         int M = a.length;
@@ -287,14 +463,19 @@ public class ArrayUtils {
         if (M != b.length || N != b[0].length) {
             throw new IllegalArgumentException("Arrays must be equal-sized.");
         }
+        checkDestination(M, N, multiplied);
 
         for (int i = 0; i < M; i++) {
+            double[] aRow = a[i];
+            double[] bRow = b[i];
+            double[] row = multiplied[i];
+
             for (int j = 0; j < N / 2; j++) {
-                float real = a[i][2 * j];
-                float imaginary = a[i][2 * j + 1];
+                double real = (aRow[2 * j] * bRow[2 * j]) - (aRow[2 * j + 1] * bRow[2 * j + 1]);
+                double imaginary = (aRow[2 * j] * bRow[2 * j + 1]) + (aRow[2 * j + 1] * bRow[2 * j]);
 
-                a[i][2 * j] = (real * b[i][2 * j]) - (imaginary * b[i][2 * j + 1]);
-                a[i][2 * j + 1] = (real * b[i][2 * j + 1]) + (imaginary * b[i][2 * j]);
+                row[2 * j] = real;
+                row[2 * j + 1] = imaginary;
             }
         }
     }
@@ -306,7 +487,7 @@ public class ArrayUtils {
      * @param a complex array
      * @param b complex array
      */
-    public static void complexMultiplication2(double[][] a, double[][] b) {
+    public static void complexMultiplication2(float[][] a, float[][] b) {
         checkDimension(a);
         checkDimension(b);
         int M = a.length;
@@ -316,16 +497,69 @@ public class ArrayUtils {
         }
 
         for (int i = 0; i < M; i++) {
-            for (int j = 0; j < N / 2; j++) {
-                double real = a[i][2 * j];
-                double imaginary = a[i][2 * j + 1];
+            KERNELS.complexMultiplication2(a[i], b[i], 0, 2 * (N / 2));
+        }
+    }
 
-                a[i][2 * j] = (real * b[i][2 * j]) - (imaginary * b[i][2 * j + 1]);
-                a[i][2 * j + 1] = (real * b[i][2 * j + 1]) + (imaginary * b[i][2 * j]);
-            }
+    /**
+     * Computes the pointwise complex multiplication of 2 arrays leaving the
+     * result in {@code a}.
+     *
+     * @param a complex array
+     * @param b complex array
+     */
+    public static void complexMultiplication2(double[][] a, double[][] b) {
+        checkDimension(a);
+        checkDimension(b);
+        int M = a.length;
+        int N = a[0].length;
+        if (M != b.length || N != b[0].length) {
+            throw new IllegalArgumentException("Arrays must be equal-sized.");
+        }
+
+        for (int i = 0; i < M; i++) {
+            KERNELS.complexMultiplication2(a[i], b[i], 0, 2 * (N / 2));
         }
     }
 
+    /**
+     * Computes the pointwise complex multiplication of 2 arrays leaving the
+     * result in {@code a}. Both arrays use the 1D layout
+     * {@code a[i * 2 * N + 2 * j] = Re[i][j], a[i * 2 * N + 2 * j + 1] = Im[i][j]}.
+     *
+     * @param M number of rows
+     * @param N number of columns
+     * @param a complex array
+     * @param b complex array
+     *
+     * @since JDiffraction 1.3
+     */
+    public static void complexMultiplication2(int M, int N, float[] a, float[] b) {
+        checkDimension(M, N, true, a);
+        checkDimension(M, N, true, b);
+
+        KERNELS.complexMultiplication2(a, b, 0, 2 * M * N);
+    }
+
+    /**
+     * Computes the pointwise complex multiplication of 2 arrays leaving the
+     * result in {@code a}. Both arrays use the 1D layout
+     * {@code a[i * 2 * N + 2 * j] = Re[i][j], a[i * 2 * N + 2 * j + 1] = Im[i][j]}.
+     *
+     * @param M number of rows
+     * @param N number of columns
+     * @param a complex array
+     * @param b complex array
+     *
+     * @since JDiffraction 1.3
+     */
+    public static void complexMultiplication2(int M, int N, double[] a, double[] b) {
+        checkDimension(M, N, true, a);
+        checkDimension(M, N, true, b);
+
+        KERNELS.complexMultiplication2(a, b, 0, 2 * M * N);
+    }
+
     /**
      * Creates a complex array pointwise. The computation is done calculating
      * {@code amp * exp(i * phase)}.
@@ -344,14 +578,41 @@ public class ArrayUtils {
         }
 
         float[][] complexAmp = new float[M][2 * N];
+        complexAmplitude(phase, amp, complexAmp);
+        return complexAmp;
+    }
+
+    /**
+     * Creates a complex array pointwise leaving the result in
+     * {@code complexAmp}, which must be M x 2N for M x N phase and amplitude
+     * arrays. The computation is done calculating {@code amp * exp(i * phase)}.
+     *
+     * @param phase phase array
+     * @param amp amplitude array
+     * @param complexAmp complex array
+     *
+     * @since JDiffraction 1.3
+     */
+    public static void complexAmplitude(float[][] phase, float[][] amp, float[][] complexAmp) {
+        checkDimension(phase);
+        checkDimension(amp);
+        int M = phase.length;
+        int N = phase[0].length;
+        if (M != amp.length || N != amp[0].length) {
+            throw new IllegalArgumentException("Arrays must be equal-sized.");
+        }
+        checkDestination(M, 2 * N, complexAmp);
 
         for (int i = 0; i < M; i++) {
+            float[] phaseRow = phase[i];
+            float[] ampRow = amp[i];
+            float[] row = complexAmp[i];
+
             for (int j = 0; j < N; j++) {
-                complexAmp[i][2 * j] = amp[i][j] * (float) Math.cos(phase[i][j]);
-                complexAmp[i][2 * j + 1] = amp[i][j] * (float) Math.sin(phase[i][j]);
+                row[2 * j] = ampRow[j] * (float) Math.cos(phaseRow[j]);
+                row[2 * j + 1] = ampRow[j] * (float) Math.sin(phaseRow[j]);
             }
         }
-        return complexAmp;
     }
 
     /**
@@ -372,14 +633,41 @@ public class ArrayUtils {
         }
 
         double[][] complexAmp = new double[M][2 * N];
+        complexAmplitude(phase, amp, complexAmp);
+        return complexAmp;
+    }
+
+    /**
+     * Creates a complex array pointwise leaving the result in
+     * {@code complexAmp}, which must be M x 2N for M x N phase and amplitude
+     * arrays. The computation is done calculating {@code amp * exp(i * phase)}.
+     *
+     * @param phase phase array
+     * @param amp amplitude array
+     * @param complexAmp complex array
+     *
+     * @since JDiffraction 1.3
+     */
+    public static void complexAmplitude(double[][] phase, double[][] amp, double[][] complexAmp) {
+        checkDimension(phase);
+        checkDimension(amp);
+        int M = phase.length;
+        int N = phase[0].length;
+        if (M != amp.length || N != amp[0].length) {
+            throw new IllegalArgumentException("Arrays must be equal-sized.");
+        }
+        checkDestination(M, 2 * N, complexAmp);
 
         for (int i = 0; i < M; i++) {
+            double[] phaseRow = phase[i];
+            double[] ampRow = amp[i];
+            double[] row = complexAmp[i];
+
             for (int j = 0; j < N; j++) {
-                complexAmp[i][2 * j] = amp[i][j] * Math.cos(phase[i][j]);
-                complexAmp[i][2 * j + 1] = amp[i][j] * Math.sin(phase[i][j]);
+                row[2 * j] = ampRow[j] * Math.cos(phaseRow[j]);
+                row[2 * j + 1] = ampRow[j] * Math.sin(phaseRow[j]);
             }
         }
-        return complexAmp;
     }
 
     /**
@@ -396,14 +684,36 @@ public class ArrayUtils {
         int N = phase[0].length;
 
         float[][] complexAmp = new float[M][2 * N];
+        complexAmplitude(phase, amp, complexAmp);
+        return complexAmp;
+    }
+
+    /**
+     * Creates a complex array pointwise leaving the result in
+     * {@code complexAmp}, which must be M x 2N for an M x N phase array. The
+     * computation is done calculating {@code amp * exp(i * phase)}.
+     *
+     * @param phase phase array
+     * @param amp amplitude
+     * @param complexAmp complex array
+     *
+     * @since JDiffraction 1.3
+     */
+    public static void complexAmplitude(float[][] phase, float amp, float[][] complexAmp) {
+        checkDimension(phase);
+        int M = phase.length;
+        int N = phase[0].length;
+        checkDestination(M, 2 * N, complexAmp);
 
         for (int i = 0; i < M; i++) {
+            float[] phaseRow = phase[i];
+            float[] row = complexAmp[i];
+
             for (int j = 0; j < N; j++) {
-                complexAmp[i][2 * j] = amp * (float) Math.cos(phase[i][j]);
-                complexAmp[i][2 * j + 1] = amp * (float) Math.sin(phase[i][j]);
+                row[2 * j] = amp * (float) Math.cos(phaseRow[j]);
+                row[2 * j + 1] = amp * (float) Math.sin(phaseRow[j]);
             }
         }
-        return complexAmp;
     }
 
     /**
@@ -420,14 +730,36 @@ public class ArrayUtils {
         int N = phase[0].length;
 
         double[][] complexAmp = new double[M][2 * N];
+        complexAmplitude(phase, amp, complexAmp);
+        return complexAmp;
+    }
+
+    /**
+     * Creates a complex array pointwise leaving the result in
+     * {@code complexAmp}, which must be M x 2N for an M x N phase array. The
+     * computation is done calculating {@code amp * exp(i * phase)}.
+     *
+     * @param phase phase array
+     * @param amp amplitude
+     * @param complexAmp complex array
+     *
+     * @since JDiffraction 1.3
+     */
+    public static void complexAmplitude(double[][] phase, double amp, double[][] complexAmp) {
+        checkDimension(phase);
+        int M = phase.length;
+        int N = phase[0].length;
+        checkDestination(M, 2 * N, complexAmp);
 
         for (int i = 0; i < M; i++) {
+            double[] phaseRow = phase[i];
+            double[] row = complexAmp[i];
+
             for (int j = 0; j < N; j++) {
-                complexAmp[i][2 * j] = amp * Math.cos(phase[i][j]);
-                complexAmp[i][2 * j + 1] = amp * Math.sin(phase[i][j]);
+                row[2 * j] = amp * Math.cos(phaseRow[j]);
+                row[2 * j + 1] = amp * Math.sin(phaseRow[j]);
             }
         }
-        return complexAmp;
     }
 
     /**
@@ -444,16 +776,39 @@ public class ArrayUtils {
         int N = amp[0].length;
 
         float[][] complexAmp = new float[M][2 * N];
+        complexAmplitude(phase, amp, complexAmp);
+        return complexAmp;
+    }
+
+    /**
+     * Creates a complex array pointwise leaving the result in
+     * {@code complexAmp}, which must be M x 2N for an M x N amplitude array.
+     * The computation is done calculating {@code amp * exp(i * phase)}.
+     *
+     * @param phase phase
+     * @param amp amplitude array
+     * @param complexAmp complex array
+     *
+     * @since JDiffraction 1.3
+     */
+    public static void complexAmplitude(float phase, float[][] amp, float[][] complexAmp) {
+        checkDimension(amp);
+        int M = amp.length;
+        int N = amp[0].length;
+        checkDestination(M, 2 * N, complexAmp);
+
         float cos = (float) Math.cos(phase);
         float sin = (float) Math.sin(phase);
 
         for (int i = 0; i < M; i++) {
+            float[] ampRow = amp[i];
+            float[] row = complexAmp[i];
+
             for (int j = 0; j < N; j++) {
-                complexAmp[i][2 * j] = amp[i][j] * cos;
-                complexAmp[i][2 * j + 1] = amp[i][j] * sin;
+                row[2 * j] = ampRow[j] * cos;
+                row[2 * j + 1] = ampRow[j] * sin;
             }
         }
-        return complexAmp;
     }
 
     /**
@@ -470,16 +825,39 @@ public class ArrayUtils {
         int N = amp[0].length;
 
         double[][] complexAmp = new double[M][2 * N];
+        complexAmplitude(phase, amp, complexAmp);
+        return complexAmp;
+    }
+
+    /**
+     * Creates a complex array pointwise leaving the result in
+     * {@code complexAmp}, which must be M x 2N for an M x N amplitude array.
+     * The computation is done calculating {@code amp * exp(i * phase)}.
+     *
+     * @param phase phase
+     * @param amp amplitude array
+     * @param complexAmp complex array
+     *
+     * @since JDiffraction 1.3
+     */
+    public static void complexAmplitude(double phase, double[][] amp, double[][] complexAmp) {
+        checkDimension(amp);
+        int M = amp.length;
+        int N = amp[0].length;
+        checkDestination(M, 2 * N, complexAmp);
+
         double cos = Math.cos(phase);
         double sin = Math.sin(phase);
 
         for (int i = 0; i < M; i++) {
+            double[] ampRow = amp[i];
+            double[] row = complexAmp[i];
+
             for (int j = 0; j < N; j++) {
-                complexAmp[i][2 * j] = amp[i][j] * cos;
-                complexAmp[i][2 * j + 1] = amp[i][j] * sin;
+                row[2 * j] = ampRow[j] * cos;
+                row[2 * j + 1] = ampRow[j] * sin;
             }
         }
-        return complexAmp;
     }
 
     /**
@@ -624,18 +1002,35 @@ public class ArrayUtils {
      */
     public static float[][] real(float[][] a) {
         checkDimension(a);
+
+        float[][] real = new float[a.length][a[0].length / 2];
+        real(a, real);
+        return real;
+    }
+
+    /**
+     * Extracts the real part of a complex array leaving the result in
+     * {@code real}, which must be M x N for an M x 2N complex array.
+     *
+     * @param a complex array
+     * @param real real array
+     *
+     * @since JDiffraction 1.3
+     */
+    public static void real(float[][] a, float[][] real) {
+        checkDimension(a);
         int M = a.length;
         int N = a[0].length / 2;
-
-        float[][] real = new float[M][N];
+        checkDestination(M, N, real);
 
         for (int i = 0; i < M; i++) {
+            float[] row = a[i];
+            float[] realRow = real[i];
+
             for (int j = 0; j < N; j++) {
-                real[i][j] = a[i][2 * j];
+                realRow[j] = row[2 * j];
             }
         }
-
-        return real;
     }
 
     /**
@@ -646,18 +1041,35 @@ public class ArrayUtils {
      */
     public static double[][] real(double[][] a) {
         checkDimension(a);
+
+        double[][] real = new double[a.length][a[0].length / 2];
+        real(a, real);
+        return real;
+    }
+
+    /**
+     * Extracts the real part of a complex array leaving the result in
+     * {@code real}, which must be M x N for an M x 2N complex array.
+     *
+     * @param a complex array
+     * @param real real array
+     *
+     * @since JDiffraction 1.3
+     */
+    public static void real(double[][] a, double[][] real) {
+        checkDimension(a);
         int M = a.length;
         int N = a[0].length / 2;
-
-        double[][] real = new double[M][N];
+        checkDestination(M, N, real);
 
         for (int i = 0; i < M; i++) {
+            double[] row = a[i];
+            double[] realRow = real[i];
+
             for (int j = 0; j < N; j++) {
-                real[i][j] = a[i][2 * j];
+                realRow[j] = row[2 * j];
             }
         }
-
-        return real;
     }
 
     /**
@@ -668,18 +1080,35 @@ public class ArrayUtils {
      */
     public static float[][] imaginary(float[][] a) {
         checkDimension(a);
+
+        float[][] imaginary = new float[a.length][a[0].length / 2];
+        imaginary(a, imaginary);
+        return imaginary;
+    }
+
+    /**
+     * Extracts the imaginary part of a complex array leaving the result in
+     * {@code imaginary}, which must be M x N for an M x 2N complex array.
+     *
+     * @param a complex array
+     * @param imaginary imaginary array
+     *
+     * @since JDiffraction 1.3
+     */
+    public static void imaginary(float[][] a, float[][] imaginary) {
+        checkDimension(a);
         int M = a.length;
         int N = a[0].length / 2;
-
-        float[][] imaginary = new float[M][N];
+        checkDestination(M, N, imaginary);
 
         for (int i = 0; i < M; i++) {
+            float[] row = a[i];
+            float[] imaginaryRow = imaginary[i];
+
             for (int j = 0; j < N; j++) {
-                imaginary[i][j] = a[i][2 * j + 1];
+                imaginaryRow[j] = row[2 * j + 1];
             }
         }
-
-        return imaginary;
     }
 
     /**
@@ -688,20 +1117,37 @@ public class ArrayUtils {
      * @param a complex array
      * @return imaginary array
      */
-    public static double[][] imaginary(double[][] a) {
+    public static double[][] imaginary(double[][] a) {
+        checkDimension(a);
+
+        double[][] imaginary = new double[a.length][a[0].length / 2];
+        imaginary(a, imaginary);
+        return imaginary;
+    }
+
+    /**
+     * Extracts the imaginary part of a complex array leaving the result in
+     * {@code imaginary}, which must be M x N for an M x 2N complex array.
+     *
+     * @param a complex array
+     * @param imaginary imaginary array
+     *
+     * @since JDiffraction 1.3
+     */
+    public static void imaginary(double[][] a, double[][] imaginary) {
         checkDimension(a);
         int M = a.length;
         int N = a[0].length / 2;
-
-        double[][] imaginary = new double[M][N];
+        checkDestination(M, N, imaginary);
 
         for (int i = 0; i < M; i++) {
+            double[] row = a[i];
+            double[] imaginaryRow = imaginary[i];
+
             for (int j = 0; j < N; j++) {
-                imaginary[i][j] = a[i][2 * j + 1];
+                imaginaryRow[j] = row[2 * j + 1];
             }
         }
-
-        return imaginary;
     }
 
     /**
@@ -792,6 +1238,206 @@ public class ArrayUtils {
         }
     }
 
+    /**
+     * Performs the circular shifting of a complex array stored in the 1D
+     * layout {@code a[i * 2 * N + 2 * j] = Re[i][j]}, leaving the result in
+     * {@code a}.
+     * <p>
+     * {@code
+     * a b -&gt; d c
+     * c d       b a
+     * }
+     *
+     * @param M number of rows
+     * @param N number of columns
+     * @param a complex array
+     *
+     * @since JDiffraction 1.3
+     */
+    public static void complexShift(int M, int N, float[] a) {
+        checkDimension(M, N, true, a);
+
+        int M2 = M / 2;
+        int N2 = N / 2;
+        int rowShift = M2 * 2 * N;
+
+        float tmp;
+
+        for (int i = 0; i < M2; i++) {
+            int row = i * 2 * N;
+
+            for (int j = 0; j < N2; j++) {
+                int left = row + 2 * j;
+                int right = row + 2 * (j + N2);
+
+                //Real shift
+                tmp = a[left];
+                a[left] = a[right + rowShift];
+                a[right + rowShift] = tmp;
+
+                tmp = a[left + rowShift];
+                a[left + rowShift] = a[right];
+                a[right] = tmp;
+
+                //Imag shift
+                tmp = a[left + 1];
+                a[left + 1] = a[right + rowShift + 1];
+                a[right + rowShift + 1] = tmp;
+
+                tmp = a[left + rowShift + 1];
+                a[left + rowShift + 1] = a[right + 1];
+                a[right + 1] = tmp;
+            }
+        }
+    }
+
+    /**
+     * Performs the circular shifting of a complex array stored in the 1D
+     * layout {@code a[i * 2 * N + 2 * j] = Re[i][j]}, leaving the result in
+     * {@code a}.
+     * <p>
+     * {@code
+     * a b -&gt; d c
+     * c d       b a
+     * }
+     *
+     * @param M number of rows
+     * @param N number of columns
+     * @param a complex array
+     *
+     * @since JDiffraction 1.3
+     */
+    public static void complexShift(int M, int N, double[] a) {
+        checkDimension(M, N, true, a);
+
+        int M2 = M / 2;
+        int N2 = N / 2;
+        int rowShift = M2 * 2 * N;
+
+        double tmp;
+
+        for (int i = 0; i < M2; i++) {
+            int row = i * 2 * N;
+
+            for (int j = 0; j < N2; j++) {
+                int left = row + 2 * j;
+                int right = row + 2 * (j + N2);
+
+                //Real shift
+                tmp = a[left];
+                a[left] = a[right + rowShift];
+                a[right + rowShift] = tmp;
+
+                tmp = a[left + rowShift];
+                a[left + rowShift] = a[right];
+                a[right] = tmp;
+
+                //Imag shift
+                tmp = a[left + 1];
+                a[left + 1] = a[right + rowShift + 1];
+                a[right + rowShift + 1] = tmp;
+
+                tmp = a[left + rowShift + 1];
+                a[left + rowShift + 1] = a[right + 1];
+                a[right + 1] = tmp;
+            }
+        }
+    }
+
+    /**
+     * Multiplies a complex array pointwise by {@code (-1)^(i + j)}, leaving the
+     * result in {@code a}. For even sizes, this modulation on one side of a
+     * Fourier transform is equivalent to a {@link #complexShift(float[][])} on
+     * the other side.
+     *
+     * @param a complex array
+     *
+     * @since JDiffraction 1.3
+     */
+    public static void checkerboard(float[][] a) {
+        checkDimension(a);
+        int M = a.length;
+        int N = a[0].length / 2;
+
+        for (int i = 0; i < M; i++) {
+            for (int j = 1 - (i % 2); j < N; j += 2) {
+                a[i][2 * j] = -a[i][2 * j];
+                a[i][2 * j + 1] = -a[i][2 * j + 1];
+            }
+        }
+    }
+
+    /**
+     * Multiplies a complex array pointwise by {@code (-1)^(i + j)}, leaving the
+     * result in {@code a}. For even sizes, this modulation on one side of a
+     * Fourier transform is equivalent to a {@link #complexShift(double[][])}
+     * on the other side.
+     *
+     * @param a complex array
+     *
+     * @since JDiffraction 1.3
+     */
+    public static void checkerboard(double[][] a) {
+        checkDimension(a);
+        int M = a.length;
+        int N = a[0].length / 2;
+
+        for (int i = 0; i < M; i++) {
+            for (int j = 1 - (i % 2); j < N; j += 2) {
+                a[i][2 * j] = -a[i][2 * j];
+                a[i][2 * j + 1] = -a[i][2 * j + 1];
+            }
+        }
+    }
+
+    /**
+     * Multiplies a complex array stored in the 1D layout
+     * {@code a[i * 2 * N + 2 * j] = Re[i][j]} pointwise by
+     * {@code (-1)^(i + j)}, leaving the result in {@code a}.
+     *
+     * @param M number of rows
+     * @param N number of columns
+     * @param a complex array
+     *
+     * @since JDiffraction 1.3
+     */
+    public static void checkerboard(int M, int N, float[] a) {
+        checkDimension(M, N, true, a);
+
+        for (int i = 0; i < M; i++) {
+            int row = i * 2 * N;
+
+            for (int j = 1 - (i % 2); j < N; j += 2) {
+                a[row + 2 * j] = -a[row + 2 * j];
+                a[row + 2 * j + 1] = -a[row + 2 * j + 1];
+            }
+        }
+    }
+
+    /**
+     * Multiplies a complex array stored in the 1D layout
+     * {@code a[i * 2 * N + 2 * j] = Re[i][j]} pointwise by
+     * {@code (-1)^(i + j)}, leaving the result in {@code a}.
+     *
+     * @param M number of rows
+     * @param N number of columns
+     * @param a complex array
+     *
+     * @since JDiffraction 1.3
+     */
+    public static void checkerboard(int M, int N, double[] a) {
+        checkDimension(M, N, true, a);
+
+        for (int i = 0; i < M; i++) {
+            int row = i * 2 * N;
+
+            for (int j = 1 - (i % 2); j < N; j += 2) {
+                a[row + 2 * j] = -a[row + 2 * j];
+                a[row + 2 * j + 1] = -a[row + 2 * j + 1];
+            }
+        }
+    }
+
     /**
      * Performs the circular shifting of a real array, leaving the result in
      * {@code a}.
@@ -902,6 +1548,44 @@ public class ArrayUtils {
         }
     }
 
+    /**
+     * Computes the pointwise multiplication of a 1D array by {@code num},
+     * leaving the result in {@code a}.
+     *
+     * @param a array
+     * @param num number
+     *
+     * @since JDiffraction 1.3
+     */
+    public static void multiply(float[] a, float num) {
+        if (a.length == 0) {
+            throw new IllegalArgumentException("Arrays dimension must be greater than 0.");
+        }
+
+        for (int i = 0; i < a.length; i++) {
+            a[i] = a[i] * num;
+        }
+    }
+
+    /**
+     * Computes the pointwise multiplication of a 1D array by {@code num},
+     * leaving the result in {@code a}.
+     *
+     * @param a array
+     * @param num number
+     *
+     * @since JDiffraction 1.3
+     */
+    public static void multiply(double[] a, double num) {
+        if (a.length == 0) {
+            throw new IllegalArgumentException("Arrays dimension must be greater than 0.");
+        }
+
+        for (int i = 0; i < a.length; i++) {
+            a[i] = a[i] * num;
+        }
+    }
+
     /**
      * Computes the pointwise division of an array by {@code num}, leaving the
      * result in {@code a}.
@@ -952,17 +1636,35 @@ public class ArrayUtils {
      */
     public static float[][] log10(float[][] a) {
         checkDimension(a);
+
+        float[][] b = new float[a.length][a[0].length];
+        log10(a, b);
+        return b;
+    }
+
+    /**
+     * Computes log10 of a real array leaving the result in {@code b}, which
+     * must have the size of {@code a}. {@code b} can be {@code a}.
+     *
+     * @param a array
+     * @param b array containing log10(a)
+     *
+     * @since JDiffraction 1.3
+     */
+    public static void log10(float[][] a, float[][] b) {
+        checkDimension(a);
         int M = a.length;
         int N = a[0].length;
-
-        float[][] b = new float[M][N];
+        checkDestination(M, N, b);
 
         for (int i = 0; i < M; i++) {
+            float[] row = a[i];
+            float[] logRow = b[i];
+
             for (int j = 0; j < N; j++) {
-                b[i][j] = (float) Math.log10(a[i][j]);
+                logRow[j] = (float) Math.log10(row[j]);
             }
         }
-        return b;
     }
 
     /**
@@ -973,17 +1675,35 @@ public class ArrayUtils {
      */
     public static double[][] log10(double[][] a) {
         checkDimension(a);
+
+        double[][] b = new double[a.length][a[0].length];
+        log10(a, b);
+        return b;
+    }
+
+    /**
+     * Computes log10 of a real array leaving the result in {@code b}, which
+     * must have the size of {@code a}. {@code b} can be {@code a}.
+     *
+     * @param a array
+     * @param b array containing log10(a)
+     *
+     * @since JDiffraction 1.3
+     */
+    public static void log10(double[][] a, double[][] b) {
+        checkDimension(a);
         int M = a.length;
         int N = a[0].length;
-
-        double[][] b = new double[M][N];
+        checkDestination(M, N, b);
 
         for (int i = 0; i < M; i++) {
+            double[] row = a[i];
+            double[] logRow = b[i];
+
             for (int j = 0; j < N; j++) {
-                b[i][j] = Math.log10(a[i][j]);
+                logRow[j] = Math.log10(row[j]);
             }
         }
-        return b;
     }
 
     /**
@@ -1079,20 +1799,9 @@ public class ArrayUtils {
      */
     public static float[][] scale(float[][] a, float max, float min, float maxScale) {
         checkDimension(a);
-        int M = a.length;
-        int N = a[0].length;
 
-        float[][] scaled = new float[M][N];
-
-        float delta = max - min;
-
-        for (int i = 0; i < M; i++) {
-            for (int j = 0; j < N; j++) {
-                scaled[i][j] = a[i][j] - min;
-                scaled[i][j] = scaled[i][j] / delta;
-                scaled[i][j] = scaled[i][j] * maxScale;
-            }
-        }
+        float[][] scaled = new float[a.length][a[0].length];
+        scale(a, max, min, maxScale, scaled);
         return scaled;
     }
 
@@ -1107,36 +1816,76 @@ public class ArrayUtils {
      */
     public static double[][] scale(double[][] a, double max, double min, double maxScale) {
         checkDimension(a);
+
+        double[][] scaled = new double[a.length][a[0].length];
+        scale(a, max, min, maxScale, scaled);
+        return scaled;
+    }
+
+    /**
+     * Scales a real array to {@code [0, maxScale]}. Array's max and min values
+     * are found using {@link #max(float[][])} and {@link #min(float[][])}.
+     *
+     * @param a array
+     * @param maxScale max value of the output array
+     * @return scaled array
+     */
+    public static float[][] scale(float[][] a, float maxScale) {
+        float max = max(a);
+        float min = min(a);
+
+        return scale(a, max, min, maxScale);
+    }
+
+    /**
+     * Scales a real array to {@code [0, maxScale]} leaving the result in
+     * {@code scaled}, which must have the size of {@code a}. {@code scaled}
+     * can be {@code a}, which is the same as {@link #scale2(float[][], float, float, float)}.
+     *
+     * @param a array
+     * @param max array's max value
+     * @param min array's min value
+     * @param maxScale max value of the output array
+     * @param scaled scaled array
+     *
+     * @since JDiffraction 1.3
+     */
+    public static void scale(float[][] a, float max, float min, float maxScale, float[][] scaled) {
+        checkDimension(a);
         int M = a.length;
         int N = a[0].length;
+        checkDestination(M, N, scaled);
 
-        double[][] scaled = new double[M][N];
-
-        double delta = max - min;
+        float delta = max - min;
 
         for (int i = 0; i < M; i++) {
+            float[] row = a[i];
+            float[] scaledRow = scaled[i];
+
             for (int j = 0; j < N; j++) {
-                scaled[i][j] = a[i][j] - min;
-                scaled[i][j] = scaled[i][j] / delta;
-                scaled[i][j] = scaled[i][j] * maxScale;
+                float value = row[j] - min;
+                value = value / delta;
+                scaledRow[j] = value * maxScale;
             }
         }
-        return scaled;
     }
 
     /**
-     * Scales a real array to {@code [0, maxScale]}. Array's max and min values
-     * are found using {@link #max(float[][])} and {@link #min(float[][])}.
+     * Scales a real array to {@code [0, maxScale]} leaving the result in
+     * {@code scaled}. Array's max and min values are found using
+     * {@link #max(float[][])} and {@link #min(float[][])}.
      *
      * @param a array
      * @param maxScale max value of the output array
-     * @return scaled array
+     * @param scaled scaled array
+     *
+     * @since JDiffraction 1.3
      */
-    public static float[][] scale(float[][] a, float maxScale) {
+    public static void scale(float[][] a, float maxScale, float[][] scaled) {
         float max = max(a);
         float min = min(a);
 
-        return scale(a, max, min, maxScale);
+        scale(a, max, min, maxScale, scaled);
     }
 
     /**
@@ -1154,6 +1903,57 @@ public class ArrayUtils {
         return scale(a, max, min, maxScale);
     }
 
+    /**
+     * Scales a real array to {@code [0, maxScale]} leaving the result in
+     * {@code scaled}, which must have the size of {@code a}. {@code scaled}
+     * can be {@code a}, which is the same as {@link #scale2(double[][], double, double, double)}.
+     *
+     * @param a array
+     * @param max array's max value
+     * @param min array's min value
+     * @param maxScale max value of the output array
+     * @param scaled scaled array
+     *
+     * @since JDiffraction 1.3
+     */
+    public static void scale(double[][] a, double max, double min, double maxScale, double[][] scaled) {
+        checkDimension(a);
+        int M = a.length;
+        int N = a[0].length;
+        checkDestination(M, N, scaled);
+
+        double delta = max - min;
+
+        for (int i = 0; i < M; i++) {
+            double[] row = a[i];
+            double[] scaledRow = scaled[i];
+
+            for (int j = 0; j < N; j++) {
+                double value = row[j] - min;
+                value = value / delta;
+                scaledRow[j] = value * maxScale;
+            }
+        }
+    }
+
+    /**
+     * Scales a real array to {@code [0, maxScale]} leaving the result in
+     * {@code scaled}. Array's max and min values are found using
+     * {@link #max(double[][])} and {@link #min(double[][])}.
+     *
+     * @param a array
+     * @param maxScale max value of the output array
+     * @param scaled scaled array
+     *
+     * @since JDiffraction 1.3
+     */
+    public static void scale(double[][] a, double maxScale, double[][] scaled) {
+        double max = max(a);
+        double min = min(a);
+
+        scale(a, max, min, maxScale, scaled);
+    }
+
     /**
      * Scales a real array to {@code [0, maxScale]} leaving the result in
      * {@code a}.
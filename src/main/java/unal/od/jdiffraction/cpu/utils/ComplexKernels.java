@@ -0,0 +1,90 @@
+/*
+ * Copyright 2016 Universidad Nacional de Colombia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package unal.od.jdiffraction.cpu.utils;
+
+/**
+ * Inner loops of the hottest pointwise operations, working over rows of
+ * interleaved complex data. {@link #INSTANCE} is the SIMD implementation when
+ * the JVM provides the incubator Vector API (JDK 17+ started with
+ * {@code --add-modules jdk.incubator.vector}) and the library was built with
+ * it; otherwise, it's the scalar one. Setting the system property
+ * {@code jdiffraction.simd} to {@code false} forces the scalar
+ * implementation.
+ *
+ * @author Pablo Piedrahita-Quintero (jppiedrahitaq@unal.edu.co)
+ * @author Carlos Trujillo (catrujila@unal.edu.co)
+ * @author Jorge Garcia-Sucerquia (jigarcia@unal.edu.co)
+ *
+ * @since JDiffraction 1.3
+ */
+abstract class ComplexKernels {
+
+    private static final String VECTOR_KERNELS = "unal.od.jdiffraction.cpu.utils.VectorComplexKernels";
+
+    static final ComplexKernels INSTANCE = load();
+
+    private static ComplexKernels load() {
+        if (!"false".equalsIgnoreCase(System.getProperty("jdiffraction.simd"))) {
+            try {
+                return (ComplexKernels) Class.forName(VECTOR_KERNELS).getDeclaredConstructor().newInstance();
+            } catch (Exception e) {
+                //not built with the Vector API
+            } catch (LinkageError e) {
+                //class compiled for a newer JVM or jdk.incubator.vector not
+                //available at runtime
+            }
+        }
+        return new ScalarComplexKernels();
+    }
+
+    /**
+     * Multiplies {@code a[from, to)} by {@code b[from, to)} leaving the result
+     * in {@code a}. {@code from} and {@code to} are array positions of real
+     * parts.
+     */
+    abstract void complexMultiplication2(float[] a, float[] b, int from, int to);
+
+    abstract void complexMultiplication2(double[] a, double[] b, int from, int to);
+
+    /**
+     * Writes the modulus of the first {@code n} complex values of {@code a} in
+     * {@code modulus}.
+     */
+    abstract void modulus(float[] a, float[] modulus, int n);
+
+    abstract void modulus(double[] a, double[] modulus, int n);
+
+    /**
+     * Writes the squared modulus of the first {@code n} complex values of
+     * {@code a} in {@code modulusSq}.
+     */
+    abstract void modulusSq(float[] a, float[] modulusSq, int n);
+
+    abstract void modulusSq(double[] a, double[] modulusSq, int n);
+
+    /**
+     * Writes the phase of the first {@code n} complex values of {@code a} in
+     * {@code phase}.
+     */
+    abstract void phase(float[] a, float[] phase, int n);
+
+    abstract void phase(double[] a, double[] phase, int n);
+
+    /**
+     * Returns true when the SIMD implementation is in use.
+     */
+    abstract boolean isVectorized();
+}
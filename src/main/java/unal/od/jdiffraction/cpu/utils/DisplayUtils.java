@@ -0,0 +1,597 @@
+/*
+ * Copyright 2016 Universidad Nacional de Colombia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package unal.od.jdiffraction.cpu.utils;
+
+/**
+ * Converts complex arrays to display pixels in a single pass. The modulus,
+ * intensity, phase or log10 of the modulus of each point is computed, scaled
+ * and written as an 8-bit or 16-bit pixel, so no intermediate array is
+ * created. The scaling window can be given or found from the array; the
+ * latter takes an extra reduction pass.
+ * <p>
+ * The physical layout of the complex data must be the same as in
+ * JTransforms:
+ * <p>
+ * {@code
+ * a[i][2 * j] = Re[i][j],
+ * a[i][2 * j + 1] = Im[i][j]; 0 &lt;= i &lt; M, 0 &lt;= j &lt; N
+ * }
+ * <p>
+ * Pixels are stored as in ImageJ, {@code pixels[j * M + i]} for the point
+ * {@code (i, j)}, so the array can be given to
+ * {@code new ByteProcessor(M, N, pixels)} or
+ * {@code new ShortProcessor(M, N, pixels, null)}. This is the same image as
+ * {@code new FloatProcessor(ArrayUtils.modulus(a))}. The window is mapped to
+ * {@code [0, 255]} or {@code [0, 65535]}, rounding to the nearest level;
+ * values outside the window are clamped.
+ * <p>
+ * The rows are processed with the library-wide pool of
+ * {@link ParallelArrayUtils}. The phase uses a polynomial arctangent within
+ * {@code 1E-7} radians of {@link Math#atan2(double, double)}, far below a
+ * 16-bit level.
+ *
+ * @author Pablo Piedrahita-Quintero (jppiedrahitaq@unal.edu.co)
+ * @author Carlos Trujillo (catrujila@unal.edu.co)
+ * @author Jorge Garcia-Sucerquia (jigarcia@unal.edu.co)
+ *
+ * @since JDiffraction 1.3
+ */
+public class DisplayUtils {
+
+    /**
+     * {@code sqrt(Re^2 + Im^2)}.
+     */
+    public static final int MODULUS = 0;
+    /**
+     * {@code Re^2 + Im^2}.
+     */
+    public static final int INTENSITY = 1;
+    /**
+     * {@code atan2(Im, Re)}.
+     */
+    public static final int PHASE = 2;
+    /**
+     * {@code log10(sqrt(Re^2 + Im^2))}. Zeros are left out of the window
+     * found from the array and shown as the lowest level.
+     */
+    public static final int LOG_MODULUS = 3;
+
+    //monotonic function of the phase, used to find its window
+    private static final int PSEUDO_PHASE = -1;
+
+    private static final int BYTE_LEVELS = 255;
+    private static final int SHORT_LEVELS = 65535;
+
+    //side of the blocks written at once; the array is read by rows and the
+    //image is written by rows, so a block is transposed through a buffer that
+    //stays in cache
+    private static final int TILE = 32;
+
+    private static final double HALF_LOG10 = 0.5 / Math.log(10);
+
+    //arctangent on [0, 1], Abramowitz & Stegun 4.4.49, |error| <= 2E-8
+    private static final double A1 = 0.9999993329;
+    private static final double A3 = -0.3332985605;
+    private static final double A5 = 0.1994653599;
+    private static final double A7 = -0.1390853351;
+    private static final double A9 = 0.0964200441;
+    private static final double A11 = -0.0559098861;
+    private static final double A13 = 0.0218612288;
+    private static final double A15 = -0.0040540580;
+
+    private DisplayUtils() {
+    }
+
+    /**
+     * Rows of a complex array, of either precision.
+     */
+    private abstract static class Rows {
+
+        final int M, N;
+
+        Rows(int M, int N) {
+            this.M = M;
+            this.N = N;
+        }
+
+        /**
+         * Writes the quantity given by {@code mode} of the points
+         * {@code [from, to)} of row {@code i} in {@code values}, starting at
+         * {@code offset}.
+         */
+        abstract void values(int i, int from, int to, int mode, double[] values, int offset);
+    }
+
+    private static final class FloatRows extends Rows {
+
+        private final float[][] a;
+
+        FloatRows(float[][] a) {
+            super(a.length, a[0].length / 2);
+            this.a = a;
+        }
+
+        @Override
+        void values(int i, int from, int to, int mode, double[] values, int offset) {
+            float[] row = a[i];
+
+            switch (mode) {
+                case MODULUS:
+                    for (int j = from; j < to; j++) {
+                        float real = row[2 * j];
+                        float imaginary = row[2 * j + 1];
+                        values[offset + j - from] = (float) Math.sqrt(real * real + imaginary * imaginary);
+                    }
+                    break;
+                case INTENSITY:
+                    for (int j = from; j < to; j++) {
+                        float real = row[2 * j];
+                        float imaginary = row[2 * j + 1];
+                        values[offset + j - from] = real * real + imaginary * imaginary;
+                    }
+                    break;
+                case PHASE:
+                    for (int j = from; j < to; j++) {
+                        values[offset + j - from] = atan2(row[2 * j + 1], row[2 * j]);
+                    }
+                    break;
+                case PSEUDO_PHASE:
+                    for (int j = from; j < to; j++) {
+                        values[offset + j - from] = pseudoPhase(row[2 * j + 1], row[2 * j]);
+                    }
+                    break;
+                default:
+                    for (int j = from; j < to; j++) {
+                        double real = row[2 * j];
+                        double imaginary = row[2 * j + 1];
+                        values[offset + j - from] = HALF_LOG10 * Math.log(real * real + imaginary * imaginary);
+                    }
+                    break;
+            }
+        }
+    }
+
+    private static final class DoubleRows extends Rows {
+
+        private final double[][] a;
+
+        DoubleRows(double[][] a) {
+            super(a.length, a[0].length / 2);
+            this.a = a;
+        }
+
+        @Override
+        void values(int i, int from, int to, int mode, double[] values, int offset) {
+            double[] row = a[i];
+
+            switch (mode) {
+                case MODULUS:
+                    for (int j = from; j < to; j++) {
+                        double real = row[2 * j];
+                        double imaginary = row[2 * j + 1];
+                        values[offset + j - from] = Math.sqrt(real * real + imaginary * imaginary);
+                    }
+                    break;
+                case INTENSITY:
+                    for (int j = from; j < to; j++) {
+                        double real = row[2 * j];
+                        double imaginary = row[2 * j + 1];
+                        values[offset + j - from] = real * real + imaginary * imaginary;
+                    }
+                    break;
+                case PHASE:
+                    for (int j = from; j < to; j++) {
+                        values[offset + j - from] = atan2(row[2 * j + 1], row[2 * j]);
+                    }
+                    break;
+                case PSEUDO_PHASE:
+                    for (int j = from; j < to; j++) {
+                        values[offset + j - from] = pseudoPhase(row[2 * j + 1], row[2 * j]);
+                    }
+                    break;
+                default:
+                    for (int j = from; j < to; j++) {
+                        double real = row[2 * j];
+                        double imaginary = row[2 * j + 1];
+                        values[offset + j - from] = HALF_LOG10 * Math.log(real * real + imaginary * imaginary);
+                    }
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Polynomial {@link Math#atan2(double, double)}, reduced to the
+     * arctangent on {@code [0, 1]}.
+     */
+    private static double atan2(double y, double x) {
+        double absX = Math.abs(x);
+        double absY = Math.abs(y);
+        if (absX == 0 && absY == 0) {
+            return 0;
+        }
+
+        boolean swap = absY > absX;
+        double t = swap ? absX / absY : absY / absX;
+        double tSq = t * t;
+        double angle = t * (A1 + tSq * (A3 + tSq * (A5 + tSq * (A7 + tSq * (A9 + tSq * (A11
+                + tSq * (A13 + tSq * A15)))))));
+
+        if (swap) {
+            angle = Math.PI / 2 - angle;
+        }
+        if (x < 0) {
+            angle = Math.PI - angle;
+        }
+        return Math.copySign(angle, y);
+    }
+
+    /**
+     * Function of the phase on {@code [-2, 2]} with the same order, without
+     * the arctangent.
+     */
+    private static double pseudoPhase(double y, double x) {
+        double sum = Math.abs(x) + Math.abs(y);
+        return sum == 0 ? 0 : Math.copySign(1 - x / sum, y);
+    }
+
+    /**
+     * Phase given by {@link #pseudoPhase(double, double)}.
+     */
+    private static double phase(double pseudoPhase) {
+        double x = 1 - Math.abs(pseudoPhase);
+        return Math.atan2(Math.copySign(1 - Math.abs(x), pseudoPhase), x);
+    }
+
+    private static void checkDimension(float[][] a) {
+        if (a.length == 0) {
+            throw new IllegalArgumentException("Arrays dimension must be greater than 0.");
+        } else if (a[0].length < 2) {
+            throw new IllegalArgumentException("Arrays dimension must be greater than 0.");
+        }
+    }
+
+    private static void checkDimension(double[][] a) {
+        if (a.length == 0) {
+            throw new IllegalArgumentException("Arrays dimension must be greater than 0.");
+        } else if (a[0].length < 2) {
+            throw new IllegalArgumentException("Arrays dimension must be greater than 0.");
+        }
+    }
+
+    private static void checkMode(int mode) {
+        if (mode != MODULUS && mode != INTENSITY && mode != PHASE && mode != LOG_MODULUS) {
+            throw new IllegalArgumentException("Unknown mode: " + mode + ".");
+        }
+    }
+
+    private static void checkPixels(Rows rows, int length) {
+        if (length != rows.M * rows.N) {
+            throw new IllegalArgumentException("Pixels array length must be " + rows.M + " * " + rows.N + ".");
+        }
+    }
+
+    /**
+     * Min and max of the quantity given by {@code mode}. Modulus and log10
+     * are monotonic on the intensity, and the phase on the pseudo phase, so
+     * the cheaper quantity is reduced and the functions are taken only on the
+     * result.
+     */
+    private static double[] window(final Rows rows, final int mode) {
+        checkMode(mode);
+        final int M = rows.M;
+        final int N = rows.N;
+        final int reduced = mode == PHASE ? PSEUDO_PHASE : INTENSITY;
+        final boolean positive = mode == LOG_MODULUS;
+
+        //per-row partial results, reduced on the calling thread
+        final double[] rowMin = new double[M];
+        final double[] rowMax = new double[M];
+
+        ParallelArrayUtils.forRows(M, N, new ParallelArrayUtils.RowRange() {
+            @Override
+            public void apply(int from, int to) {
+                double[] values = new double[TILE];
+
+                for (int i = from; i < to; i++) {
+                    double min = Double.POSITIVE_INFINITY;
+                    double max = Double.NEGATIVE_INFINITY;
+
+                    for (int j = 0; j < N; j += TILE) {
+                        int end = Math.min(N, j + TILE);
+                        rows.values(i, j, end, reduced, values, 0);
+
+                        for (int k = 0; k < end - j; k++) {
+                            double value = values[k];
+                            if (positive && !(value > 0)) {
+                                continue;
+                            }
+                            min = Math.min(min, value);
+                            max = Math.max(max, value);
+                        }
+                    }
+                    rowMin[i] = min;
+                    rowMax[i] = max;
+                }
+            }
+        });
+
+        double min = rowMin[0];
+        double max = rowMax[0];
+        for (int i = 1; i < M; i++) {
+            min = Math.min(min, rowMin[i]);
+            max = Math.max(max, rowMax[i]);
+        }
+
+        //a log10 of zeros only
+        if (min > max) {
+            return new double[]{0, 0};
+        }
+
+        if (mode == MODULUS) {
+            min = Math.sqrt(min);
+            max = Math.sqrt(max);
+        } else if (mode == PHASE) {
+            min = phase(min);
+            max = phase(max);
+        } else if (mode == LOG_MODULUS) {
+            min = HALF_LOG10 * Math.log(min);
+            max = HALF_LOG10 * Math.log(max);
+        }
+        return new double[]{min, max};
+    }
+
+    /**
+     * Writes the pixels, in {@code bytes} or else in {@code shorts}. Each
+     * task takes {@code TILE} columns of the array, which are {@code TILE}
+     * rows of the image, and goes through them by square blocks.
+     */
+    private static void convert(final Rows rows, final int mode, final double min, double max,
+            final byte[] bytes, final short[] shorts) {
+        checkMode(mode);
+        final int M = rows.M;
+        final int N = rows.N;
+        final int levels = bytes != null ? BYTE_LEVELS : SHORT_LEVELS;
+        final double scale = max > min ? levels / (max - min) : 0;
+        final int tiles = (N + TILE - 1) / TILE;
+
+        ParallelArrayUtils.forRows(tiles, TILE * M, new ParallelArrayUtils.RowRange() {
+            @Override
+            public void apply(int from, int to) {
+                //block values, by rows of the array
+                double[] block = new double[TILE * TILE];
+
+                for (int t = from; t < to; t++) {
+                    int firstColumn = t * TILE;
+                    int endColumn = Math.min(N, firstColumn + TILE);
+
+                    for (int firstRow = 0; firstRow < M; firstRow += TILE) {
+                        int endRow = Math.min(M, firstRow + TILE);
+
+                        for (int i = firstRow; i < endRow; i++) {
+                            rows.values(i, firstColumn, endColumn, mode, block, (i - firstRow) * TILE);
+                        }
+
+                        for (int j = firstColumn; j < endColumn; j++) {
+                            int pixel = j * M + firstRow;
+                            int index = j - firstColumn;
+
+                            if (bytes != null) {
+                                for (int i = firstRow; i < endRow; i++, pixel++, index += TILE) {
+                                    bytes[pixel] = (byte) level(block[index], min, scale, levels);
+                                }
+                            } else {
+                                for (int i = firstRow; i < endRow; i++, pixel++, index += TILE) {
+                                    shorts[pixel] = (short) level(block[index], min, scale, levels);
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Nearest level of {@code value}, clamped to {@code [0, levels]}. NaN,
+     * which includes {@code -infinity * 0}, falls to 0.
+     */
+    private static int level(double value, double min, double scale, int levels) {
+        double level = (value - min) * scale + 0.5;
+        return level >= levels ? levels : (level > 0 ? (int) level : 0);
+    }
+
+    /**
+     * Finds the scaling window of a complex array: the min and max of the
+     * quantity given by {@code mode}.
+     *
+     * @param a complex array
+     * @param mode {@link #MODULUS}, {@link #INTENSITY}, {@link #PHASE} or
+     * {@link #LOG_MODULUS}
+     * @return {min, max}
+     */
+    public static float[] window(float[][] a, int mode) {
+        checkDimension(a);
+
+        double[] window = window(new FloatRows(a), mode);
+        return new float[]{(float) window[0], (float) window[1]};
+    }
+
+    /**
+     * Finds the scaling window of a complex array: the min and max of the
+     * quantity given by {@code mode}.
+     *
+     * @param a complex array
+     * @param mode {@link #MODULUS}, {@link #INTENSITY}, {@link #PHASE} or
+     * {@link #LOG_MODULUS}
+     * @return {min, max}
+     */
+    public static double[] window(double[][] a, int mode) {
+        checkDimension(a);
+
+        return window(new DoubleRows(a), mode);
+    }
+
+    /**
+     * Converts a complex array to 8-bit pixels scaled to the min and max of
+     * the quantity given by {@code mode}.
+     *
+     * @param a M x 2N complex array
+     * @param mode {@link #MODULUS}, {@link #INTENSITY}, {@link #PHASE} or
+     * {@link #LOG_MODULUS}
+     * @param pixels M * N pixels
+     */
+    public static void toBytes(float[][] a, int mode, byte[] pixels) {
+        checkDimension(a);
+        Rows rows = new FloatRows(a);
+        checkPixels(rows, pixels.length);
+
+        double[] window = window(rows, mode);
+        convert(rows, mode, window[0], window[1], pixels, null);
+    }
+
+    /**
+     * Converts a complex array to 8-bit pixels scaled to the min and max of
+     * the quantity given by {@code mode}.
+     *
+     * @param a M x 2N complex array
+     * @param mode {@link #MODULUS}, {@link #INTENSITY}, {@link #PHASE} or
+     * {@link #LOG_MODULUS}
+     * @param pixels M * N pixels
+     */
+    public static void toBytes(double[][] a, int mode, byte[] pixels) {
+        checkDimension(a);
+        Rows rows = new DoubleRows(a);
+        checkPixels(rows, pixels.length);
+
+        double[] window = window(rows, mode);
+        convert(rows, mode, window[0], window[1], pixels, null);
+    }
+
+    /**
+     * Converts a complex array to 8-bit pixels scaled to the window
+     * {@code [min, max]} of the quantity given by {@code mode}. For instance,
+     * {@code [-PI, PI]} for the phase.
+     *
+     * @param a M x 2N complex array
+     * @param mode {@link #MODULUS}, {@link #INTENSITY}, {@link #PHASE} or
+     * {@link #LOG_MODULUS}
+     * @param min value shown as 0
+     * @param max value shown as 255
+     * @param pixels M * N pixels
+     */
+    public static void toBytes(float[][] a, int mode, float min, float max, byte[] pixels) {
+        checkDimension(a);
+        Rows rows = new FloatRows(a);
+        checkPixels(rows, pixels.length);
+
+        convert(rows, mode, min, max, pixels, null);
+    }
+
+    /**
+     * Converts a complex array to 8-bit pixels scaled to the window
+     * {@code [min, max]} of the quantity given by {@code mode}. For instance,
+     * {@code [-PI, PI]} for the phase.
+     *
+     * @param a M x 2N complex array
+     * @param mode {@link #MODULUS}, {@link #INTENSITY}, {@link #PHASE} or
+     * {@link #LOG_MODULUS}
+     * @param min value shown as 0
+     * @param max value shown as 255
+     * @param pixels M * N pixels
+     */
+    public static void toBytes(double[][] a, int mode, double min, double max, byte[] pixels) {
+        checkDimension(a);
+        Rows rows = new DoubleRows(a);
+        checkPixels(rows, pixels.length);
+
+        convert(rows, mode, min, max, pixels, null);
+    }
+
+    /**
+     * Converts a complex array to unsigned 16-bit pixels scaled to the min
+     * and max of the quantity given by {@code mode}.
+     *
+     * @param a M x 2N complex array
+     * @param mode {@link #MODULUS}, {@link #INTENSITY}, {@link #PHASE} or
+     * {@link #LOG_MODULUS}
+     * @param pixels M * N pixels
+     */
+    public static void toShorts(float[][] a, int mode, short[] pixels) {
+        checkDimension(a);
+        Rows rows = new FloatRows(a);
+        checkPixels(rows, pixels.length);
+
+        double[] window = window(rows, mode);
+        convert(rows, mode, window[0], window[1], null, pixels);
+    }
+
+    /**
+     * Converts a complex array to unsigned 16-bit pixels scaled to the min
+     * and max of the quantity given by {@code mode}.
+     *
+     * @param a M x 2N complex array
+     * @param mode {@link #MODULUS}, {@link #INTENSITY}, {@link #PHASE} or
+     * {@link #LOG_MODULUS}
+     * @param pixels M * N pixels
+     */
+    public static void toShorts(double[][] a, int mode, short[] pixels) {
+        checkDimension(a);
+        Rows rows = new DoubleRows(a);
+        checkPixels(rows, pixels.length);
+
+        double[] window = window(rows, mode);
+        convert(rows, mode, window[0], window[1], null, pixels);
+    }
+
+    /**
+     * Converts a complex array to unsigned 16-bit pixels scaled to the
+     * window {@code [min, max]} of the quantity given by {@code mode}.
+     *
+     * @param a M x 2N complex array
+     * @param mode {@link #MODULUS}, {@link #INTENSITY}, {@link #PHASE} or
+     * {@link #LOG_MODULUS}
+     * @param min value shown as 0
+     * @param max value shown as 65535
+     * @param pixels M * N pixels
+     */
+    public static void toShorts(float[][] a, int mode, float min, float max, short[] pixels) {
+        checkDimension(a);
+        Rows rows = new FloatRows(a);
+        checkPixels(rows, pixels.length);
+
+        convert(rows, mode, min, max, null, pixels);
+    }
+
+    /**
+     * Converts a complex array to unsigned 16-bit pixels scaled to the
+     * window {@code [min, max]} of the quantity given by {@code mode}.
+     *
+     * @param a M x 2N complex array
+     * @param mode {@link #MODULUS}, {@link #INTENSITY}, {@link #PHASE} or
+     * {@link #LOG_MODULUS}
+     * @param min value shown as 0
+     * @param max value shown as 65535
+     * @param pixels M * N pixels
+     */
+    public static void toShorts(double[][] a, int mode, double min, double max, short[] pixels) {
+        checkDimension(a);
+        Rows rows = new DoubleRows(a);
+        checkPixels(rows, pixels.length);
+
+        convert(rows, mode, min, max, null, pixels);
+    }
+}
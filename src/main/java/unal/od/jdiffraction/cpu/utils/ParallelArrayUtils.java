@@ -0,0 +1,1858 @@
+/*
+ * Copyright 2016 Universidad Nacional de Colombia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package unal.od.jdiffraction.cpu.utils;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Multithreaded versions of the pointwise operations in {@link ArrayUtils}.
+ * The rows of the arrays are partitioned between the threads of a
+ * {@link ForkJoinPool}, which can be given on each call or set library-wide
+ * with {@link #setPool(ForkJoinPool)}. Arrays with less than
+ * {@link #getThreshold()} data points are processed sequentially, so small
+ * fields don't pay the fork overhead. Results are the same as the ones from
+ * {@link ArrayUtils}.
+ * <p>
+ * The physical layout of the complex data must be the same as in
+ * JTransforms:
+ * <p>
+ * {@code
+ * a[i][2 * j] = Re[i][j],
+ * a[i][2 * j + 1] = Im[i][j]; 0 &lt;= i &lt; M, 0 &lt;= j &lt; N
+ * }
+ *
+ * @author Pablo Piedrahita-Quintero (jppiedrahitaq@unal.edu.co)
+ * @author Carlos Trujillo (catrujila@unal.edu.co)
+ * @author Jorge Garcia-Sucerquia (jigarcia@unal.edu.co)
+ *
+ * @since JDiffraction 1.3
+ */
+public class ParallelArrayUtils {
+
+    private static final int DEFAULT_THRESHOLD = 1 << 16;
+
+    private static volatile ForkJoinPool pool = ForkJoinPool.commonPool();
+    private static volatile int threshold = DEFAULT_THRESHOLD;
+
+    private static final ComplexKernels KERNELS = ComplexKernels.INSTANCE;
+
+    private ParallelArrayUtils() {
+    }
+
+    /**
+     * Sets the pool used by the methods that don't take one as argument. By
+     * default, {@link ForkJoinPool#commonPool()} is used.
+     *
+     * @param pool the library-wide pool
+     */
+    public static void setPool(ForkJoinPool pool) {
+        if (pool == null) {
+            throw new IllegalArgumentException("The pool can't be null.");
+        }
+        ParallelArrayUtils.pool = pool;
+    }
+
+    /**
+     * Returns the pool used by the methods that don't take one as argument.
+     *
+     * @return the library-wide pool
+     */
+    public static ForkJoinPool getPool() {
+        return pool;
+    }
+
+    /**
+     * Sets the number of data points below which the operations run
+     * sequentially on the calling thread. The default value is 65536
+     * (256 x 256).
+     *
+     * @param threshold number of data points
+     */
+    public static void setThreshold(int threshold) {
+        if (threshold < 1) {
+            throw new IllegalArgumentException("The threshold must be greater than 0.");
+        }
+        ParallelArrayUtils.threshold = threshold;
+    }
+
+    /**
+     * Returns the number of data points below which the operations run
+     * sequentially on the calling thread.
+     *
+     * @return number of data points
+     */
+    public static int getThreshold() {
+        return threshold;
+    }
+
+    private static void checkDimension(float[][] a) {
+        if (a.length == 0) {
+            throw new IllegalArgumentException("Arrays dimension must be greater than 0.");
+        } else if (a[0].length == 0) {
+            throw new IllegalArgumentException("Arrays dimension must be greater than 0.");
+        }
+    }
+
+    private static void checkDimension(double[][] a) {
+        if (a.length == 0) {
+            throw new IllegalArgumentException("Arrays dimension must be greater than 0.");
+        } else if (a[0].length == 0) {
+            throw new IllegalArgumentException("Arrays dimension must be greater than 0.");
+        }
+    }
+
+    private static void checkDimension(int M, int N, float[] a) {
+        if (a.length == 0) {
+            throw new IllegalArgumentException("Arrays dimension must be greater than 0.");
+        } else if (a.length != (M * 2 * N)) {
+            throw new IllegalArgumentException("Arrays dimension must be M * 2 * N.");
+        }
+    }
+
+    private static void checkDimension(int M, int N, double[] a) {
+        if (a.length == 0) {
+            throw new IllegalArgumentException("Arrays dimension must be greater than 0.");
+        } else if (a.length != (M * 2 * N)) {
+            throw new IllegalArgumentException("Arrays dimension must be M * 2 * N.");
+        }
+    }
+
+    private static void checkDestination(int M, int N, float[][] b) {
+        if (b.length != M) {
+            throw new IllegalArgumentException("Destination array dimension must be " + M + " x " + N + ".");
+        }
+
+        for (int i = 0; i < M; i++) {
+            if (b[i].length != N) {
+                throw new IllegalArgumentException("Destination array dimension must be " + M + " x " + N + ".");
+            }
+        }
+    }
+
+    private static void checkDestination(int M, int N, double[][] b) {
+        if (b.length != M) {
+            throw new IllegalArgumentException("Destination array dimension must be " + M + " x " + N + ".");
+        }
+
+        for (int i = 0; i < M; i++) {
+            if (b[i].length != N) {
+                throw new IllegalArgumentException("Destination array dimension must be " + M + " x " + N + ".");
+            }
+        }
+    }
+
+    /**
+     * Operation over a range of rows of an array. Implementations must only
+     * touch the rows they are given, so ranges can run concurrently.
+     */
+    public interface RowRange {
+
+        /**
+         * Processes the rows {@code [from, to)}.
+         *
+         * @param from first row, inclusive
+         * @param to last row, exclusive
+         */
+        void apply(int from, int to);
+    }
+
+    /**
+     * Splits a row range in halves until the pieces are smaller than
+     * {@code grain} rows.
+     */
+    private static class RowTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final RowRange range;
+        private final int from, to, grain;
+
+        RowTask(RowRange range, int from, int to, int grain) {
+            this.range = range;
+            this.from = from;
+            this.to = to;
+            this.grain = grain;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= grain) {
+                range.apply(from, to);
+            } else {
+                int mid = (from + to) >>> 1;
+                invokeAll(new RowTask(range, from, mid, grain),
+                        new RowTask(range, mid, to, grain));
+            }
+        }
+    }
+
+    /**
+     * Runs {@code range} over {@code rows} rows of {@code rowLength} data
+     * points each, using the library-wide pool. This is the partitioning used
+     * by all the methods of this class and can be used to write fused
+     * pointwise operations.
+     *
+     * @param rows number of rows
+     * @param rowLength number of data points on each row
+     * @param range operation applied to each range of rows
+     */
+    public static void forRows(int rows, int rowLength, RowRange range) {
+        forRows(pool, rows, rowLength, range);
+    }
+
+    /**
+     * Runs {@code range} over {@code rows} rows of {@code rowLength} data
+     * points each. The rows are processed sequentially on the calling thread
+     * if there are less than {@link #getThreshold()} data points.
+     *
+     * @param pool pool running the computation
+     * @param rows number of rows
+     * @param rowLength number of data points on each row
+     * @param range operation applied to each range of rows
+     */
+    public static void forRows(ForkJoinPool pool, int rows, int rowLength, RowRange range) {
+        if (pool == null) {
+            throw new IllegalArgumentException("The pool can't be null.");
+        }
+
+        int parallelism = pool.getParallelism();
+        if (parallelism < 2 || rows < 2 || (long) rows * rowLength < threshold) {
+            range.apply(0, rows);
+            return;
+        }
+
+        //a few tasks per thread for load balancing, but never less rows per
+        //task than the threshold worth of data points
+        int grain = Math.max((rows + 4 * parallelism - 1) / (4 * parallelism),
+                Math.max(1, threshold / Math.max(1, rowLength)));
+        if (grain >= rows) {
+            range.apply(0, rows);
+        } else {
+            pool.invoke(new RowTask(range, 0, rows, grain));
+        }
+    }
+
+    /**
+     * Computes the pointwise complex multiplication of 2 arrays leaving the
+     * result in {@code a}, using the library-wide pool.
+     *
+     * @param a complex array
+     * @param b complex array
+     * @see ArrayUtils#complexMultiplication2(float[][], float[][])
+     */
+    public static void complexMultiplication2(float[][] a, float[][] b) {
+        complexMultiplication2(pool, a, b);
+    }
+
+    /**
+     * Computes the pointwise complex multiplication of 2 arrays leaving the
+     * result in {@code a}.
+     *
+     * @param pool pool running the computation
+     * @param a complex array
+     * @param b complex array
+     * @see ArrayUtils#complexMultiplication2(float[][], float[][])
+     */
+    public static void complexMultiplication2(ForkJoinPool pool, final float[][] a, final float[][] b) {
+        checkDimension(a);
+        checkDimension(b);
+        int M = a.length;
+        final int N = a[0].length;
+        if (M != b.length || N != b[0].length) {
+            throw new IllegalArgumentException("Arrays must be equal-sized.");
+        }
+
+        forRows(pool, M, N / 2, new RowRange() {
+            @Override
+            public void apply(int from, int to) {
+                for (int i = from; i < to; i++) {
+                    KERNELS.complexMultiplication2(a[i], b[i], 0, 2 * (N / 2));
+                }
+            }
+        });
+    }
+
+    /**
+     * Computes the pointwise complex multiplication of 2 arrays stored in the
+     * 1D layout {@code a[i * 2 * N + 2 * j] = Re[i][j]}, leaving the result in
+     * {@code a}, using the library-wide pool.
+     *
+     * @param M number of rows
+     * @param N number of columns
+     * @param a complex array
+     * @param b complex array
+     * @see ArrayUtils#complexMultiplication2(int, int, float[], float[])
+     */
+    public static void complexMultiplication2(int M, int N, float[] a, float[] b) {
+        complexMultiplication2(pool, M, N, a, b);
+    }
+
+    /**
+     * Computes the pointwise complex multiplication of 2 arrays stored in the
+     * 1D layout {@code a[i * 2 * N + 2 * j] = Re[i][j]}, leaving the result in
+     * {@code a}.
+     *
+     * @param pool pool running the computation
+     * @param M number of rows
+     * @param N number of columns
+     * @param a complex array
+     * @param b complex array
+     * @see ArrayUtils#complexMultiplication2(int, int, float[], float[])
+     */
+    public static void complexMultiplication2(ForkJoinPool pool, int M, final int N, final float[] a,
+            final float[] b) {
+        checkDimension(M, N, a);
+        checkDimension(M, N, b);
+
+        forRows(pool, M, N, new RowRange() {
+            @Override
+            public void apply(int from, int to) {
+                KERNELS.complexMultiplication2(a, b, from * 2 * N, to * 2 * N);
+            }
+        });
+    }
+
+    /**
+     * Performs the circular shifting of a complex array, leaving the result in
+     * {@code a}, using the library-wide pool.
+     *
+     * @param a complex array
+     * @see ArrayUtils#complexShift(float[][])
+     */
+    public static void complexShift(float[][] a) {
+        complexShift(pool, a);
+    }
+
+    /**
+     * Performs the circular shifting of a complex array, leaving the result in
+     * {@code a}.
+     *
+     * @param pool pool running the computation
+     * @param a complex array
+     * @see ArrayUtils#complexShift(float[][])
+     */
+    public static void complexShift(ForkJoinPool pool, final float[][] a) {
+        checkDimension(a);
+        int M = a.length;
+        int N = a[0].length / 2;
+
+        final int M2 = M / 2;
+        final int N2 = N / 2;
+
+        //each task swaps rows i and i + M2, so only the first half is split
+        forRows(pool, M2, 2 * N, new RowRange() {
+            @Override
+            public void apply(int from, int to) {
+                float tmp;
+
+                for (int i = from; i < to; i++) {
+                    float[] top = a[i];
+                    float[] bottom = a[i + M2];
+
+                    for (int j = 0; j < N2; j++) {
+                        //Real shift
+                        tmp = top[2 * j];
+                        top[2 * j] = bottom[2 * (j + N2)];
+                        bottom[2 * (j + N2)] = tmp;
+
+                        tmp = bottom[2 * j];
+                        bottom[2 * j] = top[2 * (j + N2)];
+                        top[2 * (j + N2)] = tmp;
+
+                        //Imag shift
+                        tmp = top[2 * j + 1];
+                        top[2 * j + 1] = bottom[2 * (j + N2) + 1];
+                        bottom[2 * (j + N2) + 1] = tmp;
+
+                        tmp = bottom[2 * j + 1];
+                        bottom[2 * j + 1] = top[2 * (j + N2) + 1];
+                        top[2 * (j + N2) + 1] = tmp;
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Performs the circular shifting of a complex array stored in the 1D
+     * layout {@code a[i * 2 * N + 2 * j] = Re[i][j]}, leaving the result in
+     * {@code a}, using the library-wide pool.
+     *
+     * @param M number of rows
+     * @param N number of columns
+     * @param a complex array
+     * @see ArrayUtils#complexShift(int, int, float[])
+     */
+    public static void complexShift(int M, int N, float[] a) {
+        complexShift(pool, M, N, a);
+    }
+
+    /**
+     * Performs the circular shifting of a complex array stored in the 1D
+     * layout {@code a[i * 2 * N + 2 * j] = Re[i][j]}, leaving the result in
+     * {@code a}.
+     *
+     * @param pool pool running the computation
+     * @param M number of rows
+     * @param N number of columns
+     * @param a complex array
+     * @see ArrayUtils#complexShift(int, int, float[])
+     */
+    public static void complexShift(ForkJoinPool pool, int M, final int N, final float[] a) {
+        checkDimension(M, N, a);
+
+        final int M2 = M / 2;
+        final int N2 = N / 2;
+        final int rowShift = M2 * 2 * N;
+
+        forRows(pool, M2, 2 * N, new RowRange() {
+            @Override
+            public void apply(int from, int to) {
+                float tmp;
+
+                for (int i = from; i < to; i++) {
+                    int row = i * 2 * N;
+
+                    for (int j = 0; j < N2; j++) {
+                        int left = row + 2 * j;
+                        int right = row + 2 * (j + N2);
+
+                        //Real shift
+                        tmp = a[left];
+                        a[left] = a[right + rowShift];
+                        a[right + rowShift] = tmp;
+
+                        tmp = a[left + rowShift];
+                        a[left + rowShift] = a[right];
+                        a[right] = tmp;
+
+                        //Imag shift
+                        tmp = a[left + 1];
+                        a[left + 1] = a[right + rowShift + 1];
+                        a[right + rowShift + 1] = tmp;
+
+                        tmp = a[left + rowShift + 1];
+                        a[left + rowShift + 1] = a[right + 1];
+                        a[right + 1] = tmp;
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Computes the modulus of a complex array, using the library-wide pool.
+     *
+     * @param a complex array
+     * @return modulus array
+     * @see ArrayUtils#modulus(float[][])
+     */
+    public static float[][] modulus(float[][] a) {
+        return modulus(pool, a);
+    }
+
+    /**
+     * Computes the modulus of a complex array.
+     *
+     * @param pool pool running the computation
+     * @param a complex array
+     * @return modulus array
+     * @see ArrayUtils#modulus(float[][])
+     */
+    public static float[][] modulus(ForkJoinPool pool, final float[][] a) {
+        checkDimension(a);
+        int M = a.length;
+        int N = a[0].length / 2;
+
+        float[][] modulus = new float[M][N];
+        modulus(pool, a, modulus);
+        return modulus;
+    }
+
+    /**
+     * Computes the modulus of a complex array leaving the result in
+     * {@code modulus}, using the library-wide pool.
+     *
+     * @param a complex array
+     * @param modulus modulus array
+     * @see ArrayUtils#modulus(float[][], float[][])
+     */
+    public static void modulus(float[][] a, float[][] modulus) {
+        modulus(pool, a, modulus);
+    }
+
+    /**
+     * Computes the modulus of a complex array leaving the result in
+     * {@code modulus}.
+     *
+     * @param pool pool running the computation
+     * @param a complex array
+     * @param modulus modulus array
+     * @see ArrayUtils#modulus(float[][], float[][])
+     */
+    public static void modulus(ForkJoinPool pool, final float[][] a, final float[][] modulus) {
+        checkDimension(a);
+        int M = a.length;
+        final int N = a[0].length / 2;
+        checkDestination(M, N, modulus);
+
+        forRows(pool, M, N, new RowRange() {
+            @Override
+            public void apply(int from, int to) {
+                for (int i = from; i < to; i++) {
+                    KERNELS.modulus(a[i], modulus[i], N);
+                }
+            }
+        });
+    }
+
+    /**
+     * Computes the squared modulus of a complex array, using the library-wide
+     * pool.
+     *
+     * @param a complex array
+     * @return modulus squared array
+     * @see ArrayUtils#modulusSq(float[][])
+     */
+    public static float[][] modulusSq(float[][] a) {
+        return modulusSq(pool, a);
+    }
+
+    /**
+     * Computes the squared modulus of a complex array.
+     *
+     * @param pool pool running the computation
+     * @param a complex array
+     * @return modulus squared array
+     * @see ArrayUtils#modulusSq(float[][])
+     */
+    public static float[][] modulusSq(ForkJoinPool pool, final float[][] a) {
+        checkDimension(a);
+        int M = a.length;
+        int N = a[0].length / 2;
+
+        float[][] modulusSq = new float[M][N];
+        modulusSq(pool, a, modulusSq);
+        return modulusSq;
+    }
+
+    /**
+     * Computes the squared modulus of a complex array leaving the result in
+     * {@code modulusSq}, using the library-wide pool.
+     *
+     * @param a complex array
+     * @param modulusSq modulus squared array
+     * @see ArrayUtils#modulusSq(float[][], float[][])
+     */
+    public static void modulusSq(float[][] a, float[][] modulusSq) {
+        modulusSq(pool, a, modulusSq);
+    }
+
+    /**
+     * Computes the squared modulus of a complex array leaving the result in
+     * {@code modulusSq}.
+     *
+     * @param pool pool running the computation
+     * @param a complex array
+     * @param modulusSq modulus squared array
+     * @see ArrayUtils#modulusSq(float[][], float[][])
+     */
+    public static void modulusSq(ForkJoinPool pool, final float[][] a, final float[][] modulusSq) {
+        checkDimension(a);
+        int M = a.length;
+        final int N = a[0].length / 2;
+        checkDestination(M, N, modulusSq);
+
+        forRows(pool, M, N, new RowRange() {
+            @Override
+            public void apply(int from, int to) {
+                for (int i = from; i < to; i++) {
+                    KERNELS.modulusSq(a[i], modulusSq[i], N);
+                }
+            }
+        });
+    }
+
+    /**
+     * Computes the phase (angle) of a complex array, using the library-wide
+     * pool.
+     *
+     * @param a complex array
+     * @return phase (angle) array
+     * @see ArrayUtils#phase(float[][])
+     */
+    public static float[][] phase(float[][] a) {
+        return phase(pool, a);
+    }
+
+    /**
+     * Computes the phase (angle) of a complex array.
+     *
+     * @param pool pool running the computation
+     * @param a complex array
+     * @return phase (angle) array
+     * @see ArrayUtils#phase(float[][])
+     */
+    public static float[][] phase(ForkJoinPool pool, final float[][] a) {
+        checkDimension(a);
+        int M = a.length;
+        int N = a[0].length / 2;
+
+        float[][] phase = new float[M][N];
+        phase(pool, a, phase);
+        return phase;
+    }
+
+    /**
+     * Computes the phase (angle) of a complex array leaving the result in
+     * {@code phase}, using the library-wide pool.
+     *
+     * @param a complex array
+     * @param phase phase (angle) array
+     * @see ArrayUtils#phase(float[][], float[][])
+     */
+    public static void phase(float[][] a, float[][] phase) {
+        phase(pool, a, phase);
+    }
+
+    /**
+     * Computes the phase (angle) of a complex array leaving the result in
+     * {@code phase}.
+     *
+     * @param pool pool running the computation
+     * @param a complex array
+     * @param phase phase (angle) array
+     * @see ArrayUtils#phase(float[][], float[][])
+     */
+    public static void phase(ForkJoinPool pool, final float[][] a, final float[][] phase) {
+        checkDimension(a);
+        int M = a.length;
+        final int N = a[0].length / 2;
+        checkDestination(M, N, phase);
+
+        forRows(pool, M, N, new RowRange() {
+            @Override
+            public void apply(int from, int to) {
+                for (int i = from; i < to; i++) {
+                    KERNELS.phase(a[i], phase[i], N);
+                }
+            }
+        });
+    }
+
+    /**
+     * Creates a complex array pointwise, using the library-wide pool.
+     *
+     * @param phase phase array
+     * @param amp amplitude array
+     * @return complex array
+     * @see ArrayUtils#complexAmplitude(float[][], float[][])
+     */
+    public static float[][] complexAmplitude(float[][] phase, float[][] amp) {
+        return complexAmplitude(pool, phase, amp);
+    }
+
+    /**
+     * Creates a complex array pointwise. The computation is done calculating
+     * {@code amp * exp(i * phase)}.
+     *
+     * @param pool pool running the computation
+     * @param phase phase array
+     * @param amp amplitude array
+     * @return complex array
+     * @see ArrayUtils#complexAmplitude(float[][], float[][])
+     */
+    public static float[][] complexAmplitude(ForkJoinPool pool, final float[][] phase, final float[][] amp) {
+        checkDimension(phase);
+        checkDimension(amp);
+        int M = phase.length;
+        int N = phase[0].length;
+        if (M != amp.length || N != amp[0].length) {
+            throw new IllegalArgumentException("Arrays must be equal-sized.");
+        }
+
+        float[][] complexAmp = new float[M][2 * N];
+        complexAmplitude(pool, phase, amp, complexAmp);
+        return complexAmp;
+    }
+
+    /**
+     * Creates a complex array pointwise leaving the result in
+     * {@code complexAmp}, using the library-wide pool.
+     *
+     * @param phase phase array
+     * @param amp amplitude array
+     * @param complexAmp complex array
+     * @see ArrayUtils#complexAmplitude(float[][], float[][], float[][])
+     */
+    public static void complexAmplitude(float[][] phase, float[][] amp, float[][] complexAmp) {
+        complexAmplitude(pool, phase, amp, complexAmp);
+    }
+
+    /**
+     * Creates a complex array pointwise leaving the result in
+     * {@code complexAmp}.
+     *
+     * @param pool pool running the computation
+     * @param phase phase array
+     * @param amp amplitude array
+     * @param complexAmp complex array
+     * @see ArrayUtils#complexAmplitude(float[][], float[][], float[][])
+     */
+    public static void complexAmplitude(ForkJoinPool pool, final float[][] phase, final float[][] amp, final float[][] complexAmp) {
+        checkDimension(phase);
+        checkDimension(amp);
+        int M = phase.length;
+        final int N = phase[0].length;
+        if (M != amp.length || N != amp[0].length) {
+            throw new IllegalArgumentException("Arrays must be equal-sized.");
+        }
+        checkDestination(M, 2 * N, complexAmp);
+
+        forRows(pool, M, N, new RowRange() {
+            @Override
+            public void apply(int from, int to) {
+                for (int i = from; i < to; i++) {
+                    for (int j = 0; j < N; j++) {
+                        complexAmp[i][2 * j] = amp[i][j] * (float) Math.cos(phase[i][j]);
+                        complexAmp[i][2 * j + 1] = amp[i][j] * (float) Math.sin(phase[i][j]);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Creates a complex array pointwise, using the library-wide pool.
+     *
+     * @param phase phase array
+     * @param amp amplitude
+     * @return complex array
+     * @see ArrayUtils#complexAmplitude(float[][], float)
+     */
+    public static float[][] complexAmplitude(float[][] phase, float amp) {
+        return complexAmplitude(pool, phase, amp);
+    }
+
+    /**
+     * Creates a complex array pointwise. The computation is done calculating
+     * {@code amp * exp(i * phase)}.
+     *
+     * @param pool pool running the computation
+     * @param phase phase array
+     * @param amp amplitude
+     * @return complex array
+     * @see ArrayUtils#complexAmplitude(float[][], float)
+     */
+    public static float[][] complexAmplitude(ForkJoinPool pool, final float[][] phase, final float amp) {
+        checkDimension(phase);
+        int M = phase.length;
+        int N = phase[0].length;
+
+        float[][] complexAmp = new float[M][2 * N];
+        complexAmplitude(pool, phase, amp, complexAmp);
+        return complexAmp;
+    }
+
+    /**
+     * Creates a complex array pointwise leaving the result in
+     * {@code complexAmp}, using the library-wide pool.
+     *
+     * @param phase phase array
+     * @param amp amplitude
+     * @param complexAmp complex array
+     * @see ArrayUtils#complexAmplitude(float[][], float, float[][])
+     */
+    public static void complexAmplitude(float[][] phase, float amp, float[][] complexAmp) {
+        complexAmplitude(pool, phase, amp, complexAmp);
+    }
+
+    /**
+     * Creates a complex array pointwise leaving the result in
+     * {@code complexAmp}.
+     *
+     * @param pool pool running the computation
+     * @param phase phase array
+     * @param amp amplitude
+     * @param complexAmp complex array
+     * @see ArrayUtils#complexAmplitude(float[][], float, float[][])
+     */
+    public static void complexAmplitude(ForkJoinPool pool, final float[][] phase, final float amp, final float[][] complexAmp) {
+        checkDimension(phase);
+        int M = phase.length;
+        final int N = phase[0].length;
+        checkDestination(M, 2 * N, complexAmp);
+
+        forRows(pool, M, N, new RowRange() {
+            @Override
+            public void apply(int from, int to) {
+                for (int i = from; i < to; i++) {
+                    for (int j = 0; j < N; j++) {
+                        complexAmp[i][2 * j] = amp * (float) Math.cos(phase[i][j]);
+                        complexAmp[i][2 * j + 1] = amp * (float) Math.sin(phase[i][j]);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Computes log10 of a real array, using the library-wide pool.
+     *
+     * @param a array
+     * @return array containing log10(a)
+     * @see ArrayUtils#log10(float[][])
+     */
+    public static float[][] log10(float[][] a) {
+        return log10(pool, a);
+    }
+
+    /**
+     * Computes log10 of a real array.
+     *
+     * @param pool pool running the computation
+     * @param a array
+     * @return array containing log10(a)
+     * @see ArrayUtils#log10(float[][])
+     */
+    public static float[][] log10(ForkJoinPool pool, final float[][] a) {
+        checkDimension(a);
+        int M = a.length;
+        int N = a[0].length;
+
+        float[][] b = new float[M][N];
+        log10(pool, a, b);
+        return b;
+    }
+
+    /**
+     * Computes log10 of a real array leaving the result in {@code b}, using the
+     * library-wide pool.
+     *
+     * @param a array
+     * @param b array containing log10(a)
+     * @see ArrayUtils#log10(float[][], float[][])
+     */
+    public static void log10(float[][] a, float[][] b) {
+        log10(pool, a, b);
+    }
+
+    /**
+     * Computes log10 of a real array leaving the result in {@code b}.
+     *
+     * @param pool pool running the computation
+     * @param a array
+     * @param b array containing log10(a)
+     * @see ArrayUtils#log10(float[][], float[][])
+     */
+    public static void log10(ForkJoinPool pool, final float[][] a, final float[][] b) {
+        checkDimension(a);
+        int M = a.length;
+        final int N = a[0].length;
+        checkDestination(M, N, b);
+
+        forRows(pool, M, N, new RowRange() {
+            @Override
+            public void apply(int from, int to) {
+                for (int i = from; i < to; i++) {
+                    for (int j = 0; j < N; j++) {
+                        b[i][j] = (float) Math.log10(a[i][j]);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Gets the max value of a real array, using the library-wide pool.
+     *
+     * @param a array
+     * @return max
+     * @see ArrayUtils#max(float[][])
+     */
+    public static float max(float[][] a) {
+        return max(pool, a);
+    }
+
+    /**
+     * Gets the max value of a real array.
+     *
+     * @param pool pool running the computation
+     * @param a array
+     * @return max
+     * @see ArrayUtils#max(float[][])
+     */
+    public static float max(ForkJoinPool pool, final float[][] a) {
+        checkDimension(a);
+        int M = a.length;
+        final int N = a[0].length;
+
+        //per-row partial results, reduced on the calling thread
+        final float[] rowMax = new float[M];
+
+        forRows(pool, M, N, new RowRange() {
+            @Override
+            public void apply(int from, int to) {
+                for (int i = from; i < to; i++) {
+                    float max = a[i][0];
+
+                    for (int j = 0; j < N; j++) {
+                        max = Math.max(max, a[i][j]);
+                    }
+                    rowMax[i] = max;
+                }
+            }
+        });
+
+        float max = rowMax[0];
+        for (int i = 1; i < M; i++) {
+            max = Math.max(max, rowMax[i]);
+        }
+        return max;
+    }
+
+    /**
+     * Gets the min value of a real array, using the library-wide pool.
+     *
+     * @param a array
+     * @return min
+     * @see ArrayUtils#min(float[][])
+     */
+    public static float min(float[][] a) {
+        return min(pool, a);
+    }
+
+    /**
+     * Gets the min value of a real array.
+     *
+     * @param pool pool running the computation
+     * @param a array
+     * @return min
+     * @see ArrayUtils#min(float[][])
+     */
+    public static float min(ForkJoinPool pool, final float[][] a) {
+        checkDimension(a);
+        int M = a.length;
+        final int N = a[0].length;
+
+        //per-row partial results, reduced on the calling thread
+        final float[] rowMin = new float[M];
+
+        forRows(pool, M, N, new RowRange() {
+            @Override
+            public void apply(int from, int to) {
+                for (int i = from; i < to; i++) {
+                    float min = a[i][0];
+
+                    for (int j = 0; j < N; j++) {
+                        min = Math.min(min, a[i][j]);
+                    }
+                    rowMin[i] = min;
+                }
+            }
+        });
+
+        float min = rowMin[0];
+        for (int i = 1; i < M; i++) {
+            min = Math.min(min, rowMin[i]);
+        }
+        return min;
+    }
+
+    /**
+     * Scales a real array to {@code [0, maxScale]} leaving the result in
+     * {@code a}, using the library-wide pool.
+     *
+     * @param a array
+     * @param max array's max value
+     * @param min array's min value
+     * @param maxScale max value of the output array
+     * @see ArrayUtils#scale2(float[][], float, float, float)
+     */
+    public static void scale2(float[][] a, float max, float min, float maxScale) {
+        scale2(pool, a, max, min, maxScale);
+    }
+
+    /**
+     * Scales a real array to {@code [0, maxScale]} leaving the result in
+     * {@code a}.
+     *
+     * @param pool pool running the computation
+     * @param a array
+     * @param max array's max value
+     * @param min array's min value
+     * @param maxScale max value of the output array
+     * @see ArrayUtils#scale2(float[][], float, float, float)
+     */
+    public static void scale2(ForkJoinPool pool, final float[][] a, float max, final float min,
+            final float maxScale) {
+        checkDimension(a);
+        int M = a.length;
+        final int N = a[0].length;
+
+        final float delta = max - min;
+
+        forRows(pool, M, N, new RowRange() {
+            @Override
+            public void apply(int from, int to) {
+                for (int i = from; i < to; i++) {
+                    float[] row = a[i];
+
+                    for (int j = 0; j < N; j++) {
+                        row[j] = row[j] - min;
+                        row[j] = row[j] / delta;
+                        row[j] = row[j] * maxScale;
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Scales a real array to {@code [0, maxScale]} leaving the result in
+     * {@code a}, using the library-wide pool. Array's max and min values are
+     * found in parallel too.
+     *
+     * @param a array
+     * @param maxScale max value of the output array
+     * @see ArrayUtils#scale2(float[][], float)
+     */
+    public static void scale2(float[][] a, float maxScale) {
+        scale2(pool, a, maxScale);
+    }
+
+    /**
+     * Scales a real array to {@code [0, maxScale]} leaving the result in
+     * {@code a}. Array's max and min values are found in parallel too.
+     *
+     * @param pool pool running the computation
+     * @param a array
+     * @param maxScale max value of the output array
+     * @see ArrayUtils#scale2(float[][], float)
+     */
+    public static void scale2(ForkJoinPool pool, float[][] a, float maxScale) {
+        float max = max(pool, a);
+        float min = min(pool, a);
+
+        scale2(pool, a, max, min, maxScale);
+    }
+
+    /**
+     * Computes the pointwise complex multiplication of 2 arrays leaving the
+     * result in {@code a}, using the library-wide pool.
+     *
+     * @param a complex array
+     * @param b complex array
+     * @see ArrayUtils#complexMultiplication2(double[][], double[][])
+     */
+    public static void complexMultiplication2(double[][] a, double[][] b) {
+        complexMultiplication2(pool, a, b);
+    }
+
+    /**
+     * Computes the pointwise complex multiplication of 2 arrays leaving the
+     * result in {@code a}.
+     *
+     * @param pool pool running the computation
+     * @param a complex array
+     * @param b complex array
+     * @see ArrayUtils#complexMultiplication2(double[][], double[][])
+     */
+    public static void complexMultiplication2(ForkJoinPool pool, final double[][] a, final double[][] b) {
+        checkDimension(a);
+        checkDimension(b);
+        int M = a.length;
+        final int N = a[0].length;
+        if (M != b.length || N != b[0].length) {
+            throw new IllegalArgumentException("Arrays must be equal-sized.");
+        }
+
+        forRows(pool, M, N / 2, new RowRange() {
+            @Override
+            public void apply(int from, int to) {
+                for (int i = from; i < to; i++) {
+                    KERNELS.complexMultiplication2(a[i], b[i], 0, 2 * (N / 2));
+                }
+            }
+        });
+    }
+
+    /**
+     * Computes the pointwise complex multiplication of 2 arrays stored in the
+     * 1D layout {@code a[i * 2 * N + 2 * j] = Re[i][j]}, leaving the result in
+     * {@code a}, using the library-wide pool.
+     *
+     * @param M number of rows
+     * @param N number of columns
+     * @param a complex array
+     * @param b complex array
+     * @see ArrayUtils#complexMultiplication2(int, int, double[], double[])
+     */
+    public static void complexMultiplication2(int M, int N, double[] a, double[] b) {
+        complexMultiplication2(pool, M, N, a, b);
+    }
+
+    /**
+     * Computes the pointwise complex multiplication of 2 arrays stored in the
+     * 1D layout {@code a[i * 2 * N + 2 * j] = Re[i][j]}, leaving the result in
+     * {@code a}.
+     *
+     * @param pool pool running the computation
+     * @param M number of rows
+     * @param N number of columns
+     * @param a complex array
+     * @param b complex array
+     * @see ArrayUtils#complexMultiplication2(int, int, double[], double[])
+     */
+    public static void complexMultiplication2(ForkJoinPool pool, int M, final int N, final double[] a,
+            final double[] b) {
+        checkDimension(M, N, a);
+        checkDimension(M, N, b);
+
+        forRows(pool, M, N, new RowRange() {
+            @Override
+            public void apply(int from, int to) {
+                KERNELS.complexMultiplication2(a, b, from * 2 * N, to * 2 * N);
+            }
+        });
+    }
+
+    /**
+     * Performs the circular shifting of a complex array, leaving the result in
+     * {@code a}, using the library-wide pool.
+     *
+     * @param a complex array
+     * @see ArrayUtils#complexShift(double[][])
+     */
+    public static void complexShift(double[][] a) {
+        complexShift(pool, a);
+    }
+
+    /**
+     * Performs the circular shifting of a complex array, leaving the result in
+     * {@code a}.
+     *
+     * @param pool pool running the computation
+     * @param a complex array
+     * @see ArrayUtils#complexShift(double[][])
+     */
+    public static void complexShift(ForkJoinPool pool, final double[][] a) {
+        checkDimension(a);
+        int M = a.length;
+        int N = a[0].length / 2;
+
+        final int M2 = M / 2;
+        final int N2 = N / 2;
+
+        //each task swaps rows i and i + M2, so only the first half is split
+        forRows(pool, M2, 2 * N, new RowRange() {
+            @Override
+            public void apply(int from, int to) {
+                double tmp;
+
+                for (int i = from; i < to; i++) {
+                    double[] top = a[i];
+                    double[] bottom = a[i + M2];
+
+                    for (int j = 0; j < N2; j++) {
+                        //Real shift
+                        tmp = top[2 * j];
+                        top[2 * j] = bottom[2 * (j + N2)];
+                        bottom[2 * (j + N2)] = tmp;
+
+                        tmp = bottom[2 * j];
+                        bottom[2 * j] = top[2 * (j + N2)];
+                        top[2 * (j + N2)] = tmp;
+
+                        //Imag shift
+                        tmp = top[2 * j + 1];
+                        top[2 * j + 1] = bottom[2 * (j + N2) + 1];
+                        bottom[2 * (j + N2) + 1] = tmp;
+
+                        tmp = bottom[2 * j + 1];
+                        bottom[2 * j + 1] = top[2 * (j + N2) + 1];
+                        top[2 * (j + N2) + 1] = tmp;
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Performs the circular shifting of a complex array stored in the 1D
+     * layout {@code a[i * 2 * N + 2 * j] = Re[i][j]}, leaving the result in
+     * {@code a}, using the library-wide pool.
+     *
+     * @param M number of rows
+     * @param N number of columns
+     * @param a complex array
+     * @see ArrayUtils#complexShift(int, int, double[])
+     */
+    public static void complexShift(int M, int N, double[] a) {
+        complexShift(pool, M, N, a);
+    }
+
+    /**
+     * Performs the circular shifting of a complex array stored in the 1D
+     * layout {@code a[i * 2 * N + 2 * j] = Re[i][j]}, leaving the result in
+     * {@code a}.
+     *
+     * @param pool pool running the computation
+     * @param M number of rows
+     * @param N number of columns
+     * @param a complex array
+     * @see ArrayUtils#complexShift(int, int, double[])
+     */
+    public static void complexShift(ForkJoinPool pool, int M, final int N, final double[] a) {
+        checkDimension(M, N, a);
+
+        final int M2 = M / 2;
+        final int N2 = N / 2;
+        final int rowShift = M2 * 2 * N;
+
+        forRows(pool, M2, 2 * N, new RowRange() {
+            @Override
+            public void apply(int from, int to) {
+                double tmp;
+
+                for (int i = from; i < to; i++) {
+                    int row = i * 2 * N;
+
+                    for (int j = 0; j < N2; j++) {
+                        int left = row + 2 * j;
+                        int right = row + 2 * (j + N2);
+
+                        //Real shift
+                        tmp = a[left];
+                        a[left] = a[right + rowShift];
+                        a[right + rowShift] = tmp;
+
+                        tmp = a[left + rowShift];
+                        a[left + rowShift] = a[right];
+                        a[right] = tmp;
+
+                        //Imag shift
+                        tmp = a[left + 1];
+                        a[left + 1] = a[right + rowShift + 1];
+                        a[right + rowShift + 1] = tmp;
+
+                        tmp = a[left + rowShift + 1];
+                        a[left + rowShift + 1] = a[right + 1];
+                        a[right + 1] = tmp;
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Computes the modulus of a complex array, using the library-wide pool.
+     *
+     * @param a complex array
+     * @return modulus array
+     * @see ArrayUtils#modulus(double[][])
+     */
+    public static double[][] modulus(double[][] a) {
+        return modulus(pool, a);
+    }
+
+    /**
+     * Computes the modulus of a complex array.
+     *
+     * @param pool pool running the computation
+     * @param a complex array
+     * @return modulus array
+     * @see ArrayUtils#modulus(double[][])
+     */
+    public static double[][] modulus(ForkJoinPool pool, final double[][] a) {
+        checkDimension(a);
+        int M = a.length;
+        int N = a[0].length / 2;
+
+        double[][] modulus = new double[M][N];
+        modulus(pool, a, modulus);
+        return modulus;
+    }
+
+    /**
+     * Computes the modulus of a complex array leaving the result in
+     * {@code modulus}, using the library-wide pool.
+     *
+     * @param a complex array
+     * @param modulus modulus array
+     * @see ArrayUtils#modulus(double[][], double[][])
+     */
+    public static void modulus(double[][] a, double[][] modulus) {
+        modulus(pool, a, modulus);
+    }
+
+    /**
+     * Computes the modulus of a complex array leaving the result in
+     * {@code modulus}.
+     *
+     * @param pool pool running the computation
+     * @param a complex array
+     * @param modulus modulus array
+     * @see ArrayUtils#modulus(double[][], double[][])
+     */
+    public static void modulus(ForkJoinPool pool, final double[][] a, final double[][] modulus) {
+        checkDimension(a);
+        int M = a.length;
+        final int N = a[0].length / 2;
+        checkDestination(M, N, modulus);
+
+        forRows(pool, M, N, new RowRange() {
+            @Override
+            public void apply(int from, int to) {
+                for (int i = from; i < to; i++) {
+                    KERNELS.modulus(a[i], modulus[i], N);
+                }
+            }
+        });
+    }
+
+    /**
+     * Computes the squared modulus of a complex array, using the library-wide
+     * pool.
+     *
+     * @param a complex array
+     * @return modulus squared array
+     * @see ArrayUtils#modulusSq(double[][])
+     */
+    public static double[][] modulusSq(double[][] a) {
+        return modulusSq(pool, a);
+    }
+
+    /**
+     * Computes the squared modulus of a complex array.
+     *
+     * @param pool pool running the computation
+     * @param a complex array
+     * @return modulus squared array
+     * @see ArrayUtils#modulusSq(double[][])
+     */
+    public static double[][] modulusSq(ForkJoinPool pool, final double[][] a) {
+        checkDimension(a);
+        int M = a.length;
+        int N = a[0].length / 2;
+
+        double[][] modulusSq = new double[M][N];
+        modulusSq(pool, a, modulusSq);
+        return modulusSq;
+    }
+
+    /**
+     * Computes the squared modulus of a complex array leaving the result in
+     * {@code modulusSq}, using the library-wide pool.
+     *
+     * @param a complex array
+     * @param modulusSq modulus squared array
+     * @see ArrayUtils#modulusSq(double[][], double[][])
+     */
+    public static void modulusSq(double[][] a, double[][] modulusSq) {
+        modulusSq(pool, a, modulusSq);
+    }
+
+    /**
+     * Computes the squared modulus of a complex array leaving the result in
+     * {@code modulusSq}.
+     *
+     * @param pool pool running the computation
+     * @param a complex array
+     * @param modulusSq modulus squared array
+     * @see ArrayUtils#modulusSq(double[][], double[][])
+     */
+    public static void modulusSq(ForkJoinPool pool, final double[][] a, final double[][] modulusSq) {
+        checkDimension(a);
+        int M = a.length;
+        final int N = a[0].length / 2;
+        checkDestination(M, N, modulusSq);
+
+        forRows(pool, M, N, new RowRange() {
+            @Override
+            public void apply(int from, int to) {
+                for (int i = from; i < to; i++) {
+                    KERNELS.modulusSq(a[i], modulusSq[i], N);
+                }
+            }
+        });
+    }
+
+    /**
+     * Computes the phase (angle) of a complex array, using the library-wide
+     * pool.
+     *
+     * @param a complex array
+     * @return phase (angle) array
+     * @see ArrayUtils#phase(double[][])
+     */
+    public static double[][] phase(double[][] a) {
+        return phase(pool, a);
+    }
+
+    /**
+     * Computes the phase (angle) of a complex array.
+     *
+     * @param pool pool running the computation
+     * @param a complex array
+     * @return phase (angle) array
+     * @see ArrayUtils#phase(double[][])
+     */
+    public static double[][] phase(ForkJoinPool pool, final double[][] a) {
+        checkDimension(a);
+        int M = a.length;
+        int N = a[0].length / 2;
+
+        double[][] phase = new double[M][N];
+        phase(pool, a, phase);
+        return phase;
+    }
+
+    /**
+     * Computes the phase (angle) of a complex array leaving the result in
+     * {@code phase}, using the library-wide pool.
+     *
+     * @param a complex array
+     * @param phase phase (angle) array
+     * @see ArrayUtils#phase(double[][], double[][])
+     */
+    public static void phase(double[][] a, double[][] phase) {
+        phase(pool, a, phase);
+    }
+
+    /**
+     * Computes the phase (angle) of a complex array leaving the result in
+     * {@code phase}.
+     *
+     * @param pool pool running the computation
+     * @param a complex array
+     * @param phase phase (angle) array
+     * @see ArrayUtils#phase(double[][], double[][])
+     */
+    public static void phase(ForkJoinPool pool, final double[][] a, final double[][] phase) {
+        checkDimension(a);
+        int M = a.length;
+        final int N = a[0].length / 2;
+        checkDestination(M, N, phase);
+
+        forRows(pool, M, N, new RowRange() {
+            @Override
+            public void apply(int from, int to) {
+                for (int i = from; i < to; i++) {
+                    KERNELS.phase(a[i], phase[i], N);
+                }
+            }
+        });
+    }
+
+    /**
+     * Creates a complex array pointwise, using the library-wide pool.
+     *
+     * @param phase phase array
+     * @param amp amplitude array
+     * @return complex array
+     * @see ArrayUtils#complexAmplitude(double[][], double[][])
+     */
+    public static double[][] complexAmplitude(double[][] phase, double[][] amp) {
+        return complexAmplitude(pool, phase, amp);
+    }
+
+    /**
+     * Creates a complex array pointwise. The computation is done calculating
+     * {@code amp * exp(i * phase)}.
+     *
+     * @param pool pool running the computation
+     * @param phase phase array
+     * @param amp amplitude array
+     * @return complex array
+     * @see ArrayUtils#complexAmplitude(double[][], double[][])
+     */
+    public static double[][] complexAmplitude(ForkJoinPool pool, final double[][] phase, final double[][] amp) {
+        checkDimension(phase);
+        checkDimension(amp);
+        int M = phase.length;
+        int N = phase[0].length;
+        if (M != amp.length || N != amp[0].length) {
+            throw new IllegalArgumentException("Arrays must be equal-sized.");
+        }
+
+        double[][] complexAmp = new double[M][2 * N];
+        complexAmplitude(pool, phase, amp, complexAmp);
+        return complexAmp;
+    }
+
+    /**
+     * Creates a complex array pointwise leaving the result in
+     * {@code complexAmp}, using the library-wide pool.
+     *
+     * @param phase phase array
+     * @param amp amplitude array
+     * @param complexAmp complex array
+     * @see ArrayUtils#complexAmplitude(double[][], double[][], double[][])
+     */
+    public static void complexAmplitude(double[][] phase, double[][] amp, double[][] complexAmp) {
+        complexAmplitude(pool, phase, amp, complexAmp);
+    }
+
+    /**
+     * Creates a complex array pointwise leaving the result in
+     * {@code complexAmp}.
+     *
+     * @param pool pool running the computation
+     * @param phase phase array
+     * @param amp amplitude array
+     * @param complexAmp complex array
+     * @see ArrayUtils#complexAmplitude(double[][], double[][], double[][])
+     */
+    public static void complexAmplitude(ForkJoinPool pool, final double[][] phase, final double[][] amp, final double[][] complexAmp) {
+        checkDimension(phase);
+        checkDimension(amp);
+        int M = phase.length;
+        final int N = phase[0].length;
+        if (M != amp.length || N != amp[0].length) {
+            throw new IllegalArgumentException("Arrays must be equal-sized.");
+        }
+        checkDestination(M, 2 * N, complexAmp);
+
+        forRows(pool, M, N, new RowRange() {
+            @Override
+            public void apply(int from, int to) {
+                for (int i = from; i < to; i++) {
+                    for (int j = 0; j < N; j++) {
+                        complexAmp[i][2 * j] = amp[i][j] * Math.cos(phase[i][j]);
+                        complexAmp[i][2 * j + 1] = amp[i][j] * Math.sin(phase[i][j]);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Creates a complex array pointwise, using the library-wide pool.
+     *
+     * @param phase phase array
+     * @param amp amplitude
+     * @return complex array
+     * @see ArrayUtils#complexAmplitude(double[][], double)
+     */
+    public static double[][] complexAmplitude(double[][] phase, double amp) {
+        return complexAmplitude(pool, phase, amp);
+    }
+
+    /**
+     * Creates a complex array pointwise. The computation is done calculating
+     * {@code amp * exp(i * phase)}.
+     *
+     * @param pool pool running the computation
+     * @param phase phase array
+     * @param amp amplitude
+     * @return complex array
+     * @see ArrayUtils#complexAmplitude(double[][], double)
+     */
+    public static double[][] complexAmplitude(ForkJoinPool pool, final double[][] phase, final double amp) {
+        checkDimension(phase);
+        int M = phase.length;
+        int N = phase[0].length;
+
+        double[][] complexAmp = new double[M][2 * N];
+        complexAmplitude(pool, phase, amp, complexAmp);
+        return complexAmp;
+    }
+
+    /**
+     * Creates a complex array pointwise leaving the result in
+     * {@code complexAmp}, using the library-wide pool.
+     *
+     * @param phase phase array
+     * @param amp amplitude
+     * @param complexAmp complex array
+     * @see ArrayUtils#complexAmplitude(double[][], double, double[][])
+     */
+    public static void complexAmplitude(double[][] phase, double amp, double[][] complexAmp) {
+        complexAmplitude(pool, phase, amp, complexAmp);
+    }
+
+    /**
+     * Creates a complex array pointwise leaving the result in
+     * {@code complexAmp}.
+     *
+     * @param pool pool running the computation
+     * @param phase phase array
+     * @param amp amplitude
+     * @param complexAmp complex array
+     * @see ArrayUtils#complexAmplitude(double[][], double, double[][])
+     */
+    public static void complexAmplitude(ForkJoinPool pool, final double[][] phase, final double amp, final double[][] complexAmp) {
+        checkDimension(phase);
+        int M = phase.length;
+        final int N = phase[0].length;
+        checkDestination(M, 2 * N, complexAmp);
+
+        forRows(pool, M, N, new RowRange() {
+            @Override
+            public void apply(int from, int to) {
+                for (int i = from; i < to; i++) {
+                    for (int j = 0; j < N; j++) {
+                        complexAmp[i][2 * j] = amp * Math.cos(phase[i][j]);
+                        complexAmp[i][2 * j + 1] = amp * Math.sin(phase[i][j]);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Computes log10 of a real array, using the library-wide pool.
+     *
+     * @param a array
+     * @return array containing log10(a)
+     * @see ArrayUtils#log10(double[][])
+     */
+    public static double[][] log10(double[][] a) {
+        return log10(pool, a);
+    }
+
+    /**
+     * Computes log10 of a real array.
+     *
+     * @param pool pool running the computation
+     * @param a array
+     * @return array containing log10(a)
+     * @see ArrayUtils#log10(double[][])
+     */
+    public static double[][] log10(ForkJoinPool pool, final double[][] a) {
+        checkDimension(a);
+        int M = a.length;
+        int N = a[0].length;
+
+        double[][] b = new double[M][N];
+        log10(pool, a, b);
+        return b;
+    }
+
+    /**
+     * Computes log10 of a real array leaving the result in {@code b}, using the
+     * library-wide pool.
+     *
+     * @param a array
+     * @param b array containing log10(a)
+     * @see ArrayUtils#log10(double[][], double[][])
+     */
+    public static void log10(double[][] a, double[][] b) {
+        log10(pool, a, b);
+    }
+
+    /**
+     * Computes log10 of a real array leaving the result in {@code b}.
+     *
+     * @param pool pool running the computation
+     * @param a array
+     * @param b array containing log10(a)
+     * @see ArrayUtils#log10(double[][], double[][])
+     */
+    public static void log10(ForkJoinPool pool, final double[][] a, final double[][] b) {
+        checkDimension(a);
+        int M = a.length;
+        final int N = a[0].length;
+        checkDestination(M, N, b);
+
+        forRows(pool, M, N, new RowRange() {
+            @Override
+            public void apply(int from, int to) {
+                for (int i = from; i < to; i++) {
+                    for (int j = 0; j < N; j++) {
+                        b[i][j] = Math.log10(a[i][j]);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Gets the max value of a real array, using the library-wide pool.
+     *
+     * @param a array
+     * @return max
+     * @see ArrayUtils#max(double[][])
+     */
+    public static double max(double[][] a) {
+        return max(pool, a);
+    }
+
+    /**
+     * Gets the max value of a real array.
+     *
+     * @param pool pool running the computation
+     * @param a array
+     * @return max
+     * @see ArrayUtils#max(double[][])
+     */
+    public static double max(ForkJoinPool pool, final double[][] a) {
+        checkDimension(a);
+        int M = a.length;
+        final int N = a[0].length;
+
+        //per-row partial results, reduced on the calling thread
+        final double[] rowMax = new double[M];
+
+        forRows(pool, M, N, new RowRange() {
+            @Override
+            public void apply(int from, int to) {
+                for (int i = from; i < to; i++) {
+                    double max = a[i][0];
+
+                    for (int j = 0; j < N; j++) {
+                        max = Math.max(max, a[i][j]);
+                    }
+                    rowMax[i] = max;
+                }
+            }
+        });
+
+        double max = rowMax[0];
+        for (int i = 1; i < M; i++) {
+            max = Math.max(max, rowMax[i]);
+        }
+        return max;
+    }
+
+    /**
+     * Gets the min value of a real array, using the library-wide pool.
+     *
+     * @param a array
+     * @return min
+     * @see ArrayUtils#min(double[][])
+     */
+    public static double min(double[][] a) {
+        return min(pool, a);
+    }
+
+    /**
+     * Gets the min value of a real array.
+     *
+     * @param pool pool running the computation
+     * @param a array
+     * @return min
+     * @see ArrayUtils#min(double[][])
+     */
+    public static double min(ForkJoinPool pool, final double[][] a) {
+        checkDimension(a);
+        int M = a.length;
+        final int N = a[0].length;
+
+        //per-row partial results, reduced on the calling thread
+        final double[] rowMin = new double[M];
+
+        forRows(pool, M, N, new RowRange() {
+            @Override
+            public void apply(int from, int to) {
+                for (int i = from; i < to; i++) {
+                    double min = a[i][0];
+
+                    for (int j = 0; j < N; j++) {
+                        min = Math.min(min, a[i][j]);
+                    }
+                    rowMin[i] = min;
+                }
+            }
+        });
+
+        double min = rowMin[0];
+        for (int i = 1; i < M; i++) {
+            min = Math.min(min, rowMin[i]);
+        }
+        return min;
+    }
+
+    /**
+     * Scales a real array to {@code [0, maxScale]} leaving the result in
+     * {@code a}, using the library-wide pool.
+     *
+     * @param a array
+     * @param max array's max value
+     * @param min array's min value
+     * @param maxScale max value of the output array
+     * @see ArrayUtils#scale2(double[][], double, double, double)
+     */
+    public static void scale2(double[][] a, double max, double min, double maxScale) {
+        scale2(pool, a, max, min, maxScale);
+    }
+
+    /**
+     * Scales a real array to {@code [0, maxScale]} leaving the result in
+     * {@code a}.
+     *
+     * @param pool pool running the computation
+     * @param a array
+     * @param max array's max value
+     * @param min array's min value
+     * @param maxScale max value of the output array
+     * @see ArrayUtils#scale2(double[][], double, double, double)
+     */
+    public static void scale2(ForkJoinPool pool, final double[][] a, double max, final double min,
+            final double maxScale) {
+        checkDimension(a);
+        int M = a.length;
+        final int N = a[0].length;
+
+        final double delta = max - min;
+
+        forRows(pool, M, N, new RowRange() {
+            @Override
+            public void apply(int from, int to) {
+                for (int i = from; i < to; i++) {
+                    double[] row = a[i];
+
+                    for (int j = 0; j < N; j++) {
+                        row[j] = row[j] - min;
+                        row[j] = row[j] / delta;
+                        row[j] = row[j] * maxScale;
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Scales a real array to {@code [0, maxScale]} leaving the result in
+     * {@code a}, using the library-wide pool. Array's max and min values are
+     * found in parallel too.
+     *
+     * @param a array
+     * @param maxScale max value of the output array
+     * @see ArrayUtils#scale2(double[][], double)
+     */
+    public static void scale2(double[][] a, double maxScale) {
+        scale2(pool, a, maxScale);
+    }
+
+    /**
+     * Scales a real array to {@code [0, maxScale]} leaving the result in
+     * {@code a}. Array's max and min values are found in parallel too.
+     *
+     * @param pool pool running the computation
+     * @param a array
+     * @param maxScale max value of the output array
+     * @see ArrayUtils#scale2(double[][], double)
+     */
+    public static void scale2(ForkJoinPool pool, double[][] a, double maxScale) {
+        double max = max(pool, a);
+        double min = min(pool, a);
+
+        scale2(pool, a, max, min, maxScale);
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2016 Universidad Nacional de Colombia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package unal.od.jdiffraction.cpu.utils;
+
+/**
+ * Plain Java implementation of {@link ComplexKernels}, used when the Vector
+ * API isn't available and for the tails of the vectorized loops.
+ *
+ * @author Pablo Piedrahita-Quintero (jppiedrahitaq@unal.edu.co)
+ * @author Carlos Trujillo (catrujila@unal.edu.co)
+ * @author Jorge Garcia-Sucerquia (jigarcia@unal.edu.co)
+ *
+ * @since JDiffraction 1.3
+ */
+class ScalarComplexKernels extends ComplexKernels {
+
+    @Override
+    void complexMultiplication2(float[] a, float[] b, int from, int to) {
+        for (int k = from; k < to; k += 2) {
+            float real = a[k];
+            float imaginary = a[k + 1];
+
+            a[k] = (real * b[k]) - (imaginary * b[k + 1]);
+            a[k + 1] = (real * b[k + 1]) + (imaginary * b[k]);
+        }
+    }
+
+    @Override
+    void complexMultiplication2(double[] a, double[] b, int from, int to) {
+        for (int k = from; k < to; k += 2) {
+            double real = a[k];
+            double imaginary = a[k + 1];
+
+            a[k] = (real * b[k]) - (imaginary * b[k + 1]);
+            a[k + 1] = (real * b[k + 1]) + (imaginary * b[k]);
+        }
+    }
+
+    /**
+     * Scalar loop over the complex values {@code [from, n)}.
+     */
+    void modulus(float[] a, float[] modulus, int from, int n) {
+        for (int j = from; j < n; j++) {
+            float value = a[2 * j] * a[2 * j];
+            value += a[2 * j + 1] * a[2 * j + 1];
+            modulus[j] = (float) Math.sqrt(value);
+        }
+    }
+
+    void modulus(double[] a, double[] modulus, int from, int n) {
+        for (int j = from; j < n; j++) {
+            double value = a[2 * j] * a[2 * j];
+            value += a[2 * j + 1] * a[2 * j + 1];
+            modulus[j] = Math.sqrt(value);
+        }
+    }
+
+    void modulusSq(float[] a, float[] modulusSq, int from, int n) {
+        for (int j = from; j < n; j++) {
+            modulusSq[j] = (a[2 * j] * a[2 * j]) + (a[2 * j + 1] * a[2 * j + 1]);
+        }
+    }
+
+    void modulusSq(double[] a, double[] modulusSq, int from, int n) {
+        for (int j = from; j < n; j++) {
+            modulusSq[j] = (a[2 * j] * a[2 * j]) + (a[2 * j + 1] * a[2 * j + 1]);
+        }
+    }
+
+    void phase(float[] a, float[] phase, int from, int n) {
+        for (int j = from; j < n; j++) {
+            phase[j] = (float) Math.atan2(a[2 * j + 1], a[2 * j]);
+        }
+    }
+
+    void phase(double[] a, double[] phase, int from, int n) {
+        for (int j = from; j < n; j++) {
+            phase[j] = Math.atan2(a[2 * j + 1], a[2 * j]);
+        }
+    }
+
+    @Override
+    void modulus(float[] a, float[] modulus, int n) {
+        modulus(a, modulus, 0, n);
+    }
+
+    @Override
+    void modulus(double[] a, double[] modulus, int n) {
+        modulus(a, modulus, 0, n);
+    }
+
+    @Override
+    void modulusSq(float[] a, float[] modulusSq, int n) {
+        modulusSq(a, modulusSq, 0, n);
+    }
+
+    @Override
+    void modulusSq(double[] a, double[] modulusSq, int n) {
+        modulusSq(a, modulusSq, 0, n);
+    }
+
+    @Override
+    void phase(float[] a, float[] phase, int n) {
+        phase(a, phase, 0, n);
+    }
+
+    @Override
+    void phase(double[] a, double[] phase, int n) {
+        phase(a, phase, 0, n);
+    }
+
+    @Override
+    boolean isVectorized() {
+        return false;
+    }
+}